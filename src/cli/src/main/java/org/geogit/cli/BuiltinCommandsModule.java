@@ -6,9 +6,11 @@ package org.geogit.cli;
 
 import org.geogit.cli.plumbing.Cat;
 import org.geogit.cli.plumbing.DiffTree;
+import org.geogit.cli.plumbing.IndexHistory;
 import org.geogit.cli.plumbing.LsTree;
 import org.geogit.cli.plumbing.MergeBase;
 import org.geogit.cli.plumbing.RebuildGraph;
+import org.geogit.cli.plumbing.Repack;
 import org.geogit.cli.plumbing.RevList;
 import org.geogit.cli.plumbing.RevParse;
 import org.geogit.cli.plumbing.ShowRef;
@@ -78,6 +80,8 @@ import com.google.inject.AbstractModule;
  * @see Fetch
  * @see Version
  * @see RebuildGraph
+ * @see IndexHistory
+ * @see Repack
  */
 public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
 
@@ -124,6 +128,8 @@ public class BuiltinCommandsModule extends AbstractModule implements CLIModule {
         bind(WalkGraph.class);
         bind(Version.class);
         bind(RebuildGraph.class);
+        bind(IndexHistory.class);
+        bind(Repack.class);
     }
 
 }
@@ -19,6 +19,7 @@ import org.geogit.storage.bdbje.JEObjectDatabase;
 import org.geogit.storage.bdbje.JEStagingDatabase;
 import org.geogit.storage.blueprints.TinkerGraphDatabase;
 import org.geogit.storage.fs.FileRefDatabase;
+import org.geogit.storage.fs.PackedObjectDatabase;
 import org.geogit.storage.mongo.MongoGraphDatabase;
 import org.geogit.storage.mongo.MongoObjectDatabase;
 import org.geogit.storage.mongo.MongoStagingDatabase;
@@ -66,6 +67,10 @@ public class CLIInjectorBuilder extends InjectorBuilder {
                     .addBinding(new VersionedFormat("mongodb", "0.1"))//
                     .to(MongoObjectDatabase.class)//
                     .in(Scopes.SINGLETON);
+            objectPlugins //
+                    .addBinding(new VersionedFormat("pack", "1.0"))//
+                    .to(PackedObjectDatabase.class)//
+                    .in(Scopes.SINGLETON);
             MapBinder<VersionedFormat, StagingDatabase> stagingPlugins = MapBinder.newMapBinder(
                     binder(), VersionedFormat.class, StagingDatabase.class);
             stagingPlugins //
@@ -0,0 +1,35 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.cli.plumbing;
+
+import java.io.IOException;
+
+import org.geogit.api.plumbing.UpdateChangedPathsIndexOp;
+import org.geogit.cli.AbstractCommand;
+import org.geogit.cli.CLICommand;
+import org.geogit.cli.GeogitCLI;
+
+import com.beust.jcommander.Parameters;
+
+/**
+ * Indexes the paths changed by the commits in the history of every branch that are not indexed
+ * yet, so that path filtered {@code log} and {@code blame} don't need to diff them.
+ * 
+ * @see UpdateChangedPathsIndexOp
+ */
+@Parameters(commandNames = "index-history", commandDescription = "Indexes the paths changed by each commit.")
+public class IndexHistory extends AbstractCommand implements CLICommand {
+
+    @Override
+    public void runInternal(GeogitCLI cli) throws IOException {
+        Integer indexed = cli.getGeogit().command(UpdateChangedPathsIndexOp.class).call();
+        if (indexed.intValue() > 0) {
+            cli.getConsole().println(indexed + " commits were indexed.");
+        } else {
+            cli.getConsole().println("All commits were already indexed.");
+        }
+    }
+}
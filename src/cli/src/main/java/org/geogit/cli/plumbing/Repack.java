@@ -0,0 +1,39 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+
+package org.geogit.cli.plumbing;
+
+import java.io.IOException;
+
+import jline.console.ConsoleReader;
+
+import org.geogit.api.plumbing.RepackOp;
+import org.geogit.cli.AbstractCommand;
+import org.geogit.cli.CLICommand;
+import org.geogit.cli.GeogitCLI;
+
+import com.beust.jcommander.Parameters;
+import com.google.common.base.Optional;
+
+/**
+ * Compacts the pack files of the object database, removing deleted objects.
+ * 
+ * @see RepackOp
+ */
+@Parameters(commandNames = "repack", commandDescription = "Compacts the object database pack files.")
+public class Repack extends AbstractCommand implements CLICommand {
+
+    @Override
+    public void runInternal(GeogitCLI cli) throws IOException {
+        Optional<Long> count = cli.getGeogit().command(RepackOp.class).call();
+
+        final ConsoleReader console = cli.getConsole();
+        if (count.isPresent()) {
+            console.println("Repacked " + count.get() + " objects.");
+        } else {
+            console.println("The object database is not pack based, nothing to do.");
+        }
+    }
+}
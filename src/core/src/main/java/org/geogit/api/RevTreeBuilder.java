@@ -15,6 +15,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
@@ -30,12 +38,15 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.vividsolutions.jts.geom.Envelope;
 
 public class RevTreeBuilder {
@@ -50,6 +61,24 @@ public class RevTreeBuilder {
      */
     public static final int DEFAULT_NORMALIZATION_THRESHOLD = 1000 * 1000;
 
+    /**
+     * Min number of pending changes for a {@link #setParallel(boolean) parallel} builder to build
+     * its buckets concurrently, below it the thread hand offs cost more than they save
+     */
+    private static final int PARALLEL_BUILD_THRESHOLD = 10 * 1000;
+
+    /**
+     * Max number of batches of trees waiting to be written by a {@link WriteBehind}
+     */
+    private static final int WRITE_BEHIND_QUEUE_SIZE = 4;
+
+    private static final ExecutorService EXECUTOR;
+    static {
+        final int nThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        EXECUTOR = Executors.newFixedThreadPool(nThreads, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("geogit-tree-builder-%d").build());
+    }
+
     private final ObjectDatabase db;
 
     private final Set<String> deletes;
@@ -70,6 +99,15 @@ public class RevTreeBuilder {
 
     private Map<ObjectId, RevTree> pendingWritesCache;
 
+    /**
+     * Where to send the trees to be saved instead of the object database, only set for the bucket
+     * trees being built concurrently by a parallel builder
+     */
+    @Nullable
+    private final WriteBehind writer;
+
+    private boolean parallel;
+
     /**
      * Empty tree constructor, used to create trees from scratch
      * 
@@ -84,14 +122,14 @@ public class RevTreeBuilder {
      * Copy constructor with tree depth
      */
     public RevTreeBuilder(ObjectDatabase db, @Nullable final RevTree copy) {
-        this(db, copy, 0, new TreeMap<ObjectId, RevTree>());
+        this(db, copy, 0, new TreeMap<ObjectId, RevTree>(), null);
     }
 
     /**
      * Copy constructor
      */
     private RevTreeBuilder(final ObjectDatabase db, @Nullable final RevTree copy, final int depth,
-            final Map<ObjectId, RevTree> pendingWritesCache) {
+            final Map<ObjectId, RevTree> pendingWritesCache, @Nullable final WriteBehind writer) {
 
         checkNotNull(db);
         checkNotNull(pendingWritesCache);
@@ -99,6 +137,7 @@ public class RevTreeBuilder {
         this.db = db;
         this.depth = depth;
         this.pendingWritesCache = pendingWritesCache;
+        this.writer = writer;
 
         this.deletes = Sets.newHashSet();
         this.treeChanges = Maps.newHashMap();
@@ -150,12 +189,23 @@ public class RevTreeBuilder {
 
     private RevTree loadTree(final ObjectId subtreeId) {
         RevTree subtree = this.pendingWritesCache.get(subtreeId);
+        if (subtree == null && writer != null) {
+            subtree = writer.get(subtreeId);
+        }
         if (subtree == null) {
             subtree = db.getTree(subtreeId);
         }
         return subtree;
     }
 
+    private void putAll(final Collection<RevTree> trees) {
+        if (writer == null) {
+            db.putAll(trees.iterator());
+        } else {
+            writer.write(trees);
+        }
+    }
+
     private Optional<Node> getInternal(final String key, final boolean deep) {
         Node found = featureChanges.get(key);
         if (found == null) {
@@ -239,7 +289,7 @@ public class RevTreeBuilder {
                     .size(), (topLevelTree ? "writing top level tree" : "there are "
                     + pendingWritesCache.size() + " pending bucket writes"));
             Stopwatch sw2 = new Stopwatch().start();
-            db.putAll(pendingWritesCache.values().iterator());
+            putAll(pendingWritesCache.values());
             pendingWritesCache.clear();
             LOGGER.debug("done in {}", sw2.stop());
         }
@@ -323,22 +373,28 @@ public class RevTreeBuilder {
 
             List<RevTree> newLeafTreesToSave = Lists.newArrayList();
 
+            final boolean buildInParallel = parallel && changedBucketIndexes.size() > 1
+                    && changesByBucket.size() >= PARALLEL_BUILD_THRESHOLD;
+            final Map<Integer, RevTree[]> builtBuckets;
+            if (buildInParallel) {
+                builtBuckets = buildBucketsInParallel(changedBucketIndexes, changesByBucket);
+            } else {
+                builtBuckets = null;
+            }
+
             for (Integer bucketIndex : changedBucketIndexes) {
-                final RevTree currentBucketTree = getBucketTree(bucketIndex);
-                final int bucketDepth = this.depth + 1;
-                final RevTreeBuilder bucketTreeBuilder = new RevTreeBuilder(this.db,
-                        currentBucketTree, bucketDepth, this.pendingWritesCache);
-                {
-                    final Collection<Node> bucketEntries = changesByBucket.removeAll(bucketIndex);
-                    for (Node node : bucketEntries) {
-                        if (node.getObjectId().isNull()) {
-                            bucketTreeBuilder.remove(node.getName());
-                        } else {
-                            bucketTreeBuilder.put(node);
-                        }
-                    }
+                final RevTree currentBucketTree;
+                final RevTree modifiedBucketTree;
+                if (buildInParallel) {
+                    RevTree[] built = builtBuckets.get(bucketIndex);
+                    currentBucketTree = built[0];
+                    modifiedBucketTree = built[1];
+                } else {
+                    currentBucketTree = getBucketTree(bucketIndex);
+                    modifiedBucketTree = buildBucket(currentBucketTree,
+                            changesByBucket.removeAll(bucketIndex), this.pendingWritesCache,
+                            this.writer);
                 }
-                final RevTree modifiedBucketTree = bucketTreeBuilder.build();
                 final long bucketSizeDelta = modifiedBucketTree.size() - currentBucketTree.size();
                 final int bucketTreesDelta = modifiedBucketTree.numTrees()
                         - currentBucketTree.numTrees();
@@ -371,7 +427,7 @@ public class RevTreeBuilder {
                 }
             }
             if (!newLeafTreesToSave.isEmpty()) {
-                db.putAll(newLeafTreesToSave.iterator());
+                putAll(newLeafTreesToSave);
                 newLeafTreesToSave.clear();
                 newLeafTreesToSave = null;
             }
@@ -392,6 +448,158 @@ public class RevTreeBuilder {
                 this.bucketTreesByBucket);
     }
 
+    /**
+     * Applies the changes to a bucket tree
+     * 
+     * @return the modified bucket tree
+     */
+    private RevTree buildBucket(final RevTree currentBucketTree, final Collection<Node> changes,
+            final Map<ObjectId, RevTree> pendingWritesCache, @Nullable final WriteBehind writer) {
+        final int bucketDepth = this.depth + 1;
+        final RevTreeBuilder bucketTreeBuilder = new RevTreeBuilder(this.db, currentBucketTree,
+                bucketDepth, pendingWritesCache, writer);
+        for (Node node : changes) {
+            if (node.getObjectId().isNull()) {
+                bucketTreeBuilder.remove(node.getName());
+            } else {
+                bucketTreeBuilder.put(node);
+            }
+        }
+        return bucketTreeBuilder.build();
+    }
+
+    /**
+     * Builds the changed buckets concurrently. Buckets are disjoint by
+     * {@link NodePathStorageOrder#bucket(String, int) storage order}, so each one is built by its
+     * own builder with its own pending writes cache, and the trees they save are handed over to a
+     * {@link WriteBehind} that writes them to the database in the background. All the trees are
+     * saved by the time this method returns, but for the modified bucket trees themselves which
+     * are left for the caller to deal with as in the sequential case.
+     * 
+     * @return the current and modified bucket trees for each bucket index
+     */
+    private Map<Integer, RevTree[]> buildBucketsInParallel(final Set<Integer> bucketIndexes,
+            final Multimap<Integer, Node> changesByBucket) {
+
+        final WriteBehind bucketsWriter = new WriteBehind(db);
+        final Map<Integer, Future<RevTree[]>> futures = Maps.newTreeMap();
+        final Map<Integer, RevTree[]> built = Maps.newTreeMap();
+        try {
+            for (final Integer bucketIndex : bucketIndexes) {
+                final Collection<Node> changes = changesByBucket.removeAll(bucketIndex);
+                futures.put(bucketIndex, EXECUTOR.submit(new Callable<RevTree[]>() {
+                    @Override
+                    public RevTree[] call() throws Exception {
+                        // this builder's state is only read until all the buckets are built
+                        final RevTree current = getBucketTree(bucketIndex);
+                        final Map<ObjectId, RevTree> cache = Maps.newTreeMap();
+                        final RevTree modified = buildBucket(current, changes, cache,
+                                bucketsWriter);
+                        bucketsWriter.write(cache.values());
+                        return new RevTree[] { current, modified };
+                    }
+                }));
+            }
+            for (Map.Entry<Integer, Future<RevTree[]>> e : futures.entrySet()) {
+                built.put(e.getKey(), Uninterruptibles.getUninterruptibly(e.getValue()));
+            }
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            for (Future<RevTree[]> f : futures.values()) {
+                f.cancel(true);
+            }
+            bucketsWriter.finish();
+        }
+        return built;
+    }
+
+    /**
+     * Writes batches of trees to the object database in a background thread, through a bounded
+     * queue so that producers are throttled down to the write speed of the database. Trees are
+     * still reachable through {@link #get(ObjectId)} until they're written.
+     */
+    private static final class WriteBehind implements Runnable {
+
+        private static final List<RevTree> END = Lists.newArrayList();
+
+        private final ObjectDatabase db;
+
+        private final BlockingQueue<List<RevTree>> queue;
+
+        private final ConcurrentMap<ObjectId, RevTree> inFlight;
+
+        private final Thread thread;
+
+        private volatile Throwable failure;
+
+        private volatile boolean finished;
+
+        WriteBehind(ObjectDatabase db) {
+            this.db = db;
+            this.queue = new ArrayBlockingQueue<List<RevTree>>(WRITE_BEHIND_QUEUE_SIZE);
+            this.inFlight = Maps.newConcurrentMap();
+            this.thread = new Thread(this, "geogit-tree-writer");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final List<RevTree> batch = Uninterruptibles.takeUninterruptibly(queue);
+                if (batch == END) {
+                    return;
+                }
+                try {
+                    if (failure == null) {
+                        db.putAll(batch.iterator());
+                    }
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    for (RevTree tree : batch) {
+                        inFlight.remove(tree.getId());
+                    }
+                }
+            }
+        }
+
+        @Nullable
+        RevTree get(ObjectId id) {
+            return inFlight.get(id);
+        }
+
+        void write(Collection<RevTree> trees) {
+            checkState(!finished, "tree writer already finished");
+            checkFailure();
+            if (trees.isEmpty()) {
+                return;
+            }
+            List<RevTree> batch = Lists.newArrayList(trees);
+            for (RevTree tree : batch) {
+                inFlight.put(tree.getId(), tree);
+            }
+            Uninterruptibles.putUninterruptibly(queue, batch);
+        }
+
+        /**
+         * Waits for all the queued trees to be written and stops the writer thread
+         */
+        void finish() {
+            finished = true;
+            Uninterruptibles.putUninterruptibly(queue, END);
+            Uninterruptibles.joinUninterruptibly(thread);
+            checkFailure();
+        }
+
+        private void checkFailure() {
+            if (failure != null) {
+                throw Throwables.propagate(failure);
+            }
+        }
+    }
+
     /**
      * @return the bucket tree or {@link RevTree#EMPTY} if this tree does not have a bucket for the
      *         given bucket index
@@ -502,6 +710,18 @@ public class RevTreeBuilder {
         return namedTree;
     }
 
+    /**
+     * Sets whether the changed buckets of this tree are built concurrently when there are lots of
+     * pending changes, which speeds up building large trees on multi core machines. Defaults to
+     * {@code false}.
+     * 
+     * @return {@code this}
+     */
+    public RevTreeBuilder setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
     /**
      * Deletes all nodes that represent subtrees
      * 
@@ -0,0 +1,285 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.plumbing.diff.DiffEntry;
+import org.geogit.storage.fs.SpatialIndex;
+import org.geogit.storage.fs.SpatialIndex.Entry;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Striped;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Returns the {@link SpatialIndex spatial index} of the features in a tree, creating it if it
+ * doesn't exist yet.
+ * <p>
+ * Index files are kept in the {@code spatial} directory of the repository, named after the id of
+ * the indexed tree. Since indexes are immutable and tree ids change with every commit, the index of
+ * the latest version of each tree path is tracked, and a new index is derived from it by applying
+ * the {@link DiffTree differences} between both trees, instead of traversing the whole new tree.
+ * The indexes of the {@link #KEPT_INDEXES} latest versions of each tree path are kept, and older
+ * ones are deleted once a new one is written, so that a reader still on the previous version
+ * doesn't make the index of the current one be rebuilt.
+ * <p>
+ * Checking for, building, opening and deleting indexes is done while holding a lock on the index
+ * directory, both within this JVM and on a lock file for other processes. Trees of different
+ * paths may have the same id and thus share an index file, so a single lock for all the paths
+ * makes sure a build never reads a base index while another one deletes it.
+ * <p>
+ * The returned index is open and it's the caller's responsibility to {@link SpatialIndex#close()
+ * close} it.
+ */
+public class BuildSpatialIndexOp extends AbstractGeoGitOp<SpatialIndex> {
+
+    private static final String INDEX_SUFFIX = ".sidx";
+
+    private static final String LATEST_SUFFIX = ".latest";
+
+    private static final String LOCK_FILE = "index.lock";
+
+    /**
+     * Number of versions of each tree path whose index is kept
+     */
+    static final int KEPT_INDEXES = 2;
+
+    private static final Striped<Lock> DIRECTORY_LOCKS = Striped.lock(16);
+
+    private String treePath;
+
+    private ObjectId treeId;
+
+    /**
+     * @param treePath the path of the indexed tree, used to find the index of a previous version of
+     *        the same tree to derive the new index from
+     * @return {@code this}
+     */
+    public BuildSpatialIndexOp setTreePath(String treePath) {
+        this.treePath = treePath;
+        return this;
+    }
+
+    /**
+     * @param treeId the id of the tree to index
+     * @return {@code this}
+     */
+    public BuildSpatialIndexOp setTreeId(ObjectId treeId) {
+        this.treeId = treeId;
+        return this;
+    }
+
+    /**
+     * Executes the {@code BuildSpatialIndexOp} operation.
+     *
+     * @return the spatial index for the tree
+     */
+    @Override
+    public SpatialIndex call() {
+        checkNotNull(treePath, "tree path not specified");
+        checkNotNull(treeId, "tree id not specified");
+        try {
+            final File indexDir = indexDirectory();
+            final File indexFile = new File(indexDir, treeId.toString() + INDEX_SUFFIX);
+            final File latestFile = new File(indexDir, ObjectId.forString(treePath).toString()
+                    + LATEST_SUFFIX);
+            final File lockFile = new File(indexDir, LOCK_FILE);
+
+            final Lock lock = DIRECTORY_LOCKS.get(lockFile.getAbsolutePath());
+            lock.lock();
+            try {
+                RandomAccessFile lockRaf = new RandomAccessFile(lockFile, "rw");
+                try {
+                    FileLock fileLock = lockFile(lockRaf.getChannel());
+                    try {
+                        if (!indexFile.exists()) {
+                            build(indexDir, indexFile, latestFile);
+                        }
+                        return SpatialIndex.open(indexFile);
+                    } finally {
+                        fileLock.release();
+                    }
+                } finally {
+                    lockRaf.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Locks the whole file, waiting for other processes to release it. Another class loader in
+     * this same JVM holding it makes {@link FileChannel#lock()} fail instead of waiting, so in that
+     * case the lock is retried until it's released.
+     */
+    private static FileLock lockFile(FileChannel channel) throws IOException {
+        while (true) {
+            try {
+                return channel.lock();
+            } catch (OverlappingFileLockException e) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ie) {
+                    throw Throwables.propagate(ie);
+                }
+            }
+        }
+    }
+
+    private File indexDirectory() throws IOException {
+        final Optional<URL> repoUrl = command(ResolveGeogitDir.class).call();
+        checkState(repoUrl.isPresent(), "Not inside a geogit directory");
+        final File indexDir;
+        try {
+            indexDir = new File(new File(repoUrl.get().toURI()), "spatial");
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+        if (!indexDir.exists() && !indexDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + indexDir);
+        }
+        return indexDir;
+    }
+
+    /**
+     * @param latestFile the file with the ids of the latest indexed versions of the tree path, the
+     *        most recent first
+     */
+    private void build(final File indexDir, final File indexFile, final File latestFile)
+            throws IOException {
+
+        List<String> latest = readLatest(latestFile);
+        ObjectId baseTreeId = ObjectId.NULL;
+        File baseIndexFile = null;
+        for (String id : latest) {
+            File candidate = new File(indexDir, id + INDEX_SUFFIX);
+            if (candidate.exists()) {
+                baseTreeId = ObjectId.valueOf(id);
+                baseIndexFile = candidate;
+                break;
+            }
+        }
+
+        // features added or changed since the base index, by path. Removed ones are kept mapped
+        // to null so that their base entries are dropped
+        Map<String, Entry> changes = Maps.newHashMap();
+        Iterator<DiffEntry> diffs = command(DiffTree.class).setOldTree(baseTreeId)
+                .setNewTree(treeId).setReportTrees(false).call();
+        while (diffs.hasNext()) {
+            DiffEntry diff = diffs.next();
+            if (diff.isDelete()) {
+                changes.put(diff.getOldObject().path(), null);
+            } else {
+                NodeRef ref = diff.getNewObject();
+                Node node = ref.getNode();
+                if (!TYPE.FEATURE.equals(node.getType())) {
+                    continue;
+                }
+                if (diff.isChange() && !diff.getOldObject().path().equals(ref.path())) {
+                    changes.put(diff.getOldObject().path(), null);
+                }
+                Envelope bounds = new Envelope();
+                node.expand(bounds);
+                Entry entry = null;
+                if (!bounds.isNull()) {
+                    entry = new Entry(ref.path(), node.getObjectId(), bounds);
+                }
+                changes.put(ref.path(), entry);
+            }
+        }
+
+        List<Entry> entries = Lists.newArrayList();
+        if (baseIndexFile != null) {
+            SpatialIndex base = SpatialIndex.open(baseIndexFile);
+            try {
+                Iterator<Entry> baseEntries = base.entries();
+                while (baseEntries.hasNext()) {
+                    Entry e = baseEntries.next();
+                    if (!changes.containsKey(e.getPath())) {
+                        entries.add(e);
+                    }
+                }
+            } finally {
+                base.close();
+            }
+        }
+        for (Entry e : changes.values()) {
+            if (e != null) {
+                entries.add(e);
+            }
+        }
+
+        SpatialIndex.write(indexFile, entries);
+
+        latest.remove(treeId.toString());
+        latest.add(0, treeId.toString());
+        List<String> superseded = latest.subList(Math.min(KEPT_INDEXES, latest.size()),
+                latest.size());
+        Set<String> inUse = Sets.newHashSet();
+        if (!superseded.isEmpty()) {
+            // a tree of another path with the same contents shares the index file
+            File[] latestFiles = indexDir.listFiles();
+            for (File f : latestFiles == null ? new File[0] : latestFiles) {
+                if (f.getName().endsWith(LATEST_SUFFIX) && !f.equals(latestFile)) {
+                    inUse.addAll(readLatest(f));
+                }
+            }
+        }
+        for (String id : superseded) {
+            File oldIndex = new File(indexDir, id + INDEX_SUFFIX);
+            if (inUse.contains(id)) {
+                continue;
+            }
+            if (oldIndex.exists() && !oldIndex.delete()) {
+                // still open by a reader on platforms that don't allow deleting open files
+                oldIndex.deleteOnExit();
+            }
+        }
+        superseded.clear();
+        Files.write(Joiner.on('\n').join(latest), latestFile, Charsets.UTF_8);
+    }
+
+    private static List<String> readLatest(final File latestFile) throws IOException {
+        List<String> latest = Lists.newArrayList();
+        if (latestFile.exists()) {
+            for (String line : Files.readLines(latestFile, Charsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    latest.add(line.trim());
+                }
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,44 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.storage.fs.ChangedPathsIndex;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+
+/**
+ * Opens the {@link ChangedPathsIndex index of the paths changed by each commit}, kept in the
+ * {@code history} directory of the repository.
+ * <p>
+ * The returned index is open and it's the caller's responsibility to
+ * {@link ChangedPathsIndex#close() close} it.
+ *
+ * @return the index, or {@link Optional#absent()} if the repository has no directory to keep it
+ */
+public class OpenChangedPathsIndex extends AbstractGeoGitOp<Optional<ChangedPathsIndex>> {
+
+    @Override
+    public Optional<ChangedPathsIndex> call() {
+        final Optional<URL> repoUrl = command(ResolveGeogitDir.class).call();
+        if (!repoUrl.isPresent() || !"file".equals(repoUrl.get().getProtocol())) {
+            return Optional.absent();
+        }
+        try {
+            File indexDir = new File(new File(repoUrl.get().toURI()), "history");
+            return Optional.of(ChangedPathsIndex.open(indexDir));
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
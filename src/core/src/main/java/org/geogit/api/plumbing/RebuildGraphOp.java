@@ -57,12 +57,7 @@ public class RebuildGraphOp extends AbstractGeoGitOp<ImmutableList<ObjectId>> {
         
         for (Ref ref : branches) {
             Iterator<RevCommit> commits = command(LogOp.class).setUntil(ref.getObjectId()).call();
-            while (commits.hasNext()) {
-                RevCommit next = commits.next();
-                if (graphDb.put(next.getId(), next.getParentIds())) {
-                    updated.add(next.getId());
-                }
-            }
+            updated.addAll(graphDb.putAll(commits));
         }
 
         return ImmutableList.copyOf(updated);
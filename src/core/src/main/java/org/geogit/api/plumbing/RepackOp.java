@@ -0,0 +1,50 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.fs.PackedObjectDatabase;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+
+/**
+ * Compacts the repository's object database, merging its pack files and dropping deleted objects.
+ * <p>
+ * Only {@link PackedObjectDatabase pack based} object databases need to be repacked, for any other
+ * kind of object database this command does nothing and returns {@link Optional#absent()}.
+ * 
+ * @see PackedObjectDatabase#repack()
+ */
+public class RepackOp extends AbstractGeoGitOp<Optional<Long>> {
+
+    private ObjectDatabase objectDb;
+
+    /**
+     * Constructs a new {@code RepackOp} with the given {@link ObjectDatabase}.
+     * 
+     * @param objectDb the repository object database
+     */
+    @Inject
+    public RepackOp(ObjectDatabase objectDb) {
+        this.objectDb = objectDb;
+    }
+
+    /**
+     * Executes the {@code RepackOp} operation.
+     * 
+     * @return the number of objects in the repacked database, or {@link Optional#absent()} if the
+     *         object database is not pack based
+     */
+    @Override
+    public Optional<Long> call() {
+        if (!(objectDb instanceof PackedObjectDatabase)) {
+            return Optional.absent();
+        }
+        long count = ((PackedObjectDatabase) objectDb).repack();
+        return Optional.of(Long.valueOf(count));
+    }
+}
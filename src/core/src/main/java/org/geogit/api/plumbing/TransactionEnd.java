@@ -19,6 +19,7 @@ import org.geogit.api.porcelain.MergeOp;
 import org.geogit.api.porcelain.NothingToCommitException;
 import org.geogit.api.porcelain.RebaseConflictsException;
 import org.geogit.api.porcelain.RebaseOp;
+import org.geogit.storage.RefDatabase;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -35,11 +36,19 @@ import com.google.inject.Inject;
  * <p>
  * If the repository ref was updated while the transaction occurred, the changes will be brought
  * together via a merge or rebase operation and the new ref will be updated to the result.
+ * <p>
+ * Only the ref being updated is locked, and only while it is compared and set, so transactions
+ * updating different branches don't wait for each other.
  * 
  * @see GeogitTransaction
  */
 public class TransactionEnd extends AbstractGeoGitOp<Boolean> {
 
+    /**
+     * How many times to try updating a ref that keeps being changed by other transactions
+     */
+    private static final int MAX_ATTEMPTS = 20;
+
     private boolean cancel = false;
 
     private GeogitTransaction transaction = null;
@@ -115,82 +124,104 @@ public class TransactionEnd extends AbstractGeoGitOp<Boolean> {
 
         if (!cancel) {
             ImmutableSet<Ref> changedRefs = getChangedRefs();
-            // Lock the repository
-            try {
-                getRefDatabase().lock();
-            } catch (TimeoutException e) {
-                Throwables.propagate(e);
+            // Update refs
+            for (Ref ref : changedRefs) {
+                updateRef(ref, currentBranch.equals(ref.getName()));
             }
 
-            try {
-                // Update refs
-                for (Ref ref : changedRefs) {
-                    Ref updatedRef = ref;
-
-                    Optional<Ref> repoRef = command(RefParse.class).setName(ref.getName()).call();
-                    if (repoRef.isPresent() && repositoryChanged(repoRef.get())) {
-                        if (rebase) {
-                            // Try to rebase
-                            transaction.command(CheckoutOp.class).setSource(ref.getName())
-                                    .setForce(true).call();
-                            try {
-                                transaction
-                                        .command(RebaseOp.class)
-                                        .setUpstream(
-                                                Suppliers.ofInstance(repoRef.get().getObjectId()))
-                                        .call();
-                            } catch (RebaseConflictsException e) {
-                                Throwables.propagate(e);
-                            }
-                            updatedRef = transaction.command(RefParse.class).setName(ref.getName())
-                                    .call().get();
-                        } else {
-                            // sync transactions have to use merge to prevent divergent history
-                            transaction.command(CheckoutOp.class).setSource(ref.getName())
-                                    .setForce(true).call();
-                            try {
-                                transaction
-                                        .command(MergeOp.class)
-                                        .setAuthor(authorName.orNull(), authorEmail.orNull())
-                                        .addCommit(
-                                                Suppliers.ofInstance(repoRef.get().getObjectId()))
-                                        .call();
-                            } catch (NothingToCommitException e) {
-                                // The repo commit is already in our history, this is a fast
-                                // forward.
-                            }
-                            updatedRef = transaction.command(RefParse.class).setName(ref.getName())
-                                    .call().get();
-                        }
-                    }
-                    command(UpdateRef.class).setName(ref.getName())
-                            .setNewValue(updatedRef.getObjectId()).call();
+            // TODO: What happens if there are unstaged or staged changes in the repository when
+            // a transaction is committed?
+        }
 
-                    if (currentBranch.equals(ref.getName())) {
-                        // Update HEAD, WORK_HEAD and STAGE_HEAD
-                        command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(ref.getName())
+        // Erase old refs
+        transaction.close();
+
+        // Success
+        return true;
+    }
+
+    /**
+     * Updates the repository ref to the value of the transaction ref, merging or rebasing the
+     * transaction changes on top of the repository ref first if it changed during the transaction.
+     * <p>
+     * The merge or rebase happens without holding any lock, and the repository ref is then updated
+     * with a {@link RefDatabase#compareAndPut compare-and-put} that only locks that ref. If
+     * another transaction updated the ref in the meantime, the changes are merged or rebased again
+     * on top of its new value.
+     * <p>
+     * If the ref is the current branch, HEAD, WORK_HEAD and STAGE_HEAD are updated while still
+     * holding the ref's lock, so that a transaction ending concurrently on the same branch can't
+     * set them to an older commit after the branch has moved on.
+     *
+     * @param currentBranch whether the ref is the current branch of the repository
+     * @return the new value of the repository ref
+     */
+    private Ref updateRef(final Ref ref, final boolean currentBranch) {
+        for (int attempt = 1;; attempt++) {
+            Ref updatedRef = ref;
+
+            Optional<Ref> repoRef = command(RefParse.class).setName(ref.getName()).call();
+            if (repoRef.isPresent() && repositoryChanged(repoRef.get())) {
+                if (rebase) {
+                    // Try to rebase
+                    transaction.command(CheckoutOp.class).setSource(ref.getName())
+                            .setForce(true).call();
+                    try {
+                        transaction.command(RebaseOp.class)
+                                .setUpstream(Suppliers.ofInstance(repoRef.get().getObjectId()))
+                                .call();
+                    } catch (RebaseConflictsException e) {
+                        Throwables.propagate(e);
+                    }
+                    updatedRef = transaction.command(RefParse.class).setName(ref.getName())
+                            .call().get();
+                } else {
+                    // sync transactions have to use merge to prevent divergent history
+                    transaction.command(CheckoutOp.class).setSource(ref.getName())
+                            .setForce(true).call();
+                    try {
+                        transaction.command(MergeOp.class)
+                                .setAuthor(authorName.orNull(), authorEmail.orNull())
+                                .addCommit(Suppliers.ofInstance(repoRef.get().getObjectId()))
                                 .call();
-                        command(UpdateRef.class).setName(Ref.WORK_HEAD)
-                                .setNewValue(updatedRef.getObjectId()).call();
-                        command(UpdateRef.class).setName(Ref.STAGE_HEAD)
-                                .setNewValue(updatedRef.getObjectId()).call();
+                    } catch (NothingToCommitException e) {
+                        // The repo commit is already in our history, this is a fast
+                        // forward.
                     }
+                    updatedRef = transaction.command(RefParse.class).setName(ref.getName())
+                            .call().get();
                 }
+            }
 
-                // TODO: What happens if there are unstaged or staged changes in the repository when
-                // a transaction is committed?
+            final String expectedValue = repoRef.isPresent() ? repoRef.get().getObjectId()
+                    .toString() : null;
+            try {
+                getRefDatabase().lock(ref.getName());
+            } catch (TimeoutException e) {
+                Throwables.propagate(e);
+            }
+            try {
+                if (getRefDatabase().compareAndPut(ref.getName(), expectedValue,
+                        updatedRef.getObjectId().toString())) {
+                    if (currentBranch) {
+                        updateHeads(updatedRef);
+                    }
+                    return updatedRef;
+                }
             } finally {
-                // Unlock the repository
-                getRefDatabase().unlock();
+                getRefDatabase().unlock(ref.getName());
             }
-
+            Preconditions.checkState(attempt < MAX_ATTEMPTS,
+                    "Unable to update %s after %s attempts, it keeps being changed concurrently",
+                    ref.getName(), attempt);
         }
+    }
 
-        // Erase old refs
-        transaction.close();
-
-        // Success
-        return true;
+    private void updateHeads(final Ref branch) {
+        command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(branch.getName()).call();
+        command(UpdateRef.class).setName(Ref.WORK_HEAD).setNewValue(branch.getObjectId()).call();
+        command(UpdateRef.class).setName(Ref.STAGE_HEAD).setNewValue(branch.getObjectId())
+                .call();
     }
 
     private ImmutableSet<Ref> getChangedRefs() {
@@ -0,0 +1,192 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.Ref;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.diff.DepthTreeIterator;
+import org.geogit.api.plumbing.diff.DepthTreeIterator.Strategy;
+import org.geogit.api.porcelain.BranchListOp;
+import org.geogit.api.porcelain.LogOp;
+import org.geogit.storage.StagingDatabase;
+import org.geogit.storage.fs.ChangedPathsIndex;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+/**
+ * Adds the tree paths changed by commits to the repository's {@link ChangedPathsIndex}, and returns
+ * the number of commits that were indexed.
+ * <p>
+ * If no commits are {@link #setCommits(Iterator) given}, all the commits reachable from local and
+ * remote branches that are not indexed yet are, so that the history of a repository created before
+ * the index existed can be back-filled.
+ * <p>
+ * The changed paths are found walking the trees of each commit and its first parent in parallel,
+ * descending only into subtrees whose ids differ, so the features of the changed trees are never
+ * visited.
+ */
+public class UpdateChangedPathsIndexOp extends AbstractGeoGitOp<Integer> {
+
+    private StagingDatabase objectDb;
+
+    private Iterator<RevCommit> commits;
+
+    /**
+     * @param objectDb the database to read the commit trees from
+     */
+    @Inject
+    public UpdateChangedPathsIndexOp(StagingDatabase objectDb) {
+        this.objectDb = objectDb;
+    }
+
+    /**
+     * @param commits the commits to index, if not set all the commits reachable from any branch
+     *        are
+     * @return {@code this}
+     */
+    public UpdateChangedPathsIndexOp setCommits(Iterator<RevCommit> commits) {
+        this.commits = commits;
+        return this;
+    }
+
+    /**
+     * Executes the {@code UpdateChangedPathsIndexOp} operation.
+     *
+     * @return the number of commits that were not indexed and now are
+     */
+    @Override
+    public Integer call() {
+        final Optional<ChangedPathsIndex> index = command(OpenChangedPathsIndex.class).call();
+        if (!index.isPresent()) {
+            return Integer.valueOf(0);
+        }
+        int count = 0;
+        try {
+            if (commits != null) {
+                count += index(index.get(), commits);
+            } else {
+                ImmutableList<Ref> branches = command(BranchListOp.class).setLocal(true)
+                        .setRemotes(true).call();
+                for (Ref ref : branches) {
+                    Iterator<RevCommit> log = command(LogOp.class).setUntil(ref.getObjectId())
+                            .call();
+                    count += index(index.get(), log);
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            index.get().close();
+        }
+        return Integer.valueOf(count);
+    }
+
+    private int index(ChangedPathsIndex index, Iterator<RevCommit> commits) throws IOException {
+        int count = 0;
+        while (commits.hasNext()) {
+            RevCommit commit = commits.next();
+            if (index.isIndexed(commit.getId())) {
+                continue;
+            }
+            ObjectId parentTreeId = ObjectId.NULL;
+            Optional<ObjectId> parentId = commit.parentN(0);
+            if (parentId.isPresent() && objectDb.exists(parentId.get())) {
+                parentTreeId = objectDb.getCommit(parentId.get()).getTreeId();
+            }
+            // a missing parent means the bottom of a shallow clone, which is treated as the first
+            // commit of the repository, like LogOp does
+            RevTree parentTree = tree(parentTreeId);
+            RevTree tree = tree(commit.getTreeId());
+
+            Set<String> changedPaths = Sets.newHashSet();
+            if (!directFeatures(parentTree).equals(directFeatures(tree))) {
+                changedPaths.add("");
+            }
+            addChangedTrees("", parentTree, tree, changedPaths);
+            index.add(commit.getId(), changedPaths);
+            count++;
+        }
+        return count;
+    }
+
+    private RevTree tree(ObjectId treeId) {
+        return treeId.isNull() ? RevTree.EMPTY : objectDb.getTree(treeId);
+    }
+
+    /**
+     * @return the features directly under a tree, or the tree id itself if they can't be told apart
+     *         from its subtrees without loading its buckets
+     */
+    private Object directFeatures(RevTree tree) {
+        if (tree.buckets().isPresent()) {
+            return tree.getId();
+        }
+        return tree.features().or(ImmutableList.<Node> of());
+    }
+
+    private void addChangedTrees(String path, RevTree oldTree, RevTree newTree,
+            Set<String> changedPaths) {
+        if (oldTree.getId().equals(newTree.getId())) {
+            return;
+        }
+        Map<String, NodeRef> oldChildren = childTrees(path, oldTree);
+        Map<String, NodeRef> newChildren = childTrees(path, newTree);
+        for (String name : Sets.union(oldChildren.keySet(), newChildren.keySet())) {
+            NodeRef oldChild = oldChildren.get(name);
+            NodeRef newChild = newChildren.get(name);
+            if (oldChild == null || newChild == null) {
+                NodeRef child = oldChild == null ? newChild : oldChild;
+                changedPaths.add(child.path());
+                addAllTrees(child, changedPaths);
+            } else if (!oldChild.getObjectId().equals(newChild.getObjectId())) {
+                changedPaths.add(newChild.path());
+                addChangedTrees(newChild.path(), tree(oldChild.getObjectId()),
+                        tree(newChild.getObjectId()), changedPaths);
+            } else if (!oldChild.getMetadataId().equals(newChild.getMetadataId())) {
+                changedPaths.add(newChild.path());
+            }
+        }
+    }
+
+    private Map<String, NodeRef> childTrees(String path, RevTree tree) {
+        Map<String, NodeRef> children = Maps.newHashMap();
+        if (tree.numTrees() > 0) {
+            Iterator<NodeRef> it = new DepthTreeIterator(path, ObjectId.NULL, tree, objectDb,
+                    Strategy.TREES_ONLY);
+            while (it.hasNext()) {
+                NodeRef ref = it.next();
+                children.put(ref.name(), ref);
+            }
+        }
+        return children;
+    }
+
+    private void addAllTrees(NodeRef treeRef, Set<String> changedPaths) {
+        RevTree tree = tree(treeRef.getObjectId());
+        if (tree.numTrees() == 0) {
+            return;
+        }
+        Iterator<NodeRef> it = new DepthTreeIterator(treeRef.path(), treeRef.getMetadataId(),
+                tree, objectDb, Strategy.RECURSIVE_TREES_ONLY);
+        while (it.hasNext()) {
+            changedPaths.add(it.next().path());
+        }
+    }
+}
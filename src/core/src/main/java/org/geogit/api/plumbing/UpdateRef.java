@@ -101,6 +101,22 @@ public class UpdateRef extends AbstractGeoGitOp<Optional<Ref>> {
         Preconditions.checkState(name != null, "name has not been set");
         Preconditions.checkState(delete || newValue != null, "value has not been set");
 
+        if (oldValue != null && !delete) {
+            // compare and set atomically, so that concurrent updates of the ref are not lost
+            boolean updated = getRefDatabase().compareAndPut(name, oldValue, newValue.toString());
+            if (!updated) {
+                String storedValue;
+                try {
+                    storedValue = getRefDatabase().getRef(name);
+                } catch (IllegalArgumentException e) {
+                    storedValue = getRefDatabase().getSymRef(name);
+                }
+                throw new IllegalStateException("Old value (" + storedValue
+                        + ") doesn't match expected value '" + oldValue + "'");
+            }
+            return command(RefParse.class).setName(name).call();
+        }
+
         if (oldValue != null) {
             String storedValue;
             try {
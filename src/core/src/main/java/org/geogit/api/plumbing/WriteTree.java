@@ -140,6 +140,9 @@ public class WriteTree extends AbstractGeoGitOp<ObjectId> {
         Map<String, RevTreeBuilder> repositoryChangedTrees = Maps.newHashMap();
         Map<String, NodeRef> indexChangedTrees = Maps.newHashMap();
         Map<String, ObjectId> changedTreesMetadataId = Maps.newHashMap();
+        // the metadata ids of the trees changed by the diffs themselves, which take precedence
+        // over the ones of the index, as the diffs may not come from it
+        Map<String, ObjectId> diffTreesMetadataId = Maps.newHashMap();
         Set<String> deletedTrees = Sets.newHashSet();
         NodeRef ref;
         int i = 0;
@@ -176,6 +179,7 @@ public class WriteTree extends AbstractGeoGitOp<ObjectId> {
                 // cache the tree
                 resolveTargetTree(oldRootTree, ref.name(), repositoryChangedTrees,
                         changedTreesMetadataId, ref.getMetadataId());
+                diffTreesMetadataId.put(ref.path(), ref.getMetadataId());
             }
 
             resolveSourceTreeRef(parentPath, indexChangedTrees, changedTreesMetadataId);
@@ -212,6 +216,8 @@ public class WriteTree extends AbstractGeoGitOp<ObjectId> {
             return null;
         }
 
+        changedTreesMetadataId.putAll(diffTreesMetadataId);
+
         // now write back all changed trees
         ObjectId newTargetRootId = oldRootTree.getId();
         RevTreeBuilder directRootEntries = repositoryChangedTrees.remove(NodeRef.ROOT);
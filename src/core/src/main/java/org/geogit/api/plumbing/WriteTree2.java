@@ -27,6 +27,7 @@ import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.MutableTree;
 import org.geogit.api.plumbing.diff.TreeDifference;
 import org.geogit.api.porcelain.CommitOp;
+import org.geogit.repository.SpatialOps;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.StagingDatabase;
 import org.opengis.util.ProgressListener;
@@ -282,7 +283,7 @@ public class WriteTree2 extends AbstractGeoGitOp<ObjectId> {
             RevTree tree = applyChanges(leftTreeRef, rightTreeRef);
 
             Node newTreeNode = Node.create(rightTreeRef.name(), tree.getId(),
-                    rightTreeRef.getMetadataId(), TYPE.TREE);
+                    rightTreeRef.getMetadataId(), TYPE.TREE, SpatialOps.boundsOf(tree));
 
             MutableTree leftRoot = treeDifference.getLeftTree();
             String parentPath = rightTreeRef.getParentPath();
@@ -0,0 +1,129 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing.diff;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject;
+import org.geogit.api.RevTree;
+import org.geogit.storage.ObjectDatabase;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Loads the bucket trees visited by the tree diff algorithms ({@link TreeDiffEntryIterator} and
+ * {@link DiffCounter}) in batches through {@link ObjectDatabase#getAll(Iterable)}, optionally in
+ * the background so that several pairs of buckets are fetched concurrently while the caller is
+ * still busy with the previous ones.
+ * <p>
+ * All the diffs share a single pool of daemon threads sized after the number of available
+ * processors. Tasks submitted to the pool never wait on other tasks, so the pool can't dead lock
+ * no matter how many diffs run at the same time.
+ */
+final class BucketTreeLoader {
+
+    /**
+     * Max number of tree ids fetched by a single {@link ObjectDatabase#getAll(Iterable) getAll}
+     * call
+     */
+    static final int BATCH_SIZE = 8;
+
+    private static final ExecutorService EXECUTOR;
+    static {
+        final int nThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        EXECUTOR = Executors.newFixedThreadPool(nThreads, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("geogit-tree-diff-%d").build());
+    }
+
+    private BucketTreeLoader() {
+        // static helper
+    }
+
+    /**
+     * Loads the trees with the given ids in a single batch, in the calling thread.
+     *
+     * @throws IllegalArgumentException if any of the trees does not exist
+     */
+    static Map<ObjectId, RevTree> load(final ObjectDatabase db, final List<ObjectId> treeIds) {
+        Map<ObjectId, RevTree> trees = Maps.newHashMap();
+        if (treeIds.size() == 1) {
+            ObjectId id = treeIds.get(0);
+            trees.put(id, db.getTree(id));
+            return trees;
+        }
+        Iterator<RevObject> objects = db.getAll(treeIds);
+        while (objects.hasNext()) {
+            RevObject o = objects.next();
+            if (o instanceof RevTree) {
+                trees.put(o.getId(), (RevTree) o);
+            }
+        }
+        for (ObjectId id : treeIds) {
+            if (!trees.containsKey(id)) {
+                // let the database report the missing object the usual way
+                trees.put(id, db.getTree(id));
+            }
+        }
+        return trees;
+    }
+
+    /**
+     * Splits {@code treeIds} in batches of at most {@link #BATCH_SIZE} ids and submits each batch
+     * to be {@link #load loaded} in the background.
+     *
+     * @return one future per batch, in the same order than the ids were given. If there's only one
+     *         batch it's loaded right away instead of paying for a thread hand off.
+     */
+    static List<Future<Map<ObjectId, RevTree>>> prefetch(final ObjectDatabase db,
+            final List<ObjectId> treeIds) {
+
+        List<Future<Map<ObjectId, RevTree>>> batches = Lists.newArrayList();
+        if (treeIds.isEmpty()) {
+            return batches;
+        }
+        if (treeIds.size() <= BATCH_SIZE) {
+            batches.add(Futures.immediateFuture(load(db, treeIds)));
+            return batches;
+        }
+        for (final List<ObjectId> batch : Lists.partition(treeIds, BATCH_SIZE)) {
+            batches.add(submit(new Callable<Map<ObjectId, RevTree>>() {
+                @Override
+                public Map<ObjectId, RevTree> call() throws Exception {
+                    return load(db, batch);
+                }
+            }));
+        }
+        return batches;
+    }
+
+    static <T> Future<T> submit(Callable<T> task) {
+        return EXECUTOR.submit(task);
+    }
+
+    /**
+     * Waits for the result of a task submitted through this class, propagating the task failure
+     * as an unchecked exception.
+     */
+    static <T> T get(Future<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+}
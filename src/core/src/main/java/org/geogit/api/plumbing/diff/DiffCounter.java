@@ -8,8 +8,12 @@ import static com.google.common.base.Preconditions.checkState;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -29,6 +33,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
@@ -53,13 +58,26 @@ public class DiffCounter implements Supplier<DiffObjectCount> {
     @Nonnull
     private ObjectDatabase objectDb;
 
+    /**
+     * Number of levels of bucket trees whose differing pairs of buckets are counted concurrently
+     */
+    private static final int PARALLEL_DEPTH = 2;
+
+    private final boolean parallel;
+
     public DiffCounter(final ObjectDatabase db, final RevTree fromRootTree, final RevTree toRootTree) {
+        this(db, fromRootTree, toRootTree, true);
+    }
+
+    private DiffCounter(final ObjectDatabase db, final RevTree fromRootTree,
+            final RevTree toRootTree, final boolean parallel) {
         Preconditions.checkNotNull(db);
         Preconditions.checkNotNull(fromRootTree);
         Preconditions.checkNotNull(toRootTree);
         this.objectDb = db;
         this.fromRootTree = fromRootTree;
         this.toRootTree = toRootTree;
+        this.parallel = parallel;
     }
 
     @Override
@@ -206,9 +224,90 @@ public class DiffCounter implements Supplier<DiffObjectCount> {
     /**
      * Counts the number of differences between two trees that contain {@link RevTree#buckets()
      * buckets} instead of direct {@link RevTree#children() children}
+     * <p>
+     * Unless this counter is already running as part of a parallel count, the pairs of buckets
+     * that differ in the first {@link #PARALLEL_DEPTH} levels of the trees are counted
+     * concurrently, and the trees for each level are loaded in batches.
      */
     private DiffObjectCount countBucketDiffs(ImmutableSortedMap<Integer, Bucket> leftBuckets,
             ImmutableSortedMap<Integer, Bucket> rightBuckets) {
+        if (!parallel) {
+            return countBucketDiffsSequential(leftBuckets, rightBuckets);
+        }
+        List<Future<DiffObjectCount>> pending = Lists.newArrayList();
+        DiffObjectCount count = countBucketDiffs(leftBuckets, rightBuckets, 0, pending);
+        for (Future<DiffObjectCount> partial : pending) {
+            count.add(BucketTreeLoader.get(partial));
+        }
+        return count;
+    }
+
+    private DiffObjectCount countBucketDiffs(ImmutableSortedMap<Integer, Bucket> leftBuckets,
+            ImmutableSortedMap<Integer, Bucket> rightBuckets, final int depth,
+            final List<Future<DiffObjectCount>> pending) {
+
+        final Set<Integer> bucketIds = Sets.union(leftBuckets.keySet(), rightBuckets.keySet());
+        final List<ObjectId> leftTreeIds = Lists.newArrayList();
+        final List<ObjectId> rightTreeIds = Lists.newArrayList();
+        final List<ObjectId> treeIds = Lists.newArrayList();
+
+        for (Integer bucketId : bucketIds) {
+            @Nullable
+            Bucket leftBucket = leftBuckets.get(bucketId);
+            @Nullable
+            Bucket rightBucket = rightBuckets.get(bucketId);
+            ObjectId leftTreeId = leftBucket == null ? null : leftBucket.id();
+            ObjectId rightTreeId = rightBucket == null ? null : rightBucket.id();
+            if (leftTreeId != null && leftTreeId.equals(rightTreeId)) {
+                continue;
+            }
+            leftTreeIds.add(leftTreeId);
+            rightTreeIds.add(rightTreeId);
+            if (leftTreeId != null) {
+                treeIds.add(leftTreeId);
+            }
+            if (rightTreeId != null) {
+                treeIds.add(rightTreeId);
+            }
+        }
+
+        final Map<ObjectId, RevTree> trees = Maps.newHashMap();
+        for (Future<Map<ObjectId, RevTree>> batch : BucketTreeLoader.prefetch(objectDb, treeIds)) {
+            trees.putAll(BucketTreeLoader.get(batch));
+        }
+
+        DiffObjectCount count = new DiffObjectCount();
+        for (int i = 0; i < leftTreeIds.size(); i++) {
+            ObjectId leftTreeId = leftTreeIds.get(i);
+            ObjectId rightTreeId = rightTreeIds.get(i);
+            if (leftTreeId == null || rightTreeId == null) {
+                count.add(countOf(trees.get(leftTreeId == null ? rightTreeId : leftTreeId)));
+                continue;
+            }
+            final RevTree leftTree = trees.get(leftTreeId);
+            final RevTree rightTree = trees.get(rightTreeId);
+            if (depth + 1 < PARALLEL_DEPTH && leftTree.buckets().isPresent()
+                    && rightTree.buckets().isPresent()) {
+                count.add(countBucketDiffs(leftTree.buckets().get(), rightTree.buckets().get(),
+                        depth + 1, pending));
+            } else {
+                pending.add(BucketTreeLoader.submit(new Callable<DiffObjectCount>() {
+                    @Override
+                    public DiffObjectCount call() {
+                        return new DiffCounter(objectDb, leftTree, rightTree, false).get();
+                    }
+                }));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the number of differences between two bucket trees in the calling thread
+     */
+    private DiffObjectCount countBucketDiffsSequential(
+            ImmutableSortedMap<Integer, Bucket> leftBuckets,
+            ImmutableSortedMap<Integer, Bucket> rightBuckets) {
 
         DiffObjectCount count = new DiffObjectCount();
         final Set<Integer> bucketIds = Sets.union(leftBuckets.keySet(), rightBuckets.keySet());
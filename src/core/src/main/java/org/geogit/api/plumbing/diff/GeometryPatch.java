@@ -0,0 +1,473 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing.diff;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A compact, binary patch between two sequences of geometry tokens, as created by
+ * {@link LCSGeometryDiffImpl}.
+ * <p>
+ * A token sequence is a {@code long[]} holding two values per token, so that tokens are compared
+ * with two primitive comparisons and never boxed. The differences between two sequences are
+ * computed with Myers' linear space O(ND) algorithm, after stripping their common prefix and
+ * suffix, which is all the work needed for identical or almost identical geometries.
+ * <p>
+ * The patch is made of hunks, each one replacing a span of the old sequence with a span of the new
+ * one, both including up to {@link #CONTEXT} unchanged tokens at each side. Hunks are stored as
+ * four ints each ({@code start1, length1, start2, length2}), and the tokens of their old and new
+ * spans one after the other in a single {@code long[]}. The context tokens allow a patch to be
+ * applied on a sequence that differs from the one it was created from, as long as the replaced
+ * spans can still be found on it.
+ * <p>
+ * Patches are written in binary form by {@link #write(DataOutput)} as the number of hunks, their
+ * four ints each, the number of tokens and the two longs of each token, which is what
+ * {@link #read(DataInput)} expects.
+ */
+final class GeometryPatch {
+
+    /**
+     * Number of unchanged tokens kept at each side of a change
+     */
+    static final int CONTEXT = 1;
+
+    /**
+     * Maximum number of edits each half of a bisection explores before giving up and treating the
+     * whole section being bisected as replaced, which bounds the cost of diffing two very different
+     * large geometries at the price of a non minimal patch
+     */
+    private static final int MAX_D = 2048;
+
+    private final int[] hunks;
+
+    private final long[] tokens;
+
+    /**
+     * @param hunks the {@code start1, length1, start2, length2} values of each hunk
+     * @param tokens the old and new span tokens of each hunk, two values per token
+     */
+    GeometryPatch(int[] hunks, long[] tokens) {
+        Preconditions.checkArgument(hunks.length % 4 == 0);
+        this.hunks = hunks;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Computes the changes between two token sequences, flagging the tokens of the old sequence
+     * that are deleted and the tokens of the new sequence that are inserted. The remaining tokens
+     * are the common subsequence of both.
+     */
+    static void diff(long[] oldTokens, long[] newTokens, BitSet deleted, BitSet inserted) {
+        diff(oldTokens, 0, oldTokens.length / 2, newTokens, 0, newTokens.length / 2, deleted,
+                inserted);
+    }
+
+    /**
+     * Creates the patch that turns {@code oldTokens} into {@code newTokens}, out of the changes
+     * computed by {@link #diff(long[], long[], BitSet, BitSet)}.
+     */
+    static GeometryPatch create(long[] oldTokens, long[] newTokens, BitSet deleted,
+            BitSet inserted) {
+        final int oldLength = oldTokens.length / 2;
+        final int newLength = newTokens.length / 2;
+        // start1, end1, start2, end2 of each change, excluding context
+        int[] changes = new int[16];
+        int changeCount = 0;
+        int i = 0, j = 0;
+        while (i < oldLength || j < newLength) {
+            if (i < oldLength && j < newLength && !deleted.get(i) && !inserted.get(j)) {
+                i++;
+                j++;
+                continue;
+            }
+            int start1 = i, start2 = j;
+            while (i < oldLength && deleted.get(i)) {
+                i++;
+            }
+            while (j < newLength && inserted.get(j)) {
+                j++;
+            }
+            if (changeCount * 4 == changes.length) {
+                changes = Arrays.copyOf(changes, changes.length * 2);
+            }
+            changes[changeCount * 4] = start1;
+            changes[changeCount * 4 + 1] = i;
+            changes[changeCount * 4 + 2] = start2;
+            changes[changeCount * 4 + 3] = j;
+            changeCount++;
+        }
+
+        int[] hunks = new int[changeCount * 4];
+        int hunkCount = 0;
+        int tokenCount = 0;
+        for (int c = 0; c < changeCount;) {
+            int last = c;
+            while (last + 1 < changeCount
+                    && changes[(last + 1) * 4] - changes[last * 4 + 1] <= 2 * CONTEXT) {
+                last++;
+            }
+            // the unchanged tokens before and after a change are the same in both sequences
+            int before = Math.min(CONTEXT, changes[c * 4]
+                    - (c == 0 ? 0 : changes[(c - 1) * 4 + 1]));
+            int after = Math.min(CONTEXT, (last + 1 == changeCount ? oldLength
+                    : changes[(last + 1) * 4]) - changes[last * 4 + 1]);
+            int start1 = changes[c * 4] - before;
+            int start2 = changes[c * 4 + 2] - before;
+            hunks[hunkCount * 4] = start1;
+            hunks[hunkCount * 4 + 1] = changes[last * 4 + 1] + after - start1;
+            hunks[hunkCount * 4 + 2] = start2;
+            hunks[hunkCount * 4 + 3] = changes[last * 4 + 3] + after - start2;
+            tokenCount += hunks[hunkCount * 4 + 1] + hunks[hunkCount * 4 + 3];
+            hunkCount++;
+            c = last + 1;
+        }
+        hunks = Arrays.copyOf(hunks, hunkCount * 4);
+
+        long[] tokens = new long[tokenCount * 2];
+        int offset = 0;
+        for (int h = 0; h < hunkCount; h++) {
+            int length1 = hunks[h * 4 + 1] * 2;
+            int length2 = hunks[h * 4 + 3] * 2;
+            System.arraycopy(oldTokens, hunks[h * 4] * 2, tokens, offset, length1);
+            offset += length1;
+            System.arraycopy(newTokens, hunks[h * 4 + 2] * 2, tokens, offset, length2);
+            offset += length2;
+        }
+        return new GeometryPatch(hunks, tokens);
+    }
+
+    /**
+     * @return the number of hunks in this patch
+     */
+    int size() {
+        return hunks.length / 4;
+    }
+
+    /**
+     * @return the position of the given hunk in the old sequence
+     */
+    int start1(int hunk) {
+        return hunks[hunk * 4];
+    }
+
+    /**
+     * @return the number of tokens of the old sequence replaced by the given hunk
+     */
+    int length1(int hunk) {
+        return hunks[hunk * 4 + 1];
+    }
+
+    /**
+     * @return the position of the given hunk in the new sequence
+     */
+    int start2(int hunk) {
+        return hunks[hunk * 4 + 2];
+    }
+
+    /**
+     * @return the number of tokens of the new sequence the given hunk replaces the old ones with
+     */
+    int length2(int hunk) {
+        return hunks[hunk * 4 + 3];
+    }
+
+    /**
+     * @return the tokens of all the hunks, the old span of each hunk followed by its new span
+     */
+    long[] tokens() {
+        return tokens;
+    }
+
+    /**
+     * Writes this patch in its binary form.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(size());
+        for (int i = 0; i < hunks.length; i++) {
+            out.writeInt(hunks[i]);
+        }
+        out.writeInt(tokens.length / 2);
+        for (int i = 0; i < tokens.length; i++) {
+            out.writeLong(tokens[i]);
+        }
+    }
+
+    /**
+     * Reads a patch in the binary form written by {@link #write(DataOutput)}.
+     */
+    static GeometryPatch read(DataInput in) throws IOException {
+        final int size = in.readInt();
+        Preconditions.checkArgument(size >= 0, "Wrong number of hunks: %s", size);
+        int[] hunks = new int[size * 4];
+        int tokenCount = 0;
+        for (int i = 0; i < hunks.length; i++) {
+            hunks[i] = in.readInt();
+            Preconditions.checkArgument(hunks[i] >= 0, "Wrong hunk value: %s", hunks[i]);
+            if (i % 2 == 1) {
+                tokenCount += hunks[i];
+            }
+        }
+        final int count = in.readInt();
+        Preconditions.checkArgument(count == tokenCount,
+                "Wrong number of tokens, expected %s but was %s", tokenCount, count);
+        long[] tokens = new long[count * 2];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = in.readLong();
+        }
+        return new GeometryPatch(hunks, tokens);
+    }
+
+    /**
+     * @return a patch that undoes the changes of this one
+     */
+    GeometryPatch reversed() {
+        int[] reversedHunks = new int[hunks.length];
+        long[] reversedTokens = new long[tokens.length];
+        int offset = 0;
+        for (int h = 0; h < size(); h++) {
+            int length1 = length1(h) * 2;
+            int length2 = length2(h) * 2;
+            reversedHunks[h * 4] = start2(h);
+            reversedHunks[h * 4 + 1] = length2(h);
+            reversedHunks[h * 4 + 2] = start1(h);
+            reversedHunks[h * 4 + 3] = length1(h);
+            System.arraycopy(tokens, offset + length1, reversedTokens, offset, length2);
+            System.arraycopy(tokens, offset, reversedTokens, offset + length2, length1);
+            offset += length1 + length2;
+        }
+        return new GeometryPatch(reversedHunks, reversedTokens);
+    }
+
+    /**
+     * Applies this patch on the given token sequence. Each hunk is applied where its old span is
+     * found, looking first at the position it had in the sequence the patch was created from, and
+     * then at increasing distances from it.
+     *
+     * @return the patched sequence, or {@code null} if the old span of any hunk can't be found
+     */
+    @Nullable
+    long[] apply(long[] target) {
+        final int targetLength = target.length / 2;
+        long[] result = new long[target.length + tokens.length];
+        int resultLength = 0;
+        int cursor = 0;
+        int shift = 0;
+        int offset = 0;
+        for (int h = 0; h < size(); h++) {
+            final int length1 = length1(h);
+            final int length2 = length2(h);
+            final int position;
+            if (length1 == 0) {
+                // only created for an empty old sequence
+                if (targetLength != 0) {
+                    return null;
+                }
+                position = 0;
+            } else {
+                position = find(target, cursor, tokens, offset, length1, start1(h) + shift);
+                if (position < 0) {
+                    return null;
+                }
+            }
+            System.arraycopy(target, cursor * 2, result, resultLength, (position - cursor) * 2);
+            resultLength += (position - cursor) * 2;
+            System.arraycopy(tokens, offset + length1 * 2, result, resultLength, length2 * 2);
+            resultLength += length2 * 2;
+            cursor = position + length1;
+            shift = position - start1(h);
+            offset += (length1 + length2) * 2;
+        }
+        System.arraycopy(target, cursor * 2, result, resultLength, (targetLength - cursor) * 2);
+        resultLength += (targetLength - cursor) * 2;
+        return Arrays.copyOf(result, resultLength);
+    }
+
+    /**
+     * Finds the span of {@code length} tokens starting at {@code spanStart} in {@code spanTokens}
+     * in {@code target}, at or after {@code from}, looking first at {@code expected} and then at
+     * increasing distances from it.
+     *
+     * @return the position where the span was found, or {@code -1}
+     */
+    private static int find(long[] target, int from, long[] spanTokens, int spanStart,
+            int length, int expected) {
+        final int last = target.length / 2 - length;
+        if (last < from) {
+            return -1;
+        }
+        expected = Math.max(from, Math.min(last, expected));
+        for (int distance = 0; expected - distance >= from || expected + distance <= last;
+                distance++) {
+            int position = expected - distance;
+            if (position >= from && matches(target, position, spanTokens, spanStart, length)) {
+                return position;
+            }
+            position = expected + distance;
+            if (distance > 0 && position <= last
+                    && matches(target, position, spanTokens, spanStart, length)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(long[] target, int position, long[] spanTokens, int spanStart,
+            int length) {
+        final int start = position * 2;
+        for (int i = 0; i < length * 2; i++) {
+            if (target[start + i] != spanTokens[spanStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(long[] a, int i, long[] b, int j) {
+        return a[i * 2] == b[j * 2] && a[i * 2 + 1] == b[j * 2 + 1];
+    }
+
+    /**
+     * Computes the changes between {@code a[aStart, aEnd)} and {@code b[bStart, bEnd)}, in
+     * tokens.
+     */
+    private static void diff(long[] a, int aStart, int aEnd, long[] b, int bStart, int bEnd,
+            BitSet deleted, BitSet inserted) {
+        while (aStart < aEnd && bStart < bEnd && equal(a, aStart, b, bStart)) {
+            aStart++;
+            bStart++;
+        }
+        while (aStart < aEnd && bStart < bEnd && equal(a, aEnd - 1, b, bEnd - 1)) {
+            aEnd--;
+            bEnd--;
+        }
+        if (aStart == aEnd) {
+            inserted.set(bStart, bEnd);
+            return;
+        }
+        if (bStart == bEnd) {
+            deleted.set(aStart, aEnd);
+            return;
+        }
+        final long split = bisect(a, aStart, aEnd, b, bStart, bEnd);
+        if (split < 0) {
+            deleted.set(aStart, aEnd);
+            inserted.set(bStart, bEnd);
+            return;
+        }
+        final int x = aStart + (int) (split >>> 32);
+        final int y = bStart + (int) split;
+        diff(a, aStart, x, b, bStart, y, deleted, inserted);
+        diff(a, x, aEnd, b, y, bEnd, deleted, inserted);
+    }
+
+    /**
+     * Finds the middle snake of the shortest edit script between {@code a[aStart, aEnd)} and
+     * {@code b[bStart, bEnd)}, walking it from both ends at once.
+     *
+     * @return the point where the sequences can be split, as the offset in {@code a} in the high
+     *         32 bits and the offset in {@code b} in the low ones, or {@code -1} if it is not
+     *         found within {@link #MAX_D} edits
+     */
+    private static long bisect(long[] a, int aStart, int aEnd, long[] b, int bStart, int bEnd) {
+        final int n = aEnd - aStart;
+        final int m = bEnd - bStart;
+        final int maxD = Math.min((n + m + 1) / 2, MAX_D);
+        final int vOffset = maxD;
+        final int vLength = 2 * maxD + 2;
+        final int[] v1 = new int[vLength];
+        final int[] v2 = new int[vLength];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[vOffset + 1] = 0;
+        v2[vOffset + 1] = 0;
+        final int delta = n - m;
+        // if the total number of tokens is odd, the front path collides with the reverse path
+        final boolean front = (delta % 2 != 0);
+        // offsets for the start and end of the k loops, to prevent mapping of space beyond the grid
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d++) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                final int k1Offset = vOffset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])) {
+                    x1 = v1[k1Offset + 1];
+                } else {
+                    x1 = v1[k1Offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && equal(a, aStart + x1, b, bStart + y1)) {
+                    x1++;
+                    y1++;
+                }
+                v1[k1Offset] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2Offset = vOffset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1) {
+                        int x2 = n - v2[k2Offset];
+                        if (x1 >= x2) {
+                            return ((long) x1 << 32) | y1;
+                        }
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                final int k2Offset = vOffset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])) {
+                    x2 = v2[k2Offset + 1];
+                } else {
+                    x2 = v2[k2Offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && equal(a, aEnd - 1 - x2, b, bEnd - 1 - y2)) {
+                    x2++;
+                    y2++;
+                }
+                v2[k2Offset] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1Offset = vOffset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1) {
+                        int x1 = v1[k1Offset];
+                        int y1 = vOffset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            return ((long) x1 << 32) | y1;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof GeometryPatch)) {
+            return false;
+        }
+        GeometryPatch p = (GeometryPatch) o;
+        return Arrays.equals(hunks, p.hunks) && Arrays.equals(tokens, p.tokens);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(hunks) + Arrays.hashCode(tokens);
+    }
+}
@@ -4,36 +4,48 @@
  */
 package org.geogit.api.plumbing.diff;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import javax.annotation.Nullable;
 
-import org.geogit.api.plumbing.diff.diff_match_patch.Diff;
-import org.geogit.api.plumbing.diff.diff_match_patch.LinesToCharsResult;
-import org.geogit.api.plumbing.diff.diff_match_patch.Operation;
-import org.geogit.api.plumbing.diff.diff_match_patch.Patch;
-import org.geogit.storage.FieldType;
-import org.geogit.storage.text.TextValueSerializer;
-
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
-import com.google.common.collect.Iterators;
-import com.vividsolutions.jts.geom.Coordinate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 
 /**
  * An class that computes differences between geometries using a Longest-Common-Subsequence
- * algorithm on string representations of them
- * 
+ * algorithm on their coordinates
+ * <p>
+ * Geometries are turned into sequences of tokens read straight from their
+ * {@link CoordinateSequence coordinate sequences}: a token with the geometry type, and then, for
+ * each sub-geometry, a token with its type followed by its coordinates, with a token separating
+ * the inner rings of polygons. Each token is stored as two {@code long} values in a primitive
+ * array: the bits of the x and y ordinates for coordinates, and a NaN that
+ * {@link Double#doubleToLongBits(double)} never returns plus a token code for the rest.
+ * <p>
+ * The difference is kept as a binary {@link GeometryPatch} on those sequences, and only turned
+ * into text when serialized with {@link #asText()}, which is the form {@link PatchSerializer}
+ * writes, or when a human-readable version is requested. {@link #write(DataOutput)} writes it in
+ * binary form instead.
+ * Diffs read from the textual form written by older versions, a diff_match_patch patch on the WKT
+ * of the geometries, are kept and applied as a {@link LegacyGeometryPatch} instead.
  */
 public class LCSGeometryDiffImpl {
 
@@ -41,9 +53,45 @@ public class LCSGeometryDiffImpl {
 
     public static final String INNER_RING_SEPARATOR = "@";
 
-    private LinkedList<Patch> patches;
+    /**
+     * The x value of the tokens that are not coordinates
+     */
+    private static final long MARKER = 0x7ff0000000000001L;
+
+    /**
+     * The y value of the token separating the inner rings of a polygon
+     */
+    private static final long INNER_RING = 0;
+
+    /**
+     * Base of the y value of the tokens starting a sub-geometry, plus the index of its type
+     */
+    private static final long PART = 0x100;
+
+    /**
+     * Base of the y value of the token with the type of the geometry, plus the index of the type
+     */
+    private static final long HEADER = 0x200;
+
+    /**
+     * Binary form markers, telling whether a {@link GeometryPatch} or the text of a
+     * {@link LegacyGeometryPatch} follows
+     */
+    private static final int BINARY = 0;
+
+    private static final int LEGACY = 1;
+
+    private static final List<String> TYPES = ImmutableList.of("Point", "LineString",
+            "LinearRing", "Polygon", "MultiPoint", "MultiLineString", "MultiPolygon",
+            "GeometryCollection");
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
 
-    private diff_match_patch diffMatchPatch;
+    @Nullable
+    private final GeometryPatch patch;
+
+    @Nullable
+    private final LegacyGeometryPatch legacyPatch;
 
     private int totalInsertions;
 
@@ -51,191 +99,288 @@ public class LCSGeometryDiffImpl {
 
     private int replacings;
 
+    // the compared sequences, only kept by diffs created out of two geometries to build the
+    // coordinates string on demand
+    private long[] oldTokens;
+
+    private long[] newTokens;
+
+    private BitSet deleted;
+
+    private BitSet inserted;
+
     private String diffText;
 
     public LCSGeometryDiffImpl(Optional<Geometry> oldGeom, Optional<Geometry> newGeom) {
-        String oldText = oldGeom.isPresent() ? oldGeom.get().toText() : "";
-        String newText = newGeom.isPresent() ? newGeom.get().toText() : "";
-        diffMatchPatch = new diff_match_patch();
-        LinkedList<Diff> diffs = diffMatchPatch.diff_main(oldText, newText);
-        patches = diffMatchPatch.patch_make(diffs);
-
-        // to calculate number of edits in the geometry, we do a diffing based on a string
-        // representation of the coordinates of the geometry, instead of the WKT.
-        // This is more more practical for counting added/removed/edited points and generating a
-        // human-readable and easy-to-parse string representation of the diff.
-        // NOTE! This is limited to geometries with less than 65535 different points, and might
-        // yield wrong results for geometries over that limit.
-        // This is a temporary hack, until a better solution is developed.
-
-        oldText = geomToStringOfCoordinates(oldGeom);
-        newText = geomToStringOfCoordinates(newGeom);
-        LinesToCharsResult chars = coordsToChars(oldText, newText);
-        diffs = diffMatchPatch.diff_main(chars.chars1, chars.chars2);
-        charsToCoords(diffs, chars.lineArray);
-
-        processDiffs(diffs);
-
+        oldTokens = tokens(oldGeom);
+        newTokens = tokens(newGeom);
+        deleted = new BitSet();
+        inserted = new BitSet();
+        GeometryPatch.diff(oldTokens, newTokens, deleted, inserted);
+        patch = GeometryPatch.create(oldTokens, newTokens, deleted, inserted);
+        legacyPatch = null;
+        countChanges();
     }
 
-    private LCSGeometryDiffImpl(LinkedList<Patch> patches) {
-        diffMatchPatch = new diff_match_patch();
-        this.patches = patches;
+    private LCSGeometryDiffImpl(@Nullable GeometryPatch patch,
+            @Nullable LegacyGeometryPatch legacyPatch) {
+        this.patch = patch;
+        this.legacyPatch = legacyPatch;
     }
 
     public LCSGeometryDiffImpl(String s) {
-        String[] tokens = s.split("\t");
+        String[] tokens = s.split("\t", -1);
         Preconditions.checkArgument(tokens.length == 2);
         String[] countings = tokens[0].split("/");
         Preconditions.checkArgument(countings.length == 3);
         totalDeletions = Integer.parseInt(countings[0]);
         totalInsertions = Integer.parseInt(countings[1]);
         replacings = Integer.parseInt(countings[2]);
-        diffMatchPatch = new diff_match_patch();
-        String unescaped = tokens[1].replace("\\n", "\n");
-        patches = (LinkedList<Patch>) diffMatchPatch.patch_fromText(unescaped);
+        if (LegacyGeometryPatch.isLegacy(tokens[1])) {
+            patch = null;
+            legacyPatch = new LegacyGeometryPatch(tokens[1]);
+        } else {
+            patch = parsePatch(tokens[1]);
+            legacyPatch = null;
+        }
     }
 
-    private void processDiffs(List<Diff> diffs) {
+    /**
+     * Counts the coordinates deleted, inserted and replaced, considering that each coordinate
+     * deleted in a group of consecutive changes is replaced by one of the coordinates inserted in
+     * it, if there are any left.
+     */
+    private void countChanges() {
         totalInsertions = 0;
         totalDeletions = 0;
         replacings = 0;
         int insertions = 0;
         int deletions = 0;
-        StringBuilder sb = new StringBuilder();
-        for (Diff diff : diffs) {
-            String text = diff.text;
-            int nCoords = 0;
-            String[] tokens = diff.text.split(" ");
-            for (String token : tokens) {
-                if (token.contains(",")) {
-                    nCoords++;
+        final int oldLength = oldTokens.length / 2;
+        final int newLength = newTokens.length / 2;
+        int i = 0, j = 0;
+        while (i < oldLength || j < newLength) {
+            if (i < oldLength && deleted.get(i)) {
+                if (oldTokens[i * 2] != MARKER) {
+                    deletions++;
                 }
-            }
-            switch (diff.operation) {
-            case INSERT:
-                text = text.replace(" " + SUBGEOM_SEPARATOR, ")" + SUBGEOM_SEPARATOR + "(");
-                sb.append('(');
-                sb.append(text);
-                sb.append(") ");
-                insertions += nCoords;
-                break;
-            case DELETE:
-                sb.append('[');
-                sb.append(text);
-                sb.append("] ");
-                deletions += nCoords;
-                break;
-            case EQUAL:
-                sb.append(text.trim());
-                sb.append(' ');
+                i++;
+            } else if (j < newLength && inserted.get(j)) {
+                if (newTokens[j * 2] != MARKER) {
+                    insertions++;
+                }
+                j++;
+            } else {
                 replacings += Math.min(deletions, insertions);
                 totalDeletions += Math.max(deletions - insertions, 0);
                 totalInsertions += Math.max(insertions - deletions, 0);
                 insertions = 0;
                 deletions = 0;
-                break;
+                i++;
+                j++;
             }
         }
         replacings += Math.min(deletions, insertions);
         totalDeletions += Math.max(deletions - insertions, 0);
         totalInsertions += Math.max(insertions - deletions, 0);
-
-        diffText = sb.toString();
-        // some final dirty minor corrections
-        diffText = diffText.replace("(" + SUBGEOM_SEPARATOR, SUBGEOM_SEPARATOR + "(");
-        diffText = diffText.replace("(" + INNER_RING_SEPARATOR, INNER_RING_SEPARATOR + "(");
-        diffText = diffText.replace("[" + SUBGEOM_SEPARATOR, SUBGEOM_SEPARATOR + "[");
-        diffText = diffText.replace("[" + INNER_RING_SEPARATOR, INNER_RING_SEPARATOR + "[");
-        diffText = diffText.replace(" )", ")");
-        diffText = diffText.replace(" ]", "]");
     }
 
-    private String geomToStringOfCoordinates(Optional<Geometry> opt) {
+    /**
+     * Turns a geometry into its sequence of tokens, an empty one if the geometry is absent.
+     */
+    private static long[] tokens(Optional<Geometry> opt) {
         if (!opt.isPresent()) {
-            return "";
+            return new long[0];
         }
-        Function<Coordinate, String> printCoords = new Function<Coordinate, String>() {
-            @Override
-            @Nullable
-            public String apply(@Nullable Coordinate coord) {
-                return Double.toString(coord.x) + "," + Double.toString(coord.y);
+        final Geometry geom = opt.get();
+        final int n = geom.getNumGeometries();
+        int size = 1 + n + geom.getNumPoints();
+        for (int i = 0; i < n; i++) {
+            Geometry subgeom = geom.getGeometryN(i);
+            Preconditions.checkArgument(!(subgeom instanceof GeometryCollection),
+                    "Nested geometry collections are not supported: %s", geom.getGeometryType());
+            if (subgeom instanceof Polygon) {
+                size += ((Polygon) subgeom).getNumInteriorRing();
             }
+        }
 
-        };
-
-        StringBuilder sb = new StringBuilder();
-        Geometry geom = opt.get();
-        sb.append(geom.getGeometryType() + " ");
-        int n = geom.getNumGeometries();
+        long[] tokens = new long[size * 2];
+        int pos = marker(tokens, 0, HEADER + typeIndex(geom));
         for (int i = 0; i < n; i++) {
             Geometry subgeom = geom.getGeometryN(i);
+            pos = marker(tokens, pos, PART + typeIndex(subgeom));
             if (subgeom instanceof Polygon) {
                 Polygon polyg = (Polygon) subgeom;
-                Coordinate[] coords = polyg.getExteriorRing().getCoordinates();
-                Iterator<String> iter = Iterators
-                        .transform(Iterators.forArray(coords), printCoords);
-                sb.append(Joiner.on(' ').join(iter));
+                pos = coordinates(tokens, pos, polyg.getExteriorRing().getCoordinateSequence());
                 for (int j = 0; j < polyg.getNumInteriorRing(); j++) {
-                    coords = polyg.getInteriorRingN(j).getCoordinates();
-                    iter = Iterators.transform(Iterators.forArray(coords), printCoords);
-                    sb.append(" " + INNER_RING_SEPARATOR + " ");
-                    sb.append(Joiner.on(' ').join(iter));
-                }
-                if (i < n - 1) {
-                    sb.append(" " + SUBGEOM_SEPARATOR + " ");
+                    pos = marker(tokens, pos, INNER_RING);
+                    pos = coordinates(tokens, pos, polyg.getInteriorRingN(j)
+                            .getCoordinateSequence());
                 }
+            } else if (subgeom instanceof Point) {
+                pos = coordinates(tokens, pos, ((Point) subgeom).getCoordinateSequence());
             } else {
-                Coordinate[] coords = subgeom.getCoordinates();
-                Iterator<String> iter = Iterators
-                        .transform(Iterators.forArray(coords), printCoords);
-                sb.append(Joiner.on(' ').join(iter));
-                sb.append(" " + SUBGEOM_SEPARATOR + " ");
+                pos = coordinates(tokens, pos, ((LineString) subgeom).getCoordinateSequence());
             }
         }
+        return tokens;
+    }
 
-        String s = sb.toString().trim();
-        return s;
+    private static int typeIndex(Geometry geom) {
+        int index = TYPES.indexOf(geom.getGeometryType());
+        Preconditions.checkArgument(index != -1, "Unsupported geometry type: %s",
+                geom.getGeometryType());
+        return index;
+    }
 
+    private static int marker(long[] tokens, int pos, long code) {
+        tokens[pos++] = MARKER;
+        tokens[pos++] = code;
+        return pos;
     }
 
-    public LCSGeometryDiffImpl reversed() {
-        LinkedList<Patch> reversedPatches = diffMatchPatch.patch_deepCopy(patches);
-        for (Patch patch : reversedPatches) {
-            LinkedList<Diff> diffs = patch.diffs;
-            for (Diff diff : diffs) {
-                if (diff.operation == Operation.DELETE) {
-                    diff.operation = Operation.INSERT;
-                } else if (diff.operation == Operation.INSERT) {
-                    diff.operation = Operation.DELETE;
-                }
+    private static int coordinates(long[] tokens, int pos, CoordinateSequence coords) {
+        final int size = coords.size();
+        for (int i = 0; i < size; i++) {
+            tokens[pos++] = Double.doubleToLongBits(coords.getX(i));
+            tokens[pos++] = Double.doubleToLongBits(coords.getY(i));
+        }
+        return pos;
+    }
+
+    /**
+     * Builds the geometry a sequence of tokens represents, an absent one if the sequence is empty
+     */
+    private static Optional<Geometry> geometry(long[] tokens, GeometryFactory factory) {
+        if (tokens.length == 0) {
+            return Optional.absent();
+        }
+        final int size = tokens.length / 2;
+        Preconditions.checkArgument(tokens[0] == MARKER && tokens[1] >= HEADER,
+                "Geometry type expected");
+        final String type = TYPES.get((int) (tokens[1] - HEADER));
+        List<Geometry> parts = Lists.newArrayList();
+        int i = 1;
+        while (i < size) {
+            Preconditions.checkArgument(tokens[i * 2] == MARKER && tokens[i * 2 + 1] >= PART
+                    && tokens[i * 2 + 1] < HEADER, "Sub-geometry type expected");
+            final String partType = TYPES.get((int) (tokens[i * 2 + 1] - PART));
+            i++;
+            List<CoordinateSequence> rings = Lists.newArrayList();
+            int end = nextMarker(tokens, i);
+            rings.add(sequence(tokens, i, end, factory));
+            i = end;
+            while (i < size && tokens[i * 2] == MARKER && tokens[i * 2 + 1] == INNER_RING) {
+                end = nextMarker(tokens, i + 1);
+                rings.add(sequence(tokens, i + 1, end, factory));
+                i = end;
             }
+            parts.add(part(partType, rings, factory));
         }
-        return new LCSGeometryDiffImpl(reversedPatches);
+        return Optional.of(geometry(type, parts, factory));
     }
 
-    public boolean canBeAppliedOn(Optional<Geometry> obj) {
-        String wkt = obj.isPresent() ? obj.get().toText() : "";
-        Object[] res = diffMatchPatch.patch_apply(patches, wkt);
-        boolean[] bool = (boolean[]) res[1];
-        for (int i = 0; i < bool.length; i++) {
-            if (!bool[i]) {
-                return false;
+    private static int nextMarker(long[] tokens, int from) {
+        final int size = tokens.length / 2;
+        int i = from;
+        while (i < size && tokens[i * 2] != MARKER) {
+            i++;
+        }
+        return i;
+    }
+
+    private static CoordinateSequence sequence(long[] tokens, int start, int end,
+            GeometryFactory factory) {
+        CoordinateSequence coords = factory.getCoordinateSequenceFactory().create(end - start, 2);
+        for (int i = start; i < end; i++) {
+            coords.setOrdinate(i - start, CoordinateSequence.X,
+                    Double.longBitsToDouble(tokens[i * 2]));
+            coords.setOrdinate(i - start, CoordinateSequence.Y,
+                    Double.longBitsToDouble(tokens[i * 2 + 1]));
+        }
+        return coords;
+    }
+
+    private static Geometry part(String type, List<CoordinateSequence> rings,
+            GeometryFactory factory) {
+        Preconditions.checkArgument(type.equals("Polygon") || rings.size() == 1,
+                "Inner rings are only allowed in polygons");
+        if (type.equals("Point")) {
+            return factory.createPoint(rings.get(0));
+        } else if (type.equals("LineString")) {
+            return factory.createLineString(rings.get(0));
+        } else if (type.equals("LinearRing")) {
+            return factory.createLinearRing(rings.get(0));
+        } else if (type.equals("Polygon")) {
+            LinearRing shell = factory.createLinearRing(rings.get(0));
+            LinearRing[] holes = new LinearRing[rings.size() - 1];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = factory.createLinearRing(rings.get(i + 1));
             }
+            return factory.createPolygon(shell, holes);
         }
-        return true;
+        throw new IllegalArgumentException("Wrong sub-geometry type: " + type);
     }
 
-    public Optional<Geometry> applyOn(Optional<Geometry> obj) {
-        Preconditions.checkState(canBeAppliedOn(obj));
-        String wkt = obj.isPresent() ? obj.get().toText() : "";
-        String res = (String) diffMatchPatch.patch_apply(patches, wkt)[0];
-        if (!res.isEmpty()) {
-            return Optional.fromNullable((Geometry) TextValueSerializer.fromString(
-                    FieldType.forBinding(Geometry.class), res));
+    private static Geometry geometry(String type, List<Geometry> parts, GeometryFactory factory) {
+        if (type.equals("MultiPoint")) {
+            return factory.createMultiPoint(parts(parts, new Point[parts.size()]));
+        } else if (type.equals("MultiLineString")) {
+            return factory.createMultiLineString(parts(parts, new LineString[parts.size()]));
+        } else if (type.equals("MultiPolygon")) {
+            return factory.createMultiPolygon(parts(parts, new Polygon[parts.size()]));
+        } else if (type.equals("GeometryCollection")) {
+            return factory.createGeometryCollection(parts(parts, new Geometry[parts.size()]));
+        }
+        Preconditions.checkArgument(parts.size() == 1
+                && parts.get(0).getGeometryType().equals(type), "Wrong geometry: %s %s", type,
+                parts);
+        return parts.get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Geometry> T[] parts(List<Geometry> parts, T[] array) {
+        for (int i = 0; i < array.length; i++) {
+            Geometry part = parts.get(i);
+            Preconditions.checkArgument(array.getClass().getComponentType().isInstance(part),
+                    "Wrong sub-geometry: %s", part.getGeometryType());
+            array[i] = (T) part;
+        }
+        return array;
+    }
+
+    public LCSGeometryDiffImpl reversed() {
+        LCSGeometryDiffImpl reversed;
+        if (legacyPatch != null) {
+            reversed = new LCSGeometryDiffImpl(null, legacyPatch.reversed());
         } else {
-            return Optional.absent();
+            reversed = new LCSGeometryDiffImpl(patch.reversed(), null);
+        }
+        reversed.totalDeletions = totalInsertions;
+        reversed.totalInsertions = totalDeletions;
+        reversed.replacings = replacings;
+        reversed.oldTokens = newTokens;
+        reversed.newTokens = oldTokens;
+        reversed.deleted = inserted;
+        reversed.inserted = deleted;
+        return reversed;
+    }
+
+    public boolean canBeAppliedOn(Optional<Geometry> obj) {
+        if (legacyPatch != null) {
+            return legacyPatch.canBeAppliedOn(obj);
+        }
+        return patch.apply(tokens(obj)) != null;
+    }
+
+    public Optional<Geometry> applyOn(Optional<Geometry> obj) {
+        if (legacyPatch != null) {
+            return legacyPatch.applyOn(obj);
         }
+        long[] res = patch.apply(tokens(obj));
+        Preconditions.checkState(res != null, "The diff can't be applied on %s", obj);
+        GeometryFactory factory = obj.isPresent() ? obj.get().getFactory() : GEOMETRY_FACTORY;
+        return geometry(res, factory);
     }
 
     /**
@@ -251,7 +396,16 @@ public class LCSGeometryDiffImpl {
     }
 
     /**
-     * Returns a serialized text version of the difference
+     * Returns a serialized text version of the difference.
+     * <p>
+     * It starts with the number of deleted, added and moved points separated by slashes, and then,
+     * after a tab, the hunks of the patch, each one as
+     * {@code @@ -start1,length1 +start2,length2 @@} followed by the tokens it replaces and the ones
+     * it replaces them with. Coordinates are written as x,y pairs, the type of the geometry by its
+     * name, the start of each sub-geometry by the slash (`/`) sign followed by its type name, and
+     * the start of each inner ring by the ``@`` sign.
+     * <p>
+     * Diffs read from the legacy textual form are written back in that same form.
      */
     public String asText() {
         StringBuilder sb = new StringBuilder();
@@ -261,98 +415,243 @@ public class LCSGeometryDiffImpl {
         sb.append('/');
         sb.append(Integer.toString(replacings));
         sb.append('\t');
-        sb.append(diffMatchPatch.patch_toText(patches).replace("\n", "\\n"));
+        if (legacyPatch != null) {
+            sb.append(legacyPatch.asText());
+            return sb.toString();
+        }
+        final long[] tokens = patch.tokens();
+        int offset = 0;
+        for (int h = 0; h < patch.size(); h++) {
+            if (h > 0) {
+                sb.append(' ');
+            }
+            sb.append("@@ -").append(patch.start1(h)).append(',').append(patch.length1(h));
+            sb.append(" +").append(patch.start2(h)).append(',').append(patch.length2(h));
+            sb.append(" @@");
+            final int length = patch.length1(h) + patch.length2(h);
+            for (int i = offset; i < offset + length; i++) {
+                sb.append(' ');
+                appendToken(sb, tokens, i, false);
+            }
+            offset += length;
+        }
         return sb.toString();
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (!(o instanceof LCSGeometryDiffImpl)) {
-            return false;
+    /**
+     * Writes the difference in binary form: the number of deleted, added and moved points as ints,
+     * and then a byte telling whether the patch is in the legacy form, followed by either the
+     * binary form of the patch or the length and UTF-8 bytes of the legacy text.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(totalDeletions);
+        out.writeInt(totalInsertions);
+        out.writeInt(replacings);
+        if (legacyPatch != null) {
+            out.writeByte(LEGACY);
+            byte[] text = legacyPatch.asText().getBytes(Charsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        } else {
+            out.writeByte(BINARY);
+            patch.write(out);
         }
-        LCSGeometryDiffImpl d = (LCSGeometryDiffImpl) o;
-        for (int i = 0; i < d.patches.size(); i++) {
-            Patch patchA = patches.get(i);
-            Patch patchB = d.patches.get(i);
-            if (!patchA.equals(patchB)) {
-                return false;
+    }
+
+    /**
+     * Reads a difference in the binary form written by {@link #write(DataOutput)}.
+     */
+    public static LCSGeometryDiffImpl read(DataInput in) throws IOException {
+        final int deletions = in.readInt();
+        final int insertions = in.readInt();
+        final int replaced = in.readInt();
+        final int form = in.readUnsignedByte();
+        LCSGeometryDiffImpl diff;
+        if (form == LEGACY) {
+            byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+            diff = new LCSGeometryDiffImpl(null, new LegacyGeometryPatch(new String(text,
+                    Charsets.UTF_8)));
+        } else {
+            Preconditions.checkArgument(form == BINARY, "Wrong geometry diff form: %s", form);
+            diff = new LCSGeometryDiffImpl(GeometryPatch.read(in), null);
+        }
+        diff.totalDeletions = deletions;
+        diff.totalInsertions = insertions;
+        diff.replacings = replaced;
+        return diff;
+    }
+
+    private static GeometryPatch parsePatch(String text) {
+        Iterator<String> parts = Splitter.on(' ').omitEmptyStrings().split(text).iterator();
+        List<int[]> hunks = Lists.newArrayList();
+        List<String> tokens = Lists.newArrayList();
+        while (parts.hasNext()) {
+            Preconditions.checkArgument(parts.next().equals("@@"), "Wrong hunk: %s", text);
+            int[] hunk = new int[4];
+            parseRange(parts.next(), '-', hunk, 0);
+            parseRange(parts.next(), '+', hunk, 2);
+            Preconditions.checkArgument(parts.next().equals("@@"), "Wrong hunk: %s", text);
+            for (int i = 0; i < hunk[1] + hunk[3]; i++) {
+                tokens.add(parts.next());
             }
+            hunks.add(hunk);
         }
-        return true;
+
+        int[] hunksArray = new int[hunks.size() * 4];
+        for (int h = 0; h < hunks.size(); h++) {
+            System.arraycopy(hunks.get(h), 0, hunksArray, h * 4, 4);
+        }
+        long[] tokensArray = new long[tokens.size() * 2];
+        for (int i = 0; i < tokens.size(); i++) {
+            parseToken(tokens.get(i), tokensArray, i);
+        }
+        return new GeometryPatch(hunksArray, tokensArray);
     }
 
-    // ========================================================================================
-    // These 2 methods are meant to be used to split a text containing a representation of
-    // coordinate in a geometry into chunks representing points that can be then hashed
-    // as characters.
-    // They are just an adapted version of the diff_lineToChars method in diff_match_patch, using a
-    // different split character and some extra behaviour
-
-    protected LinesToCharsResult coordsToChars(String text1, String text2) {
-        List<String> lineArray = new ArrayList<String>();
-        Map<String, Integer> lineHash = new HashMap<String, Integer>();
-        lineArray.add("");
-
-        String chars1 = splitAndHash(text1, lineArray, lineHash, ' ');
-        String chars2 = splitAndHash(text2, lineArray, lineHash, ' ');
-        return new LinesToCharsResult(chars1, chars2, lineArray);
+    private static void parseRange(String range, char prefix, int[] hunk, int index) {
+        Preconditions.checkArgument(range.charAt(0) == prefix, "Wrong hunk range: %s", range);
+        int comma = range.indexOf(',');
+        hunk[index] = Integer.parseInt(range.substring(1, comma));
+        hunk[index + 1] = Integer.parseInt(range.substring(comma + 1));
     }
 
-    private String splitAndHash(String text, List<String> lineArray, Map<String, Integer> lineHash,
-            char splitChar) {
-        StringBuilder chars = new StringBuilder();
-        Iterable<String> tokens = Splitter.on(" ").split(text);
-        for (String token : tokens) {
-            if (lineHash.containsKey(token)) {
-                chars.append(String.valueOf((char) (int) lineHash.get(token)));
-            } else {
-                lineArray.add(token);
-                lineHash.put(token, lineArray.size() - 1);
-                chars.append(String.valueOf((char) (lineArray.size() - 1)));
-            }
+    private static void parseToken(String token, long[] tokens, int i) {
+        int comma = token.indexOf(',');
+        if (comma != -1) {
+            tokens[i * 2] = Double.doubleToLongBits(Double.parseDouble(token.substring(0, comma)));
+            tokens[i * 2 + 1] = Double.doubleToLongBits(Double.parseDouble(token
+                    .substring(comma + 1)));
+        } else if (token.equals(INNER_RING_SEPARATOR)) {
+            marker(tokens, i * 2, INNER_RING);
+        } else if (token.startsWith(SUBGEOM_SEPARATOR)) {
+            marker(tokens, i * 2, PART + parseType(token.substring(SUBGEOM_SEPARATOR.length())));
+        } else {
+            marker(tokens, i * 2, HEADER + parseType(token));
         }
-        return chars.toString();
     }
 
-    protected void charsToCoords(LinkedList<Diff> diffs, List<String> lineArray) {
-        StringBuilder text;
-        for (Diff diff : diffs) {
-            text = new StringBuilder();
-            for (int y = 0; y < diff.text.length(); y++) {
-                String coordText = lineArray.get(diff.text.charAt(y));
-                text.append(coordText);
-                if (coordText.length() > 2) {
-                    text.append(' ');
-                }
+    private static int parseType(String type) {
+        int index = TYPES.indexOf(type);
+        Preconditions.checkArgument(index != -1, "Wrong geometry type: %s", type);
+        return index;
+    }
+
+    /**
+     * Appends the text of a token. Sub-geometry types are only written if {@code humanReadable}
+     * is false.
+     */
+    private static void appendToken(StringBuilder sb, long[] tokens, int i,
+            boolean humanReadable) {
+        final long x = tokens[i * 2];
+        final long y = tokens[i * 2 + 1];
+        if (x != MARKER) {
+            sb.append(Double.toString(Double.longBitsToDouble(x))).append(',')
+                    .append(Double.toString(Double.longBitsToDouble(y)));
+        } else if (y == INNER_RING) {
+            sb.append(INNER_RING_SEPARATOR);
+        } else if (y < HEADER) {
+            sb.append(SUBGEOM_SEPARATOR);
+            if (!humanReadable) {
+                sb.append(TYPES.get((int) (y - PART)));
             }
-            diff.text = text.toString();
+        } else {
+            sb.append(TYPES.get((int) (y - HEADER)));
         }
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LCSGeometryDiffImpl)) {
+            return false;
+        }
+        LCSGeometryDiffImpl d = (LCSGeometryDiffImpl) o;
+        return Objects.equal(patch, d.patch) && Objects.equal(legacyPatch, d.legacyPatch);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(patch, legacyPatch);
+    }
+
     /**
      * Returns a string with a human-readable version of this geometry diff. It is basically a
      * collection of coordinates, using the following syntax:
-     * 
+     *
      * - Coordinates added are shown between brackets, while removed coordinates are shown between
      * square brackets.
-     * 
+     *
      * - The structure of the text representing the geometry is as follows:
-     * 
+     *
      * - It starts with the type name of the geometry, followed by the list of coordinates -
      * Coordinates are x,y pairs, separated by a whitespace - In the case of multi-geometries,
      * sub-geometries are separated by the slash (`/`) sign. For instance, `MultiLineString 0,10
      * 0,20 0,30 / 10,10 50,65`` represents a multi-line with two lines
-     * 
+     *
      * - In the case of polygons, the first string of coordinates represents the outer ring, and
      * inner rings are added next, delimited by the ``@`` sign. For instance, ``MultiPolygon
      * 40.0,40.0 20.0,45.0 45.0,30.0 40.0,40.0 / 20.0,35.0 45.0,20.0 30.0,5.0 10.0,10.0 10.0,30.0
      * 20.0,35.0 @ 30.0,20.0 20.0,25.0 20.0,15.0 30.0,20.0`` represents a geometry with two
      * polygons, the last one of them with an inner ring.
-     * 
-     * @return
+     *
+     * @return the human-readable version of the diff, or {@code null} if this diff was not
+     *         created out of two geometries
      */
     public String getDiffCoordsString() {
+        if (diffText == null && oldTokens != null) {
+            diffText = coordsString();
+        }
         return diffText;
     }
 
+    private String coordsString() {
+        final int oldLength = oldTokens.length / 2;
+        final int newLength = newTokens.length / 2;
+        StringBuilder sb = new StringBuilder();
+        char open = 0;
+        int i = 0, j = 0;
+        while (i < oldLength || j < newLength) {
+            final long[] tokens;
+            final int index;
+            final char bracket;
+            if (i < oldLength && deleted.get(i)) {
+                tokens = oldTokens;
+                index = i++;
+                bracket = '[';
+            } else if (j < newLength && inserted.get(j)) {
+                tokens = newTokens;
+                index = j++;
+                bracket = '(';
+            } else {
+                tokens = oldTokens;
+                index = i++;
+                j++;
+                bracket = 0;
+            }
+            if (index == 1) {
+                // the first sub-geometry follows the geometry type without a separator
+                continue;
+            }
+            if (bracket != open) {
+                if (open != 0) {
+                    sb.append(open == '[' ? ']' : ')');
+                }
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                if (bracket != 0) {
+                    sb.append(bracket);
+                }
+                open = bracket;
+            } else if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            appendToken(sb, tokens, index, true);
+        }
+        if (open != 0) {
+            sb.append(open == '[' ? ']' : ')');
+        }
+        return sb.toString();
+    }
+
 }
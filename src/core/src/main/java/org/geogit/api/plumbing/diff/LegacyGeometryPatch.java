@@ -0,0 +1,116 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.api.plumbing.diff;
+
+import java.util.LinkedList;
+import java.util.regex.Pattern;
+
+import org.geogit.api.plumbing.diff.diff_match_patch.Diff;
+import org.geogit.api.plumbing.diff.diff_match_patch.Operation;
+import org.geogit.api.plumbing.diff.diff_match_patch.Patch;
+import org.geogit.storage.FieldType;
+import org.geogit.storage.text.TextValueSerializer;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A geometry patch in the textual form written by older versions, before {@link GeometryPatch}:
+ * a {@link diff_match_patch} patch on the WKT of the geometries, with its line breaks escaped as
+ * {@code \n}.
+ * <p>
+ * It is only kept so that patch files created by those versions can still be read and applied.
+ */
+class LegacyGeometryPatch {
+
+    /**
+     * The start of the text of a legacy patch, a diff_match_patch hunk header followed by an
+     * escaped line break
+     */
+    private static final Pattern HEADER = Pattern
+            .compile("^@@ -\\d+(,\\d+)? \\+\\d+(,\\d+)? @@\\\\n");
+
+    private final diff_match_patch diffMatchPatch = new diff_match_patch();
+
+    private final LinkedList<Patch> patches;
+
+    /**
+     * @param text the text of the patch, as returned by {@link #asText()}
+     */
+    LegacyGeometryPatch(String text) {
+        String unescaped = text.replace("\\n", "\n");
+        patches = (LinkedList<Patch>) diffMatchPatch.patch_fromText(unescaped);
+    }
+
+    private LegacyGeometryPatch(LinkedList<Patch> patches) {
+        this.patches = patches;
+    }
+
+    /**
+     * @return whether the given patch text is in the legacy form
+     */
+    static boolean isLegacy(String text) {
+        return HEADER.matcher(text).find();
+    }
+
+    public LegacyGeometryPatch reversed() {
+        LinkedList<Patch> reversedPatches = diffMatchPatch.patch_deepCopy(patches);
+        for (Patch patch : reversedPatches) {
+            for (Diff diff : patch.diffs) {
+                if (diff.operation == Operation.DELETE) {
+                    diff.operation = Operation.INSERT;
+                } else if (diff.operation == Operation.INSERT) {
+                    diff.operation = Operation.DELETE;
+                }
+            }
+        }
+        return new LegacyGeometryPatch(reversedPatches);
+    }
+
+    public boolean canBeAppliedOn(Optional<Geometry> obj) {
+        boolean[] applied = (boolean[]) diffMatchPatch.patch_apply(patches, wkt(obj))[1];
+        for (int i = 0; i < applied.length; i++) {
+            if (!applied[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Optional<Geometry> applyOn(Optional<Geometry> obj) {
+        Preconditions.checkState(canBeAppliedOn(obj), "The diff can't be applied on %s", obj);
+        String res = (String) diffMatchPatch.patch_apply(patches, wkt(obj))[0];
+        if (res.isEmpty()) {
+            return Optional.absent();
+        }
+        return Optional.fromNullable((Geometry) TextValueSerializer.fromString(
+                FieldType.forBinding(Geometry.class), res));
+    }
+
+    private static String wkt(Optional<Geometry> obj) {
+        return obj.isPresent() ? obj.get().toText() : "";
+    }
+
+    /**
+     * @return the text of the patch, with its line breaks escaped
+     */
+    public String asText() {
+        return diffMatchPatch.patch_toText(patches).replace("\n", "\\n");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LegacyGeometryPatch)) {
+            return false;
+        }
+        return asText().equals(((LegacyGeometryPatch) o).asText());
+    }
+
+    @Override
+    public int hashCode() {
+        return asText().hashCode();
+    }
+}
@@ -23,6 +23,7 @@ import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
 import org.geogit.api.RevTreeBuilder;
+import org.geogit.repository.SpatialOps;
 import org.geogit.storage.ObjectDatabase;
 
 import com.google.common.base.Function;
@@ -273,14 +274,16 @@ public class MutableTree implements Cloneable {
             String name = oldNode.getName();
             ObjectId newObjectId = newChild.getId();
             ObjectId metadataId = oldNode.getMetadataId().or(ObjectId.NULL);
-            Node newNode = Node.create(name, newObjectId, metadataId, TYPE.TREE);
+            Node newNode = Node.create(name, newObjectId, metadataId, TYPE.TREE,
+                    SpatialOps.boundsOf(newChild));
             builder.put(newNode);
         }
         RevTree newTree = builder.build();
         if (!this.node.getObjectId().equals(newTree.getId())) {
             target.put(newTree);
             this.node = Node.create(node.getName(), newTree.getId(),
-                    node.getMetadataId().or(ObjectId.NULL), TYPE.TREE);
+                    node.getMetadataId().or(ObjectId.NULL), TYPE.TREE,
+                    SpatialOps.boundsOf(newTree));
         }
 
         return newTree;
@@ -11,7 +11,10 @@ import static org.geogit.api.plumbing.diff.DiffEntry.ChangeType.ADDED;
 import static org.geogit.api.plumbing.diff.DiffEntry.ChangeType.REMOVED;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
@@ -28,13 +31,11 @@ import org.geogit.storage.ObjectDatabase;
 
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
-import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
@@ -305,15 +306,31 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
 
     }
 
+    /**
+     * Compares two bucket trees. The pairs of buckets that differ are resolved up front and their
+     * trees are {@link BucketTreeLoader#prefetch prefetched} in batches in the background, so that
+     * by the time the diff of a bucket pair is consumed the trees for the following ones are
+     * already being loaded concurrently. Buckets are still traversed in bucket order, so the
+     * resulting entries are reported in {@link NodeStorageOrder storage order}.
+     */
     private class BucketBucketDiff extends AbstractIterator<DiffEntry> {
 
         /**
-         * A multi-map of bucket/objectId where key is guaranteed to have two entries, the first one
-         * for the left tree id and the second one for he right tree id.
+         * The buckets that differ between the left and right trees, in bucket order
+         */
+        private final List<Integer> changedBuckets;
+
+        /**
+         * Position of each changed bucket's left and right tree ids in the list of prefetched ids,
+         * or {@code -1} if the bucket is not present on that side
          */
-        private final ListMultimap<Integer, Optional<Bucket>> leftRightBuckets;
+        private final int[] leftPositions, rightPositions;
 
-        private final Iterator<Integer> combinedBuckets;
+        private final List<ObjectId> treeIds;
+
+        private final List<Future<Map<ObjectId, RevTree>>> prefetched;
+
+        private int nextBucket;
 
         private Iterator<DiffEntry> currentBucketIterator;
 
@@ -327,52 +344,57 @@ class TreeDiffEntryIterator extends AbstractIterator<DiffEntry> {
 
             this.leftRef = leftRef;
             this.rightRef = rightRef;
-            int expectedKeys = left.size() + right.size();
-            int expectedValuesPerKey = 2;
-            leftRightBuckets = ArrayListMultimap.create(expectedKeys, expectedValuesPerKey);
 
             Set<Integer> buckets = Sets.newTreeSet(Sets.union(left.keySet(), right.keySet()));
+            changedBuckets = Lists.newArrayListWithCapacity(buckets.size());
             for (Integer bucket : buckets) {
-                leftRightBuckets.put(bucket, Optional.fromNullable(left.get(bucket)));
-                leftRightBuckets.put(bucket, Optional.fromNullable(right.get(bucket)));
+                if (!Objects.equal(left.get(bucket), right.get(bucket))) {
+                    changedBuckets.add(bucket);
+                }
             }
-            this.combinedBuckets = leftRightBuckets.keySet().iterator();
-        }
 
-        @Override
-        protected DiffEntry computeNext() {
-            if (currentBucketIterator != null && currentBucketIterator.hasNext()) {
-                return currentBucketIterator.next();
-            }
-            if (!combinedBuckets.hasNext()) {
-                return endOfData();
+            leftPositions = new int[changedBuckets.size()];
+            rightPositions = new int[changedBuckets.size()];
+            treeIds = Lists.newArrayListWithCapacity(2 * changedBuckets.size());
+            for (int i = 0; i < changedBuckets.size(); i++) {
+                Integer bucket = changedBuckets.get(i);
+                leftPositions[i] = addTreeId(left.get(bucket));
+                rightPositions[i] = addTreeId(right.get(bucket));
             }
+            prefetched = BucketTreeLoader.prefetch(objectDb, treeIds);
+        }
 
-            while (combinedBuckets.hasNext()) {
-                final Integer bucket = combinedBuckets.next();
-                final Optional<Bucket> leftBucket = leftRightBuckets.get(bucket).get(0);
-                final Optional<Bucket> rightBucket = leftRightBuckets.get(bucket).get(1);
+        private int addTreeId(@Nullable Bucket bucket) {
+            if (bucket == null) {
+                return -1;
+            }
+            treeIds.add(bucket.id());
+            return treeIds.size() - 1;
+        }
 
-                if (Objects.equal(leftBucket, rightBucket)) {
-                    continue;
+        @Override
+        protected DiffEntry computeNext() {
+            while (currentBucketIterator == null || !currentBucketIterator.hasNext()) {
+                if (nextBucket == changedBuckets.size()) {
+                    return endOfData();
                 }
-
-                final RevTree left = resolveTree(leftBucket);
-                final RevTree right = resolveTree(rightBucket);
+                final RevTree left = resolveTree(leftPositions[nextBucket]);
+                final RevTree right = resolveTree(rightPositions[nextBucket]);
+                nextBucket++;
 
                 this.currentBucketIterator = new TreeDiffEntryIterator(leftRef, rightRef, left,
                         right, reportTrees, recursive, objectDb);
-                break;
             }
-            return computeNext();
+            return currentBucketIterator.next();
         }
 
-        private RevTree resolveTree(Optional<Bucket> bucket) {
-            RevTree bucketTree = RevTree.EMPTY;
-            if (bucket.isPresent()) {
-                bucketTree = objectDb.getTree(bucket.get().id());
+        private RevTree resolveTree(final int position) {
+            if (position == -1) {
+                return RevTree.EMPTY;
             }
-            return bucketTree;
+            Future<Map<ObjectId, RevTree>> batch;
+            batch = prefetched.get(position / BucketTreeLoader.BATCH_SIZE);
+            return BucketTreeLoader.get(batch).get(treeIds.get(position));
         }
     }
-}
\ No newline at end of file
+}
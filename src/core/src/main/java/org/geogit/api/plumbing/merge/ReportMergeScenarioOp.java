@@ -5,9 +5,10 @@
 package org.geogit.api.plumbing.merge;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+
+import javax.annotation.Nullable;
 
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.FeatureInfo;
@@ -23,18 +24,23 @@ import org.geogit.api.plumbing.DiffFeature;
 import org.geogit.api.plumbing.DiffTree;
 import org.geogit.api.plumbing.FindCommonAncestor;
 import org.geogit.api.plumbing.FindTreeChild;
-import org.geogit.api.plumbing.ResolveObjectType;
 import org.geogit.api.plumbing.RevObjectParse;
-import org.geogit.api.plumbing.RevParse;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.plumbing.diff.DiffEntry.ChangeType;
 import org.geogit.api.plumbing.diff.FeatureDiff;
+import org.geogit.storage.NodePathStorageOrder;
 import org.opengis.feature.Feature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.PeekingIterator;
 import com.google.inject.Inject;
 
 /**
@@ -42,13 +48,27 @@ import com.google.inject.Inject;
  * another reference commit, it returns the set of changes from the common ancestor to the first
  * commit, classified according to whether they can or not be safely applied onto the reference
  * commit. Changes that will have no effect on the target commit are not included as unconflicted.
+ * <p>
+ * Both sets of changes are computed as {@link DiffTree diffs} from the common ancestor, which
+ * report features in {@link NodePathStorageOrder storage order}, so instead of holding all the
+ * changes of one history in memory, the feature changes of both histories are walked in lockstep
+ * like in a sorted merge join. Changes to trees are checked against the tree of the reference
+ * commit directly, since diffs report them out of order (e.g. a tree whose feature type changed is
+ * reported after its contents). Should a diff not come sorted as expected, the report is computed
+ * again holding the changes of the reference commit in memory.
  */
 public class ReportMergeScenarioOp extends AbstractGeoGitOp<MergeScenarioReport> {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportMergeScenarioOp.class);
+
     private RevCommit toMerge;
 
     private RevCommit mergeInto;
 
+    private RevTree mergeIntoTree;
+
+    private boolean unsortedFallback;
+
     @Inject
     public ReportMergeScenarioOp() {
     }
@@ -76,180 +96,348 @@ public class ReportMergeScenarioOp extends AbstractGeoGitOp<MergeScenarioReport>
                 .setRight(mergeInto).call();
         Preconditions.checkState(ancestor.isPresent(), "No ancestor commit could be found.");
 
-        Map<String, DiffEntry> mergeIntoDiffs = Maps.newHashMap();
+        this.mergeIntoTree = command(RevObjectParse.class).setObjectId(mergeInto.getTreeId())
+                .call(RevTree.class).get();
+        unsortedFallback = false;
+        try {
+            return reportSorted(ancestor.get());
+        } catch (UnsortedDiffException e) {
+            LOGGER.warn("Diffs between {} and {} not sorted, merge scenario computed in memory",
+                    toMerge.getId(), mergeInto.getId());
+            unsortedFallback = true;
+            return reportUnsorted(ancestor.get());
+        }
+    }
+
+    /**
+     * @return whether the last call found the diffs out of order and had to compute the report
+     *         holding the changes of the reference commit in memory instead of walking both
+     *         histories in lockstep
+     */
+    public boolean isUnsortedFallback() {
+        return unsortedFallback;
+    }
+
+    private Iterator<DiffEntry> diffs(RevCommit ancestor, RevCommit commit) {
+        return command(DiffTree.class).setOldTree(ancestor.getId()).setReportTrees(true)
+                .setNewTree(commit.getId()).call();
+    }
+
+    /**
+     * Walks the feature changes of both histories in lockstep.
+     *
+     * @throws UnsortedDiffException if the feature changes of any of the histories are not sorted
+     */
+    private MergeScenarioReport reportSorted(RevCommit ancestor) throws UnsortedDiffException {
+        MergeScenarioReport report = new MergeScenarioReport();
+
+        PeekingIterator<DiffEntry> mergeIntoDiffs = Iterators
+                .peekingIterator(new SortedFeatureDiffs(diffs(ancestor, mergeInto)));
+
+        Iterator<DiffEntry> toMergeDiffs = diffs(ancestor, toMerge);
+        String lastPath = null;
+        while (toMergeDiffs.hasNext()) {
+            DiffEntry toMergeDiff = toMergeDiffs.next();
+            final String path = path(toMergeDiff);
+            if (isTree(toMergeDiff)) {
+                reportTree(toMergeDiff, mergeIntoTreeDiff(toMergeDiff), report);
+                continue;
+            }
+            if (lastPath != null && PATH_ORDER.compare(lastPath, path) > 0) {
+                throw new UnsortedDiffException();
+            }
+            lastPath = path;
+
+            DiffEntry mergeIntoDiff = null;
+            while (mergeIntoDiffs.hasNext()) {
+                final int c = PATH_ORDER.compare(path(mergeIntoDiffs.peek()), path);
+                if (c < 0) {
+                    // only changed in the current history
+                    mergeIntoDiffs.next();
+                } else {
+                    if (c == 0) {
+                        mergeIntoDiff = mergeIntoDiffs.next();
+                    }
+                    break;
+                }
+            }
+            if (mergeIntoDiff == null) {
+                report.addUnconflicted(toMergeDiff);
+            } else {
+                reportBothChanged(toMergeDiff, mergeIntoDiff, report);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Holds the changes of the history to merge into in memory, for when the diffs can't be walked
+     * in lockstep.
+     */
+    private MergeScenarioReport reportUnsorted(RevCommit ancestor) {
         MergeScenarioReport report = new MergeScenarioReport();
 
-        Iterator<DiffEntry> diffs = command(DiffTree.class).setOldTree(ancestor.get().getId())
-                .setReportTrees(true).setNewTree(mergeInto.getId()).call();
+        Map<String, DiffEntry> mergeIntoDiffs = Maps.newHashMap();
+        Iterator<DiffEntry> diffs = diffs(ancestor, mergeInto);
         while (diffs.hasNext()) {
             DiffEntry diff = diffs.next();
-            String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
-            mergeIntoDiffs.put(path, diff);
+            mergeIntoDiffs.put(path(diff), diff);
         }
 
-        Iterator<DiffEntry> toMergeDiffs = command(DiffTree.class)
-                .setOldTree(ancestor.get().getId()).setReportTrees(true)
-                .setNewTree(toMerge.getId()).call();
+        Iterator<DiffEntry> toMergeDiffs = diffs(ancestor, toMerge);
         while (toMergeDiffs.hasNext()) {
             DiffEntry toMergeDiff = toMergeDiffs.next();
-            String path = toMergeDiff.oldPath() == null ? toMergeDiff.newPath() : toMergeDiff
-                    .oldPath();
-            if (mergeIntoDiffs.containsKey(path)) {
-                RevTree ancestorTree = command(RevObjectParse.class)
-                        .setObjectId(ancestor.get().getTreeId()).call(RevTree.class).get();
-                Optional<NodeRef> ancestorVersion = command(FindTreeChild.class).setChildPath(path)
-                        .setParent(ancestorTree).call();
-                ObjectId ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion.get()
-                        .getNode().getObjectId() : ObjectId.NULL;
-                ObjectId theirs = toMergeDiff.getNewObject() == null ? ObjectId.NULL : toMergeDiff
-                        .getNewObject().objectId();
-                DiffEntry mergeIntoDiff = mergeIntoDiffs.get(path);
-                ObjectId ours = mergeIntoDiff.getNewObject() == null ? ObjectId.NULL
-                        : mergeIntoDiff.getNewObject().objectId();
-                if (!mergeIntoDiff.changeType().equals(toMergeDiff.changeType())) {
+            DiffEntry mergeIntoDiff = mergeIntoDiffs.get(path(toMergeDiff));
+            if (isTree(toMergeDiff)) {
+                reportTree(toMergeDiff, mergeIntoDiff, report);
+            } else if (mergeIntoDiff == null) {
+                report.addUnconflicted(toMergeDiff);
+            } else {
+                reportBothChanged(toMergeDiff, mergeIntoDiff, report);
+            }
+        }
+        return report;
+    }
+
+    private static String path(DiffEntry diff) {
+        return diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+    }
+
+    private static boolean isTree(DiffEntry diff) {
+        NodeRef ref = diff.getNewObject() == null ? diff.getOldObject() : diff.getNewObject();
+        return TYPE.TREE.equals(ref.getType());
+    }
+
+    /**
+     * Resolves the change the history to merge into made to the tree changed by {@code
+     * toMergeDiff}, the same way it would be reported by its diff from the common ancestor: trees
+     * that have been added or removed, or whose metadata id changed.
+     *
+     * @return the change, or {@code null} if the tree was not changed
+     */
+    @Nullable
+    private DiffEntry mergeIntoTreeDiff(DiffEntry toMergeDiff) {
+        final NodeRef ancestorVersion = toMergeDiff.getOldObject();
+        final Optional<NodeRef> mergeIntoVersion = command(FindTreeChild.class)
+                .setParent(mergeIntoTree).setChildPath(path(toMergeDiff)).call();
+        if (ancestorVersion == null) {
+            return mergeIntoVersion.isPresent() ? new DiffEntry(null, mergeIntoVersion.get())
+                    : null;
+        }
+        if (!mergeIntoVersion.isPresent()) {
+            return new DiffEntry(ancestorVersion, null);
+        }
+        NodeRef version = mergeIntoVersion.get();
+        if (!TYPE.TREE.equals(version.getType())
+                || !version.getMetadataId().equals(ancestorVersion.getMetadataId())) {
+            return new DiffEntry(ancestorVersion, version);
+        }
+        return null;
+    }
+
+    private void reportTree(DiffEntry toMergeDiff, @Nullable DiffEntry mergeIntoDiff,
+            MergeScenarioReport report) {
+        if (mergeIntoDiff != null) {
+            reportBothChanged(toMergeDiff, mergeIntoDiff, report);
+            return;
+        }
+        // If the element is a tree, not a feature, it might be a conflict even if the other
+        // branch has not modified it.
+        // If we are removing the tree, we have to make sure that there are no features
+        // modified in the other branch under it.
+        if (ChangeType.REMOVED.equals(toMergeDiff.changeType())) {
+            final String path = path(toMergeDiff);
+            final NodeRef ancestorVersion = toMergeDiff.getOldObject();
+            Optional<NodeRef> ours = command(FindTreeChild.class).setParent(mergeIntoTree)
+                    .setChildPath(path).call();
+            if (ours.isPresent() && hasNonRemovedChanges(ancestorVersion, ours.get())) {
+                report.addConflict(new Conflict(path, ancestorVersion.objectId(), ours.get()
+                        .objectId(), ObjectId.NULL));
+                return;
+            }
+        }
+        report.addUnconflicted(toMergeDiff);
+    }
+
+    /**
+     * @return whether any feature or tree under {@code ancestorVersion} has been added or modified
+     *         in {@code version}
+     */
+    private boolean hasNonRemovedChanges(NodeRef ancestorVersion, NodeRef version) {
+        if (ancestorVersion.objectId().equals(version.objectId())) {
+            return false;
+        }
+        Iterator<DiffEntry> diffs = command(DiffTree.class)
+                .setOldTree(ancestorVersion.objectId()).setNewTree(version.objectId())
+                .setReportTrees(true).call();
+        while (diffs.hasNext()) {
+            if (!ChangeType.REMOVED.equals(diffs.next().changeType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Classifies a change to an element that has been changed in both histories
+     */
+    private void reportBothChanged(DiffEntry toMergeDiff, DiffEntry mergeIntoDiff,
+            MergeScenarioReport report) {
+
+        final String path = path(toMergeDiff);
+        // both diffs start at the common ancestor, so its version is the old one of the diffs
+        final NodeRef ancestorVersion = toMergeDiff.getOldObject();
+        ObjectId ancestorVersionId = ancestorVersion == null ? ObjectId.NULL : ancestorVersion
+                .getNode().getObjectId();
+        ObjectId theirs = toMergeDiff.getNewObject() == null ? ObjectId.NULL : toMergeDiff
+                .getNewObject().objectId();
+        ObjectId ours = mergeIntoDiff.getNewObject() == null ? ObjectId.NULL : mergeIntoDiff
+                .getNewObject().objectId();
+        if (!mergeIntoDiff.changeType().equals(toMergeDiff.changeType())) {
+            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
+            return;
+        }
+        switch (toMergeDiff.changeType()) {
+        case ADDED:
+            if (toMergeDiff.getNewObject().equals(mergeIntoDiff.getNewObject())) {
+                // already added in current branch, no need to do anything
+            } else {
+                TYPE type = toMergeDiff.getNewObject().getType();
+                if (TYPE.TREE.equals(type)) {
+                    boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
+                            .equals(mergeIntoDiff.getNewObject().getMetadataId());
+                    if (conflict) {
+                        // In this case, we store the metadata id, not the element id
+                        ancestorVersionId = ancestorVersion != null ? ancestorVersion
+                                .getMetadataId() : ObjectId.NULL;
+                        ours = mergeIntoDiff.getNewObject().getMetadataId();
+                        theirs = toMergeDiff.getNewObject().getMetadataId();
+                        report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
+                    }
+                    // if the metadata ids match, it means both branches have added the same
+                    // tree, maybe with different content, but there is no need to do
+                    // anything. The correct tree is already there and the merge can be run
+                    // safely, so we do not add it neither as a conflicted change nor as an
+                    // unconflicted one
+                } else {
                     report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                    continue;
                 }
-                switch (toMergeDiff.changeType()) {
-                case ADDED:
-                    if (toMergeDiff.getNewObject().equals(mergeIntoDiff.getNewObject())) {
-                        // already added in current branch, no need to do anything
-                    } else {
-                        TYPE type = command(ResolveObjectType.class).setObjectId(
-                                toMergeDiff.getNewObject().objectId()).call();
-                        if (TYPE.TREE.equals(type)) {
-                            boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
-                                    .equals(mergeIntoDiff.getNewObject().getMetadataId());
-                            if (conflict) {
-                                // In this case, we store the metadata id, not the element id
-                                ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion
-                                        .get().getMetadataId() : ObjectId.NULL;
-                                ours = mergeIntoDiff.getNewObject().getMetadataId();
-                                theirs = toMergeDiff.getNewObject().getMetadataId();
-                                report.addConflict(new Conflict(path, ancestorVersionId, ours,
-                                        theirs));
-                            }
-                            // if the metadata ids match, it means both branches have added the same
-                            // tree, maybe with different content, but there is no need to do
-                            // anything. The correct tree is already there and the merge can be run
-                            // safely, so we do not add it neither as a conflicted change nor as an
-                            // unconflicted one
-                        } else {
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        }
-                    }
-                    break;
-                case REMOVED:
-                    // removed by both histories => no conflict and no need to do anything
-                    break;
-                case MODIFIED:
-                    TYPE type = command(ResolveObjectType.class).setObjectId(
-                            toMergeDiff.getNewObject().objectId()).call();
-                    if (TYPE.TREE.equals(type)) {
-                        boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
-                                .equals(mergeIntoDiff.getNewObject().getMetadataId());
-                        if (conflict) {
-                            // In this case, we store the metadata id, not the element id
-                            ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion.get()
-                                    .getMetadataId() : ObjectId.NULL;
-                            ours = mergeIntoDiff.getNewObject().getMetadataId();
-                            theirs = toMergeDiff.getNewObject().getMetadataId();
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        }
-                    } else {
-                        FeatureDiff toMergeFeatureDiff = command(DiffFeature.class)
-                                .setOldVersion(Suppliers.ofInstance(toMergeDiff.getOldObject()))
-                                .setNewVersion(Suppliers.ofInstance(toMergeDiff.getNewObject()))
-                                .call();
-                        FeatureDiff mergeIntoFeatureDiff = command(DiffFeature.class)
-                                .setOldVersion(Suppliers.ofInstance(mergeIntoDiff.getOldObject()))
-                                .setNewVersion(Suppliers.ofInstance(mergeIntoDiff.getNewObject()))
-                                .call();
-                        if (toMergeFeatureDiff.conflicts(mergeIntoFeatureDiff)) {
-                            report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
-                        } else {
-                            // if the feature types are different we report a conflict and do not
-                            // try to perform automerge
-                            if (!toMergeDiff.getNewObject().getMetadataId()
-                                    .equals(mergeIntoDiff.getNewObject().getMetadataId())) {
-                                report.addConflict(new Conflict(path, ancestorVersionId, ours,
-                                        theirs));
-                            } else if (!toMergeFeatureDiff.equals(mergeIntoFeatureDiff)) {
-                                Feature mergedFeature = command(MergeFeaturesOp.class)
-                                        .setFirstFeature(mergeIntoDiff.getNewObject())
-                                        .setSecondFeature(toMergeDiff.getNewObject())
-                                        .setAncestorFeature(mergeIntoDiff.getOldObject()).call();
-                                RevFeature revFeature = new RevFeatureBuilder()
-                                        .build(mergedFeature);
-                                if (revFeature.getId().equals(toMergeDiff.newObjectId())) {
-                                    // the resulting merged feature equals the feature to merge from
-                                    // the branch, which means that it exists in the repo and there
-                                    // is no need to add it
-                                    report.addUnconflicted(toMergeDiff);
-                                } else {
-                                    RevFeatureType featureType = command(RevObjectParse.class)
-                                            .setObjectId(
-                                                    mergeIntoDiff.getNewObject().getMetadataId())
-                                            .call(RevFeatureType.class).get();
-                                    FeatureInfo merged = new FeatureInfo(mergedFeature,
-                                            featureType, path);
-                                    report.addMerged(merged);
-                                }
-                            }
-                        }
-                    }
-                    break;
+            }
+            break;
+        case REMOVED:
+            // removed by both histories => no conflict and no need to do anything
+            break;
+        case MODIFIED:
+            TYPE type = toMergeDiff.getNewObject().getType();
+            if (TYPE.TREE.equals(type)) {
+                boolean conflict = !toMergeDiff.getNewObject().getMetadataId()
+                        .equals(mergeIntoDiff.getNewObject().getMetadataId());
+                if (conflict) {
+                    // In this case, we store the metadata id, not the element id
+                    ancestorVersionId = ancestorVersion != null ? ancestorVersion.getMetadataId()
+                            : ObjectId.NULL;
+                    ours = mergeIntoDiff.getNewObject().getMetadataId();
+                    theirs = toMergeDiff.getNewObject().getMetadataId();
+                    report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
                 }
             } else {
-                // If the element is a tree, not a feature, it might be a conflict even if the other
-                // branch has not modified it.
-                // If we are removing the tree, we have to make sure that there are no features
-                // modified in the other branch under it.
-                if (ChangeType.REMOVED.equals(toMergeDiff.changeType())) {
-                    TYPE type = command(ResolveObjectType.class).setObjectId(
-                            toMergeDiff.oldObjectId()).call();
-                    if (TYPE.TREE.equals(type)) {
-                        String parentPath = toMergeDiff.oldPath();
-                        Set<Entry<String, DiffEntry>> entries = mergeIntoDiffs.entrySet();
-                        boolean conflict = false;
-                        for (Entry<String, DiffEntry> entry : entries) {
-                            if (entry.getKey().startsWith(parentPath)) {
-                                if (!ChangeType.REMOVED.equals(entry.getValue().changeType())) {
-                                    RevTree ancestorTree = command(RevObjectParse.class)
-                                            .setObjectId(ancestor.get().getTreeId())
-                                            .call(RevTree.class).get();
-                                    Optional<NodeRef> ancestorVersion = command(FindTreeChild.class)
-                                            .setChildPath(path).setParent(ancestorTree).call();
-                                    ObjectId ancestorVersionId = ancestorVersion.isPresent() ? ancestorVersion
-                                            .get().getNode().getObjectId()
-                                            : ObjectId.NULL;
-                                    ObjectId theirs = toMergeDiff.getNewObject() == null ? ObjectId.NULL
-                                            : toMergeDiff.getNewObject().objectId();
-                                    String oursRefSpec = mergeInto.getId().toString() + ":"
-                                            + parentPath;
-                                    Optional<ObjectId> ours = command(RevParse.class).setRefSpec(
-                                            oursRefSpec).call();
-                                    report.addConflict(new Conflict(path, ancestorVersionId, ours
-                                            .get(), theirs));
-                                    conflict = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!conflict) {
+                FeatureDiff toMergeFeatureDiff = command(DiffFeature.class)
+                        .setOldVersion(Suppliers.ofInstance(toMergeDiff.getOldObject()))
+                        .setNewVersion(Suppliers.ofInstance(toMergeDiff.getNewObject())).call();
+                FeatureDiff mergeIntoFeatureDiff = command(DiffFeature.class)
+                        .setOldVersion(Suppliers.ofInstance(mergeIntoDiff.getOldObject()))
+                        .setNewVersion(Suppliers.ofInstance(mergeIntoDiff.getNewObject())).call();
+                if (toMergeFeatureDiff.conflicts(mergeIntoFeatureDiff)) {
+                    report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
+                } else {
+                    // if the feature types are different we report a conflict and do not
+                    // try to perform automerge
+                    if (!toMergeDiff.getNewObject().getMetadataId()
+                            .equals(mergeIntoDiff.getNewObject().getMetadataId())) {
+                        report.addConflict(new Conflict(path, ancestorVersionId, ours, theirs));
+                    } else if (!toMergeFeatureDiff.equals(mergeIntoFeatureDiff)) {
+                        Feature mergedFeature = command(MergeFeaturesOp.class)
+                                .setFirstFeature(mergeIntoDiff.getNewObject())
+                                .setSecondFeature(toMergeDiff.getNewObject())
+                                .setAncestorFeature(mergeIntoDiff.getOldObject()).call();
+                        RevFeature revFeature = new RevFeatureBuilder().build(mergedFeature);
+                        if (revFeature.getId().equals(toMergeDiff.newObjectId())) {
+                            // the resulting merged feature equals the feature to merge from
+                            // the branch, which means that it exists in the repo and there
+                            // is no need to add it
                             report.addUnconflicted(toMergeDiff);
+                        } else {
+                            RevFeatureType featureType = command(RevObjectParse.class)
+                                    .setObjectId(mergeIntoDiff.getNewObject().getMetadataId())
+                                    .call(RevFeatureType.class).get();
+                            FeatureInfo merged = new FeatureInfo(mergedFeature, featureType, path);
+                            report.addMerged(merged);
                         }
-                    } else {
-                        report.addUnconflicted(toMergeDiff);
                     }
-                } else {
-                    report.addUnconflicted(toMergeDiff);
                 }
             }
+            break;
+        }
+    }
 
+    /**
+     * The order in which diffs report features: depth first, and the children of each tree in
+     * {@link NodePathStorageOrder storage order}
+     */
+    private static final Ordering<String> PATH_ORDER = new Ordering<String>() {
+
+        private final NodePathStorageOrder nameOrder = new NodePathStorageOrder();
+
+        @Override
+        public int compare(String p1, String p2) {
+            List<String> steps1 = NodeRef.split(p1);
+            List<String> steps2 = NodeRef.split(p2);
+            final int depth = Math.min(steps1.size(), steps2.size());
+            for (int i = 0; i < depth; i++) {
+                String name1 = steps1.get(i);
+                String name2 = steps2.get(i);
+                if (!name1.equals(name2)) {
+                    int c = nameOrder.compare(name1, name2);
+                    return c != 0 ? c : name1.compareTo(name2);
+                }
+            }
+            return steps1.size() - steps2.size();
         }
+    };
 
-        return report;
+    /**
+     * Filters out the tree changes of a diff, checking the feature changes come sorted
+     */
+    private static class SortedFeatureDiffs extends AbstractIterator<DiffEntry> {
+
+        private final Iterator<DiffEntry> diffs;
+
+        private String lastPath;
+
+        SortedFeatureDiffs(Iterator<DiffEntry> diffs) {
+            this.diffs = diffs;
+        }
+
+        @Override
+        protected DiffEntry computeNext() {
+            while (diffs.hasNext()) {
+                DiffEntry diff = diffs.next();
+                if (isTree(diff)) {
+                    continue;
+                }
+                final String path = path(diff);
+                if (lastPath != null && PATH_ORDER.compare(lastPath, path) > 0) {
+                    throw new UnsortedDiffException();
+                }
+                lastPath = path;
+                return diff;
+            }
+            return endOfData();
+        }
+    }
+
+    private static class UnsortedDiffException extends RuntimeException {
 
+        private static final long serialVersionUID = 1L;
     }
 }
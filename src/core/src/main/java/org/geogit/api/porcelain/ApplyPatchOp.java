@@ -13,9 +13,9 @@ import java.util.Set;
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.FeatureInfo;
 import org.geogit.api.NodeRef;
-import org.geogit.api.Ref;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.diff.AttributeDiff;
 import org.geogit.api.plumbing.diff.AttributeDiff.TYPE;
@@ -154,25 +154,28 @@ public class ApplyPatchOp extends AbstractGeoGitOp<Patch> {
             patch = patch.reversed();
         }
 
+        // all the feature changes are applied to the working tree at once
+        final WorkingTree.Batch batch = workTree.batch();
+        final RevTree workHead = workTree.getTree();
+
         List<FeatureInfo> removed = patch.getRemovedFeatures();
         for (FeatureInfo feature : removed) {
-            workTree.delete(NodeRef.parentPath(feature.getPath()),
+            batch.delete(NodeRef.parentPath(feature.getPath()),
                     NodeRef.nodeFromPath(feature.getPath()));
         }
         List<FeatureInfo> added = patch.getAddedFeatures();
         for (FeatureInfo feature : added) {
-            workTree.insert(NodeRef.parentPath(feature.getPath()), feature.getFeature());
+            batch.insert(NodeRef.parentPath(feature.getPath()), feature.getFeature());
         }
         List<FeatureDiff> diffs = patch.getModifiedFeatures();
+        final DepthSearch depthSearch = new DepthSearch(indexDb);
         for (FeatureDiff diff : diffs) {
             String path = diff.getPath();
-            DepthSearch depthSearch = new DepthSearch(indexDb);
-            Optional<NodeRef> noderef = depthSearch.find(workTree.getTree(), path);
+            Optional<NodeRef> noderef = depthSearch.find(workHead, path);
             RevFeatureType oldRevFeatureType = command(RevObjectParse.class)
                     .setObjectId(noderef.get().getMetadataId()).call(RevFeatureType.class).get();
-            String refSpec = Ref.WORK_HEAD + ":" + path;
-            RevFeature feature = command(RevObjectParse.class).setRefSpec(refSpec)
-                    .call(RevFeature.class).get();
+            RevFeature feature = command(RevObjectParse.class)
+                    .setObjectId(noderef.get().objectId()).call(RevFeature.class).get();
 
             RevFeatureType newRevFeatureType = getFeatureType(diff, feature, oldRevFeatureType);
             ImmutableList<Optional<Object>> values = feature.getValues();
@@ -208,9 +211,11 @@ public class ApplyPatchOp extends AbstractGeoGitOp<Patch> {
             }
 
             SimpleFeature featureToInsert = featureBuilder.buildFeature(NodeRef.nodeFromPath(path));
-            workTree.insert(NodeRef.parentPath(path), featureToInsert);
+            batch.insert(NodeRef.parentPath(path), featureToInsert);
 
         }
+        batch.apply();
+
         ImmutableList<FeatureTypeDiff> alteredTrees = patch.getAlteredTrees();
         for (FeatureTypeDiff diff : alteredTrees) {
             Optional<RevFeatureType> featureType;
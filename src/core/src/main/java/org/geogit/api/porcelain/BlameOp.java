@@ -75,7 +75,7 @@ public class BlameOp extends AbstractGeoGitOp<BlameReport> {
             }
             RevCommit commitB = log.next();
             Iterator<DiffEntry> diffs = command(DiffOp.class).setNewVersion(commit.getId())
-                    .setOldVersion(commitB.getId()).setReportTrees(false).call();
+                    .setOldVersion(commitB.getId()).setFilter(path).setReportTrees(false).call();
 
             while (diffs.hasNext()) {
                 DiffEntry diff = diffs.next();
@@ -114,11 +114,10 @@ public class CheckoutOp extends AbstractGeoGitOp<CheckoutResult> {
 
         CheckoutResult result = new CheckoutResult();
 
-        List<Conflict> conflicts = getIndex().getDatabase().getConflicts(null, null);
         if (!paths.isEmpty()) {
             result.setResult(CheckoutResult.Results.UPDATE_OBJECTS);
             Optional<RevTree> tree = Optional.absent();
-            List<String> unmerged = lookForUnmerged(conflicts, paths);
+            List<String> unmerged = lookForUnmerged(paths);
             if (!unmerged.isEmpty()) {
                 if (!(force || ours || theirs)) {
                     StringBuilder msg = new StringBuilder();
@@ -206,10 +205,10 @@ public class CheckoutOp extends AbstractGeoGitOp<CheckoutResult> {
             }
 
         } else {
-            if (!conflicts.isEmpty()) {
+            if (getIndex().countConflicted(null) > 0) {
                 if (!(force)) {
                     StringBuilder msg = new StringBuilder();
-                    for (Conflict conflict : conflicts) {
+                    for (Conflict conflict : getIndex().getConflicted(null)) {
                         msg.append("error: " + conflict.getPath() + " needs merge.\n");
                     }
                     msg.append("You need to resolve your index first.\n");
@@ -324,14 +323,11 @@ public class CheckoutOp extends AbstractGeoGitOp<CheckoutResult> {
         return result;
     }
 
-    private List<String> lookForUnmerged(List<Conflict> conflicts, Set<String> paths) {
+    private List<String> lookForUnmerged(Set<String> paths) {
         List<String> unmerged = Lists.newArrayList();
         for (String path : paths) {
-            for (Conflict conflict : conflicts) {
-                if (conflict.getPath().equals(path)) {
-                    unmerged.add(path);
-                    break;
-                }
+            if (getIndex().getDatabase().getConflict(null, path).isPresent()) {
+                unmerged.add(path);
             }
         }
         return unmerged;
@@ -26,6 +26,7 @@ import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.ResolveTreeish;
 import org.geogit.api.plumbing.RevObjectParse;
+import org.geogit.api.plumbing.UpdateChangedPathsIndexOp;
 import org.geogit.api.plumbing.UpdateRef;
 import org.geogit.api.plumbing.UpdateSymRef;
 import org.geogit.api.plumbing.WriteTree2;
@@ -34,11 +35,14 @@ import org.geogit.api.plumbing.merge.ConflictsReadOp;
 import org.geogit.api.plumbing.merge.ReadMergeCommitMessageOp;
 import org.geogit.di.CanRunDuringConflict;
 import org.geogit.storage.ObjectDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
@@ -56,6 +60,8 @@ import com.google.inject.Inject;
 @CanRunDuringConflict
 public class CommitOp extends AbstractGeoGitOp<RevCommit> {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommitOp.class);
+
     private final ObjectDatabase objectDb;
 
     private final Platform platform;
@@ -386,6 +392,15 @@ public class CommitOp extends AbstractGeoGitOp<RevCommit> {
         checkState(treeId.isPresent());
         checkState(newTreeId.equals(treeId.get()));
 
+        try {
+            command(UpdateChangedPathsIndexOp.class).setCommits(
+                    Iterators.singletonIterator(commit)).call();
+        } catch (RuntimeException e) {
+            // the index only speeds up path filtered history queries, which diff the commits
+            // that are not indexed, so failing to update it shouldn't fail the commit
+            LOGGER.warn("Unable to index the paths changed by commit " + commit.getId(), e);
+        }
+
         getProgressListener().progress(100f);
         getProgressListener().complete();
 
@@ -4,6 +4,7 @@
  */
 package org.geogit.api.porcelain;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -14,14 +15,21 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.geogit.api.AbstractGeoGitOp;
+import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
+import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.FindTreeChild;
+import org.geogit.api.plumbing.OpenChangedPathsIndex;
+import org.geogit.api.plumbing.ResolveTreeish;
+import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.RevParse;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.di.CanRunDuringConflict;
 import org.geogit.repository.Repository;
 import org.geogit.storage.GraphDatabase;
+import org.geogit.storage.fs.ChangedPathsIndex;
 import org.geotools.util.Range;
 
 import com.google.common.base.Optional;
@@ -495,6 +503,8 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
 
         private Pattern committer;
 
+        private Optional<ChangedPathsIndex> changedPathsIndex;
+
         /**
          * Constructs a new {@code LogFilter} with the given parameters.
          * 
@@ -550,14 +560,22 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
             }
             if (paths != null && paths.size() > 0) {
                 // did this commit touch any of the paths?
+                ObjectId parentId = commit.parentN(0).or(ObjectId.NULL);
+                if (!parentId.equals(ObjectId.NULL) && !repository.commitExists(parentId)) {
+                    // we have reached the bottom of a shallow clone. We "fake" it and pretend
+                    // it is the real first commit of the repo
+                    parentId = ObjectId.NULL;
+                }
+                try {
+                    if (changedPathsIndex().isPresent()
+                            && changedPathsIndex().get().isIndexed(commit.getId())) {
+                        return touchesIndexed(commit, parentId);
+                    }
+                } catch (IOException e) {
+                    Throwables.propagate(e);
+                }
                 for (String path : paths) {
                     DiffOp diff = command(DiffOp.class);
-                    ObjectId parentId = commit.parentN(0).or(ObjectId.NULL);
-                    if (!parentId.equals(ObjectId.NULL) && !repository.commitExists(parentId)) {
-                        // we have reached the bottom of a shallow clone. We "fake" it and pretend
-                        // it is the real first commit of the repo
-                        parentId = ObjectId.NULL;
-                    }
                     Iterator<DiffEntry> diffResult;
                     try {
                         diff.setOldVersion(parentId).setNewVersion(commit.getId()).setFilter(path);
@@ -574,6 +592,54 @@ public class LogOp extends AbstractGeoGitOp<Iterator<RevCommit>> {
 
             return applies;
         }
+
+        private RevTree tree(ObjectId commitId) {
+            if (commitId.isNull()) {
+                return RevTree.EMPTY;
+            }
+            ObjectId treeId = command(ResolveTreeish.class).setTreeish(commitId).call().get();
+            return command(RevObjectParse.class).setObjectId(treeId).call(RevTree.class).get();
+        }
+
+        private Optional<ChangedPathsIndex> changedPathsIndex() {
+            if (changedPathsIndex == null) {
+                changedPathsIndex = command(OpenChangedPathsIndex.class).call();
+            }
+            return changedPathsIndex;
+        }
+
+        /**
+         * Uses the {@link ChangedPathsIndex} to tell whether an indexed commit touched any of the
+         * paths: a tree changed only if its path was recorded, and a feature only if its parent
+         * tree path was, in which case the feature itself is looked up in both commit trees.
+         */
+        private boolean touchesIndexed(final RevCommit commit, final ObjectId parentId)
+                throws IOException {
+            final ChangedPathsIndex index = changedPathsIndex().get();
+            RevTree tree = null;
+            RevTree parentTree = null;
+            for (String path : paths) {
+                if (index.hasChanged(commit.getId(), path)) {
+                    return true;
+                }
+                String parentPath = NodeRef.parentPath(path);
+                if (parentPath == null || !index.hasChanged(commit.getId(), parentPath)) {
+                    continue;
+                }
+                if (tree == null) {
+                    tree = tree(commit.getId());
+                    parentTree = tree(parentId);
+                }
+                Optional<NodeRef> node = command(FindTreeChild.class).setParent(tree)
+                        .setChildPath(path).call();
+                Optional<NodeRef> parentNode = command(FindTreeChild.class).setParent(parentTree)
+                        .setChildPath(path).call();
+                if (!node.equals(parentNode)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
 }
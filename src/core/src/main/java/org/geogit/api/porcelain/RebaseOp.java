@@ -11,14 +11,23 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.CommitBuilder;
+import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
 import org.geogit.api.SymRef;
 import org.geogit.api.plumbing.CatObject;
 import org.geogit.api.plumbing.DiffTree;
@@ -46,7 +55,11 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 
 /**
@@ -68,7 +81,12 @@ import com.google.inject.Inject;
  * 
  * - A file named 'branch' keeps track of the current branch name
  * 
- * 
+ * When starting a rebase, the diffs of the commits to apply are computed concurrently ahead of
+ * the commit being applied, and the commits whose changes don't touch any path changed between the
+ * common ancestor and the commit to rebase onto are applied straight onto the tree of the previous
+ * rebased commit, without checking for conflicts or going through the index. Only the commits that
+ * may conflict are applied through the index, and the rebase state files, HEAD, the index and the
+ * working tree are only updated before applying those and at the end of the rebase.
  * 
  */
 @CanRunDuringConflict
@@ -94,6 +112,11 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
 
     private String squashMessage;
 
+    /**
+     * Max number of commit diffs computed ahead of the commit being applied, per thread
+     */
+    private static final int DIFFS_AHEAD_PER_THREAD = 4;
+
     /**
      * Constructs a new {@code RebaseOp} using the specified parameters.
      * 
@@ -329,6 +352,7 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
                 return true;
             } else {
                 createRebaseCommitsInfoFiles(commitsToRebase);
+                applyCommits(Lists.reverse(commitsToRebase), ancestorCommit.get());
             }
 
             // ProgressListener subProgress = subProgress(90.f);
@@ -401,6 +425,179 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
 
     }
 
+    /**
+     * Applies the given commits, oldest first, whose ids are in the rebase commits info files.
+     * <p>
+     * Commit diffs are computed concurrently ahead of the commit being applied. Since the previous
+     * commits have already been applied without conflicts, the current tree can only differ from
+     * the parent tree of a commit at the paths changed between the common ancestor and the tree
+     * being rebased onto, so a commit that touches none of those paths can't conflict and its
+     * changes are applied directly to the current tree. The remaining commits, and all commits
+     * after one whose first parent is not the previous commit, are applied through
+     * {@link #applyNextCommit(boolean)}.
+     */
+    private void applyCommits(final List<RevCommit> commits, final RevCommit ancestor) {
+        final Set<String> upstreamPaths = Sets.newHashSet();
+        final Set<String> upstreamTrees = Sets.newHashSet();
+        final RevCommit ontoCommit = repository.getCommit(rebaseHead);
+        Iterator<DiffEntry> upstreamDiffs = command(DiffTree.class)
+                .setOldTree(ancestor.getTreeId()).setNewTree(ontoCommit.getTreeId())
+                .setReportTrees(true).call();
+        while (upstreamDiffs.hasNext()) {
+            DiffEntry diff = upstreamDiffs.next();
+            NodeRef ref = diff.getNewObject() == null ? diff.getOldObject() : diff.getNewObject();
+            String path = ref.path();
+            upstreamPaths.add(path);
+            if (TYPE.TREE.equals(ref.getType())) {
+                upstreamTrees.add(path);
+            }
+            for (String parent = NodeRef.parentPath(path); parent != null
+                    && !parent.isEmpty(); parent = NodeRef.parentPath(parent)) {
+                upstreamPaths.add(parent);
+            }
+        }
+
+        final int nThreads = Math.max(1, platform.availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("geogit-rebase-diff-%d")
+                        .build());
+        try {
+            final int maxAhead = nThreads * DIFFS_AHEAD_PER_THREAD;
+            final LinkedList<Future<List<DiffEntry>>> diffs = Lists.newLinkedList();
+            int submitted = 0;
+            int applied = 0;
+            ObjectId previousId = ancestor.getId();
+            boolean linear = true;
+            ObjectId currentTreeId = ontoCommit.getTreeId();
+            for (int i = 0; i < commits.size(); i++) {
+                while (submitted < commits.size() && submitted - i < maxAhead) {
+                    diffs.add(executor.submit(diffTask(commits.get(submitted))));
+                    submitted++;
+                }
+                final RevCommit commit = commits.get(i);
+                final List<DiffEntry> diff = Futures.getUnchecked(diffs.removeFirst());
+
+                linear = linear && commit.parentN(0).equals(Optional.of(previousId));
+                previousId = commit.getId();
+
+                if (linear && !touchesAny(diff, upstreamPaths, upstreamTrees)) {
+                    RevTree currentTree = repository.getTree(currentTreeId);
+                    currentTreeId = command(WriteTree.class)
+                            .setOldRoot(Suppliers.ofInstance(currentTree))
+                            .setDiffSupplier(Suppliers.ofInstance(diff.iterator())).call();
+                    createCommit(commit, currentTreeId);
+                } else {
+                    // bring the rebase state up to date and let the regular path check for
+                    // conflicts
+                    advanceRebaseCommitsInfoFiles(applied, i);
+                    updateHead(currentTreeId);
+                    applyNextCommit(true);
+                    currentTreeId = repository.getCommit(rebaseHead).getTreeId();
+                    applied = i + 1;
+                }
+                getProgressListener().progress((i + 1) * 100f / commits.size());
+            }
+            advanceRebaseCommitsInfoFiles(applied, commits.size());
+            updateHead(currentTreeId);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<List<DiffEntry>> diffTask(final RevCommit commit) {
+        final DiffTree diffTree = command(DiffTree.class).setOldTree(parentTreeId(commit))
+                .setNewTree(commit.getTreeId()).setReportTrees(true);
+        return new Callable<List<DiffEntry>>() {
+            @Override
+            public List<DiffEntry> call() {
+                return Lists.newArrayList(diffTree.call());
+            }
+        };
+    }
+
+    /**
+     * @return whether any of the given diffs is at one of the given paths, or under one of the
+     *         given trees
+     */
+    private static boolean touchesAny(List<DiffEntry> diffs, Set<String> paths, Set<String> trees) {
+        for (DiffEntry diff : diffs) {
+            String path = diff.oldPath() == null ? diff.newPath() : diff.oldPath();
+            if (paths.contains(path)) {
+                return true;
+            }
+            if (!trees.isEmpty()) {
+                for (String parent = NodeRef.parentPath(path); parent != null
+                        && !parent.isEmpty(); parent = NodeRef.parentPath(parent)) {
+                    if (trees.contains(parent)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the info files of the commits in the given range, which have already been applied,
+     * and points the 'next' file to the first commit after it
+     * 
+     * @param from the index of the first applied commit, starting at 0
+     * @param to the index of the next commit to apply, starting at 0
+     */
+    private void advanceRebaseCommitsInfoFiles(int from, int to) {
+        File rebaseFolder = getRebaseFolder();
+        for (int idx = from + 1; idx <= to; idx++) {
+            new File(rebaseFolder, Integer.toString(idx)).delete();
+        }
+        File nextFile = new File(rebaseFolder, "next");
+        try {
+            Files.write(Integer.toString(to + 1), nextFile, Charsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read/write rebase commits index file");
+        }
+    }
+
+    private ObjectId parentTreeId(RevCommit commit) {
+        ObjectId parentCommitId = ObjectId.NULL;
+        if (commit.getParentIds().size() > 0) {
+            parentCommitId = commit.getParentIds().get(0);
+        }
+        ObjectId parentTreeId = ObjectId.NULL;
+        if (repository.commitExists(parentCommitId)) {
+            parentTreeId = repository.getCommit(parentCommitId).getTreeId();
+        }
+        return parentTreeId;
+    }
+
+    /**
+     * Creates a commit with the given tree and the info of the given commit on top of the current
+     * rebase head, and makes it the new rebase head
+     */
+    private void createCommit(RevCommit commitToApply, ObjectId newTreeId) {
+        long timestamp = platform.currentTimeMillis();
+        CommitBuilder builder = new CommitBuilder(commitToApply);
+        builder.setParentIds(Arrays.asList(rebaseHead));
+        builder.setTreeId(newTreeId);
+        builder.setCommitterTimestamp(timestamp);
+        builder.setCommitterTimeZoneOffset(platform.timeZoneOffset(timestamp));
+
+        RevCommit newCommit = builder.build();
+        repository.getObjectDatabase().put(newCommit);
+
+        rebaseHead = newCommit.getId();
+    }
+
+    /**
+     * Points the current branch to the rebase head, and the working tree and index to its tree
+     */
+    private void updateHead(ObjectId newTreeId) {
+        command(UpdateRef.class).setName(currentBranch).setNewValue(rebaseHead).call();
+        command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(currentBranch).call();
+
+        getWorkTree().updateWorkHead(newTreeId);
+        getIndex().updateStageHead(newTreeId);
+    }
+
     private boolean applyNextCommit(boolean useCommitChanges) {
         File rebaseFolder = getRebaseFolder();
         File nextFile = new File(rebaseFolder, "next");
@@ -435,15 +632,7 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
     private void applyCommit(RevCommit commitToApply, boolean useCommitChanges) {
 
         if (useCommitChanges) {
-            ObjectId parentTreeId;
-            ObjectId parentCommitId = ObjectId.NULL;
-            if (commitToApply.getParentIds().size() > 0) {
-                parentCommitId = commitToApply.getParentIds().get(0);
-            }
-            parentTreeId = ObjectId.NULL;
-            if (repository.commitExists(parentCommitId)) {
-                parentTreeId = repository.getCommit(parentCommitId).getTreeId();
-            }
+            ObjectId parentTreeId = parentTreeId(commitToApply);
             // get changes
             Iterator<DiffEntry> diff = command(DiffTree.class).setOldTree(parentTreeId)
                     .setNewTree(commitToApply.getTreeId()).setReportTrees(true).call();
@@ -458,24 +647,9 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
                 // write new tree
                 ObjectId newTreeId = command(WriteTree.class).call();
 
-                long timestamp = platform.currentTimeMillis();
                 // Create new commit
-                CommitBuilder builder = new CommitBuilder(commitToApply);
-                builder.setParentIds(Arrays.asList(rebaseHead));
-                builder.setTreeId(newTreeId);
-                builder.setCommitterTimestamp(timestamp);
-                builder.setCommitterTimeZoneOffset(platform.timeZoneOffset(timestamp));
-
-                RevCommit newCommit = builder.build();
-                repository.getObjectDatabase().put(newCommit);
-
-                rebaseHead = newCommit.getId();
-
-                command(UpdateRef.class).setName(currentBranch).setNewValue(rebaseHead).call();
-                command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(currentBranch).call();
-
-                getWorkTree().updateWorkHead(newTreeId);
-                getIndex().updateStageHead(newTreeId);
+                createCommit(commitToApply, newTreeId);
+                updateHead(newTreeId);
 
             } else {
                 Iterator<DiffEntry> unconflicted = report.getUnconflicted().iterator();
@@ -510,24 +684,9 @@ public class RebaseOp extends AbstractGeoGitOp<Boolean> {
             // write new tree
             ObjectId newTreeId = command(WriteTree.class).call();
 
-            long timestamp = platform.currentTimeMillis();
             // Create new commit
-            CommitBuilder builder = new CommitBuilder(commitToApply);
-            builder.setParentIds(Arrays.asList(rebaseHead));
-            builder.setTreeId(newTreeId);
-            builder.setCommitterTimestamp(timestamp);
-            builder.setCommitterTimeZoneOffset(platform.timeZoneOffset(timestamp));
-
-            RevCommit newCommit = builder.build();
-            repository.getObjectDatabase().put(newCommit);
-
-            rebaseHead = newCommit.getId();
-
-            command(UpdateRef.class).setName(currentBranch).setNewValue(rebaseHead).call();
-            command(UpdateSymRef.class).setName(Ref.HEAD).setNewValue(currentBranch).call();
-
-            getWorkTree().updateWorkHead(newTreeId);
-            getIndex().updateStageHead(newTreeId);
+            createCommit(commitToApply, newTreeId);
+            updateHead(newTreeId);
         }
 
     }
@@ -10,14 +10,12 @@ import java.util.List;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
-import org.geogit.api.ObjectId;
 import org.geogit.api.RevCommit;
 import org.geogit.api.RevObject;
 import org.geogit.storage.GraphDatabase;
 import org.geogit.storage.ObjectDatabase;
 
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.inject.Provider;
@@ -67,12 +65,7 @@ class ObjectDatabasePutInterceptor implements MethodInterceptor {
 
         Object result = invocation.proceed();
         if (!addedCommits.isEmpty()) {
-            GraphDatabase graphDatabase = graphDb.get();
-            for (RevCommit commit : addedCommits) {
-                ObjectId commitId = commit.getId();
-                ImmutableList<ObjectId> parentIds = commit.getParentIds();
-                graphDatabase.put(commitId, parentIds);
-            }
+            graphDb.get().putAll(addedCommits.iterator());
         }
 
         return result;
@@ -11,11 +11,13 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject;
 import org.geogit.api.porcelain.ConfigException;
 import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.ObjectSerializingFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,7 +29,20 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.inject.Provider;
 
-abstract class CacheFactory {
+/**
+ * Creates the object cache as configured by the {@code <prefix>.*} config properties:
+ * <ul>
+ * <li>{@code enabled}: whether to use a cache at all, defaults to {@code true}
+ * <li>{@code maxBytes}: if greater than zero, the cache is bounded by the serialized size of the
+ * cached objects instead of by number of entries, see {@link SerializedObjectCache}
+ * <li>{@code offHeap}: for caches bounded by {@code maxBytes}, whether to keep the serialized
+ * objects off-heap in a few large direct byte buffers, defaults to {@code false}
+ * <li>{@code maxSize}: maximum number of entries of a cache not bounded by {@code maxBytes}
+ * <li>{@code concurrencyLevel}, {@code expireSeconds}, {@code initialCapacity}: tuning parameters
+ * of the underlying cache
+ * </ul>
+ */
+abstract class CacheFactory implements CacheStatistics {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheFactory.class);
 
@@ -35,11 +50,15 @@ abstract class CacheFactory {
 
     private final Provider<ConfigDatabase> configDb;
 
+    private final Provider<ObjectSerializingFactory> serialFactory;
+
     private final String configKeywordPrefix;
 
-    public CacheFactory(final String configKeywordPrefix, final Provider<ConfigDatabase> configDb) {
+    public CacheFactory(final String configKeywordPrefix, final Provider<ConfigDatabase> configDb,
+            final Provider<ObjectSerializingFactory> serialFactory) {
         this.configKeywordPrefix = configKeywordPrefix;
         this.configDb = configDb;
+        this.serialFactory = serialFactory;
     }
 
     public Cache<ObjectId, RevObject> get() {
@@ -57,8 +76,17 @@ abstract class CacheFactory {
             this.cache = NO_CACHE;
             return;
         }
-        final int maxSize = getConfig("maxSize", 50 * 1000);
         final int concurrencyLevel = getConfig("concurrencyLevel", 0);
+        final long maxBytes = getConfig("maxBytes", Long.valueOf(0L)).longValue();
+        if (maxBytes > 0) {
+            final boolean offHeap = getConfig("offHeap", Boolean.FALSE).booleanValue();
+            this.cache = new SerializedObjectCache(serialFactory.get(), maxBytes,
+                    concurrencyLevel, offHeap);
+            LOGGER.info("Cache '{}' configured with maxBytes: {}, offHeap: {}",
+                    configKeywordPrefix, maxBytes, offHeap);
+            return;
+        }
+        final int maxSize = getConfig("maxSize", 50 * 1000);
         if (concurrencyLevel == 0) {
             this.cache = new SimpleCache<ObjectId, RevObject>(maxSize);
             LOGGER.info("Cache '{}' configured with maxSize: {}", configKeywordPrefix, maxSize);
@@ -72,6 +100,7 @@ abstract class CacheFactory {
         cacheBuilder.expireAfterAccess(expireSeconds, TimeUnit.SECONDS);
         cacheBuilder.initialCapacity(initialCapacity);
         cacheBuilder.concurrencyLevel(concurrencyLevel);
+        cacheBuilder.recordStats();
 
         try {
             this.cache = cacheBuilder.build();
@@ -90,6 +119,30 @@ abstract class CacheFactory {
 
     }
 
+    @Override
+    public String getName() {
+        return configKeywordPrefix;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return get().stats();
+    }
+
+    @Override
+    public long size() {
+        return get().size();
+    }
+
+    @Override
+    public long sizeBytes() {
+        Cache<ObjectId, RevObject> cache = get();
+        if (cache instanceof SerializedObjectCache) {
+            return ((SerializedObjectCache) cache).sizeBytes();
+        }
+        return -1L;
+    }
+
     private boolean cacheIsEnabled() {
         LOGGER.debug("checking if cache {} is enabled...", configKeywordPrefix);
         final boolean enabled = getConfig("enabled", Boolean.TRUE);
@@ -186,25 +239,44 @@ abstract class CacheFactory {
 
             private final int maxEntries;
 
-            public LinkedCache(int maxEntries) {
+            private final AtomicLong evictionCount;
+
+            public LinkedCache(int maxEntries, AtomicLong evictionCount) {
                 this.maxEntries = maxEntries;
+                this.evictionCount = evictionCount;
             }
 
             @Override
             protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-                return size() > maxEntries;
+                boolean evict = size() > maxEntries;
+                if (evict) {
+                    evictionCount.incrementAndGet();
+                }
+                return evict;
             }
         };
 
         private Map<K, V> map;
 
+        private final AtomicLong hitCount = new AtomicLong();
+
+        private final AtomicLong missCount = new AtomicLong();
+
+        private final AtomicLong evictionCount = new AtomicLong();
+
         public SimpleCache(int maxEntries) {
-            map = Collections.synchronizedMap(new LinkedCache<K, V>(maxEntries));
+            map = Collections.synchronizedMap(new LinkedCache<K, V>(maxEntries, evictionCount));
         }
 
         @Override
         public V getIfPresent(Object key) {
-            return map.get(key);
+            V value = map.get(key);
+            if (value == null) {
+                missCount.incrementAndGet();
+            } else {
+                hitCount.incrementAndGet();
+            }
+            return value;
         }
 
         @Override
@@ -251,7 +323,7 @@ abstract class CacheFactory {
 
         @Override
         public CacheStats stats() {
-            return new CacheStats(0, 0, 0, 0, 0, 0);
+            return new CacheStats(hitCount.get(), missCount.get(), 0, 0, 0, evictionCount.get());
         }
 
         @Override
@@ -0,0 +1,37 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.di.caching;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Read only view of the usage statistics of one of the object caches configured by
+ * {@link CachingModule}, meant to be consumed by monitoring code.
+ */
+public interface CacheStatistics {
+
+    /**
+     * @return the cache name, which is also the prefix of its configuration keys (e.g.
+     *         {@code objectdb.cache})
+     */
+    public String getName();
+
+    /**
+     * @return the hit, miss, and eviction counts of the cache; all zero if the cache is disabled
+     *         or doesn't record statistics
+     */
+    public CacheStats stats();
+
+    /**
+     * @return the number of cached entries
+     */
+    public long size();
+
+    /**
+     * @return the number of bytes used by the cached entries if the cache is bounded by size in
+     *         bytes, {@code -1} otherwise
+     */
+    public long sizeBytes();
+}
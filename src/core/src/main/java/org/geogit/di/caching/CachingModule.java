@@ -16,17 +16,21 @@ import org.geogit.di.MethodMatcher;
 import org.geogit.storage.BulkOpListener;
 import org.geogit.storage.ConfigDatabase;
 import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectSerializingFactory;
 import org.geogit.storage.StagingDatabase;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provider;
 import com.google.inject.matcher.Matcher;
+import com.google.inject.multibindings.Multibinder;
 
 /**
  * 
  * <p>
  * Depends on {@link GeogitModule} or similar that provides bindings for {@link ConfigDatabase},
- * {@link ObjectDatabase}, and {@link StagingDatabase}.
+ * {@link ObjectDatabase}, {@link StagingDatabase}, and {@link ObjectSerializingFactory}.
+ * <p>
+ * The caches usage statistics are contributed to the set of {@link CacheStatistics}.
  * 
  * @see CacheFactory
  * @see ObjectDatabaseGetCacheInterceptor
@@ -52,13 +56,18 @@ public class CachingModule extends AbstractModule {
         final Matcher<Method> deleteAllMatcher = new MethodMatcher(ObjectDatabase.class,
                 "deleteAll", Iterator.class, BulkOpListener.class);
 
+        final Multibinder<CacheStatistics> statistics = Multibinder.newSetBinder(binder(),
+                CacheStatistics.class);
+
         // bind separate caches for the object and staging databases
 
         {
             final Matcher<Class> stagingDatabaseMatcher = subclassesOf(StagingDatabase.class);
             final StagingDatabaseCacheFactory indexCacheProvider;
-            indexCacheProvider = new StagingDatabaseCacheFactory(getProvider(ConfigDatabase.class));
+            indexCacheProvider = new StagingDatabaseCacheFactory(getProvider(ConfigDatabase.class),
+                    getProvider(ObjectSerializingFactory.class));
             bind(StagingDatabaseCacheFactory.class).toInstance(indexCacheProvider);
+            statistics.addBinding().to(StagingDatabaseCacheFactory.class);
 
             bindCacheAwareMethodInterceptors(stagingDatabaseMatcher,
                     getProvider(StagingDatabaseCacheFactory.class), getMatcher, deleteMatcher,
@@ -66,8 +75,10 @@ public class CachingModule extends AbstractModule {
         }
         {
             final ObjectDatabaseCacheFactory odbCacheProvider;
-            odbCacheProvider = new ObjectDatabaseCacheFactory(getProvider(ConfigDatabase.class));
+            odbCacheProvider = new ObjectDatabaseCacheFactory(getProvider(ConfigDatabase.class),
+                    getProvider(ObjectSerializingFactory.class));
             bind(ObjectDatabaseCacheFactory.class).toInstance(odbCacheProvider);
+            statistics.addBinding().to(ObjectDatabaseCacheFactory.class);
 
             final Matcher<Class> objectDatabaseMatcher = subclassesOf(ObjectDatabase.class).and(
                     not(subclassesOf(StagingDatabase.class)));
@@ -0,0 +1,228 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.di.caching;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps byte arrays off the heap in a few large direct byte buffers, for the
+ * {@link SerializedObjectCache} off-heap mode.
+ * <p>
+ * The arena is made of slabs of up to {@link #MAX_SLAB_SIZE} bytes, allocated as needed up to the
+ * arena capacity and never released. Slabs are split in pages of {@link #PAGE_SIZE} bytes, or of
+ * a single chunk if bigger, and each page in chunks of a single power of two size. Freed chunks
+ * are kept in a free list per size to be reused by the next allocation of that size, so storing
+ * an object neither allocates a direct buffer nor leaves garbage behind.
+ * <p>
+ * Reading a chunk and freeing it are synchronized on its slab, so a chunk freed (and maybe reused)
+ * while being read either is read whole or reads as {@code null}.
+ */
+class DirectArena {
+
+    static final int PAGE_SIZE = 64 * 1024;
+
+    static final int MAX_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final int MIN_CHUNK_BITS = 6;
+
+    private static final int MAX_CHUNK_BITS = 20;
+
+    /**
+     * Size of the biggest chunk
+     */
+    static final int MAX_CHUNK_SIZE = 1 << MAX_CHUNK_BITS;
+
+    private static final int SIZE_CLASSES = MAX_CHUNK_BITS - MIN_CHUNK_BITS + 1;
+
+    private static final class Slab {
+
+        private final ByteBuffer buffer;
+
+        Slab(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /**
+     * A byte array stored in the arena
+     */
+    static final class Chunk {
+
+        private final Slab slab;
+
+        private final int offset;
+
+        private final int length;
+
+        private final int sizeClass;
+
+        /**
+         * Guarded by {@link #slab}
+         */
+        private boolean freed;
+
+        private Chunk(Slab slab, int offset, int length, int sizeClass) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+
+        /**
+         * @return the number of bytes of the arena taken by this chunk
+         */
+        int size() {
+            return chunkSize(sizeClass);
+        }
+    }
+
+    private final long capacity;
+
+    private final int slabSize;
+
+    private long slabBytes;
+
+    private Slab slab;
+
+    private int slabOffset;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Chunk>[] freeChunks = new ArrayDeque[SIZE_CLASSES];
+
+    /**
+     * The page being split in chunks of each size, its offset in its slab, and its end offset
+     */
+    private final Slab[] pages = new Slab[SIZE_CLASSES];
+
+    private final int[] pageOffsets = new int[SIZE_CLASSES];
+
+    private final int[] pageEnds = new int[SIZE_CLASSES];
+
+    /**
+     * @param capacity the maximum number of bytes the arena may take, rounded up to a multiple of
+     *        {@link #PAGE_SIZE}
+     */
+    public DirectArena(final long capacity) {
+        this.capacity = Math.max(PAGE_SIZE, (capacity + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE);
+        this.slabSize = (int) Math.min(MAX_SLAB_SIZE, this.capacity);
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            freeChunks[i] = new ArrayDeque<Chunk>();
+        }
+    }
+
+    /**
+     * Copies the given bytes to the arena.
+     *
+     * @return the chunk holding the bytes, or {@code null} if they are too big for a chunk or the
+     *         arena is full
+     */
+    @Nullable
+    public Chunk allocate(final byte[] raw) {
+        final int sizeClass = sizeClass(raw.length);
+        if (sizeClass >= SIZE_CLASSES) {
+            return null;
+        }
+        final Chunk chunk;
+        synchronized (this) {
+            Chunk free = freeChunks[sizeClass].poll();
+            if (free != null) {
+                chunk = new Chunk(free.slab, free.offset, raw.length, sizeClass);
+            } else {
+                final int chunkSize = chunkSize(sizeClass);
+                if (pages[sizeClass] == null || pageOffsets[sizeClass] == pageEnds[sizeClass]) {
+                    if (!newPage(sizeClass, Math.max(PAGE_SIZE, chunkSize))) {
+                        return null;
+                    }
+                }
+                chunk = new Chunk(pages[sizeClass], pageOffsets[sizeClass], raw.length,
+                        sizeClass);
+                pageOffsets[sizeClass] += chunkSize;
+            }
+        }
+        // the chunk is not reachable by anyone else yet
+        ByteBuffer buffer = chunk.slab.buffer.duplicate();
+        buffer.position(chunk.offset);
+        buffer.put(raw);
+        return chunk;
+    }
+
+    /**
+     * Takes a new page for the given size class from the current slab, or from a new one if it
+     * doesn't fit in the current slab and the arena is not full.
+     */
+    private boolean newPage(final int sizeClass, final int pageSize) {
+        if (pageSize > slabSize) {
+            return false;
+        }
+        if (slab == null || slabOffset + pageSize > slabSize) {
+            if (slabBytes + slabSize > capacity) {
+                return false;
+            }
+            slab = new Slab(slabSize);
+            slabBytes += slabSize;
+            slabOffset = 0;
+        }
+        pages[sizeClass] = slab;
+        pageOffsets[sizeClass] = slabOffset;
+        pageEnds[sizeClass] = slabOffset + pageSize;
+        slabOffset += pageSize;
+        return true;
+    }
+
+    /**
+     * @return a copy of the chunk's bytes, or {@code null} if the chunk has been freed
+     */
+    @Nullable
+    public byte[] read(final Chunk chunk) {
+        synchronized (chunk.slab) {
+            if (chunk.freed) {
+                return null;
+            }
+            byte[] raw = new byte[chunk.length];
+            ByteBuffer buffer = chunk.slab.buffer.duplicate();
+            buffer.position(chunk.offset);
+            buffer.get(raw);
+            return raw;
+        }
+    }
+
+    /**
+     * Returns the chunk to the arena so that it can be reused. Freeing a chunk more than once has
+     * no effect.
+     */
+    public void free(final Chunk chunk) {
+        synchronized (chunk.slab) {
+            if (chunk.freed) {
+                return;
+            }
+            chunk.freed = true;
+        }
+        synchronized (this) {
+            freeChunks[chunk.sizeClass].push(chunk);
+        }
+    }
+
+    /**
+     * @return the number of bytes taken by the slabs allocated so far
+     */
+    public synchronized long capacityUsed() {
+        return slabBytes;
+    }
+
+    private static int chunkSize(final int sizeClass) {
+        return 1 << (sizeClass + MIN_CHUNK_BITS);
+    }
+
+    private static int sizeClass(final int length) {
+        if (length <= 1 << MIN_CHUNK_BITS) {
+            return 0;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(length - 1);
+        return bits - MIN_CHUNK_BITS;
+    }
+}
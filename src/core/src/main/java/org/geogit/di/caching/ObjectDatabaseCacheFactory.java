@@ -5,13 +5,15 @@
 package org.geogit.di.caching;
 
 import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.ObjectSerializingFactory;
 
 import com.google.inject.Provider;
 
 class ObjectDatabaseCacheFactory extends CacheFactory {
 
-    public ObjectDatabaseCacheFactory(Provider<ConfigDatabase> configDb) {
-        super("objectdb.cache", configDb);
+    public ObjectDatabaseCacheFactory(Provider<ConfigDatabase> configDb,
+            Provider<ObjectSerializingFactory> serialFactory) {
+        super("objectdb.cache", configDb, serialFactory);
     }
 
 }
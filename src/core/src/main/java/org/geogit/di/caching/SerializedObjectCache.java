@@ -0,0 +1,213 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.di.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject;
+import org.geogit.storage.ObjectSerializingFactory;
+import org.geogit.storage.ObjectWriter;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
+
+/**
+ * A {@link Cache} of {@link RevObject}s bounded by memory usage instead of number of entries.
+ * <p>
+ * Objects are stored in their LZF compressed serialized form and parsed back on each cache hit,
+ * and the cache is limited to a maximum number of bytes, weighting each entry by its serialized
+ * size. This way a cache full of huge bucket trees and one full of tiny features use about the
+ * same amount of memory. Optionally, the serialized objects are kept off-heap in the large direct
+ * buffers of a {@link DirectArena}, so that the cached contents don't add to the heap nor to the
+ * garbage collector's work. Objects that don't fit in the arena are kept on the heap.
+ */
+class SerializedObjectCache implements Cache<ObjectId, RevObject> {
+
+    /**
+     * Estimated per entry overhead of the cache data structures and the key
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final ObjectSerializingFactory serialFactory;
+
+    @Nullable
+    private final DirectArena arena;
+
+    private final AtomicLong sizeBytes = new AtomicLong();
+
+    private final Cache<ObjectId, Object> store;
+
+    /**
+     * @param serialFactory the serialization format for the cached objects
+     * @param maxBytes maximum number of bytes to be used by the cached entries
+     * @param concurrencyLevel the cache concurrency level, or {@code 0} for the default
+     * @param offHeap whether to store the serialized objects in a {@link DirectArena} of
+     *        {@code maxBytes} capacity
+     */
+    public SerializedObjectCache(final ObjectSerializingFactory serialFactory,
+            final long maxBytes, final int concurrencyLevel, final boolean offHeap) {
+        this.serialFactory = serialFactory;
+        this.arena = offHeap ? new DirectArena(maxBytes) : null;
+
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+        cacheBuilder.maximumWeight(maxBytes);
+        cacheBuilder.weigher(new Weigher<ObjectId, Object>() {
+            @Override
+            public int weigh(ObjectId key, Object value) {
+                return ENTRY_OVERHEAD + length(value);
+            }
+        });
+        if (concurrencyLevel > 0) {
+            cacheBuilder.concurrencyLevel(concurrencyLevel);
+        }
+        cacheBuilder.recordStats();
+        this.store = cacheBuilder.removalListener(new RemovalListener<ObjectId, Object>() {
+            @Override
+            public void onRemoval(RemovalNotification<ObjectId, Object> notification) {
+                Object value = notification.getValue();
+                sizeBytes.addAndGet(-(ENTRY_OVERHEAD + length(value)));
+                if (value instanceof DirectArena.Chunk) {
+                    arena.free((DirectArena.Chunk) value);
+                }
+            }
+        }).build();
+    }
+
+    private static int length(Object value) {
+        if (value instanceof DirectArena.Chunk) {
+            return ((DirectArena.Chunk) value).size();
+        }
+        return ((byte[]) value).length;
+    }
+
+    /**
+     * @return the estimated number of bytes used by the cached entries
+     */
+    public long sizeBytes() {
+        return sizeBytes.get();
+    }
+
+    @Override
+    public RevObject getIfPresent(Object key) {
+        Object stored = store.getIfPresent(key);
+        if (stored == null) {
+            return null;
+        }
+        final byte[] raw;
+        if (stored instanceof DirectArena.Chunk) {
+            raw = arena.read((DirectArena.Chunk) stored);
+            if (raw == null) {
+                // evicted while being read
+                return null;
+            }
+        } else {
+            raw = (byte[]) stored;
+        }
+        try {
+            return serialFactory.createObjectReader().read((ObjectId) key,
+                    new LZFInputStream(new ByteArrayInputStream(raw)));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public RevObject get(ObjectId key, Callable<? extends RevObject> valueLoader)
+            throws ExecutionException {
+        throw new UnsupportedOperationException("not in use");
+    }
+
+    @Override
+    public ImmutableMap<ObjectId, RevObject> getAllPresent(Iterable<?> keys) {
+        ImmutableMap.Builder<ObjectId, RevObject> builder = ImmutableMap.builder();
+        for (Object key : keys) {
+            RevObject object = getIfPresent(key);
+            if (object != null) {
+                builder.put((ObjectId) key, object);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void put(ObjectId key, RevObject value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectWriter<RevObject> writer = serialFactory.createObjectWriter(value.getType());
+        LZFOutputStream cOut = new LZFOutputStream(out);
+        try {
+            writer.write(value, cOut);
+            cOut.close();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        final byte[] raw = out.toByteArray();
+        Object stored = arena == null ? null : arena.allocate(raw);
+        if (stored == null) {
+            stored = raw;
+        }
+        sizeBytes.addAndGet(ENTRY_OVERHEAD + length(stored));
+        store.put(key, stored);
+    }
+
+    @Override
+    public void putAll(Map<? extends ObjectId, ? extends RevObject> m) {
+        for (Map.Entry<? extends ObjectId, ? extends RevObject> e : m.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        store.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll(Iterable<?> keys) {
+        store.invalidateAll(keys);
+    }
+
+    @Override
+    public void invalidateAll() {
+        store.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return store.size();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return store.stats();
+    }
+
+    @Override
+    public ConcurrentMap<ObjectId, RevObject> asMap() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void cleanUp() {
+        store.cleanUp();
+    }
+}
@@ -5,13 +5,15 @@
 package org.geogit.di.caching;
 
 import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.ObjectSerializingFactory;
 
 import com.google.inject.Provider;
 
 class StagingDatabaseCacheFactory extends CacheFactory {
 
-    public StagingDatabaseCacheFactory(Provider<ConfigDatabase> configDb) {
-        super("stagingdb.cache", configDb);
+    public StagingDatabaseCacheFactory(Provider<ConfigDatabase> configDb,
+            Provider<ObjectSerializingFactory> serialFactory) {
+        super("stagingdb.cache", configDb, serialFactory);
     }
 
 }
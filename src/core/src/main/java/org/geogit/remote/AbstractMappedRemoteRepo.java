@@ -11,6 +11,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -51,6 +52,11 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
 
     public static String PLACEHOLDER_COMMIT_MESSAGE = "Placeholder Sparse Commit";
 
+    /**
+     * Number of commits given to each call to {@link #prefetch(List)} while fetching
+     */
+    private static final int PREFETCH_SIZE = 100;
+
     protected Repository localRepository;
 
     protected RepositoryFilter filter;
@@ -174,7 +180,17 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
         try {
             gatherer.traverse(ref.getObjectId());
             Stack<ObjectId> needed = gatherer.commits;
+            int prefetched = 0;
             while (!needed.empty()) {
+                if (prefetched == 0) {
+                    // the next commits to fetch are at the top of the stack
+                    prefetched = Math.min(PREFETCH_SIZE, needed.size());
+                    List<ObjectId> next = new LinkedList<ObjectId>(needed.subList(needed.size()
+                            - prefetched, needed.size()));
+                    Collections.reverse(next);
+                    prefetch(next);
+                }
+                prefetched--;
                 ObjectId commitId = needed.pop();
                 // If the last commit is empty, add it anyways to preserve parentage of new commits.
                 boolean allowEmpty = needed.isEmpty();
@@ -184,9 +200,29 @@ public abstract class AbstractMappedRemoteRepo implements IRemoteRepo {
         } catch (Exception e) {
             Throwables.propagate(e);
         } finally {
+            endPrefetch();
         }
     }
 
+    /**
+     * Gives the ids of the next commits that {@link #fetchSparseCommit(ObjectId, boolean)} will be
+     * called for, in that order, so that implementations can retrieve what they need for them in
+     * fewer round trips to the remote. Does nothing by default.
+     * 
+     * @param commitIds the ids of the next commits to fetch
+     */
+    protected void prefetch(List<ObjectId> commitIds) {
+        // do nothing
+    }
+
+    /**
+     * Called once a fetch is over, whether it succeeded or not, to release whatever
+     * {@link #prefetch(List)} holds across calls. Does nothing by default.
+     */
+    protected void endPrefetch() {
+        // do nothing
+    }
+
     /**
      * This function takes all of the changes introduced by the specified commit and filters them
      * based on the repository filter. It then uses the filtered results to construct a new commit
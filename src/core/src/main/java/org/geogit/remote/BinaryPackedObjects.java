@@ -4,6 +4,10 @@
  */
 package org.geogit.remote;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -22,8 +26,11 @@ import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevObject;
+import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.HashObject;
 import org.geogit.repository.PostOrderIterator;
+import org.geogit.storage.AbstractObjectDatabase;
 import org.geogit.storage.Deduplicator;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.ObjectReader;
@@ -32,12 +39,49 @@ import org.geogit.storage.ObjectWriter;
 import org.geogit.storage.datastream.DataStreamSerializationFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
 
+/**
+ * Packs the objects reachable from a set of commits into a binary stream, and unpacks them into an
+ * {@link ObjectDatabase}.
+ * <p>
+ * Two stream formats are supported. The {@link #write(OutputStream, List, List, boolean,
+ * Deduplicator) default} one has each object id followed by the object serialized uncompressed.
+ * The {@link #writeRaw(OutputStream, List, List, boolean, Deduplicator) raw} one, identified by the
+ * {@link #RAW_CONTENT_TYPE} content type, has each object id followed by the object type, the
+ * length of the object, and the object LZF compressed, as stored by an
+ * {@link AbstractObjectDatabase}. Raw streams are written and ingested copying the stored bytes
+ * of objects, without parsing nor serializing them, when both databases store objects the same
+ * way. In that case only commits and trees are read to find the objects they refer to, and the
+ * callbacks of the {@code writeRaw} methods get features and feature types as
+ * {@link PostOrderIterator.Unparsed} objects.
+ * <p>
+ * Objects are written in post order, so every object a commit refers to is written before the
+ * commit itself. A receiving end that loses the connection can thus resume by asking again for
+ * the commits it didn't get, using the ones it got as its new base.
+ */
 public final class BinaryPackedObjects {
+
+    /**
+     * The content type of the streams written by the {@code writeRaw} methods
+     */
+    public static final String RAW_CONTENT_TYPE = "application/x-geogit-packed-raw";
+
+    private final ObjectSerializingFactory factory;
+
+    /**
+     * The database to copy stored objects from and to, or {@code null} if it doesn't store objects
+     * as they go in raw streams
+     */
+    @Nullable
+    private final AbstractObjectDatabase rawDatabase;
+
     private final ObjectWriter<RevCommit> commitWriter;
 
     private final ObjectWriter<RevTree> treeWriter;
@@ -48,18 +92,43 @@ public final class BinaryPackedObjects {
 
     private final ObjectReader<RevObject> objectReader;
 
-    private final int CAP = 100;
+    /**
+     * The default max number of commits written to a pack
+     */
+    public static final int DEFAULT_CAP = 100;
+
+    private int cap = DEFAULT_CAP;
 
     private final ObjectDatabase database;
 
     public BinaryPackedObjects(ObjectDatabase database) {
         this.database = database;
-        final ObjectSerializingFactory factory = new DataStreamSerializationFactory();
+        this.factory = new DataStreamSerializationFactory();
         this.commitWriter = factory.createObjectWriter(RevObject.TYPE.COMMIT);
         this.treeWriter = factory.createObjectWriter(RevObject.TYPE.TREE);
         this.featureTypeWriter = factory.createObjectWriter(RevObject.TYPE.FEATURETYPE);
         this.featureWriter = factory.createObjectWriter(RevObject.TYPE.FEATURE);
         this.objectReader = factory.createObjectReader();
+        if (database instanceof AbstractObjectDatabase
+                && ((AbstractObjectDatabase) database).getSerializationFactory()
+                        instanceof DataStreamSerializationFactory) {
+            this.rawDatabase = (AbstractObjectDatabase) database;
+        } else {
+            this.rawDatabase = null;
+        }
+    }
+
+    /**
+     * Sets the max number of commits to write to a pack. Once it's reached, writing stops and the
+     * receiving end is expected to ask for the remaining commits in a new request.
+     * 
+     * @param cap the max number of commits, or zero to write all of them
+     * @return {@code this}
+     */
+    public BinaryPackedObjects setCap(int cap) {
+        Preconditions.checkArgument(cap >= 0, "cap must be positive or zero: %s", cap);
+        this.cap = cap;
+        return this;
     }
 
     public void write(OutputStream out, List<ObjectId> want, List<ObjectId> have,
@@ -69,6 +138,34 @@ public final class BinaryPackedObjects {
 
     public <T> T write(OutputStream out, List<ObjectId> want, List<ObjectId> have,
             Set<ObjectId> sent, Callback<T> callback, boolean traverseCommits, Deduplicator deduplicator) throws IOException {
+        return write(out, want, have, callback, traverseCommits, deduplicator, false);
+    }
+
+    /**
+     * Writes the objects in the raw format, copying their stored bytes if possible.
+     * 
+     * @see #RAW_CONTENT_TYPE
+     */
+    public void writeRaw(OutputStream out, List<ObjectId> want, List<ObjectId> have,
+            boolean traverseCommits, Deduplicator deduplicator) throws IOException {
+        writeRaw(out, want, have, new HashSet<ObjectId>(), DEFAULT_CALLBACK, traverseCommits,
+                deduplicator);
+    }
+
+    /**
+     * Writes the objects in the raw format, copying their stored bytes if possible.
+     * 
+     * @see #RAW_CONTENT_TYPE
+     */
+    public <T> T writeRaw(OutputStream out, List<ObjectId> want, List<ObjectId> have,
+            Set<ObjectId> sent, Callback<T> callback, boolean traverseCommits,
+            Deduplicator deduplicator) throws IOException {
+        return write(out, want, have, callback, traverseCommits, deduplicator, true);
+    }
+
+    private <T> T write(OutputStream out, List<ObjectId> want, List<ObjectId> have,
+            Callback<T> callback, boolean traverseCommits, Deduplicator deduplicator,
+            boolean raw) throws IOException {
         T state = null;
         for (ObjectId i : want) {
             if (!database.exists(i)) {
@@ -83,11 +180,22 @@ public final class BinaryPackedObjects {
         deduplicator.reset();
 
         int commitsSent = 0;
+        final DataOutputStream rawOut = raw ? new DataOutputStream(out) : null;
+        // features and feature types are only parsed if their stored bytes can't be copied
+        final boolean parseLeaves = !raw || rawDatabase == null;
         Iterator<RevObject> objects = PostOrderIterator.range(want, new ArrayList<ObjectId>(
-                previsitResults), database, traverseCommits, deduplicator);
-        while (objects.hasNext() && commitsSent < CAP) {
+                previsitResults), database, traverseCommits, deduplicator, parseLeaves);
+        while (objects.hasNext() && (cap == 0 || commitsSent < cap)) {
             RevObject object = objects.next();
 
+            if (raw) {
+                writeRaw(object, rawOut);
+                if (object instanceof RevCommit) {
+                    commitsSent++;
+                }
+                state = callback.callback(object, state);
+                continue;
+            }
             out.write(object.getId().getRawValue());
             if (object instanceof RevCommit) {
                 commitWriter.write((RevCommit) object, out);
@@ -101,10 +209,48 @@ public final class BinaryPackedObjects {
             }
             state = callback.callback(object, state);
         }
-
+        if (rawOut != null) {
+            rawOut.flush();
+        }
         return state;
     }
 
+    private void writeRaw(RevObject object, DataOutputStream out) throws IOException {
+        byte[] data = null;
+        if (rawDatabase != null) {
+            data = rawDatabase.getCompressed(object.getId());
+        }
+        if (data == null) {
+            if (object instanceof PostOrderIterator.Unparsed) {
+                // fails as reading any other missing object does
+                object = database.get(object.getId());
+            }
+            data = compress(object);
+        }
+        out.write(object.getId().getRawValue());
+        out.writeByte(object.getType().value());
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private byte[] compress(RevObject object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LZFOutputStream cOut = new LZFOutputStream(bytes);
+        ObjectWriter<RevObject> writer = factory.createObjectWriter(object.getType());
+        writer.write(object, cOut);
+        cOut.close();
+        return bytes.toByteArray();
+    }
+
+    private RevObject decompress(ObjectId id, byte[] data) throws IOException {
+        LZFInputStream in = new LZFInputStream(new ByteArrayInputStream(data));
+        try {
+            return objectReader.read(id, in);
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * Find commits which should be previsited to avoid resending objects that are already on the
      * receiving end. A commit should be previsited if:
@@ -181,6 +327,70 @@ public final class BinaryPackedObjects {
         return result;
     }
 
+    /**
+     * Ingests a stream in the raw format, copying the stored bytes of the objects if possible.
+     * 
+     * @see #RAW_CONTENT_TYPE
+     */
+    public void ingestRaw(final InputStream in) {
+        ingestRaw(in, DEFAULT_CALLBACK);
+    }
+
+    /**
+     * Ingests a stream in the raw format, copying the stored bytes of the objects if possible.
+     * Only commits are parsed, so the callback is only called for the commits that didn't exist.
+     * 
+     * @see #RAW_CONTENT_TYPE
+     */
+    public <T> T ingestRaw(final InputStream in, Callback<T> callback) {
+        final DataInputStream dataIn = new DataInputStream(in);
+        T state = null;
+        while (true) {
+            try {
+                state = ingestOneRaw(dataIn, callback, state);
+            } catch (EOFException e) {
+                break;
+            } catch (IOException e) {
+                Throwables.propagate(e);
+            }
+        }
+        return state;
+    }
+
+    private <T> T ingestOneRaw(final DataInputStream in, Callback<T> callback, T state)
+            throws IOException {
+        final ObjectId id = readObjectId(in);
+        final TYPE type = TYPE.valueOf(in.readUnsignedByte());
+        final byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+
+        if (rawDatabase != null && !TYPE.COMMIT.equals(type)) {
+            verify(id, type, decompress(id, data));
+            rawDatabase.putCompressed(id, data);
+            return state;
+        }
+        if (database.exists(id)) {
+            return state;
+        }
+        final RevObject revObj = decompress(id, data);
+        verify(id, type, revObj);
+        final T result = TYPE.COMMIT.equals(type) ? callback.callback(revObj, state) : state;
+        database.put(revObj);
+        return result;
+    }
+
+    /**
+     * Checks that an object received in raw form decodes as the type it was sent as and hashes to
+     * the id it was sent under, so that corrupt or forged bytes are never stored.
+     */
+    private static void verify(ObjectId id, TYPE type, RevObject object) {
+        Preconditions.checkState(type.equals(object.getType()),
+                "Object %s was sent as a %s but decodes as a %s", id, type, object.getType());
+        ObjectId actualId = new HashObject().setObject(object).call();
+        Preconditions.checkState(id.equals(actualId), "Object %s was received but hashes to %s", id,
+                actualId);
+    }
+
     private ObjectId readObjectId(final InputStream in) throws IOException {
         byte[] rawBytes = new byte[20];
         int amount = 0;
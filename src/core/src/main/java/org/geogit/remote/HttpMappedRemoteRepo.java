@@ -17,6 +17,13 @@ import java.net.URL;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
@@ -36,7 +43,11 @@ import org.geogit.storage.datastream.DataStreamSerializationFactory;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -49,8 +60,27 @@ import com.google.gson.JsonPrimitive;
  */
 class HttpMappedRemoteRepo extends AbstractMappedRemoteRepo {
 
+    /**
+     * Maximum number of requests in flight at once while prefetching commits, kept below the
+     * number of idle connections the JDK keeps alive per host so that they are all reused
+     */
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
     private URL repositoryURL;
 
+    private boolean batchesSupported = true;
+
+    private final Map<ObjectId, RevObject> prefetchedObjects = Maps.newHashMap();
+
+    private final Map<ObjectId, ImmutableList<ObjectId>> prefetchedAffectedFeatures = Maps
+            .newHashMap();
+
+    /**
+     * The threads prefetching commits during a fetch, created on the first call to
+     * {@link #prefetch(List)} and shut down by {@link #endPrefetch()}
+     */
+    private ExecutorService prefetchExecutor;
+
     /**
      * Constructs a new {@code HttpMappedRemoteRepo}.
      * 
@@ -213,8 +243,11 @@ class HttpMappedRemoteRepo extends AbstractMappedRemoteRepo {
     @Override
     protected FilteredDiffIterator getFilteredChanges(RevCommit commit) {
         // Get affected features
-        ImmutableList<ObjectId> affectedFeatures = HttpUtils.getAffectedFeatures(repositoryURL,
-                commit.getId());
+        ImmutableList<ObjectId> affectedFeatures = prefetchedAffectedFeatures.remove(commit
+                .getId());
+        if (affectedFeatures == null) {
+            affectedFeatures = HttpUtils.getAffectedFeatures(repositoryURL, commit.getId());
+        }
         // Create a list of features I have
         List<ObjectId> tracked = new LinkedList<ObjectId>();
         for (ObjectId id : affectedFeatures) {
@@ -409,9 +442,79 @@ class HttpMappedRemoteRepo extends AbstractMappedRemoteRepo {
      */
     @Override
     protected Optional<RevObject> getObject(ObjectId objectId) {
+        RevObject prefetched = prefetchedObjects.remove(objectId);
+        if (prefetched != null) {
+            return Optional.of(prefetched);
+        }
         return HttpUtils.getNetworkObject(repositoryURL, null, objectId);
     }
 
+    /**
+     * Retrieves the features affected by the given commits in a single request, if the remote
+     * supports it, and the commits themselves with up to {@link #MAX_CONCURRENT_REQUESTS} requests
+     * in flight, so that fetching them is not dominated by the latency of one request per commit.
+     * 
+     * @param commitIds the ids of the next commits to fetch
+     */
+    @Override
+    protected void prefetch(List<ObjectId> commitIds) {
+        prefetchedObjects.clear();
+        prefetchedAffectedFeatures.clear();
+        if (commitIds.isEmpty()) {
+            return;
+        }
+        if (batchesSupported) {
+            Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> affectedFeatures = HttpUtils
+                    .getAffectedFeatures(repositoryURL, commitIds);
+            if (affectedFeatures.isPresent()) {
+                prefetchedAffectedFeatures.putAll(affectedFeatures.get());
+            } else {
+                batchesSupported = false;
+            }
+        }
+
+        if (prefetchExecutor == null) {
+            ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("geogit-remote-fetch-%d").setDaemon(true).build();
+            prefetchExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS,
+                    threadFactory);
+        }
+        try {
+            List<Future<Optional<RevObject>>> objects = Lists.newArrayList();
+            for (final ObjectId commitId : commitIds) {
+                objects.add(prefetchExecutor.submit(new Callable<Optional<RevObject>>() {
+                    @Override
+                    public Optional<RevObject> call() {
+                        return HttpUtils.getNetworkObject(repositoryURL, null, commitId);
+                    }
+                }));
+            }
+            for (int i = 0; i < commitIds.size(); i++) {
+                Optional<RevObject> object = objects.get(i).get();
+                if (object.isPresent()) {
+                    prefetchedObjects.put(commitIds.get(i), object.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Shuts down the prefetching threads and drops what was prefetched but not used.
+     */
+    @Override
+    protected void endPrefetch() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+        prefetchedObjects.clear();
+        prefetchedAffectedFeatures.clear();
+    }
+
     /**
      * Updates the remote ref that matches the given refspec.
      * 
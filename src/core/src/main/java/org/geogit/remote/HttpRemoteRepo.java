@@ -14,8 +14,10 @@ import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -46,9 +48,20 @@ import com.google.gson.JsonPrimitive;
  */
 class HttpRemoteRepo extends AbstractRemoteRepo {
 
+    /**
+     * Number of requests in a row that may fail or bring no commits before a fetch gives up
+     */
+    private static final int MAX_FETCH_ATTEMPTS = 3;
+
     private URL repositoryURL;
 
     private List<ObjectId> fetchedIds;
+
+    /**
+     * Whether the remote accepts packs in the {@link BinaryPackedObjects#RAW_CONTENT_TYPE raw
+     * format}, {@code null} until it's found out
+     */
+    private Boolean rawPacks;
     
     final private DeduplicationService deduplicationService;
 
@@ -190,13 +203,31 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
 
         try {
             traverser.traverse(ref.getObjectId());
-            List<ObjectId> want = new LinkedList<ObjectId>();
-            want.addAll(traverser.commits);
-            Collections.reverse(want);
+            List<ObjectId> wantList = new ArrayList<ObjectId>(traverser.commits);
+            Collections.reverse(wantList);
+            Set<ObjectId> want = new LinkedHashSet<ObjectId>(wantList);
             Set<ObjectId> have = new HashSet<ObjectId>();
             have.addAll(traverser.have);
+            int failedAttempts = 0;
             while (!want.isEmpty()) {
-                fetchMoreData(want, have);
+                final int wanted = want.size();
+                RuntimeException failure = null;
+                try {
+                    fetchMoreData(want, have);
+                } catch (RuntimeException e) {
+                    // every commit is received after the objects it refers to, so the commits
+                    // received so far are a checkpoint to resume the fetch from
+                    failure = e;
+                }
+                if (want.size() < wanted) {
+                    failedAttempts = 0;
+                } else if (++failedAttempts > MAX_FETCH_ATTEMPTS) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    throw new IllegalStateException(
+                            "The remote repository didn't send any of the requested commits");
+                }
             }
         } catch (Exception e) {
             for (ObjectId oid : fetchedIds) {
@@ -247,6 +278,8 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
 
     private void sendPackedObjects(final List<ObjectId> toSend, final Set<ObjectId> roots, Deduplicator deduplicator) {
         Set<ObjectId> sent = new HashSet<ObjectId>();
+        // servers that don't know about the raw format would ingest it as the default one
+        final boolean raw = supportsRawPacks();
         while (!toSend.isEmpty()) {
             try {
                 String expanded = repositoryURL.toString() + "/repo/sendobject";
@@ -254,6 +287,10 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
                         .openConnection();
                 connection.setDoOutput(true);
                 connection.setChunkedStreamingMode(4096);
+                if (raw) {
+                    connection.setRequestProperty("Content-Type",
+                            BinaryPackedObjects.RAW_CONTENT_TYPE);
+                }
 
                 OutputStream out = connection.getOutputStream();
                 BinaryPackedObjects.Callback<Void> callback = new BinaryPackedObjects.Callback<Void>() {
@@ -269,8 +306,14 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
                     }
                 };
                 BinaryPackedObjects packer = new BinaryPackedObjects(
-                        localRepository.getObjectDatabase());
-                packer.write(out, toSend, ImmutableList.copyOf(roots), sent, callback, false, deduplicator);
+                        localRepository.getObjectDatabase()).setCap(0);
+                if (raw) {
+                    packer.writeRaw(out, toSend, ImmutableList.copyOf(roots), sent, callback,
+                            false, deduplicator);
+                } else {
+                    packer.write(out, toSend, ImmutableList.copyOf(roots), sent, callback, false,
+                            deduplicator);
+                }
                 out.flush();
                 out.close();
 
@@ -282,6 +325,40 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         }
     }
 
+    /**
+     * Finds out whether the remote knows about the raw pack format, asking it for an empty pack in
+     * that format unless a previous fetch already did. Servers that don't know about it answer in
+     * the default format.
+     */
+    private boolean supportsRawPacks() {
+        if (rawPacks == null) {
+            final JsonObject message = createFetchMessage(ImmutableSet.<ObjectId> of(),
+                    ImmutableSet.<ObjectId> of());
+            try {
+                URL resourceURL = new URL(repositoryURL.toString() + "/repo/batchobjects");
+                HttpURLConnection connection = (HttpURLConnection) resourceURL.openConnection();
+                connection.setDoOutput(true);
+                connection.setDoInput(true);
+                Writer writer = new OutputStreamWriter(connection.getOutputStream());
+                new Gson().toJson(message, writer);
+                writer.flush();
+                writer.close();
+
+                InputStream in = connection.getInputStream();
+                rawPacks = Boolean.valueOf(isRawPack(connection));
+                HttpUtils.consumeAndCloseStream(in);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        return rawPacks.booleanValue();
+    }
+
+    private static boolean isRawPack(HttpURLConnection connection) {
+        final String contentType = connection.getContentType();
+        return contentType != null && contentType.startsWith(BinaryPackedObjects.RAW_CONTENT_TYPE);
+    }
+
     /**
      * Delete a {@link Ref} from the remote repository.
      * 
@@ -310,7 +387,7 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
      * @param want a list of ObjectIds that need to be fetched
      * @param have a list of ObjectIds that are in common with the remote repository
      */
-    private void fetchMoreData(final List<ObjectId> want, final Set<ObjectId> have) {
+    private void fetchMoreData(final Set<ObjectId> want, final Set<ObjectId> have) {
         final JsonObject message = createFetchMessage(want, have);
         final URL resourceURL;
         try {
@@ -355,10 +432,16 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
                 return null;
             }
         };
-        unpacker.ingest(in, callback);
+        // servers that don't know about the raw format ignore the request for it
+        rawPacks = Boolean.valueOf(isRawPack(connection));
+        if (rawPacks.booleanValue()) {
+            unpacker.ingestRaw(in, callback);
+        } else {
+            unpacker.ingest(in, callback);
+        }
     }
 
-    private JsonObject createFetchMessage(List<ObjectId> want, Set<ObjectId> have) {
+    private JsonObject createFetchMessage(Set<ObjectId> want, Set<ObjectId> have) {
         JsonObject message = new JsonObject();
         JsonArray wantArray = new JsonArray();
         for (ObjectId id : want) {
@@ -370,6 +453,10 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
         }
         message.add("want", wantArray);
         message.add("have", haveArray);
+        message.addProperty("raw", true);
+        // ask for all the commits in a single pack, servers that don't know about it send them
+        // in batches
+        message.addProperty("cap", 0);
         return message;
     }
 
@@ -378,7 +465,7 @@ class HttpRemoteRepo extends AbstractRemoteRepo {
      */
     @Override
     public RepositoryWrapper getRemoteWrapper() {
-        return new HttpRepositoryWrapper(repositoryURL);
+        return new HttpRepositoryWrapper(repositoryURL, localRepository);
     }
 
     /**
@@ -5,26 +5,66 @@
 package org.geogit.remote;
 
 import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 import org.geogit.api.ObjectId;
+import org.geogit.repository.Repository;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Provides an interface to make basic queries to a remote repository over http.
+ * <p>
+ * Answers are cached for the life of the wrapper, which is meant to be used for a single
+ * traversal, and are asked for in batches when the remote supports it: parents are asked for along
+ * with those of the next ancestors, and, if a local repository is given, the existence of a commit
+ * along with that of its local first parent history, which is what a push traversal asks for next.
  */
 class HttpRepositoryWrapper implements RepositoryWrapper {
 
+    /**
+     * Maximum number of commits whose parents or existence are asked for in a single request
+     */
+    private static final int BATCH_SIZE = 1000;
+
     private URL repositoryURL;
 
+    @Nullable
+    private Repository localRepository;
+
+    private boolean batchesSupported = true;
+
+    private Map<ObjectId, ImmutableList<ObjectId>> parents = Maps.newHashMap();
+
+    private Map<ObjectId, Boolean> exists = Maps.newHashMap();
+
     /**
      * Constructs a new {@code HttpRepositoryWrapper} with the provided URL.
      * 
      * @param repositoryURL the URL of the repository
      */
     public HttpRepositoryWrapper(final URL repositoryURL) {
+        this(repositoryURL, null);
+    }
+
+    /**
+     * Constructs a new {@code HttpRepositoryWrapper} with the provided URL.
+     * 
+     * @param repositoryURL the URL of the repository
+     * @param localRepository the local repository whose history is used to guess what objects
+     *        will be looked for next, may be {@code null}
+     */
+    public HttpRepositoryWrapper(final URL repositoryURL, @Nullable Repository localRepository) {
         this.repositoryURL = repositoryURL;
+        this.localRepository = localRepository;
     }
 
     /**
@@ -35,7 +75,39 @@ class HttpRepositoryWrapper implements RepositoryWrapper {
      */
     @Override
     public boolean objectExists(ObjectId objectId) {
-        return objectId.isNull() || HttpUtils.networkObjectExists(repositoryURL, objectId);
+        if (objectId.isNull()) {
+            return true;
+        }
+        Boolean cached = exists.get(objectId);
+        if (cached == null) {
+            if (batchesSupported) {
+                List<ObjectId> batch = Lists.newArrayList(objectId);
+                if (localRepository != null) {
+                    ObjectId next = objectId;
+                    while (batch.size() < BATCH_SIZE) {
+                        ImmutableList<ObjectId> localParents = localRepository
+                                .getGraphDatabase().getParents(next);
+                        if (localParents.isEmpty() || exists.containsKey(localParents.get(0))) {
+                            break;
+                        }
+                        next = localParents.get(0);
+                        batch.add(next);
+                    }
+                }
+                Optional<ImmutableSet<ObjectId>> existing = HttpUtils.networkObjectsExist(
+                        repositoryURL, batch);
+                if (existing.isPresent()) {
+                    for (ObjectId id : batch) {
+                        exists.put(id, Boolean.valueOf(existing.get().contains(id)));
+                    }
+                    return existing.get().contains(objectId);
+                }
+                batchesSupported = false;
+            }
+            cached = Boolean.valueOf(HttpUtils.networkObjectExists(repositoryURL, objectId));
+            exists.put(objectId, cached);
+        }
+        return cached.booleanValue();
     }
 
     /**
@@ -46,7 +118,33 @@ class HttpRepositoryWrapper implements RepositoryWrapper {
      */
     @Override
     public ImmutableList<ObjectId> getParents(ObjectId commitId) {
-        return HttpUtils.getParents(repositoryURL, commitId);
+        ImmutableList<ObjectId> cached = parents.get(commitId);
+        if (cached == null) {
+            if (batchesSupported) {
+                Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> batch = HttpUtils
+                        .getParents(repositoryURL, ImmutableList.of(commitId), BATCH_SIZE);
+                if (batch.isPresent()) {
+                    for (Map.Entry<ObjectId, ImmutableList<ObjectId>> entry : batch.get()
+                            .entrySet()) {
+                        parents.put(entry.getKey(), entry.getValue());
+                        // only commits the remote has are returned, other than the requested one
+                        if (!entry.getKey().equals(commitId)) {
+                            exists.put(entry.getKey(), Boolean.TRUE);
+                        }
+                    }
+                    cached = batch.get().get(commitId);
+                    if (cached == null) {
+                        cached = ImmutableList.of();
+                        parents.put(commitId, cached);
+                    }
+                    return cached;
+                }
+                batchesSupported = false;
+            }
+            cached = HttpUtils.getParents(repositoryURL, commitId);
+            parents.put(commitId, cached);
+        }
+        return cached;
     }
 
     /**
@@ -8,9 +8,16 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.xml.stream.XMLInputFactory;
@@ -24,12 +31,21 @@ import org.geogit.api.SymRef;
 import org.geogit.repository.Repository;
 import org.geogit.storage.datastream.ObjectReader;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * Utility functions for performing common communications and operations with http remotes.
@@ -71,6 +87,11 @@ class HttpUtils {
 
     /**
      * Consumes the error stream of the provided connection and then closes it.
+     * <p>
+     * The underlying socket is only closed if the error stream can't be consumed. Otherwise it's
+     * left to the JDK's keep-alive cache, so that subsequent requests to the same remote reuse it
+     * instead of paying for a new TCP (and TLS) handshake each. The cache keeps up to
+     * {@code http.maxConnections} idle connections per host, 5 by default.
      * 
      * @param connection the connection to close
      */
@@ -82,9 +103,8 @@ class HttpUtils {
             InputStream es = ((HttpURLConnection) connection).getErrorStream();
             consumeAndCloseStream(es);
         } catch (IOException ex) {
-            throw Throwables.propagate(ex);
-        } finally {
             connection.disconnect();
+            throw Throwables.propagate(ex);
         }
     }
 
@@ -211,6 +231,43 @@ class HttpUtils {
         return exists;
     }
 
+    /**
+     * Determines which of the given objects exist in the remote repository, in a single request.
+     * 
+     * @param repositoryURL the URL of the repository
+     * @param objectIds the ids to check for
+     * @return the ids of the objects that existed, or {@link Optional#absent()} if the remote
+     *         can't check many objects at once
+     */
+    public static Optional<ImmutableSet<ObjectId>> networkObjectsExist(URL repositoryURL,
+            Collection<ObjectId> objectIds) {
+        final String internalIp;
+        try {
+            internalIp = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw Throwables.propagate(e);
+        }
+        JsonObject message = new JsonObject();
+        message.add("oids", toJsonArray(objectIds));
+        Optional<List<String>> lines = postForLines(repositoryURL, "/repo/exists?internalIp="
+                + internalIp, message);
+        if (!lines.isPresent()) {
+            return Optional.absent();
+        }
+        Preconditions.checkState(lines.get().size() == objectIds.size(),
+                "networkObjectsExist returned %s answers for %s objects", lines.get().size(),
+                objectIds.size());
+        ImmutableSet.Builder<ObjectId> existing = ImmutableSet.builder();
+        Iterator<String> answers = lines.get().iterator();
+        for (ObjectId id : objectIds) {
+            String answer = answers.next();
+            if (answer.length() > 0 && answer.charAt(0) == '1') {
+                existing.add(id);
+            }
+        }
+        return Optional.of(existing.build());
+    }
+
     /**
      * Updates the ref on the remote repository that matches the provided refspec to the new value.
      * 
@@ -269,7 +326,7 @@ class HttpUtils {
 
             } finally {
                 reader.close();
-                inputStream.close();
+                consumeAndCloseStream(inputStream);
             }
         } catch (Exception e) {
             Throwables.propagate(e);
@@ -366,6 +423,29 @@ class HttpUtils {
         return listBuilder.build();
     }
 
+    /**
+     * Gets the parents of the specified commits, and of as many of their ancestors as needed to
+     * reach {@code limit} commits, from the remote repository in a single request.
+     * 
+     * @param repositoryURL the URL of the repository
+     * @param commits the ids of the commits whose parents to retrieve
+     * @param limit the number of commits, including ancestors, to retrieve the parents of
+     * @return the parents of each requested commit and of the returned ancestors, which are known
+     *         to exist in the remote repository, or {@link Optional#absent()} if the remote can't
+     *         return the parents of many commits at once
+     */
+    public static Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> getParents(
+            URL repositoryURL, Collection<ObjectId> commits, int limit) {
+        JsonObject message = new JsonObject();
+        message.add("commitIds", toJsonArray(commits));
+        message.add("limit", new JsonPrimitive(limit));
+        Optional<List<String>> lines = postForLines(repositoryURL, "/repo/getparents", message);
+        if (!lines.isPresent()) {
+            return Optional.absent();
+        }
+        return Optional.of(parseIdLists(lines.get()));
+    }
+
     /**
      * Retrieves the remote ref that matches the provided refspec.
      * 
@@ -418,7 +498,7 @@ class HttpUtils {
 
             } finally {
                 reader.close();
-                inputStream.close();
+                consumeAndCloseStream(inputStream);
             }
         } catch (Exception e) {
             Throwables.propagate(e);
@@ -469,6 +549,27 @@ class HttpUtils {
         return listBuilder.build();
     }
 
+    /**
+     * Retrieves the features that were modified or deleted by each of the given commits, in a
+     * single request.
+     * 
+     * @param repositoryURL the URL of the repository
+     * @param commits the ids of the commits to check
+     * @return the features affected by each commit, or {@link Optional#absent()} if the remote
+     *         can't check many commits at once
+     */
+    public static Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> getAffectedFeatures(
+            URL repositoryURL, Collection<ObjectId> commits) {
+        JsonObject message = new JsonObject();
+        message.add("commitIds", toJsonArray(commits));
+        Optional<List<String>> lines = postForLines(repositoryURL, "/repo/affectedfeatures",
+                message);
+        if (!lines.isPresent()) {
+            return Optional.absent();
+        }
+        return Optional.of(parseIdLists(lines.get()));
+    }
+
     /**
      * Begins a push operation to the target repository.
      * 
@@ -520,7 +621,7 @@ class HttpUtils {
             connection.setUseCaches(false);
             connection.setDoOutput(true);
 
-            connection.getInputStream();
+            HttpUtils.consumeAndCloseStream(connection.getInputStream());
             // TODO: throw an exception if the remote ref was not updated.
 
         } catch (Exception e) {
@@ -529,4 +630,85 @@ class HttpUtils {
             HttpUtils.consumeErrStreamAndCloseConnection(connection);
         }
     }
+
+    private static JsonArray toJsonArray(Collection<ObjectId> ids) {
+        JsonArray array = new JsonArray();
+        for (ObjectId id : ids) {
+            array.add(new JsonPrimitive(id.toString()));
+        }
+        return array;
+    }
+
+    /**
+     * Parses lines made of an id followed by a possibly empty list of ids, separated by spaces.
+     */
+    private static ImmutableMap<ObjectId, ImmutableList<ObjectId>> parseIdLists(
+            List<String> lines) {
+        Map<ObjectId, ImmutableList<ObjectId>> idLists = Maps.newHashMap();
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] tokens = line.split(" ");
+            Builder<ObjectId> ids = new ImmutableList.Builder<ObjectId>();
+            for (int i = 1; i < tokens.length; i++) {
+                ids.add(ObjectId.valueOf(tokens[i]));
+            }
+            idLists.put(ObjectId.valueOf(tokens[0]), ids.build());
+        }
+        return ImmutableMap.copyOf(idLists);
+    }
+
+    /**
+     * POSTs a JSON message to a resource of the remote repository and reads the lines of its
+     * response.
+     * 
+     * @param repositoryURL the URL of the repository
+     * @param resource the path of the resource, relative to the repository URL
+     * @param message the message to send
+     * @return the lines of the response, or {@link Optional#absent()} if the resource doesn't
+     *         accept POST requests, as is the case for remotes that predate batched requests
+     */
+    private static Optional<List<String>> postForLines(URL repositoryURL, String resource,
+            JsonObject message) {
+        HttpURLConnection connection = null;
+        try {
+            String expanded = repositoryURL.toString() + resource;
+            connection = (HttpURLConnection) new URL(expanded).openConnection();
+            connection.setRequestMethod("POST");
+
+            connection.setUseCaches(false);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+
+            Writer writer = new OutputStreamWriter(connection.getOutputStream(), Charsets.UTF_8);
+            try {
+                new Gson().toJson(message, writer);
+            } finally {
+                writer.close();
+            }
+
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_BAD_METHOD) {
+                return Optional.absent();
+            }
+
+            // Get Response
+            List<String> lines = Lists.newArrayList();
+            InputStream is = connection.getInputStream();
+            try {
+                BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charsets.UTF_8));
+                String line;
+                while ((line = rd.readLine()) != null) {
+                    lines.add(line);
+                }
+            } finally {
+                consumeAndCloseStream(is);
+            }
+            return Optional.of(lines);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            consumeErrStreamAndCloseConnection(connection);
+        }
+    }
 }
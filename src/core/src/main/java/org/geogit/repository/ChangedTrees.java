@@ -0,0 +1,197 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.repository;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.geogit.api.CommandLocator;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.api.RevTree;
+import org.geogit.api.RevTreeBuilder;
+import org.geogit.api.plumbing.FindOrCreateSubtree;
+import org.geogit.api.plumbing.FindTreeChild;
+import org.geogit.storage.StagingDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Keeps the builders of the trees changed by a batch of changes to a root tree, and writes them
+ * back bottom-up in a single pass once all the changes are applied, so that every changed tree
+ * and every one of its ancestors is built and stored only once, instead of writing back the whole
+ * ancestor chain of each changed tree.
+ *
+ * @see Index#stage
+ * @see WorkingTree#batch()
+ */
+class ChangedTrees {
+
+    /**
+     * Orders tree paths from the deepest to the shallowest, the root tree being the last one
+     */
+    private static final Comparator<String> DEEPEST_FIRST = new Comparator<String>() {
+        @Override
+        public int compare(String p1, String p2) {
+            return depth(p2) - depth(p1);
+        }
+
+        private int depth(String path) {
+            if (path.isEmpty()) {
+                return 0;
+            }
+            int depth = 1;
+            for (int i = 0; i < path.length(); i++) {
+                if (path.charAt(i) == NodeRef.PATH_SEPARATOR) {
+                    depth++;
+                }
+            }
+            return depth;
+        }
+    };
+
+    private final CommandLocator commandLocator;
+
+    private final StagingDatabase database;
+
+    private final RevTree root;
+
+    private final Map<String, RevTreeBuilder> builders = Maps.newHashMap();
+
+    private final Map<String, ObjectId> metadataIds = Maps.newHashMap();
+
+    private final Set<String> removedTrees = Sets.newHashSet();
+
+    /**
+     * @param commandLocator the command locator to look up the trees with
+     * @param database the database to read the trees from and write them to
+     * @param root the root tree the changes are applied to
+     */
+    ChangedTrees(CommandLocator commandLocator, StagingDatabase database, RevTree root) {
+        this.commandLocator = commandLocator;
+        this.database = database;
+        this.root = root;
+    }
+
+    /**
+     * @return the root tree the changes are applied to
+     */
+    public RevTree getRoot() {
+        return root;
+    }
+
+    /**
+     * @return {@code true} if no tree has been changed
+     */
+    public boolean isEmpty() {
+        return builders.isEmpty();
+    }
+
+    /**
+     * Returns the builder of the tree at the given path, starting from the tree's contents in the
+     * root tree, or from an empty tree if it doesn't exist yet.
+     */
+    public RevTreeBuilder get(final String treePath) {
+        RevTreeBuilder builder = builders.get(treePath);
+        if (builder == null) {
+            if (NodeRef.ROOT.equals(treePath)) {
+                builder = root.builder(database);
+            } else {
+                Optional<NodeRef> treeRef = commandLocator.command(FindTreeChild.class)
+                        .setIndex(true).setParent(root).setChildPath(treePath).call();
+                if (treeRef.isPresent() && !metadataIds.containsKey(treePath)) {
+                    metadataIds.put(treePath, treeRef.get().getMetadataId());
+                }
+                builder = commandLocator.command(FindOrCreateSubtree.class)
+                        .setParent(Suppliers.ofInstance(Optional.of(root))).setIndex(true)
+                        .setChildPath(treePath).call().builder(database);
+            }
+            builders.put(treePath, builder);
+        }
+        return builder;
+    }
+
+    /**
+     * Sets the default metadata id of the tree at the given path.
+     */
+    public void setMetadataId(final String treePath, final ObjectId metadataId) {
+        metadataIds.put(treePath, metadataId);
+    }
+
+    /**
+     * Records that the tree at the given path has been removed from its parent, so that neither
+     * it nor any of its subtrees is written back.
+     */
+    public void removed(final String treePath) {
+        removedTrees.add(treePath);
+    }
+
+    /**
+     * @return whether the tree at the given path or any of its ancestors has been removed
+     */
+    public boolean isRemoved(final String treePath) {
+        if (removedTrees.isEmpty()) {
+            return false;
+        }
+        for (String path = treePath; path != null; path = NodeRef.parentPath(path)) {
+            if (removedTrees.contains(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds and stores all the changed trees bottom-up, deepest first, putting each one in the
+     * builder of its parent tree.
+     *
+     * @return the id of the new root tree
+     */
+    public ObjectId write() {
+        get(NodeRef.ROOT);
+        final PriorityQueue<String> pending = new PriorityQueue<String>(builders.size(),
+                DEEPEST_FIRST);
+        pending.addAll(builders.keySet());
+
+        ObjectId newRootTree = root.getId();
+        while (!pending.isEmpty()) {
+            final String treePath = pending.poll();
+            if (isRemoved(treePath)) {
+                continue;
+            }
+            final RevTree tree = builders.get(treePath).build();
+            database.put(tree);
+            if (NodeRef.ROOT.equals(treePath)) {
+                newRootTree = tree.getId();
+                continue;
+            }
+            final String parentPath = NodeRef.parentPath(treePath);
+            if (!builders.containsKey(parentPath)) {
+                pending.add(parentPath);
+            }
+            RevTreeBuilder parentTree = get(parentPath);
+
+            ObjectId metadataId = metadataIds.get(treePath);
+            Envelope bounds = null;
+            if (metadataId == null) {
+                metadataId = ObjectId.NULL;
+            } else if (!metadataId.isNull()) {
+                // only include bounds for trees with a default feature type
+                bounds = SpatialOps.boundsOf(tree);
+            }
+            parentTree.put(Node.create(NodeRef.nodeFromPath(treePath), tree.getId(), metadataId,
+                    TYPE.TREE, bounds));
+        }
+        return newRootTree;
+    }
+}
@@ -6,88 +6,240 @@ package org.geogit.repository;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInput;
 import java.io.DataInputStream;
-import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.geogit.api.Node;
-import org.geogit.storage.NodeStorageOrder;
+import org.geogit.storage.NodePathStorageOrder;
 import org.geogit.storage.datastream.FormatCommon;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.Lists;
-import com.google.common.collect.PeekingIterator;
 import com.google.common.io.Closeables;
-
+import com.google.common.primitives.UnsignedLongs;
+
+/**
+ * An external sort of {@link Node}s in {@link NodePathStorageOrder storage order}, able to sort
+ * more nodes than fit in memory.
+ * <p>
+ * Nodes are added to a partition that keeps them serialized in a single byte buffer along with
+ * their precomputed storage order hash, so no {@code Node} objects are retained. Full partitions
+ * are sorted on the hash and spilled, compressed, to a temporary file in the background. The
+ * {@link #nodes() sorted nodes} are then obtained by a k-way merge of all the spilled partitions
+ * and the last in-memory one, driven by a priority queue.
+ * <p>
+ * Nodes whose names hash the same are returned in the order they were added.
+ */
 class NodeIndex implements Closeable {
 
     private static final int PARTITION_SIZE = 500 * 1000;
 
+    /**
+     * Max size of the serialized nodes held by a partition before it's spilled to disk, whichever
+     * limit is reached first
+     */
+    private static final int PARTITION_MAX_BYTES = 64 * 1024 * 1024;
+
+    private static final NodePathStorageOrder ORDER = new NodePathStorageOrder();
+
     private static final class IndexPartition {
 
-        List<Node> cache = new ArrayList<Node>(PARTITION_SIZE);
+        private final int maxSize;
+
+        private long[] hashes;
+
+        private int[] offsets;
+
+        private int size;
+
+        private final FastByteArrayOutputStream buf = new FastByteArrayOutputStream(1024 * 1024);
+
+        private final DataOutputStream out = new DataOutputStream(buf);
+
+        IndexPartition(final int maxSize) {
+            this.maxSize = maxSize;
+            final int initialCapacity = Math.min(maxSize, 16 * 1024);
+            this.hashes = new long[initialCapacity];
+            this.offsets = new int[initialCapacity];
+        }
 
         public void add(Node node) {
-            cache.add(node);
+            if (size == hashes.length) {
+                final int capacity = Math.min(maxSize, 2 * size);
+                hashes = Arrays.copyOf(hashes, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+            }
+            hashes[size] = ORDER.hash(node.getName());
+            offsets[size] = buf.size();
+            try {
+                FormatCommon.writeNode(node, out);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            size++;
         }
 
-        public List<Node> getSortedNodes() {
-            Collections.sort(cache, new NodeStorageOrder());
-            return cache;
+        public boolean isFull() {
+            return size == maxSize || buf.size() >= PARTITION_MAX_BYTES;
         }
 
+        /**
+         * @return the positions of the nodes in this partition, sorted by hash and then by
+         *         insertion order
+         */
+        public int[] sortedPositions() {
+            int[] positions = new int[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = i;
+            }
+            sort(positions, hashes, 0, size - 1);
+            return positions;
+        }
+
+        /**
+         * @return an iterator over the nodes in this partition, in storage order
+         */
+        public NodeRun sortedRun() {
+            final int[] positions = sortedPositions();
+            final byte[] bytes = buf.bytes();
+            final ByteArrayInputStream in = new ByteArrayInputStream(bytes, 0, buf.size());
+            final DataInput data = new DataInputStream(in);
+            return new NodeRun() {
+
+                private int next = 0;
+
+                @Override
+                protected boolean advance() throws IOException {
+                    if (next == positions.length) {
+                        return false;
+                    }
+                    final int position = positions[next++];
+                    in.reset();
+                    in.skip(offsets[position]);
+                    hash = hashes[position];
+                    node = FormatCommon.readNode(data);
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Writes out the sorted nodes to a compressed temporary file, each node preceded by its
+         * hash so it doesn't need to be computed again while merging
+         */
         public File flush() {
-            List<Node> cache = getSortedNodes();
+            final int[] positions = sortedPositions();
             final File file;
             try {
                 file = File.createTempFile("geogitNodes", ".idx");
                 file.deleteOnExit();
-                // System.err.println("Created index file " + file.getAbsolutePath());
-                FastByteArrayOutputStream buf = new FastByteArrayOutputStream();
-                OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(file),
-                        1024 * 1024);
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(
+                        new DeflaterOutputStream(new FileOutputStream(file), deflater, 64 * 1024),
+                        1024 * 1024));
                 try {
-                    for (Node node : cache) {
-                        buf.reset();
-                        DataOutput out = new DataOutputStream(buf);
-                        try {
-                            FormatCommon.writeNode(node, out);
-                        } catch (IOException e) {
-                            throw Throwables.propagate(e);
-                        }
-                        int size = buf.size();
-                        fileOut.write(buf.bytes(), 0, size);
+                    final byte[] bytes = buf.bytes();
+                    for (int i = 0; i < size; i++) {
+                        final int position = positions[i];
+                        final int offset = offsets[position];
+                        final int end = position == size - 1 ? buf.size() : offsets[position + 1];
+                        fileOut.writeLong(hashes[position]);
+                        fileOut.write(bytes, offset, end - offset);
                     }
                 } finally {
-                    cache.clear();
                     fileOut.close();
+                    deflater.end();
+                    release();
                 }
             } catch (Exception e) {
                 throw Throwables.propagate(e);
             }
             return file;
         }
+
+        private void release() {
+            hashes = null;
+            offsets = null;
+            buf.release();
+        }
     }
 
+    /**
+     * Sorts {@code positions[from..to]} by {@code hashes[position]} as unsigned longs, ties broken
+     * by position, using a quick sort that falls back to insertion sort for small ranges.
+     */
+    private static void sort(final int[] positions, final long[] hashes, int from, int to) {
+        while (to - from > 16) {
+            final int mid = (from + to) >>> 1;
+            final int pivot = positions[mid];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (compare(positions[i], pivot, hashes) < 0) {
+                    i++;
+                }
+                while (compare(positions[j], pivot, hashes) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = positions[i];
+                    positions[i] = positions[j];
+                    positions[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse on the smaller half to bound the stack depth
+            if (j - from < to - i) {
+                sort(positions, hashes, from, j);
+                from = i;
+            } else {
+                sort(positions, hashes, i, to);
+                to = j;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            final int p = positions[i];
+            int j = i - 1;
+            while (j >= from && compare(positions[j], p, hashes) > 0) {
+                positions[j + 1] = positions[j];
+                j--;
+            }
+            positions[j + 1] = p;
+        }
+    }
+
+    private static int compare(final int p1, final int p2, final long[] hashes) {
+        int c = UnsignedLongs.compare(hashes[p1], hashes[p2]);
+        return c != 0 ? c : (p1 < p2 ? -1 : (p1 == p2 ? 0 : 1));
+    }
+
+    private final int partitionSize;
+
     private IndexPartition currPartition;
 
     private List<Future<File>> indexFiles = new LinkedList<Future<File>>();
@@ -97,8 +249,17 @@ class NodeIndex implements Closeable {
     private ExecutorService executorService;
 
     public NodeIndex(ExecutorService executorService) {
+        this(executorService, PARTITION_SIZE);
+    }
+
+    /**
+     * @param partitionSize max number of nodes held in memory before spilling them to disk
+     */
+    NodeIndex(ExecutorService executorService, final int partitionSize) {
+        Preconditions.checkArgument(partitionSize > 0);
         this.executorService = executorService;
-        this.currPartition = new IndexPartition();
+        this.partitionSize = partitionSize;
+        this.currPartition = new IndexPartition(partitionSize);
     }
 
     public void close() {
@@ -122,9 +283,9 @@ class NodeIndex implements Closeable {
 
     public synchronized void add(Node node) {
         currPartition.add(node);
-        if (currPartition.cache.size() == PARTITION_SIZE) {
+        if (currPartition.isFull()) {
             flush(currPartition);
-            currPartition = new IndexPartition();
+            currPartition = new IndexPartition(partitionSize);
         }
     }
 
@@ -150,101 +311,150 @@ class NodeIndex implements Closeable {
             throw Throwables.propagate(Throwables.getRootCause(e));
         }
 
-        List<Node> unflushed = Lists.newArrayList(currPartition.getSortedNodes());
-        currPartition.cache.clear();
-        return new CompositeNodeIterator(files, unflushed);
+        List<NodeRun> runs = new ArrayList<NodeRun>(files.size() + 1);
+        for (File f : files) {
+            runs.add(new IndexIterator(f));
+        }
+        if (currPartition.size > 0) {
+            runs.add(currPartition.sortedRun());
+        }
+        currPartition = new IndexPartition(partitionSize);
+        CompositeNodeIterator iterator = new CompositeNodeIterator(runs);
+        openIterators.add(iterator);
+        return iterator;
     }
 
-    private static class CompositeNodeIterator extends AbstractIterator<Node> {
+    /**
+     * A sorted sequence of nodes, exposing the hash of the current node so that runs can be merged
+     * without recomputing it
+     */
+    private static abstract class NodeRun implements Closeable {
 
-        private NodeStorageOrder order = new NodeStorageOrder();
+        protected long hash;
 
-        private ArrayList<PeekingIterator<Node>> iterators;
+        protected Node node;
 
-        private List<IndexIterator> openIterators;
+        /**
+         * Set when added to the merge queue, breaks ties between equal hashes in different runs
+         */
+        int index;
 
-        public CompositeNodeIterator(List<File> files, List<Node> unflushedAndSorted) {
+        /**
+         * Reads the next node and its hash into {@link #node} and {@link #hash}
+         *
+         * @return {@code false} if there are no more nodes
+         */
+        protected abstract boolean advance() throws IOException;
 
-            openIterators = new ArrayList<IndexIterator>();
-            iterators = new ArrayList<PeekingIterator<Node>>();
-            for (File f : files) {
-                IndexIterator iterator = new IndexIterator(f);
-                openIterators.add(iterator);
-                iterators.add(Iterators.peekingIterator(iterator));
-            }
-            if (!unflushedAndSorted.isEmpty()) {
-                iterators.add(Iterators.peekingIterator(unflushedAndSorted.iterator()));
+        @Override
+        public void close() {
+            // nothing to do by default
+        }
+    }
+
+    /**
+     * Merges the sorted runs of nodes keeping a priority queue of the runs ordered by their
+     * current node, so each node is found in {@code O(log k)} for {@code k} runs.
+     */
+    private static class CompositeNodeIterator extends AbstractIterator<Node> {
+
+        private final List<NodeRun> runs;
+
+        private final PriorityQueue<NodeRun> queue;
+
+        public CompositeNodeIterator(List<NodeRun> runs) {
+            this.runs = runs;
+            this.queue = new PriorityQueue<NodeRun>(Math.max(1, runs.size()),
+                    new Comparator<NodeRun>() {
+                        @Override
+                        public int compare(NodeRun r1, NodeRun r2) {
+                            int c = UnsignedLongs.compare(r1.hash, r2.hash);
+                            return c != 0 ? c : (r1.index < r2.index ? -1
+                                    : (r1.index == r2.index ? 0 : 1));
+                        }
+                    });
+            for (int i = 0; i < runs.size(); i++) {
+                NodeRun run = runs.get(i);
+                run.index = i;
+                if (advance(run)) {
+                    queue.add(run);
+                }
             }
         }
 
         public void close() {
-            for (IndexIterator it : openIterators) {
-                it.close();
+            for (NodeRun run : runs) {
+                run.close();
             }
-            openIterators.clear();
+            runs.clear();
+            queue.clear();
         }
 
         @Override
         protected Node computeNext() {
-            int idx = -1;
-            Node lowest = null;
-            for (int i = 0; i < iterators.size(); i++) {
-                PeekingIterator<Node> it = iterators.get(i);
-                if (!it.hasNext()) {
-                    continue;
-                }
-                Node peek = it.peek();
-                if (lowest == null || peek == order.min(lowest, peek)) {
-                    lowest = peek;
-                    idx = i;
-                }
+            NodeRun lowest = queue.poll();
+            if (lowest == null) {
+                close();
+                return endOfData();
+            }
+            Node next = lowest.node;
+            if (advance(lowest)) {
+                queue.add(lowest);
             }
-            return idx == -1 ? endOfData() : iterators.get(idx).next();
+            return next;
         }
 
+        private boolean advance(NodeRun run) {
+            try {
+                if (run.advance()) {
+                    return true;
+                }
+            } catch (IOException e) {
+                run.close();
+                throw Throwables.propagate(e);
+            }
+            run.close();
+            run.node = null;
+            return false;
+        }
     }
 
-    private static class IndexIterator extends AbstractIterator<Node> {
+    private static class IndexIterator extends NodeRun {
 
         private DataInputStream in;
 
         public IndexIterator(File file) {
             Preconditions.checkArgument(file.exists(), "file %s does not exist", file);
             try {
-                if (this.in == null) {
-                    this.in = new DataInputStream(new BufferedInputStream(
-                            new FileInputStream(file), 16 * 1024));
-                }
-
+                InputStream fileIn = new InflaterInputStream(new BufferedInputStream(
+                        new FileInputStream(file), 64 * 1024));
+                this.in = new DataInputStream(new BufferedInputStream(fileIn, 64 * 1024));
             } catch (IOException e) {
                 throw Throwables.propagate(e);
             }
         }
 
+        @Override
         public void close() {
             Closeables.closeQuietly(in);
         }
 
         @Override
-        protected Node computeNext() {
+        protected boolean advance() throws IOException {
             try {
-                Node node = FormatCommon.readNode(in);
-                return node;
+                hash = in.readLong();
             } catch (EOFException eof) {
-                Closeables.closeQuietly(in);
-                return endOfData();
-            } catch (Exception e) {
-                Closeables.closeQuietly(in);
-                throw Throwables.propagate(e);
+                return false;
             }
+            node = FormatCommon.readNode(in);
+            return true;
         }
-
     }
 
     private static class FastByteArrayOutputStream extends ByteArrayOutputStream {
 
-        public FastByteArrayOutputStream() {
-            super(16 * 1024);
+        public FastByteArrayOutputStream(int initialSize) {
+            super(initialSize);
         }
 
         public int size() {
@@ -254,6 +464,11 @@ class NodeIndex implements Closeable {
         public byte[] bytes() {
             return super.buf;
         }
+
+        public void release() {
+            super.buf = new byte[0];
+            super.count = 0;
+        }
     }
 
 }
@@ -5,12 +5,15 @@
 package org.geogit.repository;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 import org.geogit.api.Bucket;
 import org.geogit.api.Node;
 import org.geogit.api.ObjectId;
@@ -55,8 +58,21 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
      */
     public static Iterator<RevObject> range(List<ObjectId> start, List<ObjectId> base,
             ObjectDatabase database, boolean traverseCommits, Deduplicator deduplicator) {
+        return range(start, base, database, traverseCommits, deduplicator, true);
+    }
+
+    /**
+     * Like {@link #range(List, List, ObjectDatabase, boolean, Deduplicator)}, but if the
+     * parseLeaves flag is not set, features and feature types are not read from the database and
+     * are returned as {@link Unparsed} objects instead. Since they reference no other objects, only
+     * commits and trees need to be parsed to find the objects to visit.
+     */
+    public static Iterator<RevObject> range(List<ObjectId> start, List<ObjectId> base,
+            ObjectDatabase database, boolean traverseCommits, Deduplicator deduplicator,
+            boolean parseLeaves) {
         return new PostOrderIterator(new ArrayList<ObjectId>(start), database, //
-                uniqueWithDeduplicator(blacklist((traverseCommits ? ALL_SUCCESSORS : COMMIT_SUCCESSORS), base), deduplicator));
+                uniqueWithDeduplicator(blacklist((traverseCommits ? ALL_SUCCESSORS : COMMIT_SUCCESSORS), base), deduplicator),
+                parseLeaves);
     }
 
     /**
@@ -86,6 +102,20 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
      */
     private List<List<ObjectId>> toVisit;
 
+    /**
+     * The objects whose successors are being visited, one per level of the {@code toVisit} stack
+     * but the top one, so that they don't need to be fetched again from the database when they are
+     * visited themselves.
+     */
+    private List<RevObject> expanded;
+
+    /**
+     * The type of the enqueued features and feature types, which are not read from the database,
+     * or {@code null} if they are
+     */
+    @Nullable
+    private final Map<ObjectId, RevObject.TYPE> leaves;
+
     /**
      * A flag tracking the state of the traversal. When true, we are building up a queue of objects
      * to visit. When false, we are visiting them (aka returning them from the iterator.)
@@ -108,11 +138,22 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
      * @param successors the traversal policy for this iteration.
      */
     private PostOrderIterator(List<ObjectId> start, ObjectDatabase database, Successors successors) {
+        this(start, database, successors, true);
+    }
+
+    /**
+     * @param parseLeaves whether to read features and feature types from the database, or to
+     *        return them as {@link Unparsed} objects
+     */
+    private PostOrderIterator(List<ObjectId> start, ObjectDatabase database,
+            Successors successors, boolean parseLeaves) {
         super();
         this.database = database;
         this.enqueue = true;
         this.successors = successors;
+        this.leaves = parseLeaves ? null : new HashMap<ObjectId, RevObject.TYPE>();
         toVisit = new ArrayList<List<ObjectId>>();
+        expanded = new ArrayList<RevObject>();
         toVisit.add(new ArrayList<ObjectId>());
         toVisit.get(0).addAll(start);
     }
@@ -131,18 +172,33 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
                     // We're building up a list of objects to visit, so add all the reachable
                     // objects from here to the front of the toVisit stack
                     final ObjectId id = currentList.get(0);
-                    final RevObject object = database.get(id);
+                    final RevObject.TYPE leafType = leaves == null ? null : leaves.get(id);
+                    final RevObject object;
                     final List<ObjectId> next = new ArrayList<ObjectId>();
-                    successors.findSuccessors(object, next);
+                    if (leafType == null) {
+                        object = database.get(id);
+                        successors.findSuccessors(object, next);
+                        if (leaves != null) {
+                            addLeaves(object, next);
+                        }
+                    } else {
+                        // features and feature types have no successors
+                        object = new Unparsed(id, leafType);
+                    }
                     toVisit.add(0, next);
+                    expanded.add(0, object);
                 } else {
                     // We just visited a node, so switch back to enqueuing mode in order to make
                     // sure the successors of the next one at this depth are visited.
                     enqueue = true;
                     final ObjectId id = currentList.remove(0);
+                    final RevObject object = expanded.remove(0);
+                    if (leaves != null) {
+                        leaves.remove(id);
+                    }
 
                     if (successors.previsit(id)) {
-                        return database.get(id);
+                        return object;
                     }
                 }
             }
@@ -151,6 +207,81 @@ public class PostOrderIterator extends AbstractIterator<RevObject> {
         return endOfData();
     }
 
+    /**
+     * Records the type of the features and feature types among the successors of a tree, which are
+     * known from the tree nodes, so that they don't need to be read to tell they have no
+     * successors themselves.
+     */
+    private void addLeaves(final RevObject object, final List<ObjectId> next) {
+        if (!(object instanceof RevTree) || next.isEmpty()) {
+            return;
+        }
+        final RevTree tree = (RevTree) object;
+        final Set<ObjectId> enqueued = new HashSet<ObjectId>(next);
+        if (tree.features().isPresent()) {
+            for (Node n : tree.features().get()) {
+                addLeaf(enqueued, n.getObjectId(), RevObject.TYPE.FEATURE);
+                if (n.getMetadataId().isPresent()) {
+                    addLeaf(enqueued, n.getMetadataId().get(), RevObject.TYPE.FEATURETYPE);
+                }
+            }
+        }
+        if (tree.trees().isPresent()) {
+            for (Node n : tree.trees().get()) {
+                if (n.getMetadataId().isPresent()) {
+                    addLeaf(enqueued, n.getMetadataId().get(), RevObject.TYPE.FEATURETYPE);
+                }
+            }
+        }
+    }
+
+    private void addLeaf(Set<ObjectId> enqueued, ObjectId id, RevObject.TYPE type) {
+        if (enqueued.contains(id)) {
+            leaves.put(id, type);
+        }
+    }
+
+    /**
+     * A feature or feature type returned by a traversal that doesn't parse them, of which only the
+     * id and type are known.
+     */
+    public static final class Unparsed implements RevObject {
+
+        private final ObjectId id;
+
+        private final TYPE type;
+
+        private Unparsed(ObjectId id, TYPE type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        @Override
+        public TYPE getType() {
+            return type;
+        }
+
+        @Override
+        public ObjectId getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RevObject && id.equals(((RevObject) o).getId());
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Unparsed[" + id + ", " + type + "]";
+        }
+    }
+
     /**
      * The Successors interface defines a pluggable strategy for finding successors of (nodes
      * reachable from) a GeoGit history object. We follow a combinatorial approach in defining
@@ -99,7 +99,7 @@ class RevTreeBuilder2 {
         Stopwatch sw = new Stopwatch().start();
         RevTreeBuilder builder;
         try {
-            builder = new RevTreeBuilder(db, original);
+            builder = new RevTreeBuilder(db, original).setParallel(true);
             Iterator<Node> nodes = nodeIndex.nodes();
             while (nodes.hasNext()) {
                 Node node = nodes.next();
@@ -0,0 +1,136 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geogit.api.Bounded;
+import org.geogit.api.Bucket;
+import org.geogit.api.Node;
+import org.geogit.api.NodeRef;
+import org.geogit.api.RevObject;
+
+import com.google.common.base.Predicate;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Keeps track of how many buckets, trees and features were checked against the bounds of a
+ * spatial query, and how many of them intersected (hits) or could be skipped (misses).
+ * <p>
+ * An instance is used as a pass-through {@link Predicate} chained to the actual bounds filter of a
+ * tree traversal (e.g. {@link org.geogit.api.plumbing.LsTreeOp#setBoundsFilter}), which makes it
+ * possible to tell how effective the bucket bounds are at pruning whole subtrees. Once the query is
+ * done the per query counters can be {@link #record recorded} into the {@link #global() JVM wide}
+ * counters, which are periodically reported by the metrics module.
+ */
+public class SpatialQueryStats implements Predicate<Bounded> {
+
+    private static final SpatialQueryStats GLOBAL = new SpatialQueryStats(new Envelope());
+
+    private final Envelope bounds;
+
+    private final AtomicLong queries = new AtomicLong();
+
+    private final AtomicLong featureHits = new AtomicLong(), featureMisses = new AtomicLong();
+
+    private final AtomicLong treeHits = new AtomicLong(), treeMisses = new AtomicLong();
+
+    private final AtomicLong bucketHits = new AtomicLong(), bucketMisses = new AtomicLong();
+
+    /**
+     * @param bounds the query bounds, a {@link Envelope#isNull() null} envelope matches everything
+     */
+    public SpatialQueryStats(Envelope bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * @return the JVM wide aggregated statistics of all the recorded queries
+     */
+    public static SpatialQueryStats global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Adds the counters of a finished query to the {@link #global() global} statistics
+     */
+    public static void record(SpatialQueryStats query) {
+        GLOBAL.queries.incrementAndGet();
+        GLOBAL.featureHits.addAndGet(query.getFeatureHits());
+        GLOBAL.featureMisses.addAndGet(query.getFeatureMisses());
+        GLOBAL.treeHits.addAndGet(query.getTreeHits());
+        GLOBAL.treeMisses.addAndGet(query.getTreeMisses());
+        GLOBAL.bucketHits.addAndGet(query.getBucketHits());
+        GLOBAL.bucketMisses.addAndGet(query.getBucketMisses());
+    }
+
+    /**
+     * Counts {@code bounded} as a hit or a miss.
+     *
+     * @return {@code true} always, this predicate does not filter out anything by itself
+     */
+    @Override
+    public boolean apply(final Bounded bounded) {
+        final boolean intersects = bounds.isNull() ? true : bounded.intersects(bounds);
+        if (bounded instanceof Bucket) {
+            (intersects ? bucketHits : bucketMisses).incrementAndGet();
+        } else {
+            Node node;
+            if (bounded instanceof NodeRef) {
+                node = ((NodeRef) bounded).getNode();
+            } else {
+                node = (Node) bounded;
+            }
+            if (node.getType().equals(RevObject.TYPE.TREE)) {
+                (intersects ? treeHits : treeMisses).incrementAndGet();
+            } else {
+                (intersects ? featureHits : featureMisses).incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of queries recorded, only meaningful for the {@link #global() global}
+     *         statistics
+     */
+    public long getQueries() {
+        return queries.get();
+    }
+
+    public long getFeatureHits() {
+        return featureHits.get();
+    }
+
+    public long getFeatureMisses() {
+        return featureMisses.get();
+    }
+
+    public long getTreeHits() {
+        return treeHits.get();
+    }
+
+    public long getTreeMisses() {
+        return treeMisses.get();
+    }
+
+    public long getBucketHits() {
+        return bucketHits.get();
+    }
+
+    public long getBucketMisses() {
+        return bucketMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Hits/misses:\n");
+        sb.append("Trees: ").append(treeHits).append('/').append(treeMisses).append('\n');
+        sb.append("Features: ").append(featureHits).append('/').append(featureMisses)
+                .append('\n');
+        sb.append("Buckets: ").append(bucketHits).append('/').append(bucketMisses).append('\n');
+        return sb.toString();
+    }
+}
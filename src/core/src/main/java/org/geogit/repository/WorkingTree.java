@@ -322,47 +322,31 @@ public class WorkingTree {
     }
 
     /**
+     * Deletes a collection of features from the working tree and updates the WORK_HEAD ref once.
      * 
-     * @param features the features to delete
+     * @param features the paths of the features to delete
      */
     public void delete(Iterator<String> features) {
-        Map<String, RevTreeBuilder> parents = Maps.newHashMap();
-
-        final RevTree currentWorkHead = getTree();
+        Batch batch = batch();
         while (features.hasNext()) {
             String featurePath = features.next();
-            // System.err.println("removing " + feature);
-            String parentPath = NodeRef.parentPath(featurePath);
-            RevTreeBuilder parentTree;
-            if (parents.containsKey(parentPath)) {
-                parentTree = parents.get(parentPath);
-            } else {
-                parentTree = commandLocator.command(FindOrCreateSubtree.class).setIndex(true)
-                        .setParent(Suppliers.ofInstance(Optional.of(currentWorkHead)))
-                        .setChildPath(parentPath).call().builder(indexDatabase);
-                parents.put(parentPath, parentTree);
-            }
-            String featureName = NodeRef.nodeFromPath(featurePath);
-            parentTree.remove(featureName);
+            batch.delete(NodeRef.parentPath(featurePath), NodeRef.nodeFromPath(featurePath));
         }
-        ObjectId newTree = null;
-        for (Map.Entry<String, RevTreeBuilder> entry : parents.entrySet()) {
-            String path = entry.getKey();
-
-            RevTreeBuilder parentTree = entry.getValue();
-            RevTree newTypeTree = parentTree.build();
+        batch.apply();
+    }
 
-            ObjectId metadataId = null;
-            Optional<NodeRef> currentTreeRef = commandLocator.command(FindTreeChild.class)
-                    .setIndex(true).setParent(currentWorkHead).setChildPath(path).call();
-            if (currentTreeRef.isPresent()) {
-                metadataId = currentTreeRef.get().getMetadataId();
-            }
-            newTree = commandLocator.command(WriteBack.class).setAncestor(getTreeSupplier())
-                    .setChildPath(path).setToIndex(true).setTree(newTypeTree)
-                    .setMetadataId(metadataId).call();
-            updateWorkHead(newTree);
-        }
+    /**
+     * Starts a batch of single feature insertions and deletions against the current working tree.
+     * <p>
+     * Unlike {@link #insert(String, Feature)} and {@link #delete(String, String)}, which write back
+     * the whole ancestor chain of the feature's tree and update the WORK_HEAD ref for every single
+     * feature, a batch keeps one builder per changed tree and writes all of them back at once when
+     * it is {@link Batch#apply() applied}.
+     * 
+     * @return a new batch, whose changes are not visible until it is applied
+     */
+    public Batch batch() {
+        return new Batch(getTree());
     }
 
     public synchronized NodeRef createTypeTree(final String treePath, final FeatureType featureType) {
@@ -932,4 +916,199 @@ public class WorkingTree {
                 .setChildPath(treePath).call().get();
 
     }
+
+    /**
+     * A batch of feature insertions and deletions to the working tree.
+     * <p>
+     * Features are stored in the staging database as they are inserted, but the changed trees are
+     * only written back, bottom-up and once each, when the batch is {@link #apply() applied}, with
+     * a single update of the WORK_HEAD ref.
+     * <p>
+     * The batch is built on top of the working tree as it was when the batch was started. If the
+     * working tree is changed by someone else before the batch is applied, its changes are
+     * replayed on top of the new working tree instead of overwriting it.
+     * 
+     * @see WorkingTree#batch()
+     */
+    public class Batch {
+
+        /**
+         * How many times the batch is replayed if the working tree keeps changing while it's
+         * applied
+         */
+        private static final int MAX_APPLY_ATTEMPTS = 5;
+
+        private ChangedTrees changedTrees;
+
+        /**
+         * Default metadata id of each feature tree the batch inserted features into
+         */
+        private final Map<String, ObjectId> treeMetadataIds = Maps.newHashMap();
+
+        private final Map<FeatureType, RevFeatureType> featureTypes = Maps.newIdentityHashMap();
+
+        /**
+         * The insertions and deletions of the batch in the order they were made, to replay them
+         */
+        private final List<Change> changes = Lists.newArrayList();
+
+        private Batch(final RevTree workHead) {
+            this.changedTrees = new ChangedTrees(commandLocator, indexDatabase, workHead);
+        }
+
+        /**
+         * Inserts a feature into the tree at the given path, creating the tree with the feature's
+         * type as default feature type if it doesn't exist yet.
+         * 
+         * @param parentTreePath path of the parent tree to insert the feature into
+         * @param feature the feature to insert
+         * @return the node of the inserted feature
+         */
+        public Node insert(final String parentTreePath, final Feature feature) {
+            final RevFeature newFeature = RevFeatureBuilder.build(feature);
+            indexDatabase.put(newFeature);
+
+            final Change change = new Change(parentTreePath, feature.getIdentifier().getID(),
+                    newFeature.getId(), getFeatureType(feature.getType()),
+                    (ReferencedEnvelope) feature.getBounds());
+            changes.add(change);
+            return put(change);
+        }
+
+        /**
+         * Deletes a feature from the tree at the given path.
+         * 
+         * @param parentTreePath the path of the feature's tree
+         * @param featureId the id of the feature
+         */
+        public void delete(final String parentTreePath, final String featureId) {
+            final Change change = new Change(parentTreePath, featureId, null, null, null);
+            changes.add(change);
+            put(change);
+        }
+
+        /**
+         * Writes back all the trees changed by the batch and updates the WORK_HEAD ref, replaying
+         * the batch on top of the current working tree if it has changed since the batch was
+         * started.
+         * 
+         * @return the id of the new working tree
+         * @throws IllegalStateException if the working tree kept changing while the batch was
+         *         being applied
+         */
+        public ObjectId apply() {
+            for (int attempt = 1;; attempt++) {
+                if (changedTrees.isEmpty()) {
+                    return changedTrees.getRoot().getId();
+                }
+                final ObjectId oldTree = changedTrees.getRoot().getId();
+                final ObjectId newTree = changedTrees.write();
+                synchronized (WorkingTree.this) {
+                    try {
+                        commandLocator.command(UpdateRef.class).setName(Ref.WORK_HEAD)
+                                .setOldValue(oldTree).setNewValue(newTree).call();
+                        return newTree;
+                    } catch (IllegalStateException e) {
+                        if (attempt == MAX_APPLY_ATTEMPTS) {
+                            throw new IllegalStateException("The working tree changed "
+                                    + attempt + " times while applying the batch", e);
+                        }
+                    }
+                    replay(getTree());
+                }
+            }
+        }
+
+        /**
+         * Starts over from the given working tree, and makes the batch's changes to it again.
+         */
+        private void replay(final RevTree workHead) {
+            changedTrees = new ChangedTrees(commandLocator, indexDatabase, workHead);
+            treeMetadataIds.clear();
+            for (Change change : changes) {
+                put(change);
+            }
+        }
+
+        private Node put(final Change change) {
+            if (change.featureType == null) {
+                changedTrees.get(change.parentTreePath).remove(change.featureId);
+                return null;
+            }
+            final RevFeatureType featureType = change.featureType;
+            final ObjectId treeMetadataId = getTreeMetadataId(change.parentTreePath, featureType);
+
+            final ObjectId metadataId;
+            if (featureType.getId().equals(treeMetadataId)) {
+                metadataId = ObjectId.NULL;
+            } else {
+                indexDatabase.put(featureType);
+                metadataId = featureType.getId();
+            }
+            final Node node = Node.create(change.featureId, change.objectId, metadataId,
+                    TYPE.FEATURE, change.bounds);
+            changedTrees.get(change.parentTreePath).put(node);
+            return node;
+        }
+
+        private RevFeatureType getFeatureType(final FeatureType type) {
+            RevFeatureType revType = featureTypes.get(type);
+            if (revType == null) {
+                revType = RevFeatureType.build(type);
+                featureTypes.put(type, revType);
+            }
+            return revType;
+        }
+
+        private ObjectId getTreeMetadataId(final String treePath,
+                final RevFeatureType featureType) {
+            ObjectId metadataId = treeMetadataIds.get(treePath);
+            if (metadataId == null) {
+                Optional<NodeRef> treeRef = commandLocator.command(FindTreeChild.class)
+                        .setIndex(true).setParent(changedTrees.getRoot()).setChildPath(treePath)
+                        .call();
+                if (treeRef.isPresent()) {
+                    metadataId = treeRef.get().getMetadataId();
+                } else {
+                    // new feature tree, the feature's type is its default type
+                    indexDatabase.put(featureType);
+                    metadataId = featureType.getId();
+                    changedTrees.setMetadataId(treePath, metadataId);
+                }
+                treeMetadataIds.put(treePath, metadataId);
+            }
+            return metadataId;
+        }
+    }
+
+    /**
+     * A feature insertion or deletion made by a {@link Batch}
+     */
+    private static class Change {
+
+        private final String parentTreePath;
+
+        private final String featureId;
+
+        @Nullable
+        private final ObjectId objectId;
+
+        /**
+         * The type of the inserted feature, {@code null} for a deletion
+         */
+        @Nullable
+        private final RevFeatureType featureType;
+
+        @Nullable
+        private final Envelope bounds;
+
+        Change(String parentTreePath, String featureId, @Nullable ObjectId objectId,
+                @Nullable RevFeatureType featureType, @Nullable Envelope bounds) {
+            this.parentTreePath = parentTreePath;
+            this.featureId = featureId;
+            this.objectId = objectId;
+            this.featureType = featureType;
+            this.bounds = bounds;
+        }
+    }
 }
@@ -24,6 +24,7 @@ import org.geogit.api.RevTree;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.ning.compress.lzf.LZFInputStream;
 import com.ning.compress.lzf.LZFOutputStream;
@@ -192,6 +193,51 @@ public abstract class AbstractObjectDatabase implements ObjectDatabase {
     protected abstract InputStream getRawInternal(ObjectId id, boolean failIfNotFound)
             throws IllegalArgumentException;
 
+    /**
+     * @return the factory objects are serialized with before being compressed and stored
+     */
+    public ObjectSerializingFactory getSerializationFactory() {
+        return serializationFactory;
+    }
+
+    /**
+     * Reads the stored form of an object without parsing it, that is, the object as serialized by
+     * this database's {@link #getSerializationFactory() serialization factory} and LZF compressed.
+     * 
+     * @param id the id of the object to read
+     * @return the stored bytes of the object, or {@code null} if it doesn't exist
+     */
+    @Nullable
+    public byte[] getCompressed(final ObjectId id) {
+        Preconditions.checkNotNull(id, "id");
+        InputStream in = getRawInternal(id, false);
+        if (null == in) {
+            return null;
+        }
+        try {
+            return ByteStreams.toByteArray(in);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores an object in the form returned by {@link #getCompressed(ObjectId)}, <em>only if it
+     * does not exist</em> already, without parsing it nor checking it matches the given id.
+     * 
+     * @param id the id of the object
+     * @param compressed the stored form of the object
+     * @return whether the object was actually inserted
+     */
+    public boolean putCompressed(final ObjectId id, final byte[] compressed) {
+        Preconditions.checkNotNull(id, "id");
+        Preconditions.checkNotNull(compressed, "compressed");
+        Preconditions.checkArgument(!id.isNull(), "ObjectId is NULL");
+        return putInternal(id, compressed);
+    }
+
     @Override
     public boolean put(final RevObject object) {
         Preconditions.checkNotNull(object);
@@ -4,31 +4,51 @@
  */
 package org.geogit.storage;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
 
 /**
  * Provides a base implementation for different representations of the {@link RefDatabase}.
- * 
+ * <p>
+ * Single refs are locked with a lock per ref name, so that {@link #compareAndPut compare-and-put}
+ * updates of different refs don't wait for each other. Subclasses that share their storage with
+ * other processes can also lock the ref in their storage by overriding
+ * {@link #lockStorage(String, long)} and {@link #unlockStorage(String)}.
+ *
  * @see RefDatabase
  */
 public abstract class AbstractRefDatabase implements RefDatabase {
 
+    /**
+     * How long to wait for a lock before giving up, in seconds
+     */
+    protected static final long LOCK_TIMEOUT_SECONDS = 30;
+
     Lock lock = new ReentrantLock();
 
+    private final ConcurrentMap<String, ReentrantLock> refLocks = Maps.newConcurrentMap();
+
     /**
      * Locks access to the main repository refs.
-     * 
+     *
      * @throws TimeoutException
      */
     @Override
     public final void lock() throws TimeoutException {
         try {
-            if (!lock.tryLock(30, TimeUnit.SECONDS)) {
+            if (!lock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
                 throw new TimeoutException("The attempt to lock the database timed out.");
             }
         } catch (InterruptedException e) {
@@ -44,4 +64,107 @@ public abstract class AbstractRefDatabase implements RefDatabase {
         lock.unlock();
     }
 
+    /**
+     * Locks a single ref, first against the other threads of this process and then, on the first
+     * acquisition by the current thread, in the storage.
+     */
+    @Override
+    public final void lock(String refName) throws TimeoutException {
+        checkNotNull(refName);
+        ReentrantLock refLock = refLocks.get(refName);
+        if (refLock == null) {
+            refLock = new ReentrantLock();
+            ReentrantLock existing = refLocks.putIfAbsent(refName, refLock);
+            if (existing != null) {
+                refLock = existing;
+            }
+        }
+        final long deadline = System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(LOCK_TIMEOUT_SECONDS);
+        try {
+            if (!refLock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new TimeoutException("The attempt to lock ref " + refName + " timed out.");
+            }
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        }
+        if (refLock.getHoldCount() == 1) {
+            boolean locked = false;
+            try {
+                lockStorage(refName, Math.max(0, deadline - System.currentTimeMillis()));
+                locked = true;
+            } finally {
+                if (!locked) {
+                    refLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Unlocks a single ref locked by the current thread.
+     */
+    @Override
+    public final void unlock(String refName) {
+        ReentrantLock refLock = refLocks.get(refName);
+        checkState(refLock != null && refLock.isHeldByCurrentThread(),
+                "Ref %s is not locked by the current thread", refName);
+        try {
+            if (refLock.getHoldCount() == 1) {
+                unlockStorage(refName);
+            }
+        } finally {
+            refLock.unlock();
+        }
+    }
+
+    /**
+     * Locks a ref in the storage, against other processes sharing it. Only called while holding
+     * the ref's lock in this process. Does nothing by default.
+     *
+     * @param refName the name of the ref to lock
+     * @param timeoutMillis how long to wait for the lock
+     * @throws TimeoutException if the ref couldn't be locked in time
+     */
+    protected void lockStorage(String refName, long timeoutMillis) throws TimeoutException {
+        // no-op
+    }
+
+    /**
+     * Releases a lock acquired through {@link #lockStorage(String, long)}. Does nothing by
+     * default.
+     */
+    protected void unlockStorage(String refName) {
+        // no-op
+    }
+
+    /**
+     * Compares and sets the ref while holding its {@link #lock(String) lock}.
+     */
+    @Override
+    public boolean compareAndPut(String refName, @Nullable String expectedValue, String newValue) {
+        checkNotNull(refName);
+        checkNotNull(newValue);
+        try {
+            lock(refName);
+        } catch (TimeoutException e) {
+            throw Throwables.propagate(e);
+        }
+        try {
+            String currentValue;
+            try {
+                currentValue = getRef(refName);
+            } catch (IllegalArgumentException e) {
+                // may be updating what used to be a symref to be a direct ref
+                currentValue = getSymRef(refName);
+            }
+            if (!Objects.equal(expectedValue, currentValue)) {
+                return false;
+            }
+            putRef(refName, newValue);
+            return true;
+        } finally {
+            unlock(refName);
+        }
+    }
 }
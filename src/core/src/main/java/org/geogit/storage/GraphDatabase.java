@@ -4,7 +4,10 @@
  */
 package org.geogit.storage;
 
+import java.util.Iterator;
+
 import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
 import org.geogit.repository.RepositoryConnectionException;
 
 import com.google.common.annotations.Beta;
@@ -78,6 +81,15 @@ public interface GraphDatabase {
      */
     public boolean put(final ObjectId commitId, ImmutableList<ObjectId> parentIds);
 
+    /**
+     * Adds many commits to the database, as if {@link #put(ObjectId, ImmutableList)} was called for
+     * each of them, but letting implementations do it in fewer transactions.
+     * 
+     * @param commits the commits to insert
+     * @return the ids of the commits that were inserted or updated
+     */
+    public ImmutableList<ObjectId> putAll(Iterator<RevCommit> commits);
+
     /**
      * Maps a commit to another original commit. This is used in sparse repositories.
      * 
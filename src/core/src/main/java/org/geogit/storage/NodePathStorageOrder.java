@@ -16,7 +16,9 @@ import com.google.common.collect.Ordering;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.primitives.UnsignedBytes;
+import com.google.common.primitives.Longs;
 import com.google.common.primitives.UnsignedLong;
+import com.google.common.primitives.UnsignedLongs;
 
 /**
  * Implements storage order of {@link Node} based on the non cryptographic 64-bit <a
@@ -69,6 +71,18 @@ public final class NodePathStorageOrder extends Ordering<String> implements Seri
         return hashOrder.compare(p1, p2);
     }
 
+    /**
+     * Returns the 64-bit hash of {@code nodeName} that defines its storage order, such that
+     * {@code compare(p1, p2)} has the same sign than
+     * {@link UnsignedLongs#compare(long, long) UnsignedLongs.compare(hash(p1), hash(p2))}.
+     * <p>
+     * Useful to precompute the sort key of large amounts of nodes instead of hashing both names on
+     * each comparison.
+     */
+    public long hash(final String nodeName) {
+        return hashOrder.hash(nodeName);
+    }
+
     /**
      * Computes the bucket index that corresponds to the given node name at the given depth.
      * 
@@ -92,6 +106,8 @@ public final class NodePathStorageOrder extends Ordering<String> implements Seri
 
         public abstract int byteN(String path, int depth);
 
+        public abstract long hash(String path);
+
     }
 
     /**
@@ -101,22 +117,30 @@ public final class NodePathStorageOrder extends Ordering<String> implements Seri
 
         private static final long serialVersionUID = -1931193743208260766L;
 
-        private static final UnsignedLong FNV64_OFFSET_BASIS = UnsignedLong
-                .valueOf("14695981039346656037");
+        private static final long FNV64_OFFSET_BASIS = UnsignedLong.valueOf(
+                "14695981039346656037").longValue();
 
-        private static final UnsignedLong FNV64_PRIME = UnsignedLong.valueOf("1099511628211");
+        private static final long FNV64_PRIME = UnsignedLong.valueOf("1099511628211")
+                .longValue();
 
         @Override
         public int compare(final String p1, final String p2) {
-            UnsignedLong hash1 = fnv(p1);
-            UnsignedLong hash2 = fnv(p2);
-            return hash1.compareTo(hash2);
+            return UnsignedLongs.compare(fnv(p1), fnv(p2));
         }
 
-        private static UnsignedLong fnv(CharSequence chars) {
+        @Override
+        public long hash(final String path) {
+            return fnv(path);
+        }
+
+        /**
+         * Computes the hash on the raw long bits: xor and multiplication give the same bits for
+         * signed and unsigned values, and overflow is the expected modulo 2^64 arithmetic
+         */
+        private static long fnv(CharSequence chars) {
             final int length = chars.length();
 
-            UnsignedLong hash = FNV64_OFFSET_BASIS;
+            long hash = FNV64_OFFSET_BASIS;
 
             for (int i = 0; i < length; i++) {
                 char c = chars.charAt(i);
@@ -128,21 +152,11 @@ public final class NodePathStorageOrder extends Ordering<String> implements Seri
             return hash;
         }
 
-        private static UnsignedLong update(UnsignedLong hash, final byte octet) {
-            // it's ok to use the signed long value here, its a bitwise operation anyways, and its
-            // on the lower byte of the long value
-            final long longValue = hash.longValue();
-            final long bits = longValue ^ octet;
-
-            // System.err.println("hash : " + Long.toBinaryString(longValue));
-            // System.err.println("xor  : " + Long.toBinaryString(bits));
-            // System.err.println("octet: " + Integer.toBinaryString(octet));
-
-            // convert back to unsigned long
-            hash = UnsignedLong.fromLongBits(bits);
-            // multiply by prime
-            hash = hash.times(FNV64_PRIME);
-            return hash;
+        private static long update(final long hash, final byte octet) {
+            // note the octet is sign extended, kept as is for backwards compatibility of the
+            // storage order
+            final long bits = hash ^ octet;
+            return bits * FNV64_PRIME;
         }
 
         /**
@@ -153,7 +167,7 @@ public final class NodePathStorageOrder extends Ordering<String> implements Seri
         public int byteN(final String nodeName, final int depth) {
             Preconditions.checkArgument(depth < 8, "depth too deep: %s", Integer.valueOf(depth));
 
-            final long longBits = fnv(nodeName).longValue();
+            final long longBits = fnv(nodeName);
 
             final int displaceBits = 8 * (7 - depth);// how many bits to right shift longBits to get
                                                      // the byte N
@@ -195,6 +209,14 @@ public final class NodePathStorageOrder extends Ordering<String> implements Seri
             final int byteN = (byte) hashCode[depth] & 0xFF;
             return byteN;
         }
+
+        /**
+         * @return the first eight bytes of the hash code, in big-endian order
+         */
+        @Override
+        public long hash(final String path) {
+            return Longs.fromByteArray(hasher.hashString(path).asBytes());
+        }
     }
 
     // public static void main(String a[]) {
@@ -7,6 +7,8 @@ package org.geogit.storage;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.Nullable;
+
 import org.geogit.repository.RepositoryConnectionException;
 
 /**
@@ -35,6 +37,25 @@ public interface RefDatabase {
      */
     public abstract void unlock();
 
+    /**
+     * Locks a single ref against concurrent {@link #compareAndPut(String, String, String)
+     * compare-and-put} updates, without blocking updates to any other ref.
+     * <p>
+     * The lock is reentrant, and every call must be paired with a call to
+     * {@link #unlock(String)} from the same thread.
+     * 
+     * @param refName the name of the ref to lock
+     * @throws TimeoutException if the ref could not be locked in a reasonable time
+     */
+    public abstract void lock(String refName) throws TimeoutException;
+
+    /**
+     * Releases a lock acquired through {@link #lock(String)}.
+     * 
+     * @param refName the name of the ref to unlock
+     */
+    public abstract void unlock(String refName);
+
     /**
      * Creates the reference database.
      */
@@ -64,6 +85,19 @@ public interface RefDatabase {
      */
     public abstract void putRef(String refName, String refValue);
 
+    /**
+     * Atomically sets a ref to a new value if its current value is the expected one.
+     * 
+     * @param refName the name of the ref
+     * @param expectedValue the value the ref is expected to have, or {@code null} if it is
+     *        expected not to exist. If the ref is a symbolic ref, the expected value is its target.
+     * @param newValue the new value of the ref
+     * @return {@code true} if the ref was updated, {@code false} if its current value didn't match
+     *         the expected one
+     */
+    public abstract boolean compareAndPut(String refName, @Nullable String expectedValue,
+            String newValue);
+
     /**
      * @param name the name of the ref
      * @param val the value of the ref
@@ -36,6 +36,15 @@ public interface StagingDatabase extends ObjectDatabase {
      */
     public List<Conflict> getConflicts(@Nullable String namespace, @Nullable String pathFilter);
 
+    /**
+     * Counts the conflicts that match the specified path filter, without loading them.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be counted
+     * @return the number of conflicts
+     */
+    public long getConflictsCount(@Nullable String namespace, @Nullable String pathFilter);
+
     /**
      * Adds a conflict to the database.
      * 
@@ -44,6 +53,15 @@ public interface StagingDatabase extends ObjectDatabase {
      */
     public void addConflict(@Nullable String namespace, Conflict conflict);
 
+    /**
+     * Adds a batch of conflicts to the database, replacing any existing conflict for the same
+     * paths.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param conflicts the conflicts to add
+     */
+    public void addConflicts(@Nullable String namespace, Iterable<Conflict> conflicts);
+
     /**
      * Removes a conflict from the database.
      * 
@@ -52,6 +70,14 @@ public interface StagingDatabase extends ObjectDatabase {
      */
     public void removeConflict(@Nullable String namespace, String path);
 
+    /**
+     * Removes a batch of conflicts from the database.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param paths the paths of the features whose conflicts should be removed
+     */
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths);
+
     /**
      * Removes all conflicts from the database.
      * 
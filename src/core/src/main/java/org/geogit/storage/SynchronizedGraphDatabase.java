@@ -5,7 +5,10 @@
 
 package org.geogit.storage;
 
+import java.util.Iterator;
+
 import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
 import org.geogit.repository.RepositoryConnectionException;
 
 import com.google.common.base.Optional;
@@ -71,6 +74,12 @@ public class SynchronizedGraphDatabase implements GraphDatabase {
         }
     }
 
+    public ImmutableList<ObjectId> putAll(Iterator<RevCommit> commits) {
+        synchronized(delegate) {
+            return delegate.putAll(commits);
+        }
+    }
+
     public void map(ObjectId mapped, ObjectId original) {
         synchronized(delegate) {
             delegate.map(mapped, original);
@@ -12,6 +12,8 @@ import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.Nullable;
+
 import org.geogit.api.CommandLocator;
 import org.geogit.api.GeogitTransaction;
 import org.geogit.api.Ref;
@@ -20,6 +22,8 @@ import org.geogit.api.plumbing.TransactionEnd;
 import org.geogit.repository.Index;
 import org.geogit.repository.WorkingTree;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
@@ -72,6 +76,16 @@ public class TransactionRefDatabase implements RefDatabase {
         refDb.unlock();
     }
 
+    @Override
+    public void lock(String refName) throws TimeoutException {
+        refDb.lock(toInternal(refName));
+    }
+
+    @Override
+    public void unlock(String refName) {
+        refDb.unlock(toInternal(refName));
+    }
+
     @Override
     public void create() {
         refDb.create();
@@ -172,6 +186,34 @@ public class TransactionRefDatabase implements RefDatabase {
         refDb.putRef(internalName, refValue);
     }
 
+    /**
+     * Compares the value the ref has in this transaction, and sets it in this transaction.
+     */
+    @Override
+    public boolean compareAndPut(final String refName, @Nullable final String expectedValue,
+            final String newValue) {
+        try {
+            lock(refName);
+        } catch (TimeoutException e) {
+            throw Throwables.propagate(e);
+        }
+        try {
+            String currentValue;
+            try {
+                currentValue = getRef(refName);
+            } catch (IllegalArgumentException e) {
+                currentValue = getSymRef(refName);
+            }
+            if (!Objects.equal(expectedValue, currentValue)) {
+                return false;
+            }
+            putRef(refName, newValue);
+            return true;
+        } finally {
+            unlock(refName);
+        }
+    }
+
     @Override
     public void putSymRef(final String name, final String val) {
         String internalName = toInternal(name);
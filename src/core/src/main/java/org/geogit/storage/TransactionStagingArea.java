@@ -115,7 +115,7 @@ public class TransactionStagingArea implements StagingArea {
      */
     @Override
     public int countConflicted(@Nullable String pathFilter) {
-        return database.getConflicts(null, pathFilter).size();
+        return (int) database.getConflictsCount(null, pathFilter);
     }
 
     /**
@@ -227,6 +227,15 @@ public class TransactionStagingDatabase implements StagingDatabase {
         return database.getConflicts(txNamespace, pathFilter);
     }
 
+    /**
+     * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
+     * namespace.
+     */
+    @Override
+    public long getConflictsCount(@Nullable String namespace, @Nullable String pathFilter) {
+        return database.getConflictsCount(txNamespace, pathFilter);
+    }
+
     /**
      * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
      * namespace.
@@ -236,6 +245,15 @@ public class TransactionStagingDatabase implements StagingDatabase {
         database.addConflict(txNamespace, conflict);
     }
 
+    /**
+     * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
+     * namespace.
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterable<Conflict> conflicts) {
+        database.addConflicts(txNamespace, conflicts);
+    }
+
     /**
      * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
      * namespace.
@@ -245,6 +263,15 @@ public class TransactionStagingDatabase implements StagingDatabase {
         database.removeConflict(txNamespace, path);
     }
 
+    /**
+     * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
+     * namespace.
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        database.removeConflicts(txNamespace, paths);
+    }
+
     /**
      * Pass through to {@link StagingDatabase}, replacing the namespace with the transaction
      * namespace.
@@ -0,0 +1,384 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Map;
+import java.util.Set;
+
+import org.geogit.api.ObjectId;
+import org.geogit.storage.NodePathStorageOrder;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+/**
+ * An append only index of the tree paths changed by each commit, used to answer whether a commit
+ * touched a given path without diffing its tree against the tree of its first parent.
+ * <p>
+ * For each indexed commit, the index records the paths of the trees that were added, removed or
+ * whose id changed with respect to its first parent, but not the root tree. The empty path is only
+ * recorded if features directly under the root tree changed. So a commit changed a feature only if
+ * the feature's parent tree path is recorded, and it changed a tree if and only if the tree path is
+ * recorded.
+ * <p>
+ * The index is made of two files: a data file with the changed paths of each commit, and an entry
+ * file with, for each commit, its id, the offset of its changed paths in the data file, and a Bloom
+ * filter of its changed paths. Entries are kept in memory, so that most lookups are answered by the
+ * Bloom filter and only the commits that might have changed a path have their changed paths read.
+ * No file is kept open between calls, so an index can be held by a lazily evaluated history
+ * iterator without leaking file handles.
+ * <p>
+ * The opened indexes are cached per directory, and opening an index again only reads the entries
+ * appended since it was last opened, by this or another process. So indexing a new commit doesn't
+ * load the whole history. Commits are added holding an exclusive lock on a lock file next to the
+ * index, so that processes committing concurrently don't interleave their appends.
+ *
+ * <pre>
+ * <code>
+ * entries: commit id (20 bytes), data offset (long), bloom filter (4 longs)
+ * data:    number of paths (int), and each path as modified UTF-8
+ * </code>
+ * </pre>
+ */
+public final class ChangedPathsIndex implements Closeable {
+
+    private static final String ENTRIES_FILE = "changedpaths.idx";
+
+    private static final String DATA_FILE = "changedpaths.dat";
+
+    private static final String LOCK_FILE = "changedpaths.lock";
+
+    private static final long LOCK_RETRY_MILLIS = 10;
+
+    private static final int BLOOM_WORDS = 4;
+
+    private static final int BLOOM_BITS = 64 * BLOOM_WORDS;
+
+    private static final int BLOOM_PROBES = 3;
+
+    private static final int ENTRY_SIZE = ObjectId.NUM_BYTES + 8 + 8 * BLOOM_WORDS;
+
+    private static final NodePathStorageOrder HASHER = new NodePathStorageOrder();
+
+    private static class Entry {
+
+        final long offset;
+
+        final long[] bloom;
+
+        Entry(long offset, long[] bloom) {
+            this.offset = offset;
+            this.bloom = bloom;
+        }
+    }
+
+    /**
+     * The opened indexes by directory, softly referenced so that the entries of repositories no
+     * longer in use can be reclaimed
+     */
+    private static final LoadingCache<File, ChangedPathsIndex> OPEN_INDEXES = CacheBuilder
+            .newBuilder().softValues().build(new CacheLoader<File, ChangedPathsIndex>() {
+                @Override
+                public ChangedPathsIndex load(File directory) {
+                    return new ChangedPathsIndex(directory);
+                }
+            });
+
+    private final File entriesFile;
+
+    private final File dataFile;
+
+    private final File lockFile;
+
+    private final Map<ObjectId, Entry> entries = Maps.newHashMap();
+
+    /**
+     * Length of the entries file that has been loaded in {@link #entries}
+     */
+    private long loadedLength;
+
+    private ObjectId lastLoadedId;
+
+    private ObjectId lastReadCommit;
+
+    private Set<String> lastReadPaths;
+
+    private ChangedPathsIndex(File directory) {
+        this.entriesFile = new File(directory, ENTRIES_FILE);
+        this.dataFile = new File(directory, DATA_FILE);
+        this.lockFile = new File(directory, LOCK_FILE);
+    }
+
+    /**
+     * Opens the index stored in the given directory, creating the directory if it doesn't exist.
+     */
+    public static ChangedPathsIndex open(File directory) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        ChangedPathsIndex index = OPEN_INDEXES.getUnchecked(directory.getAbsoluteFile());
+        index.refresh();
+        return index;
+    }
+
+    /**
+     * Loads the entries appended to the entries file since it was last loaded, or all of them if
+     * the file has been truncated or replaced since, which is told by the last loaded entry not
+     * being in its place anymore.
+     */
+    private synchronized void refresh() throws IOException {
+        final long length = entriesFile.length() / ENTRY_SIZE * ENTRY_SIZE;
+        if (length < loadedLength || (loadedLength > 0 && !lastLoadedId.equals(readLoadedId()))) {
+            entries.clear();
+            loadedLength = 0;
+            lastLoadedId = null;
+            lastReadCommit = null;
+            lastReadPaths = null;
+        }
+        if (length == loadedLength) {
+            return;
+        }
+        FileInputStream fileIn = new FileInputStream(entriesFile);
+        fileIn.getChannel().position(loadedLength);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn));
+        try {
+            final long count = (length - loadedLength) / ENTRY_SIZE;
+            for (long i = 0; i < count; i++) {
+                byte[] id = new byte[ObjectId.NUM_BYTES];
+                in.readFully(id);
+                long offset = in.readLong();
+                long[] bloom = new long[BLOOM_WORDS];
+                for (int w = 0; w < BLOOM_WORDS; w++) {
+                    bloom[w] = in.readLong();
+                }
+                lastLoadedId = new ObjectId(id);
+                entries.put(lastLoadedId, new Entry(offset, bloom));
+            }
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+        loadedLength = length;
+    }
+
+    /**
+     * @return the commit id found in the entries file where the last loaded entry was read from
+     */
+    private ObjectId readLoadedId() throws IOException {
+        byte[] id = new byte[ObjectId.NUM_BYTES];
+        RandomAccessFile raf = new RandomAccessFile(entriesFile, "r");
+        try {
+            raf.seek(loadedLength - ENTRY_SIZE);
+            raf.readFully(id);
+        } finally {
+            raf.close();
+        }
+        return new ObjectId(id);
+    }
+
+    /**
+     * @return the number of indexed commits
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return whether the changed paths of the given commit have been indexed
+     */
+    public synchronized boolean isIndexed(ObjectId commitId) {
+        return entries.containsKey(commitId);
+    }
+
+    /**
+     * @param commitId the id of an {@link #isIndexed(ObjectId) indexed} commit
+     * @param treePath the path of a tree, or the empty string for features directly under the root
+     *        tree
+     * @return whether the given commit added, removed or changed the tree at the given path
+     */
+    public synchronized boolean hasChanged(ObjectId commitId, String treePath) throws IOException {
+        Entry entry = entries.get(commitId);
+        checkArgument(entry != null, "Commit %s is not indexed", commitId);
+        if (!mightContain(entry.bloom, treePath)) {
+            return false;
+        }
+        return getChangedPaths(commitId, entry).contains(treePath);
+    }
+
+    /**
+     * @param commitId the id of an {@link #isIndexed(ObjectId) indexed} commit
+     * @return the paths of the trees changed by the given commit
+     */
+    public synchronized Set<String> getChangedPaths(ObjectId commitId) throws IOException {
+        Entry entry = entries.get(commitId);
+        checkArgument(entry != null, "Commit %s is not indexed", commitId);
+        return getChangedPaths(commitId, entry);
+    }
+
+    private Set<String> getChangedPaths(ObjectId commitId, Entry entry) throws IOException {
+        if (commitId.equals(lastReadCommit)) {
+            return lastReadPaths;
+        }
+        ImmutableSet.Builder<String> paths = ImmutableSet.builder();
+        RandomAccessFile data = new RandomAccessFile(dataFile, "r");
+        try {
+            data.seek(entry.offset);
+            final int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                paths.add(data.readUTF());
+            }
+        } finally {
+            data.close();
+        }
+        lastReadCommit = commitId;
+        lastReadPaths = paths.build();
+        return lastReadPaths;
+    }
+
+    /**
+     * Adds the changed paths of a commit to the index. Does nothing if the commit is already
+     * indexed.
+     * <p>
+     * The index is locked against other processes while the commit is added, since each entry
+     * points to the offset its data is appended at, and a partial entry left by an interrupted
+     * write can only be told apart from an entry being written by someone else if no one else is
+     * writing.
+     */
+    public synchronized void add(ObjectId commitId, Set<String> changedPaths) throws IOException {
+        RandomAccessFile lock = new RandomAccessFile(lockFile, "rw");
+        try {
+            lock(lock.getChannel());
+            refresh();
+            if (!entries.containsKey(commitId)) {
+                append(commitId, changedPaths);
+            }
+        } finally {
+            // closing the file releases the lock
+            lock.close();
+        }
+    }
+
+    private void append(ObjectId commitId, Set<String> changedPaths) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        long[] bloom = new long[BLOOM_WORDS];
+        out.writeInt(changedPaths.size());
+        for (String path : changedPaths) {
+            out.writeUTF(path);
+            add(bloom, path);
+        }
+        out.flush();
+
+        // the data is written before the entry pointing to it, so that an interrupted write
+        // leaves at most unreferenced data behind
+        final long offset;
+        FileOutputStream dataOut = new FileOutputStream(dataFile, true);
+        try {
+            offset = dataOut.getChannel().size();
+            record.writeTo(dataOut);
+            dataOut.flush();
+        } finally {
+            Closeables.close(dataOut, true);
+        }
+
+        final long length = entriesFile.length();
+        if (length % ENTRY_SIZE != 0) {
+            // drop the partial entry left by an interrupted write
+            RandomAccessFile raf = new RandomAccessFile(entriesFile, "rw");
+            try {
+                raf.setLength(length - length % ENTRY_SIZE);
+            } finally {
+                raf.close();
+            }
+        }
+        DataOutputStream entryOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(entriesFile, true)));
+        try {
+            entryOut.write(commitId.getRawValue());
+            entryOut.writeLong(offset);
+            for (long word : bloom) {
+                entryOut.writeLong(word);
+            }
+            entryOut.flush();
+        } finally {
+            Closeables.close(entryOut, true);
+        }
+        // the entry is read again on the next refresh, so that entries appended meanwhile by
+        // other processes are not skipped
+        entries.put(commitId, new Entry(offset, bloom));
+    }
+
+    /**
+     * Acquires an exclusive lock on the given channel, waiting while another process or another
+     * index instance in this same JVM, which makes {@link FileChannel#tryLock()} fail instead,
+     * holds it
+     */
+    private static FileLock lock(FileChannel channel) throws IOException {
+        while (true) {
+            try {
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException e) {
+                // held by another instance in this JVM
+            }
+            try {
+                Thread.sleep(LOCK_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    private static void add(long[] bloom, String path) {
+        final long hash = HASHER.hash(path);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_PROBES; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            bloom[bit >>> 6] |= 1L << (bit & 63);
+        }
+    }
+
+    private static boolean mightContain(long[] bloom, String path) {
+        final long hash = HASHER.hash(path);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_PROBES; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            if ((bloom[bit >>> 6] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        lastReadCommit = null;
+        lastReadPaths = null;
+    }
+}
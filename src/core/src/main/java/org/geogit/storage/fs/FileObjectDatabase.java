@@ -8,6 +8,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -17,7 +18,15 @@ import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
@@ -28,13 +37,21 @@ import org.geogit.storage.AbstractObjectDatabase;
 import org.geogit.storage.BulkOpListener;
 import org.geogit.storage.ConfigDatabase;
 import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectReader;
 import org.geogit.storage.ObjectSerializingFactory;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import com.ning.compress.lzf.LZFInputStream;
 
 /**
  * Provides an implementation of a GeoGit object database that utilizes the file system for the
@@ -44,6 +61,17 @@ import com.google.inject.Inject;
  */
 public class FileObjectDatabase extends AbstractObjectDatabase implements ObjectDatabase {
 
+    /**
+     * Number of ids requested to {@link #getAll} or {@link #deleteAll} that are sorted and
+     * processed together, sorting them by id makes consecutive reads hit the same directories
+     */
+    private static final int BULK_PARTITION_SIZE = 1000;
+
+    /**
+     * Number of partitions {@link #getAll} reads ahead of the one being consumed
+     */
+    private static final int READ_AHEAD_PARTITIONS = 2;
+
     private final Platform platform;
 
     private final ConfigDatabase configDB;
@@ -54,6 +82,8 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
 
     private String dataRootPath;
 
+    private ExecutorService readerService;
+
     /**
      * Constructs a new {@code FileObjectDatabase} using the given platform.
      * 
@@ -122,6 +152,10 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
                     + dataRoot.getAbsolutePath());
         }
         dataRootPath = dataRoot.getAbsolutePath();
+
+        final int nReaderThreads = Math.min(16, 2 * Runtime.getRuntime().availableProcessors());
+        readerService = Executors.newFixedThreadPool(nReaderThreads, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("FileObjectDatabase-reader-%d").build());
     }
 
     /**
@@ -129,6 +163,10 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
      */
     @Override
     public void close() {
+        if (readerService != null) {
+            readerService.shutdownNow();
+            readerService = null;
+        }
         dataRoot = null;
         dataRootPath = null;
     }
@@ -254,14 +292,134 @@ public class FileObjectDatabase extends AbstractObjectDatabase implements Object
                 "This method should not be called, we override lookUp(String) directly");
     }
 
+    /**
+     * Reads the requested objects concurrently on a bounded pool of reader threads. Ids are
+     * processed in partitions sorted by id (i.e. by directory), and up to
+     * {@link #READ_AHEAD_PARTITIONS} partitions are read ahead of the one being consumed, so the
+     * returned iterator does not preserve the order of the argument ids.
+     */
     @Override
-    public Iterator<RevObject> getAll(Iterable<ObjectId> ids, BulkOpListener listener) {
-        throw new UnsupportedOperationException("This method is not yet implemented");
+    public Iterator<RevObject> getAll(final Iterable<ObjectId> ids, final BulkOpListener listener) {
+        checkNotNull(ids, "ids");
+        checkNotNull(listener, "listener");
+        checkState(isOpen(), "Database is closed");
+        return new ParallelReadIterator(ids.iterator(), listener);
+    }
+
+    private class ParallelReadIterator extends AbstractIterator<RevObject> {
+
+        private final UnmodifiableIterator<List<ObjectId>> partitions;
+
+        private final BulkOpListener listener;
+
+        private final LinkedList<Future<ReadResult>> pending = Lists.newLinkedList();
+
+        private final LinkedList<ObjectId> pendingIds = Lists.newLinkedList();
+
+        public ParallelReadIterator(Iterator<ObjectId> ids, BulkOpListener listener) {
+            this.partitions = Iterators.partition(ids, BULK_PARTITION_SIZE);
+            this.listener = listener;
+        }
+
+        @Override
+        protected RevObject computeNext() {
+            while (true) {
+                while (pending.size() < READ_AHEAD_PARTITIONS * BULK_PARTITION_SIZE
+                        && partitions.hasNext()) {
+                    for (ObjectId id : ObjectId.NATURAL_ORDER.sortedCopy(partitions.next())) {
+                        pendingIds.add(id);
+                        pending.add(readerService.submit(new ReadTask(id)));
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return endOfData();
+                }
+                final ObjectId id = pendingIds.removeFirst();
+                final ReadResult result;
+                try {
+                    result = pending.removeFirst().get();
+                } catch (InterruptedException e) {
+                    cancelPending();
+                    throw Throwables.propagate(e);
+                } catch (ExecutionException e) {
+                    cancelPending();
+                    throw Throwables.propagate(e.getCause());
+                }
+                if (result == null) {
+                    listener.notFound(id);
+                } else {
+                    listener.found(id, result.size);
+                    return result.object;
+                }
+            }
+        }
+
+        private void cancelPending() {
+            for (Future<ReadResult> f : pending) {
+                f.cancel(true);
+            }
+            pending.clear();
+            pendingIds.clear();
+        }
+    }
+
+    private static class ReadResult {
+
+        private final RevObject object;
+
+        private final int size;
+
+        public ReadResult(RevObject object, int size) {
+            this.object = object;
+            this.size = size;
+        }
+    }
+
+    private class ReadTask implements Callable<ReadResult> {
+
+        private final ObjectId id;
+
+        public ReadTask(ObjectId id) {
+            this.id = id;
+        }
+
+        /**
+         * @return the parsed object and its storage size, or {@code null} if it doesn't exist
+         */
+        @Override
+        @Nullable
+        public ReadResult call() throws IOException {
+            final byte[] raw;
+            try {
+                raw = Files.toByteArray(filePath(id));
+            } catch (FileNotFoundException notFound) {
+                return null;
+            }
+            ObjectReader<RevObject> reader = serializationFactory.createObjectReader();
+            RevObject object = reader.read(id, new LZFInputStream(new ByteArrayInputStream(raw)));
+            return new ReadResult(object, raw.length);
+        }
     }
 
     @Override
-    public long deleteAll(Iterator<ObjectId> ids, final BulkOpListener listener) {
-        throw new UnsupportedOperationException("This method is not yet implemented");
+    public long deleteAll(final Iterator<ObjectId> ids, final BulkOpListener listener) {
+        checkNotNull(ids, "ids");
+        checkNotNull(listener, "listener");
+
+        long count = 0;
+        UnmodifiableIterator<List<ObjectId>> partitions = Iterators.partition(ids,
+                BULK_PARTITION_SIZE);
+        while (partitions.hasNext()) {
+            for (ObjectId id : ObjectId.NATURAL_ORDER.sortedCopy(partitions.next())) {
+                if (delete(id)) {
+                    count++;
+                    listener.deleted(id);
+                } else {
+                    listener.notFound(id);
+                }
+            }
+        }
+        return count;
     }
 
     @Override
@@ -11,11 +11,17 @@ import static com.google.common.base.Preconditions.checkState;
 import static org.geogit.api.Ref.append;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
@@ -28,6 +34,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
 
@@ -43,6 +50,13 @@ public class FileRefDatabase extends AbstractRefDatabase {
 
     private final ConfigDatabase configDB;
 
+    private static final long LOCK_RETRY_MILLIS = 10;
+
+    /**
+     * The storage locks held by this process, by ref name
+     */
+    private final Map<String, FileLock> fileLocks = Maps.newConcurrentMap();
+
     /**
      * Constructs a new {@code FileRefDatabase} with the given platform.
      * 
@@ -206,11 +220,18 @@ public class FileRefDatabase extends AbstractRefDatabase {
         }
     }
 
+    /**
+     * Reads a ref file. Ref files are replaced atomically by {@link #store(String, String)}, so no
+     * locking is needed to read them.
+     *
+     * @return the contents of the ref file, or {@code null} if it doesn't exist
+     */
     private String readRef(File refFile) {
         try {
-            synchronized (refFile.getCanonicalPath().intern()) {
-                return Files.readFirstLine(refFile, CHARSET);
-            }
+            return Files.readFirstLine(refFile, CHARSET);
+        } catch (FileNotFoundException e) {
+            // removed concurrently
+            return null;
         } catch (IOException e) {
             throw Throwables.propagate(e);
         }
@@ -218,19 +239,84 @@ public class FileRefDatabase extends AbstractRefDatabase {
 
     private void store(String refName, String refValue) {
         final File refFile = toFile(refName);
-        final File tmpFile = new File(refFile.getParentFile(), "." + refFile.getName() + ".tmp");
-
+        File tmpFile = null;
         try {
-            Files.createParentDirs(tmpFile);
+            Files.createParentDirs(refFile);
+            // a temporary file per writer, hidden from getAll() by its leading dot
+            tmpFile = File.createTempFile("." + refFile.getName() + ".", ".tmp",
+                    refFile.getParentFile());
             Files.write(refValue + "\n", tmpFile, CHARSET);
-            boolean renamed;
-            synchronized (refFile.getCanonicalPath().intern()) {
+            boolean renamed = tmpFile.renameTo(refFile);
+            if (!renamed) {
+                // some platforms can't rename over an existing file
                 refFile.delete();
                 renamed = tmpFile.renameTo(refFile);
             }
             checkState(renamed, "unable to save ref " + refName);
         } catch (IOException e) {
             throw Throwables.propagate(e);
+        } finally {
+            if (tmpFile != null && tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Locks the ref against other processes through a {@link FileLock} on a hidden
+     * {@code .<ref name>.lock} file next to the ref file. Lock files are left in place, as deleting
+     * them would let two processes lock different files for the same ref.
+     */
+    @Override
+    protected void lockStorage(String refName, long timeoutMillis) throws TimeoutException {
+        final File refFile = toFile(refName);
+        final File lockFile = new File(refFile.getParentFile(), "." + refFile.getName() + ".lock");
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        RandomAccessFile raf = null;
+        try {
+            Files.createParentDirs(lockFile);
+            raf = new RandomAccessFile(lockFile, "rw");
+            FileLock fileLock;
+            while ((fileLock = tryLock(raf.getChannel())) == null) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new TimeoutException("The attempt to lock ref " + refName
+                            + " timed out.");
+                }
+                Thread.sleep(LOCK_RETRY_MILLIS);
+            }
+            fileLocks.put(refName, fileLock);
+            raf = null;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } catch (InterruptedException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            Closeables.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return the lock, or {@code null} if it's held by another process or by another instance
+     *         in this same JVM, which makes {@link FileChannel#tryLock()} fail instead
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void unlockStorage(String refName) {
+        FileLock fileLock = fileLocks.remove(refName);
+        if (fileLock != null) {
+            try {
+                fileLock.release();
+                fileLock.channel().close();
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
         }
     }
 
@@ -285,7 +371,9 @@ public class FileRefDatabase extends AbstractRefDatabase {
             } else if (f.getName().length() == 0 || f.getName().charAt(0) != '.') {
                 String refName = append(prefix, f.getName());
                 String refValue = readRef(f);
-                target.put(refName, refValue);
+                if (refValue != null) {
+                    target.put(refName, refValue);
+                }
             }
         }
     }
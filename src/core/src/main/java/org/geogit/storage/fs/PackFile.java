@@ -0,0 +1,360 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.ObjectId;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+/**
+ * An append-only file holding the serialized form of many objects, used by
+ * {@link PackedObjectDatabase}.
+ * <p>
+ * The pack file starts with a {@code "GGPK"} magic and a version number, followed by a sequence
+ * of records of the form {@code object id (20 bytes), payload length (int), payload}. Records are
+ * self describing so that the pack index can be rebuilt from the pack contents if the process
+ * died before the pack was {@link #seal() sealed}.
+ * <p>
+ * A pack is either <em>active</em>, in which case objects can be {@link #append appended} and
+ * its index is kept in memory, or <em>sealed</em>, in which case it is read only and looked up
+ * through a memory mapped {@link PackIndex}.
+ * <p>
+ * An active pack holds an exclusive lock on its file until it's sealed, so that other processes,
+ * or other database instances in the same JVM, can tell the pack is still being written, and
+ * don't take it for a pack left behind by a process that died.
+ */
+final class PackFile {
+
+    private static final byte[] MAGIC = { 'G', 'G', 'P', 'K' };
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+
+    private static final int RECORD_HEADER_SIZE = ObjectId.NUM_BYTES + 4;
+
+    private static final long LOCK_RETRY_MILLIS = 10;
+
+    /**
+     * Location of an object's payload inside a pack file
+     */
+    static final class Entry {
+
+        final long offset;
+
+        final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private PackIndex index;
+
+    private TreeMap<ObjectId, Entry> pending;
+
+    private DataOutputStream out;
+
+    @Nullable
+    private FileLock writerLock;
+
+    private long length;
+
+    private PackFile(File file, RandomAccessFile raf) {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * Creates a new active pack in the given file, which the caller must have just created empty
+     * with {@link File#createNewFile()}, so that two writers never get the same file
+     */
+    public static PackFile create(final File file) throws IOException {
+        checkState(file.length() == 0, "Pack file already exists: %s", file);
+        PackFile pack = new PackFile(file, new RandomAccessFile(file, "rw"));
+        // the header is only written once the lock is held, so that an empty pack file is never
+        // recovered
+        pack.writerLock = lock(pack.channel);
+        pack.pending = Maps.newTreeMap();
+        pack.out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(pack.channel), 64 * 1024));
+        pack.out.write(MAGIC);
+        pack.out.writeInt(VERSION);
+        pack.out.flush();
+        pack.length = HEADER_SIZE;
+        return pack;
+    }
+
+    /**
+     * Opens an existing pack file as a sealed pack. If the pack has no index file and its writer
+     * lock can be acquired (i.e. it was active when the process writing it died) the pack contents
+     * are scanned, any trailing partially written record is discarded, and the index is rebuilt.
+     *
+     * @return the sealed pack, or {@code null} if the pack is still being written
+     */
+    @Nullable
+    public static PackFile open(final File file) throws IOException {
+        final File indexFile = indexFile(file);
+        if (!indexFile.exists() && !recover(file, indexFile)) {
+            return null;
+        }
+        PackFile pack = new PackFile(file, new RandomAccessFile(file, "r"));
+        pack.length = pack.channel.size();
+        pack.index = PackIndex.open(indexFile);
+        return pack;
+    }
+
+    static File indexFile(File packFile) {
+        String name = packFile.getName();
+        name = name.substring(0, name.length() - ".pack".length()) + ".idx";
+        return new File(packFile.getParentFile(), name);
+    }
+
+    /**
+     * @return whether the pack is sealed, {@code false} if it's still being written
+     */
+    private static boolean recover(final File file, final File indexFile) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            // just created by its writer, which is about to lock it
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final FileLock lock = tryLock(channel);
+            if (lock == null) {
+                return false;
+            }
+            if (indexFile.exists()) {
+                // sealed by its writer in the meantime
+                return true;
+            }
+            final long size = channel.size();
+            final SortedMap<ObjectId, Entry> entries = Maps.newTreeMap();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long pos = HEADER_SIZE;
+            while (pos + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, pos);
+                header.flip();
+                byte[] raw = new byte[ObjectId.NUM_BYTES];
+                header.get(raw);
+                final int payloadLength = header.getInt();
+                final long payloadOffset = pos + RECORD_HEADER_SIZE;
+                if (payloadLength < 0 || payloadOffset + payloadLength > size) {
+                    break;
+                }
+                entries.put(ObjectId.createNoClone(raw), new Entry(payloadOffset, payloadLength));
+                pos = payloadOffset + payloadLength;
+            }
+            channel.truncate(Math.max(pos, HEADER_SIZE));
+            channel.force(true);
+            PackIndex.write(indexFile, entries);
+            return true;
+        } finally {
+            // closing the file releases the lock
+            raf.close();
+        }
+    }
+
+    /**
+     * Acquires the writer lock of a new pack, waiting while another database instance in this
+     * same JVM holds it to check whether the pack was left behind
+     */
+    private static FileLock lock(final FileChannel channel) throws IOException {
+        FileLock lock;
+        while ((lock = tryLock(channel)) == null) {
+            try {
+                Thread.sleep(LOCK_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * @return the lock, or {@code null} if it's held by another process or by another instance
+     *         in this same JVM, which makes {@link FileChannel#tryLock()} fail instead
+     */
+    @Nullable
+    private static FileLock tryLock(final FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isSealed() {
+        return index != null;
+    }
+
+    /**
+     * @return the number of objects in this pack
+     */
+    public int size() {
+        return isSealed() ? index.size() : pending.size();
+    }
+
+    /**
+     * @return the size in bytes of the pack file
+     */
+    public long length() {
+        return length;
+    }
+
+    @Nullable
+    public Entry find(final ObjectId id) {
+        return isSealed() ? index.find(id) : pending.get(id);
+    }
+
+    public void lookUp(final byte[] prefix, final List<ObjectId> target) {
+        if (isSealed()) {
+            index.lookUp(prefix, target);
+        } else {
+            for (ObjectId id : pending.keySet()) {
+                boolean matches = true;
+                for (int i = 0; matches && i < prefix.length; i++) {
+                    matches = id.byteN(i) == (prefix[i] & 0xFF);
+                }
+                if (matches) {
+                    target.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the payload at the given location. Safe to be called concurrently, since it does not
+     * depend on the channel position.
+     */
+    public byte[] read(final Entry entry) throws IOException {
+        byte[] payload = new byte[entry.length];
+        readFully(channel, ByteBuffer.wrap(payload), entry.offset);
+        return payload;
+    }
+
+    /**
+     * Appends an object to this active pack. Calls to this method must be externally synchronized
+     * and followed by a call to {@link #flush()} before the object can be {@link #read}.
+     */
+    public Entry append(final ObjectId id, final byte[] payload) throws IOException {
+        checkState(!isSealed(), "Pack is sealed: %s", file);
+        byte[] raw = new byte[ObjectId.NUM_BYTES];
+        id.getRawValue(raw);
+        out.write(raw);
+        out.writeInt(payload.length);
+        out.write(payload);
+        Entry entry = new Entry(length + RECORD_HEADER_SIZE, payload.length);
+        length += RECORD_HEADER_SIZE + payload.length;
+        pending.put(id, entry);
+        return entry;
+    }
+
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Flushes any pending write, writes down the index file, and turns this pack read only.
+     */
+    public void seal() throws IOException {
+        checkState(!isSealed(), "Pack is already sealed: %s", file);
+        out.flush();
+        channel.force(true);
+        PackIndex.write(indexFile(file), pending);
+        index = PackIndex.open(indexFile(file));
+        pending = null;
+        out = null;
+        writerLock.release();
+        writerLock = null;
+    }
+
+    /**
+     * @return all the objects in the pack, in object id order
+     */
+    public Iterator<Map.Entry<ObjectId, Entry>> entries() {
+        if (!isSealed()) {
+            return pending.entrySet().iterator();
+        }
+        return new AbstractIterator<Map.Entry<ObjectId, Entry>>() {
+            private int next = 0;
+
+            @Override
+            protected Map.Entry<ObjectId, Entry> computeNext() {
+                if (next == index.size()) {
+                    return endOfData();
+                }
+                Map.Entry<ObjectId, Entry> e = Maps.immutableEntry(index.id(next),
+                        index.entry(next));
+                next++;
+                return e;
+            }
+        };
+    }
+
+    public void close() {
+        Closeables.closeQuietly(raf);
+    }
+
+    /**
+     * Closes and deletes the pack and its index
+     */
+    public void delete() {
+        close();
+        index = null;
+        indexFile(file).delete();
+        file.delete();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position)
+            throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of pack file");
+            }
+            position += read;
+        }
+    }
+}
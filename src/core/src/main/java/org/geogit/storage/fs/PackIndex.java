@@ -0,0 +1,226 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.ObjectId;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Read only, memory mapped index of the objects contained in a {@link PackFile pack file}.
+ * <p>
+ * The index file layout is:
+ *
+ * <pre>
+ * <code>
+ *  header:  "GGPI" magic (4 bytes), version (int), entry count (int)
+ *  fan-out: 256 ints, where fan-out[b] is the number of entries whose first id byte is <= b
+ *  entries: entry count * (object id (20 bytes), payload offset (long), payload length (int))
+ * </code>
+ * </pre>
+ *
+ * Entries are sorted by {@link ObjectId#NATURAL_ORDER object id}, so a lookup costs a binary
+ * search over the slice of entries delimited by the fan-out table for the id's first byte.
+ */
+final class PackIndex {
+
+    private static final byte[] MAGIC = { 'G', 'G', 'P', 'I' };
+
+    private static final int VERSION = 1;
+
+    private static final int FANOUT_OFFSET = MAGIC.length + 4 + 4;
+
+    private static final int ENTRIES_OFFSET = FANOUT_OFFSET + 256 * 4;
+
+    private static final int ENTRY_SIZE = ObjectId.NUM_BYTES + 8 + 4;
+
+    private final File file;
+
+    private final MappedByteBuffer buffer;
+
+    private final int size;
+
+    private PackIndex(File file, MappedByteBuffer buffer, int size) {
+        this.file = file;
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Memory maps the given index file.
+     */
+    public static PackIndex open(File indexFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = raf.getChannel();
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            Closeables.closeQuietly(raf);
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            checkState(MAGIC[i] == buffer.get(i), "%s is not a pack index file", indexFile);
+        }
+        final int version = buffer.getInt(MAGIC.length);
+        checkState(VERSION == version, "Unsupported pack index version %s: %s", version,
+                indexFile);
+        final int size = buffer.getInt(MAGIC.length + 4);
+        checkState(buffer.capacity() == ENTRIES_OFFSET + size * ENTRY_SIZE,
+                "Pack index file is truncated: %s", indexFile);
+        return new PackIndex(indexFile, buffer, size);
+    }
+
+    /**
+     * Writes an index file for the given entries, which are already sorted by object id.
+     */
+    public static void write(File indexFile, SortedMap<ObjectId, PackFile.Entry> entries)
+            throws IOException {
+
+        final int[] fanout = new int[256];
+        for (ObjectId id : entries.keySet()) {
+            fanout[id.byteN(0)]++;
+        }
+        for (int i = 1; i < 256; i++) {
+            fanout[i] += fanout[i - 1];
+        }
+
+        File tmp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 64 * 1024));
+        try {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (int i = 0; i < 256; i++) {
+                out.writeInt(fanout[i]);
+            }
+            byte[] raw = new byte[ObjectId.NUM_BYTES];
+            for (Entry<ObjectId, PackFile.Entry> e : entries.entrySet()) {
+                e.getKey().getRawValue(raw);
+                out.write(raw);
+                out.writeLong(e.getValue().offset);
+                out.writeInt(e.getValue().length);
+            }
+            out.flush();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(indexFile)) {
+            throw new IOException("Unable to rename " + tmp + " to " + indexFile);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of objects in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the location of the object in the pack file, or {@code null} if the object is not
+     *         in this index
+     */
+    @Nullable
+    public PackFile.Entry find(final ObjectId id) {
+        final int firstByte = id.byteN(0);
+        int low = firstByte == 0 ? 0 : fanout(firstByte - 1);
+        int high = fanout(firstByte) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int c = compare(mid, id);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return entry(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds to {@code target} all the object ids in this index that start with the given raw
+     * prefix.
+     */
+    public void lookUp(final byte[] prefix, final List<ObjectId> target) {
+        final int firstByte = prefix[0] & 0xFF;
+        final int from = firstByte == 0 ? 0 : fanout(firstByte - 1);
+        final int to = fanout(firstByte);
+        for (int i = from; i < to; i++) {
+            if (startsWith(i, prefix)) {
+                target.add(id(i));
+            }
+        }
+    }
+
+    /**
+     * @return the object id of the entry at the given index
+     */
+    public ObjectId id(final int index) {
+        final int pos = ENTRIES_OFFSET + index * ENTRY_SIZE;
+        byte[] raw = new byte[ObjectId.NUM_BYTES];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = buffer.get(pos + i);
+        }
+        return ObjectId.createNoClone(raw);
+    }
+
+    /**
+     * @return the location of the entry at the given index
+     */
+    public PackFile.Entry entry(final int index) {
+        final int pos = ENTRIES_OFFSET + index * ENTRY_SIZE + ObjectId.NUM_BYTES;
+        return new PackFile.Entry(buffer.getLong(pos), buffer.getInt(pos + 8));
+    }
+
+    private int fanout(int b) {
+        return buffer.getInt(FANOUT_OFFSET + 4 * b);
+    }
+
+    private int compare(final int index, final ObjectId id) {
+        final int pos = ENTRIES_OFFSET + index * ENTRY_SIZE;
+        for (int i = 0; i < ObjectId.NUM_BYTES; i++) {
+            int b1 = buffer.get(pos + i) & 0xFF;
+            int b2 = id.byteN(i);
+            if (b1 != b2) {
+                return b1 - b2;
+            }
+        }
+        return 0;
+    }
+
+    private boolean startsWith(final int index, final byte[] prefix) {
+        final int pos = ENTRIES_OFFSET + index * ENTRY_SIZE;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(pos + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
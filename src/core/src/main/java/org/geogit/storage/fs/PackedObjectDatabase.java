@@ -0,0 +1,725 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.RevObject;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+import org.geogit.repository.RepositoryConnectionException;
+import org.geogit.storage.AbstractObjectDatabase;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.ConfigDatabase;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectSerializingFactory;
+import org.geogit.storage.ObjectReader;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.inject.Inject;
+import com.ning.compress.lzf.LZFInputStream;
+
+/**
+ * Provides an implementation of a GeoGit object database that stores objects in append-only
+ * {@link PackFile pack files} instead of one file per object, so that importing millions of
+ * objects doesn't create millions of files.
+ * <p>
+ * New objects are appended to a single <em>active</em> pack, whose index is kept in memory. Once
+ * the active pack reaches {@link #MAX_OBJECTS_PER_PACK} objects, or the database is closed, the
+ * pack is sealed by writing down its sorted, memory mapped {@link PackIndex index}, and a new
+ * active pack is started on the next write.
+ * <p>
+ * Since packs are append-only, {@link #delete(ObjectId) deleted} objects are recorded in a
+ * tombstones file and only physically removed by {@link #repack()}, which also merges all the
+ * existing packs into as few packs as possible.
+ * <p>
+ * Several processes, or several database instances in the same JVM, can use the same database:
+ * each one writes its own active pack, and picks up the packs sealed by the others when it
+ * doesn't find an object in the packs it knows about.
+ *
+ * @see AbstractObjectDatabase
+ */
+public class PackedObjectDatabase extends AbstractObjectDatabase implements ObjectDatabase {
+
+    /**
+     * Maximum number of objects the active pack accepts before being sealed, bounds the amount of
+     * memory used by the in-memory index of the active pack
+     */
+    static final int MAX_OBJECTS_PER_PACK = 500 * 1000;
+
+    private static final String PACK_PREFIX = "pack-";
+
+    private static final String PACK_SUFFIX = ".pack";
+
+    private static final String TOMBSTONES_FILE = "tombstones";
+
+    private final Platform platform;
+
+    private final ConfigDatabase configDB;
+
+    private final String databaseName;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private File dataRoot;
+
+    /**
+     * Sealed packs, in creation order
+     */
+    private List<PackFile> packs;
+
+    @Nullable
+    private PackFile activePack;
+
+    private Set<ObjectId> tombstones;
+
+    private OutputStream tombstonesOut;
+
+    /**
+     * The number to try first for the next pack file, the file being created only if no one else
+     * took that number in the meantime
+     */
+    private long nextPackNumber;
+
+    @Inject
+    public PackedObjectDatabase(final Platform platform,
+            final ObjectSerializingFactory serialFactory, final ConfigDatabase configDB) {
+        this(platform, "packs", serialFactory, configDB);
+    }
+
+    protected PackedObjectDatabase(final Platform platform, final String databaseName,
+            final ObjectSerializingFactory serialFactory, final ConfigDatabase configDB) {
+        super(serialFactory);
+        checkNotNull(platform);
+        checkNotNull(databaseName);
+        this.platform = platform;
+        this.databaseName = databaseName;
+        this.configDB = configDB;
+    }
+
+    /**
+     * @return true if the database is open, false otherwise
+     */
+    @Override
+    public boolean isOpen() {
+        return dataRoot != null;
+    }
+
+    /**
+     * Opens the database for use by GeoGit, sealing any pack that was left active by a process
+     * that didn't close the database, and skipping the packs that are still being written by
+     * another process or database instance.
+     */
+    @Override
+    public void open() {
+        if (isOpen()) {
+            return;
+        }
+        final Optional<URL> repoUrl = new ResolveGeogitDir(platform).call();
+        checkState(repoUrl.isPresent(), "Can't find geogit repository home");
+
+        File root;
+        try {
+            root = new File(new File(repoUrl.get().toURI()), databaseName);
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+        if (!root.exists() && !root.mkdirs()) {
+            throw new IllegalStateException("Can't create environment: " + root.getAbsolutePath());
+        }
+        if (!root.isDirectory()) {
+            throw new IllegalStateException("Environment but is not a directory: "
+                    + root.getAbsolutePath());
+        }
+        if (!root.canWrite()) {
+            throw new IllegalStateException("Environment is not writable: "
+                    + root.getAbsolutePath());
+        }
+
+        lock.writeLock().lock();
+        try {
+            packs = Lists.newArrayList();
+            nextPackNumber = 0;
+            openNewPacks(root);
+            tombstones = readTombstones(new File(root, TOMBSTONES_FILE));
+            tombstonesOut = new BufferedOutputStream(new FileOutputStream(new File(root,
+                    TOMBSTONES_FILE), true));
+            dataRoot = root;
+        } catch (IOException e) {
+            closePacks();
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the database, sealing the active pack if there is one.
+     */
+    @Override
+    public void close() {
+        if (!isOpen()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            sealActivePack();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            closePacks();
+            dataRoot = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closePacks() {
+        if (packs != null) {
+            for (PackFile pack : packs) {
+                pack.close();
+            }
+            packs = null;
+        }
+        if (activePack != null) {
+            activePack.close();
+            activePack = null;
+        }
+        Closeables.closeQuietly(tombstonesOut);
+        tombstonesOut = null;
+        tombstones = null;
+    }
+
+    /**
+     * Determines if the given {@link ObjectId} exists in the object database.
+     *
+     * @param id the id to search for
+     * @return true if the object exists, false otherwise
+     */
+    @Override
+    public boolean exists(final ObjectId id) {
+        checkNotNull(id);
+        return isLocated(id) || (refreshPacks() && isLocated(id));
+    }
+
+    private boolean isLocated(final ObjectId id) {
+        lock.readLock().lock();
+        try {
+            return locate(id) != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected InputStream getRawInternal(final ObjectId id, final boolean failIfNotFound) {
+        byte[] raw = getRawBytes(id);
+        if (raw == null) {
+            if (failIfNotFound) {
+                throw new IllegalArgumentException("Object does not exist: " + id);
+            }
+            return null;
+        }
+        return new ByteArrayInputStream(raw);
+    }
+
+    /**
+     * Looks up the object in the packs sealed by others since the packs were last listed if it's
+     * not found in the known ones
+     */
+    @Nullable
+    private byte[] getRawBytes(final ObjectId id) {
+        byte[] raw = readRawBytes(id);
+        if (raw == null && refreshPacks()) {
+            raw = readRawBytes(id);
+        }
+        return raw;
+    }
+
+    @Nullable
+    private byte[] readRawBytes(final ObjectId id) {
+        lock.readLock().lock();
+        try {
+            for (PackFile pack : searchOrder()) {
+                PackFile.Entry entry = pack.find(id);
+                if (entry != null) {
+                    return tombstones.contains(id) ? null : pack.read(entry);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the packs sealed by other processes or database instances since the packs were last
+     * listed.
+     *
+     * @return whether any new pack was opened
+     */
+    private boolean refreshPacks() {
+        lock.writeLock().lock();
+        try {
+            return isOpen() && openNewPacks(dataRoot);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the packs in the database directory that are not open yet, except the ones still
+     * being written by someone else. Must be called while holding the write lock.
+     *
+     * @return whether any new pack was opened
+     */
+    private boolean openNewPacks(final File root) throws IOException {
+        boolean opened = false;
+        for (File packFile : listPackFiles(root)) {
+            nextPackNumber = Math.max(nextPackNumber, packNumber(packFile) + 1);
+            if (isKnown(packFile)) {
+                continue;
+            }
+            PackFile pack = PackFile.open(packFile);
+            if (pack != null) {
+                packs.add(pack);
+                opened = true;
+            }
+        }
+        return opened;
+    }
+
+    private boolean isKnown(final File packFile) {
+        if (activePack != null && activePack.getFile().equals(packFile)) {
+            return true;
+        }
+        for (PackFile pack : packs) {
+            if (pack.getFile().equals(packFile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Must be called while holding the read or write lock
+     */
+    @Nullable
+    private PackFile locate(final ObjectId id) {
+        if (tombstones.contains(id)) {
+            return null;
+        }
+        for (PackFile pack : searchOrder()) {
+            if (pack.find(id) != null) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the active pack followed by the sealed packs, newest first, since recently written
+     *         objects are the more likely to be requested
+     */
+    private Iterable<PackFile> searchOrder() {
+        List<PackFile> order = Lists.newArrayListWithCapacity(packs.size() + 1);
+        if (activePack != null) {
+            order.add(activePack);
+        }
+        order.addAll(Lists.reverse(packs));
+        return order;
+    }
+
+    /**
+     * @see org.geogit.storage.AbstractObjectDatabase#putInternal(org.geogit.api.ObjectId, byte[])
+     */
+    @Override
+    protected boolean putInternal(final ObjectId id, final byte[] rawData) {
+        lock.writeLock().lock();
+        try {
+            boolean inserted = append(id, rawData);
+            if (activePack != null) {
+                activePack.flush();
+            }
+            return inserted;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Streams all the objects into the active pack holding the write lock only once, and flushes
+     * the pack at the end.
+     */
+    @Override
+    public void putAll(final Iterator<? extends RevObject> objects, final BulkOpListener listener) {
+        ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+        lock.writeLock().lock();
+        try {
+            while (objects.hasNext()) {
+                RevObject object = objects.next();
+                rawOut.reset();
+
+                writeObject(object, rawOut);
+                final byte[] rawData = rawOut.toByteArray();
+
+                final ObjectId id = object.getId();
+                if (append(id, rawData)) {
+                    listener.inserted(id, rawData.length);
+                } else {
+                    listener.found(id, null);
+                }
+            }
+            if (activePack != null) {
+                activePack.flush();
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock
+     */
+    private boolean append(final ObjectId id, final byte[] rawData) throws IOException {
+        if (tombstones.contains(id)) {
+            removeTombstone(id);
+        } else if (locate(id) != null) {
+            return false;
+        }
+        if (activePack == null) {
+            activePack = createPack();
+        }
+        activePack.append(id, rawData);
+        if (activePack.size() >= MAX_OBJECTS_PER_PACK) {
+            sealActivePack();
+        }
+        return true;
+    }
+
+    /**
+     * Must be called while holding the write lock
+     */
+    private void sealActivePack() throws IOException {
+        if (activePack == null) {
+            return;
+        }
+        PackFile pack = activePack;
+        activePack = null;
+        if (pack.size() == 0) {
+            pack.delete();
+        } else {
+            pack.seal();
+            packs.add(pack);
+        }
+    }
+
+    /**
+     * Marks the object with the provided {@link ObjectId id} as deleted. The storage space is
+     * reclaimed on the next {@link #repack()}.
+     *
+     * @param objectId the id of the object to delete
+     * @return true if the object was deleted, false if it was not found
+     */
+    @Override
+    public boolean delete(final ObjectId objectId) {
+        checkNotNull(objectId);
+        lock.writeLock().lock();
+        try {
+            boolean deleted = addTombstone(objectId);
+            tombstonesOut.flush();
+            return deleted;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long deleteAll(final Iterator<ObjectId> ids, final BulkOpListener listener) {
+        long count = 0;
+        lock.writeLock().lock();
+        try {
+            while (ids.hasNext()) {
+                ObjectId id = ids.next();
+                if (addTombstone(id)) {
+                    count++;
+                    listener.deleted(id);
+                } else {
+                    listener.notFound(id);
+                }
+            }
+            tombstonesOut.flush();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return count;
+    }
+
+    private boolean addTombstone(final ObjectId id) throws IOException {
+        if (locate(id) == null) {
+            return false;
+        }
+        tombstones.add(id);
+        tombstonesOut.write(id.getRawValue());
+        return true;
+    }
+
+    private void removeTombstone(final ObjectId id) throws IOException {
+        tombstones.remove(id);
+        tombstonesOut.close();
+        File file = new File(dataRoot, TOMBSTONES_FILE);
+        writeTombstones(file, tombstones);
+        tombstonesOut = new BufferedOutputStream(new FileOutputStream(file, true));
+    }
+
+    /**
+     * Copies all the live objects out of the existing packs into new packs, dropping deleted
+     * objects and duplicates, and removes the old packs and the tombstones.
+     *
+     * @return the number of objects in the resulting packs
+     */
+    public long repack() {
+        checkState(isOpen(), "Database is not open");
+        lock.writeLock().lock();
+        try {
+            sealActivePack();
+            final List<PackFile> oldPacks = Lists.newArrayList(packs);
+            final List<PackFile> newPacks = Lists.newArrayList();
+            packs.clear();
+            long count = 0;
+            for (PackFile source : oldPacks) {
+                Iterator<Map.Entry<ObjectId, PackFile.Entry>> entries = source.entries();
+                while (entries.hasNext()) {
+                    Map.Entry<ObjectId, PackFile.Entry> e = entries.next();
+                    ObjectId id = e.getKey();
+                    if (tombstones.contains(id) || contains(newPacks, id)
+                            || (activePack != null && activePack.find(id) != null)) {
+                        continue;
+                    }
+                    if (activePack == null) {
+                        activePack = createPack();
+                    }
+                    activePack.append(id, source.read(e.getValue()));
+                    count++;
+                    if (activePack.size() >= MAX_OBJECTS_PER_PACK) {
+                        activePack.seal();
+                        newPacks.add(activePack);
+                        activePack = null;
+                    }
+                }
+            }
+            if (activePack != null) {
+                activePack.seal();
+                newPacks.add(activePack);
+                activePack = null;
+            }
+            packs.addAll(newPacks);
+            for (PackFile old : oldPacks) {
+                old.delete();
+            }
+            tombstones.clear();
+            tombstonesOut.close();
+            File file = new File(dataRoot, TOMBSTONES_FILE);
+            writeTombstones(file, tombstones);
+            tombstonesOut = new BufferedOutputStream(new FileOutputStream(file, true));
+            return count;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of sealed packs plus the active one, if any
+     */
+    public int getPackCount() {
+        lock.readLock().lock();
+        try {
+            return packs.size() + (activePack == null ? 0 : 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean contains(List<PackFile> packs, ObjectId id) {
+        for (PackFile pack : packs) {
+            if (pack.find(id) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected List<ObjectId> lookUpInternal(final byte[] raw) {
+        checkArgument(raw.length > 1, "partial object id is too short");
+        List<ObjectId> matches = Lists.newArrayList();
+        List<ObjectId> result = Lists.newArrayList();
+        lock.readLock().lock();
+        try {
+            for (PackFile pack : searchOrder()) {
+                pack.lookUp(raw, matches);
+            }
+            for (ObjectId id : Sets.newLinkedHashSet(matches)) {
+                if (!tombstones.contains(id)) {
+                    result.add(id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<RevObject> getAll(final Iterable<ObjectId> ids, final BulkOpListener listener) {
+        checkNotNull(ids, "ids");
+
+        return new AbstractIterator<RevObject>() {
+
+            final Iterator<ObjectId> iterator = ids.iterator();
+
+            final ObjectReader<RevObject> reader = serializationFactory.createObjectReader();
+
+            @Override
+            protected RevObject computeNext() {
+                while (iterator.hasNext()) {
+                    ObjectId id = iterator.next();
+                    byte[] raw = getRawBytes(id);
+                    if (raw == null) {
+                        listener.notFound(id);
+                        continue;
+                    }
+                    RevObject found;
+                    try {
+                        found = reader.read(id, new LZFInputStream(new ByteArrayInputStream(raw)));
+                    } catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    }
+                    listener.found(id, raw.length);
+                    return found;
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    @Override
+    public void configure() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.OBJECT.configure(configDB, "pack", "1.0");
+    }
+
+    @Override
+    public void checkConfig() throws RepositoryConnectionException {
+        RepositoryConnectionException.StorageType.OBJECT.verify(configDB, "pack", "1.0");
+    }
+
+    /**
+     * Creates a new active pack in the first pack file no one else has created yet
+     */
+    private PackFile createPack() throws IOException {
+        File file;
+        do {
+            String name = String.format("%s%010d%s", PACK_PREFIX, nextPackNumber++, PACK_SUFFIX);
+            file = new File(dataRoot, name);
+        } while (!file.createNewFile());
+        return PackFile.create(file);
+    }
+
+    private static long packNumber(File packFile) {
+        String name = packFile.getName();
+        return Long.parseLong(name.substring(PACK_PREFIX.length(), name.length()
+                - PACK_SUFFIX.length()));
+    }
+
+    private static File[] listPackFiles(File root) {
+        File[] files = root.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PACK_PREFIX) && name.endsWith(PACK_SUFFIX);
+            }
+        });
+        // names are zero padded, so lexicographical order is creation order
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static Set<ObjectId> readTombstones(File file) throws IOException {
+        Set<ObjectId> tombstones = Sets.newHashSet();
+        if (!file.exists()) {
+            return tombstones;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            while (true) {
+                byte[] raw = new byte[ObjectId.NUM_BYTES];
+                try {
+                    in.readFully(raw);
+                } catch (EOFException eof) {
+                    break;
+                }
+                tombstones.add(ObjectId.createNoClone(raw));
+            }
+        } finally {
+            in.close();
+        }
+        return tombstones;
+    }
+
+    private static void writeTombstones(File file, Set<ObjectId> tombstones) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file, false));
+        try {
+            for (ObjectId id : tombstones) {
+                out.write(id.getRawValue());
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
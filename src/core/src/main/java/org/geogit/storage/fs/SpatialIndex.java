@@ -0,0 +1,517 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A read only, packed Hilbert R-tree over the bounds of the features of a single tree, stored in
+ * its own file and memory mapped so that queries only touch the pages they need.
+ * <p>
+ * Entries are sorted by the Hilbert value of the center of their bounds and grouped in nodes of
+ * {@link #NODE_CAPACITY} entries; each upper level groups {@link #NODE_CAPACITY} nodes of the level
+ * below, up to a single root node. Every node records its bounds and the number of entries below
+ * it, so {@link #count(Envelope) counts} and {@link #bounds(Envelope) bounds} of a query can add
+ * up whole subtrees contained in the query envelope without visiting their entries.
+ * <p>
+ * File layout:
+ *
+ * <pre>
+ * <code>
+ * header:  "GGSI", version (int), number of levels (int)
+ * levels:  for each level, bottom up: offset (long), number of records (int)
+ * level 0: entries of minx, maxx, miny, maxy (double), object id (20 bytes), path offset (int)
+ * level n: nodes of minx, maxx, miny, maxy (double), number of entries below (int)
+ * paths:   for each entry, path length (short) and UTF-8 encoded path
+ * </code>
+ * </pre>
+ *
+ * Features with no bounds are not indexed.
+ */
+public final class SpatialIndex implements Closeable {
+
+    /**
+     * Number of children of each node of the tree
+     */
+    public static final int NODE_CAPACITY = 32;
+
+    private static final byte[] MAGIC = { 'G', 'G', 'S', 'I' };
+
+    private static final int VERSION = 1;
+
+    private static final int BOUNDS_SIZE = 4 * 8;
+
+    private static final int ENTRY_SIZE = BOUNDS_SIZE + ObjectId.NUM_BYTES + 4;
+
+    private static final int NODE_SIZE = BOUNDS_SIZE + 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Side of the grid the bounds centers are projected to in order to compute their Hilbert value
+     */
+    private static final int HILBERT_SIDE = 1 << 16;
+
+    /**
+     * An indexed feature
+     */
+    public static final class Entry {
+
+        private final String path;
+
+        private final ObjectId objectId;
+
+        private final Envelope bounds;
+
+        public Entry(String path, ObjectId objectId, Envelope bounds) {
+            checkArgument(!bounds.isNull(), "Can't index a feature with no bounds: %s", path);
+            this.path = path;
+            this.objectId = objectId;
+            this.bounds = bounds;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public ObjectId getObjectId() {
+            return objectId;
+        }
+
+        public Envelope getBounds() {
+            return bounds;
+        }
+    }
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final MappedByteBuffer buffer;
+
+    private final long[] levelOffsets;
+
+    private final int[] levelSizes;
+
+    private final int pathsOffset;
+
+    private SpatialIndex(File file, RandomAccessFile raf, MappedByteBuffer buffer,
+            long[] levelOffsets, int[] levelSizes, int pathsOffset) {
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+        this.levelOffsets = levelOffsets;
+        this.levelSizes = levelSizes;
+        this.pathsOffset = pathsOffset;
+    }
+
+    /**
+     * Opens an existing index file
+     */
+    public static SpatialIndex open(final File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            checkState(size <= Integer.MAX_VALUE, "Spatial index too large: %s", file);
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            checkState(Arrays.equals(MAGIC, magic), "Not a spatial index file: %s", file);
+            final int version = buffer.getInt();
+            checkState(version == VERSION, "Unsupported spatial index version %s: %s", version,
+                    file);
+            final int numLevels = buffer.getInt();
+            long[] levelOffsets = new long[numLevels];
+            int[] levelSizes = new int[numLevels];
+            for (int i = 0; i < numLevels; i++) {
+                levelOffsets[i] = buffer.getLong();
+                levelSizes[i] = buffer.getInt();
+            }
+            int pathsOffset = headerSize(numLevels);
+            for (int i = 0; i < numLevels; i++) {
+                pathsOffset += levelSizes[i] * (i == 0 ? ENTRY_SIZE : NODE_SIZE);
+            }
+            return new SpatialIndex(file, raf, buffer, levelOffsets, levelSizes, pathsOffset);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        } catch (RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an index file out of the given entries, which are sorted in the process. The file is
+     * first written to a temporary location and then renamed, so a partially written index is
+     * never seen by readers.
+     */
+    public static void write(final File file, final List<Entry> entries) throws IOException {
+        final Envelope extent = new Envelope();
+        for (Entry e : entries) {
+            extent.expandToInclude(e.bounds);
+        }
+        sortByHilbertValue(entries, extent);
+
+        // compute the upper levels, bottom up
+        List<double[]> levelBounds = Lists.newArrayList();
+        List<int[]> levelCounts = Lists.newArrayList();
+        {
+            int size = entries.size();
+            double[] bounds = new double[4 * size];
+            int[] counts = new int[size];
+            for (int i = 0; i < size; i++) {
+                Envelope env = entries.get(i).bounds;
+                setBounds(bounds, i, env.getMinX(), env.getMaxX(), env.getMinY(), env.getMaxY());
+                counts[i] = 1;
+            }
+            levelBounds.add(bounds);
+            levelCounts.add(counts);
+            while (size > 1) {
+                final int parentSize = (size + NODE_CAPACITY - 1) / NODE_CAPACITY;
+                double[] parentBounds = new double[4 * parentSize];
+                int[] parentCounts = new int[parentSize];
+                for (int p = 0; p < parentSize; p++) {
+                    Envelope env = new Envelope();
+                    int count = 0;
+                    final int to = Math.min(size, (p + 1) * NODE_CAPACITY);
+                    for (int c = p * NODE_CAPACITY; c < to; c++) {
+                        env.expandToInclude(bounds[4 * c], bounds[4 * c + 2]);
+                        env.expandToInclude(bounds[4 * c + 1], bounds[4 * c + 3]);
+                        count += counts[c];
+                    }
+                    setBounds(parentBounds, p, env.getMinX(), env.getMaxX(), env.getMinY(),
+                            env.getMaxY());
+                    parentCounts[p] = count;
+                }
+                levelBounds.add(parentBounds);
+                levelCounts.add(parentCounts);
+                bounds = parentBounds;
+                counts = parentCounts;
+                size = parentSize;
+            }
+        }
+
+        final int numLevels = entries.isEmpty() ? 0 : levelBounds.size();
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp"
+                + Thread.currentThread().getId());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 64 * 1024));
+        try {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numLevels);
+            long offset = headerSize(numLevels);
+            for (int l = 0; l < numLevels; l++) {
+                int size = levelCounts.get(l).length;
+                out.writeLong(offset);
+                out.writeInt(size);
+                offset += (long) size * (l == 0 ? ENTRY_SIZE : NODE_SIZE);
+            }
+            int pathOffset = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                Entry e = entries.get(i);
+                writeBounds(out, levelBounds.get(0), i);
+                out.write(e.objectId.getRawValue());
+                out.writeInt(pathOffset);
+                pathOffset += 2 + e.path.getBytes(UTF8).length;
+            }
+            for (int l = 1; l < numLevels; l++) {
+                double[] bounds = levelBounds.get(l);
+                int[] counts = levelCounts.get(l);
+                for (int i = 0; i < counts.length; i++) {
+                    writeBounds(out, bounds, i);
+                    out.writeInt(counts[i]);
+                }
+            }
+            for (Entry e : entries) {
+                byte[] path = e.path.getBytes(UTF8);
+                out.writeShort(path.length);
+                out.write(path);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            checkState(file.exists(), "Unable to create spatial index %s", file);
+        }
+    }
+
+    private static int headerSize(int numLevels) {
+        return MAGIC.length + 4 + 4 + numLevels * (8 + 4);
+    }
+
+    private static void setBounds(double[] target, int index, double minx, double maxx,
+            double miny, double maxy) {
+        target[4 * index] = minx;
+        target[4 * index + 1] = maxx;
+        target[4 * index + 2] = miny;
+        target[4 * index + 3] = maxy;
+    }
+
+    private static void writeBounds(DataOutputStream out, double[] bounds, int index)
+            throws IOException {
+        for (int i = 0; i < 4; i++) {
+            out.writeDouble(bounds[4 * index + i]);
+        }
+    }
+
+    private static void sortByHilbertValue(final List<Entry> entries, final Envelope extent) {
+        final int size = entries.size();
+        final long[] keys = new long[size];
+        final Integer[] order = new Integer[size];
+        final double width = extent.getWidth() == 0 ? 1 : extent.getWidth();
+        final double height = extent.getHeight() == 0 ? 1 : extent.getHeight();
+        for (int i = 0; i < size; i++) {
+            Envelope env = entries.get(i).bounds;
+            int x = (int) ((HILBERT_SIDE - 1) * ((env.centre().x - extent.getMinX()) / width));
+            int y = (int) ((HILBERT_SIDE - 1) * ((env.centre().y - extent.getMinY()) / height));
+            keys[i] = hilbert(x, y);
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                long k1 = keys[o1.intValue()];
+                long k2 = keys[o2.intValue()];
+                return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+            }
+        });
+        List<Entry> sorted = Lists.newArrayListWithCapacity(size);
+        for (Integer i : order) {
+            sorted.add(entries.get(i.intValue()));
+        }
+        Collections.copy(entries, sorted);
+    }
+
+    /**
+     * @return the distance of {@code (x, y)} along a Hilbert curve filling a square of
+     *         {@link #HILBERT_SIDE} side
+     */
+    static long hilbert(int x, int y) {
+        long d = 0;
+        for (int s = HILBERT_SIDE / 2; s > 0; s /= 2) {
+            final int rx = (x & s) > 0 ? 1 : 0;
+            final int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_SIDE - 1 - x;
+                    y = HILBERT_SIDE - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of indexed features
+     */
+    public int size() {
+        return levelSizes.length == 0 ? 0 : levelSizes[0];
+    }
+
+    /**
+     * @return the bounds of all the indexed features
+     */
+    public Envelope getBounds() {
+        Envelope bounds = new Envelope();
+        if (levelSizes.length > 0) {
+            expand(bounds, root(), 0);
+        }
+        return bounds;
+    }
+
+    /**
+     * @return the number of features whose bounds intersect {@code query}
+     */
+    public int count(final Envelope query) {
+        int count = 0;
+        Deque<int[]> stack = new ArrayDeque<int[]>();
+        if (levelSizes.length > 0) {
+            stack.push(new int[] { root(), 0 });
+        }
+        Envelope env = new Envelope();
+        while (!stack.isEmpty()) {
+            final int[] node = stack.pop();
+            final int level = node[0];
+            readBounds(level, node[1], env);
+            if (!query.intersects(env)) {
+                continue;
+            }
+            if (level == 0) {
+                count++;
+            } else if (query.contains(env)) {
+                count += buffer.getInt(position(level, node[1]) + BOUNDS_SIZE);
+            } else {
+                pushChildren(stack, level, node[1]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the aggregated bounds of the features whose bounds intersect {@code query}
+     */
+    public Envelope bounds(final Envelope query) {
+        Envelope bounds = new Envelope();
+        Deque<int[]> stack = new ArrayDeque<int[]>();
+        if (levelSizes.length > 0) {
+            stack.push(new int[] { root(), 0 });
+        }
+        Envelope env = new Envelope();
+        while (!stack.isEmpty()) {
+            final int[] node = stack.pop();
+            final int level = node[0];
+            readBounds(level, node[1], env);
+            if (!query.intersects(env)) {
+                continue;
+            }
+            if (level == 0 || query.contains(env)) {
+                bounds.expandToInclude(env);
+            } else {
+                pushChildren(stack, level, node[1]);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * @return the feature nodes whose bounds intersect {@code query}, in no particular order
+     */
+    public Iterator<Node> query(final Envelope query) {
+        final Deque<int[]> stack = new ArrayDeque<int[]>();
+        if (levelSizes.length > 0) {
+            stack.push(new int[] { root(), 0 });
+        }
+        return new AbstractIterator<Node>() {
+            @Override
+            protected Node computeNext() {
+                while (!stack.isEmpty()) {
+                    final int[] node = stack.pop();
+                    final int level = node[0];
+                    Envelope env = new Envelope();
+                    readBounds(level, node[1], env);
+                    if (!query.intersects(env)) {
+                        continue;
+                    }
+                    if (level == 0) {
+                        Entry entry = entry(node[1]);
+                        return Node.create(entry.path, entry.objectId, ObjectId.NULL,
+                                TYPE.FEATURE, entry.bounds);
+                    }
+                    pushChildren(stack, level, node[1]);
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * @return all the indexed entries, in index order
+     */
+    public Iterator<Entry> entries() {
+        return new AbstractIterator<Entry>() {
+            private int next = 0;
+
+            @Override
+            protected Entry computeNext() {
+                if (next == size()) {
+                    return endOfData();
+                }
+                return entry(next++);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        Closeables.closeQuietly(raf);
+    }
+
+    private int root() {
+        return levelSizes.length - 1;
+    }
+
+    private int position(final int level, final int index) {
+        return (int) levelOffsets[level] + index * (level == 0 ? ENTRY_SIZE : NODE_SIZE);
+    }
+
+    private void readBounds(final int level, final int index, final Envelope target) {
+        final int pos = position(level, index);
+        target.init(buffer.getDouble(pos), buffer.getDouble(pos + 8),
+                buffer.getDouble(pos + 16), buffer.getDouble(pos + 24));
+    }
+
+    private void expand(final Envelope target, final int level, final int index) {
+        Envelope env = new Envelope();
+        readBounds(level, index, env);
+        target.expandToInclude(env);
+    }
+
+    private void pushChildren(Deque<int[]> stack, final int level, final int index) {
+        final int childLevel = level - 1;
+        final int from = index * NODE_CAPACITY;
+        final int to = Math.min(levelSizes[childLevel], from + NODE_CAPACITY);
+        for (int c = to - 1; c >= from; c--) {
+            stack.push(new int[] { childLevel, c });
+        }
+    }
+
+    private Entry entry(final int index) {
+        final int pos = position(0, index);
+        Envelope bounds = new Envelope();
+        readBounds(0, index, bounds);
+        byte[] rawId = new byte[ObjectId.NUM_BYTES];
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos + BOUNDS_SIZE);
+        view.get(rawId);
+        final int pathPos = pathsOffset + view.getInt();
+        final int pathLength = buffer.getShort(pathPos) & 0xFFFF;
+        byte[] rawPath = new byte[pathLength];
+        view.position(pathPos + 2);
+        view.get(rawPath);
+        return new Entry(new String(rawPath, UTF8), ObjectId.createNoClone(rawId), bounds);
+    }
+}
@@ -4,6 +4,8 @@
  */
 package org.geogit.storage.memory;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Map;
 
 import org.geogit.api.ObjectId;
@@ -15,75 +17,344 @@ import com.google.common.collect.Maps;
 /**
  * In memory directed graph implementation.
  * <p>
- * This class isn't used outside of {@link HeapGraphDatabase}. 
+ * This class isn't used outside of {@link HeapGraphDatabase}.
  * </p>
- * 
+ * <p>
+ * Nodes are identified by consecutive ints and kept in primitive arrays instead of as objects, so
+ * that a commit costs a few dozen bytes of heap:
+ * <ul>
+ * <li>the {@link ObjectId} bytes of all nodes are packed in a single array, and found by id through
+ * an open addressing hash table of node numbers;
+ * <li>a node's parents are set once, so they are appended contiguously to a single array of edges,
+ * and a node only keeps the offset and count of its parents in it, like in a compressed sparse row
+ * matrix;
+ * <li>a node gains children over time, so its children are a linked list of the edges pointing to
+ * it, threaded through another array.
+ * </ul>
+ * </p>
+ * <p>
+ * The graph keeps a commit graph index on its nodes: the <em>generation</em> of a node (zero for
+ * nodes with no parents, one plus the maximum generation of its parents otherwise) and its
+ * <em>depth</em> (the distance to the closest ancestor with no parents). Index values are
+ * computed lazily and remain valid until a node that already had children gets attached to its
+ * parents, which {@link #invalidateIndex() invalidates} the whole index at once.
+ * </p>
+ * <p>
+ * All methods are synchronized on the graph, callers performing several calls that must be atomic
+ * synchronize on it as well.
+ * </p>
+ *
  * @author Justin Deoliveira, Boundless
  *
  */
 class Graph {
 
-    final Map<ObjectId,Node> nodes;
-    final Map<ObjectId,ObjectId> mappings;
+    /**
+     * The node number returned for ids that are not in the graph
+     */
+    static final int NONE = -1;
+
+    private static final int ID_SIZE = ObjectId.NUM_BYTES;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Number of nodes in the graph
+     */
+    private int size;
+
+    /**
+     * {@link ObjectId} bytes of each node, {@link #ID_SIZE} bytes per node
+     */
+    private byte[] ids;
+
+    /**
+     * Open addressing hash table of node numbers plus one, zero meaning an empty slot
+     */
+    private int[] table;
+
+    /**
+     * Offset of each node's parents in {@link #edgeParent}, and their count
+     */
+    private int[] parentOffset;
+
+    private int[] parentCount;
+
+    /**
+     * Number of edges in the graph
+     */
+    private int edges;
+
+    /**
+     * Parent and child node of each edge, edges of the same child are contiguous
+     */
+    private int[] edgeParent;
+
+    private int[] edgeChild;
+
+    /**
+     * Last edge pointing to each node, and for each edge the previous one pointing to the same
+     * node, or {@link #NONE}
+     */
+    private int[] lastChildEdge;
+
+    private int[] previousChildEdge;
+
+    private final BitSet roots = new BitSet();
+
+    private final byte[] idBuffer = new byte[ID_SIZE];
+
+    /**
+     * Properties of the few nodes that have any
+     */
+    private final Map<Integer, Map<String, String>> props = Maps.newHashMap();
+
+    final Map<ObjectId, ObjectId> mappings;
+
+    /**
+     * Commit graph index values, valid only while {@code indexEpoch} of the node matches the
+     * graph's epoch, see {@link #generation(int)} and {@link #depth(int)}
+     */
+    private int[] generation;
+
+    private int[] depth;
+
+    private int[] indexEpoch;
+
+    private int epoch = 0;
 
     /**
      * Creates an empty graph.
      */
     Graph() {
-        nodes = Maps.newConcurrentMap();
         mappings = Maps.newConcurrentMap();
+        clear();
+    }
+
+    /**
+     * @return the number of nodes in the graph
+     */
+    public synchronized int size() {
+        return size;
     }
 
     /**
      * Gets a node in the graph by its object id, creating a new node if one does already exist.
      */
-    public Node getOrAdd(ObjectId id) {
-        Optional<Node> n = get(id);
-        return n.isPresent() ? n.get() : newNode(id);
+    public synchronized int getOrAdd(ObjectId id) {
+        int n = get(id);
+        return n == NONE ? newNode(id) : n;
     }
 
     /**
-     * Looks up a node in the graph by its identifier. 
+     * Looks up a node in the graph by its identifier.
+     *
+     * @return the node, or {@link #NONE} if there's no node with that identifier
      */
-    public Optional<Node> get(ObjectId id) {
-        return Optional.fromNullable(nodes.get(id));
+    public synchronized int get(ObjectId id) {
+        final int mask = table.length - 1;
+        for (int slot = id.hashCode() & mask;; slot = (slot + 1) & mask) {
+            int n = table[slot] - 1;
+            if (n == NONE || idEquals(n, id)) {
+                return n;
+            }
+        }
     }
 
     /**
      * Creates a new node in the graph.
-     * 
-     * @param id The id of the new node. 
+     *
+     * @param id The id of the new node.
      */
-    public Node newNode(ObjectId id) {
+    public synchronized int newNode(ObjectId id) {
         Preconditions.checkNotNull(id);
-        Preconditions.checkState(nodes.get(id) == null);
-        Node n = new Node(id);
-        nodes.put(id, n);
+        Preconditions.checkState(get(id) == NONE);
+        if (size == parentOffset.length) {
+            growNodes();
+        }
+        if (2 * (size + 1) > table.length) {
+            rehash(2 * table.length);
+        }
+        final int n = size++;
+        id.getRawValue(idBuffer);
+        System.arraycopy(idBuffer, 0, ids, n * ID_SIZE, ID_SIZE);
+        insert(n);
+        lastChildEdge[n] = NONE;
+        indexEpoch[n] = epoch - 1;
         return n;
     }
 
     /**
-     * Relates two nodes in the graph.
-     * 
-     * @param src The source (origin) node.
-     * @param dst The destination (end) node.
+     * @return the identifier of the given node
      */
-    public Edge newEdge(Node src, Node dst) {
-        Edge e = new Edge(src, dst);
-        src.out.add(e);
-        dst.in.add(e);
-        return e;
+    public synchronized ObjectId id(int n) {
+        byte[] raw = new byte[ID_SIZE];
+        System.arraycopy(ids, n * ID_SIZE, raw, 0, ID_SIZE);
+        return ObjectId.createNoClone(raw);
+    }
+
+    private boolean idEquals(int n, ObjectId id) {
+        final int offset = n * ID_SIZE;
+        for (int i = 0; i < ID_SIZE; i++) {
+            if ((ids[offset + i] & 0xFF) != id.byteN(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * Creates an mapping/alias. 
+     * @return the same hash code as {@link ObjectId#hashCode()} for the identifier of the node
+     */
+    private int idHash(int n) {
+        final int offset = n * ID_SIZE;
+        return (ids[offset] & 0xFF) | ((ids[offset + 1] & 0xFF) << 8)
+                | ((ids[offset + 2] & 0xFF) << 16) | ((ids[offset + 3] & 0xFF) << 24);
+    }
+
+    private void insert(int n) {
+        final int mask = table.length - 1;
+        int slot = idHash(n) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = n + 1;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int n = 0; n < size; n++) {
+            insert(n);
+        }
+    }
+
+    private void growNodes() {
+        final int capacity = 2 * parentOffset.length;
+        ids = Arrays.copyOf(ids, capacity * ID_SIZE);
+        parentOffset = Arrays.copyOf(parentOffset, capacity);
+        parentCount = Arrays.copyOf(parentCount, capacity);
+        lastChildEdge = Arrays.copyOf(lastChildEdge, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        indexEpoch = Arrays.copyOf(indexEpoch, capacity);
+    }
+
+    /**
+     * @return whether the node has been attached to its parents
+     */
+    public synchronized boolean hasParents(int n) {
+        return parentCount[n] > 0;
+    }
+
+    /**
+     * @return the number of parents of the node
+     */
+    public synchronized int parentCount(int n) {
+        return parentCount[n];
+    }
+
+    /**
+     * @return the {@code i}th parent of the node
+     */
+    public synchronized int parent(int n, int i) {
+        Preconditions.checkElementIndex(i, parentCount[n]);
+        return edgeParent[parentOffset[n] + i];
+    }
+
+    /**
+     * @return the children of the node, in the order they were attached to it
+     */
+    public synchronized int[] children(int n) {
+        int count = 0;
+        for (int e = lastChildEdge[n]; e != NONE; e = previousChildEdge[e]) {
+            count++;
+        }
+        int[] children = new int[count];
+        for (int e = lastChildEdge[n]; e != NONE; e = previousChildEdge[e]) {
+            children[--count] = edgeChild[e];
+        }
+        return children;
+    }
+
+    /**
+     * @return whether any node has been attached to the given one as its parent
+     */
+    public synchronized boolean hasChildren(int n) {
+        return lastChildEdge[n] != NONE;
+    }
+
+    /**
+     * Attaches a node without parents to the given parents, in order.
+     */
+    public synchronized void setParents(int n, int[] parents) {
+        Preconditions.checkState(parentCount[n] == 0, "Node already has parents");
+        if (parents.length == 0) {
+            return;
+        }
+        if (edges + parents.length > edgeParent.length) {
+            final int capacity = Math.max(2 * edgeParent.length, edges + parents.length);
+            edgeParent = Arrays.copyOf(edgeParent, capacity);
+            edgeChild = Arrays.copyOf(edgeChild, capacity);
+            previousChildEdge = Arrays.copyOf(previousChildEdge, capacity);
+        }
+        parentOffset[n] = edges;
+        parentCount[n] = parents.length;
+        for (int p : parents) {
+            final int e = edges++;
+            edgeParent[e] = p;
+            edgeChild[e] = n;
+            previousChildEdge[e] = lastChildEdge[p];
+            lastChildEdge[p] = e;
+        }
+        if (hasChildren(n)) {
+            // the generation and depth of the node's descendants changed
+            invalidateIndex();
+        }
+    }
+
+    /**
+     * Determines if this node is marked as a root node.
+     */
+    public synchronized boolean isRoot(int n) {
+        return roots.get(n);
+    }
+
+    /**
+     * Marks/unmarks a node as a root node.
+     */
+    public synchronized void setRoot(int n, boolean root) {
+        roots.set(n, root);
+    }
+
+    /**
+     * Associates a property with the node.
+     */
+    public synchronized void put(int n, String key, String value) {
+        Map<String, String> nodeProps = props.get(Integer.valueOf(n));
+        if (nodeProps == null) {
+            nodeProps = Maps.newHashMap();
+            props.put(Integer.valueOf(n), nodeProps);
+        }
+        nodeProps.put(key, value);
+    }
+
+    /**
+     * Retrieves a property of the node.
+     */
+    public synchronized Optional<String> get(int n, String key) {
+        Map<String, String> nodeProps = props.get(Integer.valueOf(n));
+        return Optional.fromNullable(nodeProps != null ? nodeProps.get(key) : null);
+    }
+
+    /**
+     * Creates an mapping/alias.
      */
     public void map(ObjectId mapped, ObjectId original) {
         mappings.put(mapped, original);
     }
 
     /**
-     * Returns a mapping, or <code>null</code> if one does not exist. 
+     * Returns a mapping, or <code>null</code> if one does not exist.
      *
      */
     public ObjectId getMapping(ObjectId commitId) {
@@ -93,9 +364,96 @@ class Graph {
     /**
      * Clears the contents of the graph.
      */
-    public void clear() {
-        nodes.clear();
+    public synchronized void clear() {
+        size = 0;
+        ids = new byte[INITIAL_CAPACITY * ID_SIZE];
+        table = new int[2 * INITIAL_CAPACITY];
+        parentOffset = new int[INITIAL_CAPACITY];
+        parentCount = new int[INITIAL_CAPACITY];
+        lastChildEdge = new int[INITIAL_CAPACITY];
+        generation = new int[INITIAL_CAPACITY];
+        depth = new int[INITIAL_CAPACITY];
+        indexEpoch = new int[INITIAL_CAPACITY];
+        edges = 0;
+        edgeParent = new int[INITIAL_CAPACITY];
+        edgeChild = new int[INITIAL_CAPACITY];
+        previousChildEdge = new int[INITIAL_CAPACITY];
+        roots.clear();
+        props.clear();
         mappings.clear();
+        invalidateIndex();
+    }
+
+    /**
+     * Returns the generation number of a node, that is, zero for nodes without parents and one
+     * plus the maximum generation of its parents otherwise. A node's generation is always greater
+     * than the generation of any of its ancestors.
+     */
+    public synchronized int generation(int n) {
+        updateIndex(n);
+        return generation[n];
+    }
+
+    /**
+     * Returns the depth of a node, that is, the number of edges to its closest ancestor without
+     * parents.
+     */
+    public synchronized int depth(int n) {
+        updateIndex(n);
+        return depth[n];
+    }
+
+    /**
+     * Marks the index values of all the nodes as outdated.
+     */
+    public synchronized void invalidateIndex() {
+        epoch++;
+    }
+
+    /**
+     * Computes the index values of the node and any of its ancestors whose values are outdated,
+     * without recursion so that long histories don't overflow the stack.
+     */
+    private void updateIndex(int start) {
+        if (indexEpoch[start] == epoch) {
+            return;
+        }
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            final int n = stack[top - 1];
+            if (indexEpoch[n] == epoch) {
+                top--;
+                continue;
+            }
+            final int first = parentOffset[n];
+            final int last = first + parentCount[n];
+            boolean ready = true;
+            for (int e = first; e < last; e++) {
+                int p = edgeParent[e];
+                if (indexEpoch[p] != epoch) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    }
+                    stack[top++] = p;
+                    ready = false;
+                }
+            }
+            if (ready) {
+                top--;
+                int gen = 0;
+                int dep = -1;
+                for (int e = first; e < last; e++) {
+                    int p = edgeParent[e];
+                    gen = Math.max(gen, generation[p] + 1);
+                    dep = dep == -1 ? depth[p] + 1 : Math.min(dep, depth[p] + 1);
+                }
+                generation[n] = gen;
+                depth[n] = Math.max(0, dep);
+                indexEpoch[n] = epoch;
+            }
+        }
     }
 
 }
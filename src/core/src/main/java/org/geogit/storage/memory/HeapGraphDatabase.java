@@ -4,39 +4,37 @@
  */
 package org.geogit.storage.memory;
 
-import static com.google.common.collect.Iterables.filter;
-import static com.google.common.collect.Iterables.transform;
-
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.PriorityQueue;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
+import org.geogit.api.RevCommit;
 import org.geogit.api.plumbing.ResolveGeogitDir;
 import org.geogit.storage.GraphDatabase;
 
-import com.google.common.base.Function;
 import com.google.common.base.Optional;
-import com.google.common.base.Predicates;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
 /**
  * Provides an default in memory implementation of a GeoGit Graph Database.
+ * <p>
+ * Commits are kept in a compact {@link Graph} of int nodes, so that graphs of large histories fit
+ * in the heap.
  */
 public class HeapGraphDatabase implements GraphDatabase {
 
-    static final Function<Node, ObjectId> NODE_TO_ID = new Function<Node, ObjectId>() {
-        @Override
-        public ObjectId apply(Node n) {
-            return n.id;
-        }
-    };
-
     static final Map<URL, Ref> graphs = Maps.newConcurrentMap();
 
     final Platform platform;
@@ -106,57 +104,76 @@ public class HeapGraphDatabase implements GraphDatabase {
 
     @Override
     public boolean exists(ObjectId commitId) {
-        return graph.get(commitId).isPresent();
+        return graph.get(commitId) != Graph.NONE;
     }
 
     @Override
     public ImmutableList<ObjectId> getParents(ObjectId commitId) throws IllegalArgumentException {
-        return graph.get(commitId).transform(new Function<Node, ImmutableList<ObjectId>>() {
-            @Override
-            public ImmutableList<ObjectId> apply(Node n) {
-                // transform outgoing nodes to id
-                // filter for null to skip fake root node
-                return new ImmutableList.Builder<ObjectId>().addAll(
-                        filter(transform(n.to(), NODE_TO_ID), Predicates.notNull())).build();
+        ImmutableList.Builder<ObjectId> parents = ImmutableList.builder();
+        synchronized (graph) {
+            final int n = graph.get(commitId);
+            if (n != Graph.NONE) {
+                for (int i = 0; i < graph.parentCount(n); i++) {
+                    parents.add(graph.id(graph.parent(n, i)));
+                }
             }
-        }).or((ImmutableList) ImmutableList.of());
+        }
+        return parents.build();
     }
 
     @Override
     public ImmutableList<ObjectId> getChildren(ObjectId commitId) throws IllegalArgumentException {
-        return graph.get(commitId).transform(new Function<Node, ImmutableList<ObjectId>>() {
-            @Override
-            public ImmutableList<ObjectId> apply(Node n) {
-                return new ImmutableList.Builder<ObjectId>()
-                        .addAll(transform(n.from(), NODE_TO_ID)).build();
+        ImmutableList.Builder<ObjectId> children = ImmutableList.builder();
+        synchronized (graph) {
+            final int n = graph.get(commitId);
+            if (n != Graph.NONE) {
+                for (int c : graph.children(n)) {
+                    children.add(graph.id(c));
+                }
             }
-        }).or((ImmutableList) ImmutableList.of());
+        }
+        return children.build();
     }
 
     @Override
     public boolean put(ObjectId commitId, ImmutableList<ObjectId> parentIds) {
-        Node n = graph.getOrAdd(commitId);
+        synchronized (graph) {
+            final int n = graph.getOrAdd(commitId);
+
+            if (parentIds.isEmpty()) {
+                // the root node, only update on first addition
+                if (!graph.isRoot(n)) {
+                    graph.setRoot(n, true);
+                    return true;
+                }
+            }
 
-        if (parentIds.isEmpty()) {
-            // the root node, only update on first addition
-            if (!n.isRoot()) {
-                n.setRoot(true);
-                return true;
+            // has the node been attached to graph?
+            if (!graph.hasParents(n)) {
+                // nope, attach it
+                int[] parents = new int[parentIds.size()];
+                for (int i = 0; i < parents.length; i++) {
+                    parents[i] = graph.getOrAdd(parentIds.get(i));
+                }
+                graph.setParents(n, parents);
+
+                // only mark as updated if it is actually attached
+                return parents.length > 0;
             }
+            return false;
         }
+    }
 
-        // has the node been attached to graph?
-        if (Iterables.isEmpty(n.to())) {
-            // nope, attach it
-            for (ObjectId parent : parentIds) {
-                Node p = graph.getOrAdd(parent);
-                graph.newEdge(n, p);
+    @Override
+    public ImmutableList<ObjectId> putAll(Iterator<RevCommit> commits) {
+        ImmutableList.Builder<ObjectId> updated = ImmutableList.builder();
+        while (commits.hasNext()) {
+            RevCommit commit = commits.next();
+            if (put(commit.getId(), commit.getParentIds())) {
+                updated.add(commit.getId());
             }
-
-            // only mark as updated if it is actually attached
-            return !Iterables.isEmpty(n.to());
         }
-        return false;
+        return updated.build();
     }
 
     @Override
@@ -169,85 +186,129 @@ public class HeapGraphDatabase implements GraphDatabase {
         return Optional.fromNullable(graph.getMapping(commitId)).or(ObjectId.NULL);
     }
 
+    /**
+     * Answered in constant time (amortized) by the graph's commit index.
+     */
     @Override
     public int getDepth(ObjectId commitId) {
-        PathToRootWalker walker = new PathToRootWalker(graph.get(commitId).get());
-        int depth = 0;
-        O: while (walker.hasNext()) {
-            for (Node n : walker.next()) {
-                if (Iterables.size(n.to()) == 0) {
-                    break O;
-                }
-            }
-            depth++;
-        }
-        return depth;
+        return graph.depth(node(commitId));
     }
 
+    private static final int LEFT = 1, RIGHT = 2, STALE = 4;
+
+    /**
+     * Walks the ancestry of both commits at once in decreasing generation order, painting each
+     * visited node with the side(s) it was reached from. Nodes reachable from both sides are
+     * candidates, and their ancestors are painted as stale. Since a node's generation is greater
+     * than any of its ancestors', the walk can stop as soon as all the pending nodes are stale
+     * instead of walking down to the root commits.
+     */
     @Override
     public Optional<ObjectId> findLowestCommonAncestor(ObjectId leftId, ObjectId rightId) {
-        PathToRootWalker left = new PathToRootWalker(graph.get(leftId).get());
-        PathToRootWalker right = new PathToRootWalker(graph.get(rightId).get());
-
-        Set<Node> ancestors = Sets.newLinkedHashSet();
-        while (left.hasNext() || right.hasNext()) {
-            if (left.hasNext()) {
-                for (Node l : left.next()) {
-                    if (right.seen(l)) {
-                        ancestors.add(l);
-                    }
-                }
-            }
-            if (right.hasNext()) {
-                for (Node r : right.next()) {
-                    if (left.seen(r)) {
-                        ancestors.add(r);
-                    }
-                }
+        synchronized (graph) {
+            final int left = node(leftId);
+            final int right = node(rightId);
+            if (left == right) {
+                return Optional.of(leftId);
             }
-        }
-
-        if (ancestors.isEmpty()) {
-            // no solution
-            return Optional.absent();
-        }
 
-        if (ancestors.size() > 1) {
-            // multiple candidates, try to filter down by removing candidates that are
-            // ancestors of other candidates
-            Set<Node> filtered = Sets.newLinkedHashSet(ancestors);
-            for (Node ancestor : ancestors) {
-                PathToRootWalker w = new PathToRootWalker(ancestor);
-                w.next();
-                while (w.hasNext()) {
-                    for (Node n : w.next()) {
-                        filtered.remove(n);
+            final Map<Integer, Integer> flags = Maps.newHashMap();
+            final PriorityQueue<Integer> queue = new PriorityQueue<Integer>(16,
+                    new Comparator<Integer>() {
+                        @Override
+                        public int compare(Integer n1, Integer n2) {
+                            // higher generations first
+                            return graph.generation(n2.intValue())
+                                    - graph.generation(n1.intValue());
+                        }
+                    });
+            flags.put(left, LEFT);
+            flags.put(right, RIGHT);
+            queue.add(left);
+            queue.add(right);
+            // number of pending nodes that are not stale
+            int nonStale = 2;
+
+            List<Integer> candidates = Lists.newArrayList();
+            while (nonStale > 0) {
+                final int n = queue.poll().intValue();
+                int f = flags.get(n).intValue();
+                if ((f & STALE) == 0) {
+                    nonStale--;
+                }
+                if ((f & (LEFT | RIGHT)) == (LEFT | RIGHT) && (f & STALE) == 0) {
+                    candidates.add(n);
+                    f |= STALE;
+                    flags.put(n, f);
+                }
+                for (int i = 0; i < graph.parentCount(n); i++) {
+                    final int p = graph.parent(n, i);
+                    Integer pf = flags.get(p);
+                    if (pf == null) {
+                        flags.put(p, f);
+                        queue.add(p);
+                        if ((f & STALE) == 0) {
+                            nonStale++;
+                        }
+                    } else if ((pf.intValue() | f) != pf.intValue()) {
+                        // p is still pending, as all of its children are popped before it
+                        if ((pf.intValue() & STALE) == 0 && (f & STALE) != 0) {
+                            nonStale--;
+                        }
+                        flags.put(p, pf.intValue() | f);
                     }
                 }
             }
 
-            ancestors = filtered;
+            if (candidates.isEmpty()) {
+                // no solution
+                return Optional.absent();
+            }
+            return Optional.of(graph.id(candidates.get(0).intValue()));
         }
-
-        return Optional.of(ancestors.iterator().next().id);
     }
 
     @Override
     public void setProperty(ObjectId commitId, String propertyName, String propertyValue) {
-        graph.get(commitId).get().put(propertyName, propertyValue);
-        ;
+        synchronized (graph) {
+            graph.put(node(commitId), propertyName, propertyValue);
+        }
     }
 
     @Override
     public boolean isSparsePath(ObjectId start, ObjectId end) {
-        ShortestPathWalker p = new ShortestPathWalker(graph.get(start).get(), graph.get(end).get());
-        while (p.hasNext()) {
-            Node n = p.next();
-            if (Boolean.valueOf(n.get(GraphDatabase.SPARSE_FLAG).or("false"))) {
-                return true;
+        synchronized (graph) {
+            final int minGeneration = graph.generation(node(end));
+            // only walk ancestors of start that are not older than end, as older ones can't be on
+            // a path from start to end
+            Deque<Integer> queue = new ArrayDeque<Integer>();
+            BitSet visited = new BitSet(graph.size());
+            queue.add(node(start));
+            while (!queue.isEmpty()) {
+                final int n = queue.poll().intValue();
+                if (visited.get(n) || graph.generation(n) < minGeneration) {
+                    continue;
+                }
+                visited.set(n);
+                if (Boolean.valueOf(graph.get(n, GraphDatabase.SPARSE_FLAG).or("false"))) {
+                    return true;
+                }
+                for (int i = 0; i < graph.parentCount(n); i++) {
+                    queue.add(graph.parent(n, i));
+                }
             }
+            return false;
         }
-        return false;
+    }
+
+    /**
+     * @return the node of the given commit
+     * @throws IllegalStateException if the commit is not in the graph
+     */
+    private int node(ObjectId commitId) {
+        final int n = graph.get(commitId);
+        Preconditions.checkState(n != Graph.NONE, "Commit %s is not in the graph", commitId);
+        return n;
     }
 
     @Override
@@ -8,6 +8,9 @@ import static com.google.common.base.Suppliers.ofInstance;
 
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import javax.annotation.Nullable;
 
@@ -19,21 +22,23 @@ import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.ObjectSerializingFactory;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
-import com.google.common.collect.UnmodifiableIterator;
 import com.google.inject.Inject;
 
 /**
  * Provides an implementation of a GeoGit staging database that utilizes the heap for the storage of
  * objects.
+ * <p>
+ * Conflicts are kept sorted by path for each namespace, so that those under a path filter are
+ * found with a range scan instead of by checking all of them.
  * 
  * @see AbstractObjectDatabase
  */
 public class HeapStagingDatabase extends ForwardingStagingDatabase {
-    private Map<String, Map<String, Conflict>> conflicts = Maps.newHashMap();
+
+    private ConcurrentMap<String, NavigableMap<String, Conflict>> conflicts = Maps
+            .newConcurrentMap();
 
     /**
      * @param repositoryDb the repository reference database, used to get delegate read operations
@@ -55,6 +60,44 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
         // No-op
     }
 
+    private static String namespace(@Nullable String namespace) {
+        return namespace == null ? "root" : namespace;
+    }
+
+    @Nullable
+    private NavigableMap<String, Conflict> conflicts(@Nullable String namespace,
+            boolean create) {
+        final String ns = namespace(namespace);
+        NavigableMap<String, Conflict> conflictMap = conflicts.get(ns);
+        if (conflictMap == null && create) {
+            conflictMap = new ConcurrentSkipListMap<String, Conflict>();
+            NavigableMap<String, Conflict> existing = conflicts.putIfAbsent(ns, conflictMap);
+            if (existing != null) {
+                conflictMap = existing;
+            }
+        }
+        return conflictMap;
+    }
+
+    /**
+     * @return the conflicts whose path starts with {@code pathFilter}, which being sorted are all
+     *         found after it
+     */
+    private static Map<String, Conflict> filter(NavigableMap<String, Conflict> conflictMap,
+            @Nullable String pathFilter) {
+        if (pathFilter == null) {
+            return conflictMap;
+        }
+        Map<String, Conflict> filtered = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Conflict> e : conflictMap.tailMap(pathFilter, true).entrySet()) {
+            if (!e.getKey().startsWith(pathFilter)) {
+                break;
+            }
+            filtered.put(e.getKey(), e.getValue());
+        }
+        return filtered;
+    }
+
     /**
      * Gets all conflicts that match the specified path filter.
      * 
@@ -64,25 +107,37 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public List<Conflict> getConflicts(@Nullable String namespace, @Nullable final String pathFilter) {
-        if (namespace == null) {
-            namespace = "root";
+        NavigableMap<String, Conflict> conflictMap = conflicts(namespace, false);
+        if (conflictMap == null) {
+            return ImmutableList.of();
         }
+        return ImmutableList.copyOf(filter(conflictMap, pathFilter).values());
+    }
 
-        if (conflicts.get(namespace) == null) {
-            return ImmutableList.of();
+    /**
+     * Counts the conflicts that match the specified path filter.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be counted
+     * @return the number of conflicts
+     */
+    @Override
+    public long getConflictsCount(@Nullable String namespace, @Nullable String pathFilter) {
+        NavigableMap<String, Conflict> conflictMap = conflicts(namespace, false);
+        if (conflictMap == null) {
+            return 0L;
         }
         if (pathFilter == null) {
-            return ImmutableList.copyOf(conflicts.get(namespace).values());
+            return conflictMap.size();
         }
-        UnmodifiableIterator<Conflict> filtered = Iterators.filter(conflicts.get(namespace)
-                .values().iterator(), new Predicate<Conflict>() {
-            @Override
-            public boolean apply(@Nullable Conflict c) {
-                return (c.getPath().startsWith(pathFilter));
+        long count = 0;
+        for (String path : conflictMap.tailMap(pathFilter, true).keySet()) {
+            if (!path.startsWith(pathFilter)) {
+                break;
             }
-
-        });
-        return ImmutableList.copyOf(filtered);
+            count++;
+        }
+        return count;
     }
 
     /**
@@ -93,16 +148,21 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void addConflict(@Nullable String namespace, Conflict conflict) {
-        if (namespace == null) {
-            namespace = "root";
-        }
-        Map<String, Conflict> conflictMap = conflicts.get(namespace);
-        if (conflictMap == null) {
-            conflictMap = Maps.newHashMap();
-            conflicts.put(namespace, conflictMap);
-        }
-        conflictMap.put(conflict.getPath(), conflict);
+        conflicts(namespace, true).put(conflict.getPath(), conflict);
+    }
 
+    /**
+     * Adds a batch of conflicts to the database.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param conflicts the conflicts to add
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterable<Conflict> conflicts) {
+        NavigableMap<String, Conflict> conflictMap = conflicts(namespace, true);
+        for (Conflict conflict : conflicts) {
+            conflictMap.put(conflict.getPath(), conflict);
+        }
     }
 
     /**
@@ -113,15 +173,28 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void removeConflict(@Nullable String namespace, String path) {
-        if (namespace == null) {
-            namespace = "root";
-        }
-        Map<String, Conflict> conflictMap = conflicts.get(namespace);
+        NavigableMap<String, Conflict> conflictMap = conflicts(namespace, false);
         if (conflictMap != null) {
             conflictMap.remove(path);
         }
     }
 
+    /**
+     * Removes a batch of conflicts from the database.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param paths the paths of the features whose conflicts should be removed
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        NavigableMap<String, Conflict> conflictMap = conflicts(namespace, false);
+        if (conflictMap != null) {
+            for (String path : paths) {
+                conflictMap.remove(path);
+            }
+        }
+    }
+
     /**
      * Gets the specified conflict from the database.
      * 
@@ -131,10 +204,7 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public Optional<Conflict> getConflict(@Nullable String namespace, String path) {
-        if (namespace == null) {
-            namespace = "root";
-        }
-        Map<String, Conflict> conflictMap = conflicts.get(namespace);
+        NavigableMap<String, Conflict> conflictMap = conflicts(namespace, false);
         if (conflictMap != null) {
             return Optional.fromNullable(conflictMap.get(path));
         }
@@ -148,9 +218,6 @@ public class HeapStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void removeConflicts(@Nullable String namespace) {
-        if (namespace == null) {
-            namespace = "root";
-        }
-        conflicts.remove(namespace);
+        conflicts.remove(namespace(namespace));
     }
 }
@@ -5,6 +5,8 @@
 
 package org.geogit.api.plumbing.diff;
 
+import java.util.Iterator;
+
 import org.geogit.api.Bucket;
 import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
@@ -12,6 +14,7 @@ import org.geogit.api.ObjectId;
 import org.geogit.api.RevObject.TYPE;
 import org.geogit.api.RevTree;
 import org.geogit.api.RevTreeBuilder;
+import org.geogit.storage.NodeStorageOrder;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.datastream.DataStreamSerializationFactory;
 import org.geogit.storage.memory.HeapObjectDatabse;
@@ -266,6 +269,44 @@ public class DiffCounterTest extends Assert {
         assertEquals(expected, count(changed, deepTree).getFeaturesCount());
     }
 
+    @Test
+    public void testBucketBucketChangeDeeperBuckets() {
+        final RevTree deepTree = createFeaturesTree("", 20000 + RevTree.NORMALIZED_SIZE_LIMIT)
+                .build();
+        assertTrue(depth(deepTree, 0) > 1);
+
+        RevTreeBuilder builder = new RevTreeBuilder(odb, deepTree);
+        int expected = 0;
+        for (int i = 0; i < deepTree.size(); i += 3) {
+            builder.put(Node.create(String.valueOf(i), FAKE_FEATURE_ID_CHANGED, ObjectId.NULL,
+                    TYPE.FEATURE));
+            expected++;
+        }
+        RevTree changed = builder.build();
+        assertTrue(changed.buckets().isPresent());
+
+        assertEquals(expected, count(deepTree, changed).getFeaturesCount());
+        assertEquals(expected, count(changed, deepTree).getFeaturesCount());
+
+        // the diff entries are still reported in storage order
+        NodeRef rootRef = new NodeRef(Node.create("", ObjectId.NULL, ObjectId.NULL, TYPE.TREE),
+                NodeRef.ROOT, ObjectId.NULL);
+        Iterator<DiffEntry> entries = new TreeDiffEntryIterator(rootRef, rootRef, deepTree,
+                changed, false, true, odb);
+        NodeStorageOrder order = new NodeStorageOrder();
+        Node previous = null;
+        int numEntries = 0;
+        while (entries.hasNext()) {
+            Node node = entries.next().getNewObject().getNode();
+            if (previous != null) {
+                assertTrue(order.compare(previous, node) < 0);
+            }
+            previous = node;
+            numEntries++;
+        }
+        assertEquals(expected, numEntries);
+    }
+
     private int depth(RevTree deepTree, int currDepth) {
         if (!deepTree.buckets().isPresent()) {
             return currDepth;
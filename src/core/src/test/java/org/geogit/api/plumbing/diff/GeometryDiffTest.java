@@ -8,6 +8,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Random;
 
@@ -17,6 +22,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.io.WKTReader;
 
 public class GeometryDiffTest {
@@ -57,6 +63,73 @@ public class GeometryDiffTest {
         assertEquals(newGeom, resultingGeom.get());
     }
 
+    @Test
+    public void testModifiedLongLineString() throws Exception {
+        final int numCoords = 100000;
+        Coordinate[] oldCoords = new Coordinate[numCoords];
+        for (int i = 0; i < numCoords; i++) {
+            oldCoords[i] = new Coordinate(i, i % 100);
+        }
+        Coordinate[] newCoords = new Coordinate[numCoords + 1];
+        System.arraycopy(oldCoords, 0, newCoords, 0, numCoords / 2);
+        newCoords[numCoords / 2] = new Coordinate(numCoords / 2 - 0.5, 0);
+        System.arraycopy(oldCoords, numCoords / 2, newCoords, numCoords / 2 + 1, numCoords / 2);
+        newCoords[numCoords] = new Coordinate(numCoords, 0);
+        GeometryFactory factory = new GeometryFactory();
+        Geometry oldGeom = factory.createLineString(oldCoords);
+        Geometry newGeom = factory.createLineString(newCoords);
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        LCSGeometryDiffImpl deserializedDiff = new LCSGeometryDiffImpl(diff.asText());
+        assertEquals(diff, deserializedDiff);
+        assertEquals("0 point(s) deleted, 1 new point(s) added, 1 point(s) moved", diff.toString());
+        assertEquals(newGeom, diff.applyOn(Optional.of(oldGeom)).get());
+        assertEquals(oldGeom, diff.reversed().applyOn(Optional.of(newGeom)).get());
+    }
+
+    @Test
+    public void testLegacyTextualDiff() throws Exception {
+        // a diff as serialized by older versions, a diff_match_patch patch on the WKT
+        String text = "0/1/1\t@@ -15,12 +15,19 @@\\n 0, 1\\n+.5\\n  1, 2 2\\n+, 3 3\\n )\\n";
+        Geometry oldGeom = new WKTReader().read("LINESTRING (0 0, 1 1, 2 2)");
+        Geometry newGeom = new WKTReader().read("LINESTRING (0 0, 1.5 1, 2 2, 3 3)");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(text);
+        assertEquals("0 point(s) deleted, 1 new point(s) added, 1 point(s) moved", diff.toString());
+        assertEquals(text, diff.asText());
+        assertEquals(diff, new LCSGeometryDiffImpl(diff.asText()));
+        assertTrue(diff.canBeAppliedOn(Optional.of(oldGeom)));
+        assertEquals(newGeom, diff.applyOn(Optional.of(oldGeom)).get());
+        assertEquals(oldGeom, diff.reversed().applyOn(Optional.of(newGeom)).get());
+    }
+
+    @Test
+    public void testBinaryForm() throws Exception {
+        Geometry oldGeom = new WKTReader()
+                .read("MULTILINESTRING ((40 40, 20 45, 45 30, 40 40),(20 35, 45 10, 30 5, 10 30, 20 35))");
+        Geometry newGeom = new WKTReader()
+                .read("MULTILINESTRING ((40 40, 20 35, 45 30, 40 40),(20 35, 45 20, 30 15, 10 10, 10 30, 20 35),(10 10, 20 20, 35 30))");
+        LCSGeometryDiffImpl diff = new LCSGeometryDiffImpl(Optional.of(oldGeom),
+                Optional.of(newGeom));
+        LCSGeometryDiffImpl deserializedDiff = writeAndRead(diff);
+        assertEquals(diff, deserializedDiff);
+        assertEquals(diff.toString(), deserializedDiff.toString());
+        assertEquals(diff.asText(), deserializedDiff.asText());
+        assertEquals(newGeom, deserializedDiff.applyOn(Optional.of(oldGeom)).get());
+
+        String text = "0/1/1\t@@ -15,12 +15,19 @@\\n 0, 1\\n+.5\\n  1, 2 2\\n+, 3 3\\n )\\n";
+        LCSGeometryDiffImpl legacyDiff = new LCSGeometryDiffImpl(text);
+        assertEquals(text, writeAndRead(legacyDiff).asText());
+    }
+
+    private LCSGeometryDiffImpl writeAndRead(LCSGeometryDiffImpl diff) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        diff.write(new DataOutputStream(bytes));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        LCSGeometryDiffImpl read = LCSGeometryDiffImpl.read(in);
+        assertEquals(-1, in.read());
+        return read;
+    }
+
     @Test
     public void testNoOldGeometry() throws Exception {
         Geometry newGeom = new WKTReader()
@@ -0,0 +1,57 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.di.caching;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class DirectArenaTest {
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] raw = new byte[length];
+        for (int i = 0; i < length; i++) {
+            raw[i] = (byte) (seed + i);
+        }
+        return raw;
+    }
+
+    @Test
+    public void testAllocateRead() {
+        DirectArena arena = new DirectArena(2 * DirectArena.MAX_CHUNK_SIZE);
+        int[] lengths = { 0, 1, 64, 65, 1000, 4096, 100000 };
+        DirectArena.Chunk[] chunks = new DirectArena.Chunk[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            chunks[i] = arena.allocate(bytes(lengths[i], i));
+            assertNotNull(chunks[i]);
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            assertArrayEquals(bytes(lengths[i], i), arena.read(chunks[i]));
+        }
+        assertNull("bigger than a chunk",
+                arena.allocate(new byte[DirectArena.MAX_CHUNK_SIZE + 1]));
+    }
+
+    @Test
+    public void testFreedChunksAreReused() {
+        DirectArena arena = new DirectArena(DirectArena.MAX_CHUNK_SIZE);
+        DirectArena.Chunk chunk = arena.allocate(bytes(DirectArena.MAX_CHUNK_SIZE, 1));
+        assertNotNull(chunk);
+        assertNull("arena is full", arena.allocate(bytes(100, 2)));
+
+        arena.free(chunk);
+        arena.free(chunk);
+        assertNull(arena.read(chunk));
+
+        DirectArena.Chunk reused = arena.allocate(bytes(DirectArena.MAX_CHUNK_SIZE - 10, 3));
+        assertNotNull(reused);
+        assertArrayEquals(bytes(DirectArena.MAX_CHUNK_SIZE - 10, 3), arena.read(reused));
+        assertNull(arena.read(chunk));
+        assertEquals(DirectArena.MAX_CHUNK_SIZE, arena.capacityUsed());
+    }
+}
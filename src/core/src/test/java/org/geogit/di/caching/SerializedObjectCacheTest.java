@@ -0,0 +1,83 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.di.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.geogit.api.CommitBuilder;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.junit.Test;
+
+public class SerializedObjectCacheTest {
+
+    private static RevCommit commit(String message) {
+        return new CommitBuilder().setTreeId(ObjectId.NULL).setMessage(message).build();
+    }
+
+    private void testPutGet(boolean offHeap) {
+        SerializedObjectCache cache = new SerializedObjectCache(
+                new DataStreamSerializationFactory(), 1024 * 1024, 0, offHeap);
+        RevCommit c1 = commit("c1");
+        cache.put(c1.getId(), c1);
+
+        RevCommit cached = (RevCommit) cache.getIfPresent(c1.getId());
+        assertEquals(c1, cached);
+        assertNotSame(c1, cached);
+        assertNull(cache.getIfPresent(commit("c2").getId()));
+
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+        assertEquals(1, cache.size());
+        assertTrue(cache.sizeBytes() > 0);
+
+        cache.invalidate(c1.getId());
+        assertNull(cache.getIfPresent(c1.getId()));
+        assertEquals(0, cache.sizeBytes());
+    }
+
+    @Test
+    public void testPutGetHeap() {
+        testPutGet(false);
+    }
+
+    @Test
+    public void testPutGetOffHeap() {
+        testPutGet(true);
+    }
+
+    @Test
+    public void testBoundedBySize() {
+        final long maxBytes = 16 * 1024;
+        SerializedObjectCache cache = new SerializedObjectCache(
+                new DataStreamSerializationFactory(), maxBytes, 1, false);
+        for (int i = 0; i < 1000; i++) {
+            RevCommit c = commit("commit number " + i);
+            cache.put(c.getId(), c);
+        }
+        assertTrue(cache.size() < 1000);
+        assertTrue(cache.sizeBytes() <= maxBytes);
+        assertTrue(cache.stats().evictionCount() > 0);
+    }
+
+    @Test
+    public void testBoundedBySizeOffHeap() {
+        final long maxBytes = 16 * 1024;
+        SerializedObjectCache cache = new SerializedObjectCache(
+                new DataStreamSerializationFactory(), maxBytes, 1, true);
+        for (int i = 0; i < 10000; i++) {
+            RevCommit c = commit("commit number " + i);
+            cache.put(c.getId(), c);
+            assertEquals(c, cache.getIfPresent(c.getId()));
+        }
+        assertTrue(cache.size() < 10000);
+        assertTrue(cache.sizeBytes() <= maxBytes);
+        assertTrue(cache.stats().evictionCount() > 0);
+    }
+}
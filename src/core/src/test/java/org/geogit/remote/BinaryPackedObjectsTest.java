@@ -0,0 +1,182 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.RevObject;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.repository.PostOrderIterator;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.geogit.storage.memory.HeapDeduplicator;
+import org.geogit.storage.memory.HeapObjectDatabse;
+import org.geogit.test.integration.RepositoryTestCase;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class BinaryPackedObjectsTest extends RepositoryTestCase {
+
+    private RevCommit commit1;
+
+    private RevCommit commit2;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        insertAndAdd(points1, lines1);
+        commit1 = geogit.command(CommitOp.class).call();
+        insertAndAdd(points2);
+        commit2 = geogit.command(CommitOp.class).call();
+    }
+
+    @Test
+    public void testRawRoundTrip() throws Exception {
+        ObjectDatabase source = repo.getObjectDatabase();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedObjects(source).writeRaw(out, ImmutableList.of(commit2.getId()),
+                ImmutableList.<ObjectId> of(), true, new HeapDeduplicator());
+
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        final Set<ObjectId> ingestedCommits = Sets.newHashSet();
+        new BinaryPackedObjects(target).ingestRaw(new ByteArrayInputStream(out.toByteArray()),
+                new BinaryPackedObjects.Callback<Void>() {
+                    @Override
+                    public Void callback(RevObject object, Void state) {
+                        ingestedCommits.add(object.getId());
+                        return null;
+                    }
+                });
+
+        assertEquals(ImmutableSet.of(commit1.getId(), commit2.getId()), ingestedCommits);
+        assertEquals(commit2, target.getCommit(commit2.getId()));
+        assertEquals(source.getTree(commit1.getTreeId()), target.getTree(commit1.getTreeId()));
+        assertEquals(source.getTree(commit2.getTreeId()), target.getTree(commit2.getTreeId()));
+        List<ObjectId> featureIds = ImmutableList.of(
+                new RevFeatureBuilder().build(points1).getId(),
+                new RevFeatureBuilder().build(points2).getId(),
+                new RevFeatureBuilder().build(lines1).getId());
+        for (ObjectId id : featureIds) {
+            assertEquals(source.getFeature(id), target.get(id, RevFeature.class));
+        }
+    }
+
+    @Test
+    public void testRawWriteDoesNotParseLeaves() throws Exception {
+        final List<RevObject> written = Lists.newArrayList();
+        new BinaryPackedObjects(repo.getObjectDatabase()).writeRaw(new ByteArrayOutputStream(),
+                ImmutableList.of(commit2.getId()), ImmutableList.<ObjectId> of(),
+                Sets.<ObjectId> newHashSet(), new BinaryPackedObjects.Callback<Void>() {
+                    @Override
+                    public Void callback(RevObject object, Void state) {
+                        written.add(object);
+                        return null;
+                    }
+                }, true, new HeapDeduplicator());
+
+        int features = 0;
+        int featureTypes = 0;
+        for (RevObject object : written) {
+            switch (object.getType()) {
+            case FEATURE:
+                features++;
+                assertTrue(object instanceof PostOrderIterator.Unparsed);
+                break;
+            case FEATURETYPE:
+                featureTypes++;
+                assertTrue(object instanceof PostOrderIterator.Unparsed);
+                break;
+            default:
+                assertFalse(object instanceof PostOrderIterator.Unparsed);
+            }
+        }
+        assertEquals(3, features);
+        assertEquals(2, featureTypes);
+    }
+
+    @Test
+    public void testRawMatchesDefaultFormat() throws Exception {
+        ObjectDatabase source = repo.getObjectDatabase();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        new BinaryPackedObjects(source).writeRaw(raw, ImmutableList.of(commit2.getId()),
+                ImmutableList.of(commit1.getId()), true, new HeapDeduplicator());
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        new BinaryPackedObjects(source).write(serialized, ImmutableList.of(commit2.getId()),
+                ImmutableList.of(commit1.getId()), true, new HeapDeduplicator());
+
+        ObjectDatabase rawTarget = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        rawTarget.open();
+        new BinaryPackedObjects(rawTarget).ingestRaw(new ByteArrayInputStream(raw.toByteArray()));
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        new BinaryPackedObjects(target).ingest(new ByteArrayInputStream(serialized.toByteArray()));
+
+        assertTrue(rawTarget.exists(commit2.getId()));
+        assertFalse(rawTarget.exists(commit1.getId()));
+        assertTrue(target.exists(commit2.getId()));
+        assertEquals(target.getTree(commit2.getTreeId()), rawTarget.getTree(commit2.getTreeId()));
+        ObjectId points2Id = new RevFeatureBuilder().build(points2).getId();
+        assertEquals(target.getFeature(points2Id), rawTarget.getFeature(points2Id));
+    }
+
+    @Test
+    public void testCap() throws Exception {
+        ObjectDatabase source = repo.getObjectDatabase();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedObjects(source).setCap(1).writeRaw(out,
+                ImmutableList.of(commit2.getId()), ImmutableList.<ObjectId> of(), true,
+                new HeapDeduplicator());
+
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        new BinaryPackedObjects(target).ingestRaw(new ByteArrayInputStream(out.toByteArray()));
+        // commits are written oldest first, with the objects they refer to before them
+        assertTrue(target.exists(commit1.getId()));
+        assertTrue(target.exists(commit1.getTreeId()));
+        assertFalse(target.exists(commit2.getId()));
+
+        out.reset();
+        new BinaryPackedObjects(source).setCap(0).writeRaw(out,
+                ImmutableList.of(commit2.getId()), ImmutableList.of(commit1.getId()), true,
+                new HeapDeduplicator());
+        new BinaryPackedObjects(target).ingestRaw(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(target.exists(commit2.getId()));
+        assertTrue(target.exists(commit2.getTreeId()));
+    }
+
+    @Test
+    public void testRawRejectsMismatchedId() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryPackedObjects(repo.getObjectDatabase()).writeRaw(out,
+                ImmutableList.of(commit1.getId()), ImmutableList.<ObjectId> of(), true,
+                new HeapDeduplicator());
+        byte[] stream = out.toByteArray();
+        // the stream starts with the id of the first object
+        stream[0] ^= 0xFF;
+        ObjectId forgedId = new ObjectId(Arrays.copyOf(stream, 20));
+
+        ObjectDatabase target = new HeapObjectDatabse(new DataStreamSerializationFactory());
+        target.open();
+        try {
+            new BinaryPackedObjects(target).ingestRaw(new ByteArrayInputStream(stream));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(forgedId.toString()));
+        }
+        assertFalse(target.exists(forgedId));
+    }
+}
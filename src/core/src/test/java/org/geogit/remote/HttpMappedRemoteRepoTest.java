@@ -0,0 +1,130 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.ConfigOp;
+import org.geogit.api.porcelain.ConfigOp.ConfigAction;
+import org.geogit.api.porcelain.ConfigOp.ConfigScope;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+public class HttpMappedRemoteRepoTest extends RemoteRepositoryTestCase {
+
+    private StubHttpRemote remote;
+
+    private HttpMappedRemoteRepo repo;
+
+    private RevCommit commit1;
+
+    private RevCommit commit2;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        File filterFile = new File(new File(localGeogit.geogit.getPlatform().pwd(), ".geogit"),
+                "filter.ini");
+        PrintWriter out = new PrintWriter(filterFile);
+        try {
+            out.println("[default]");
+            out.println("type = CQL");
+            out.println("filter = BBOX(pp,0,0,10,10,'EPSG:4326')");
+        } finally {
+            out.close();
+        }
+        localGeogit.geogit.command(ConfigOp.class).setAction(ConfigAction.CONFIG_SET)
+                .setName("sparse.filter").setValue("filter.ini").setScope(ConfigScope.LOCAL)
+                .call();
+
+        insertAndAdd(remoteGeogit.geogit, points1);
+        commit1 = remoteGeogit.geogit.command(CommitOp.class).call();
+        insertAndAdd(remoteGeogit.geogit, points2);
+        commit2 = remoteGeogit.geogit.command(CommitOp.class).call();
+
+        remote = new StubHttpRemote();
+        remote.setObjects(remoteGeogit.repo.getObjectDatabase());
+        repo = new HttpMappedRemoteRepo(remote.getURL(), localGeogit.repo);
+    }
+
+    @Override
+    protected void tearDownInternal() throws Exception {
+        repo.endPrefetch();
+        remote.stop();
+    }
+
+    @Test
+    public void testPrefetch() {
+        remote.setResponse("POST", "/repo/affectedfeatures", commit1.getId() + "\n"
+                + commit2.getId() + "\n");
+
+        repo.prefetch(ImmutableList.of(commit1.getId(), commit2.getId()));
+
+        List<String> requests = remote.getRequests();
+        assertEquals(3, requests.size());
+        assertEquals("POST /repo/affectedfeatures", requests.get(0));
+        assertTrue(requests.contains(objectRequest(commit1.getId())));
+        assertTrue(requests.contains(objectRequest(commit2.getId())));
+
+        // prefetched commits are not requested again
+        assertEquals(Optional.of(commit1), repo.getObject(commit1.getId()));
+        assertEquals(Optional.of(commit2), repo.getObject(commit2.getId()));
+        assertEquals(3, remote.getRequests().size());
+    }
+
+    @Test
+    public void testPrefetchNothing() {
+        repo.prefetch(ImmutableList.<ObjectId> of());
+        assertTrue(remote.getRequests().isEmpty());
+    }
+
+    @Test
+    public void testPrefetchWithoutBatches() {
+        // the stub answers the batched request with 405, as remotes that predate it do
+        repo.prefetch(ImmutableList.of(commit1.getId()));
+        repo.prefetch(ImmutableList.of(commit2.getId()));
+
+        assertEquals(1, count("POST /repo/affectedfeatures"));
+        assertEquals(1, count(objectRequest(commit1.getId())));
+        assertEquals(1, count(objectRequest(commit2.getId())));
+        assertEquals(Optional.of(commit2), repo.getObject(commit2.getId()));
+        assertEquals(1, count(objectRequest(commit2.getId())));
+    }
+
+    @Test
+    public void testEndPrefetch() {
+        remote.setResponse("POST", "/repo/affectedfeatures", commit1.getId() + "\n");
+        repo.prefetch(ImmutableList.of(commit1.getId()));
+        repo.endPrefetch();
+
+        // what was prefetched is dropped, and the commit is requested again
+        assertEquals(Optional.of(commit1), repo.getObject(commit1.getId()));
+        assertEquals(2, count(objectRequest(commit1.getId())));
+
+        // and a later fetch prefetches again
+        repo.prefetch(ImmutableList.of(commit2.getId()));
+        assertEquals(1, count(objectRequest(commit2.getId())));
+        assertEquals(Optional.of(commit2), repo.getObject(commit2.getId()));
+        assertEquals(1, count(objectRequest(commit2.getId())));
+    }
+
+    private static String objectRequest(ObjectId id) {
+        return "GET /repo/objects/" + id;
+    }
+
+    private int count(String request) {
+        return Iterables.frequency(remote.getRequests(), request);
+    }
+}
@@ -0,0 +1,167 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.util.Map;
+
+import org.geogit.api.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+public class HttpUtilsTest {
+
+    private static final ObjectId id1 = ObjectId.forString("1");
+
+    private static final ObjectId id2 = ObjectId.forString("2");
+
+    private static final ObjectId id3 = ObjectId.forString("3");
+
+    private static final ObjectId unknown = ObjectId.forString("unknown");
+
+    private StubHttpRemote remote;
+
+    private URL url;
+
+    @Before
+    public void setUp() throws Exception {
+        remote = new StubHttpRemote();
+        url = remote.getURL();
+    }
+
+    @After
+    public void tearDown() {
+        remote.stop();
+    }
+
+    @Test
+    public void testGetParents() {
+        remote.setResponse("POST", "/repo/getparents", id1 + " " + id2 + " " + id3 + "\n" + id2
+                + "\n" + unknown + "\n");
+
+        Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> parents = HttpUtils.getParents(
+                url, ImmutableList.of(id1, unknown), 100);
+
+        assertTrue(parents.isPresent());
+        assertEquals(ImmutableMap.of(id1, ImmutableList.of(id2, id3), id2,
+                ImmutableList.<ObjectId> of(), unknown, ImmutableList.<ObjectId> of()),
+                parents.get());
+
+        JsonObject message = body("/repo/getparents");
+        assertEquals(ids(id1, unknown), message.get("commitIds"));
+        assertEquals(100, message.get("limit").getAsInt());
+    }
+
+    @Test
+    public void testGetParentsEmptyBatch() {
+        remote.setResponse("POST", "/repo/getparents", "");
+
+        Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> parents = HttpUtils.getParents(
+                url, ImmutableList.<ObjectId> of(), 100);
+
+        assertTrue(parents.isPresent());
+        assertTrue(parents.get().isEmpty());
+        assertEquals(ids(), body("/repo/getparents").get("commitIds"));
+    }
+
+    @Test
+    public void testGetAffectedFeatures() {
+        // unknown commits are left out of the response
+        remote.setResponse("POST", "/repo/affectedfeatures", id1 + " " + id3 + " " + unknown
+                + "\n" + id2 + "\n");
+
+        Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> affected = HttpUtils
+                .getAffectedFeatures(url, ImmutableList.of(id1, id2, unknown));
+
+        assertTrue(affected.isPresent());
+        Map<ObjectId, ImmutableList<ObjectId>> features = affected.get();
+        assertEquals(2, features.size());
+        assertEquals(ImmutableList.of(id3, unknown), features.get(id1));
+        assertEquals(ImmutableList.of(), features.get(id2));
+        assertFalse(features.containsKey(unknown));
+        assertEquals(ids(id1, id2, unknown), body("/repo/affectedfeatures").get("commitIds"));
+    }
+
+    @Test
+    public void testGetAffectedFeaturesEmptyBatch() {
+        remote.setResponse("POST", "/repo/affectedfeatures", "");
+
+        Optional<ImmutableMap<ObjectId, ImmutableList<ObjectId>>> affected = HttpUtils
+                .getAffectedFeatures(url, ImmutableList.<ObjectId> of());
+
+        assertTrue(affected.isPresent());
+        assertTrue(affected.get().isEmpty());
+    }
+
+    @Test
+    public void testNetworkObjectsExist() {
+        remote.setResponse("POST", "/repo/exists", "1\n0\n1");
+
+        Optional<ImmutableSet<ObjectId>> existing = HttpUtils.networkObjectsExist(url,
+                ImmutableList.of(id1, unknown, id2));
+
+        assertTrue(existing.isPresent());
+        assertEquals(ImmutableSet.of(id1, id2), existing.get());
+        assertEquals(ids(id1, unknown, id2), body("/repo/exists").get("oids"));
+    }
+
+    @Test
+    public void testNetworkObjectsExistEmptyBatch() {
+        remote.setResponse("POST", "/repo/exists", "");
+
+        Optional<ImmutableSet<ObjectId>> existing = HttpUtils.networkObjectsExist(url,
+                ImmutableList.<ObjectId> of());
+
+        assertTrue(existing.isPresent());
+        assertTrue(existing.get().isEmpty());
+    }
+
+    @Test
+    public void testNetworkObjectsExistWrongAnswerCount() {
+        remote.setResponse("POST", "/repo/exists", "1");
+
+        try {
+            HttpUtils.networkObjectsExist(url, ImmutableList.of(id1, id2));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("networkObjectsExist returned 1 answers for 2 objects", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBatchesNotSupported() {
+        // the stub answers 405 to anything it wasn't told about
+        assertFalse(HttpUtils.getParents(url, ImmutableList.of(id1), 100).isPresent());
+        assertFalse(HttpUtils.getAffectedFeatures(url, ImmutableList.of(id1)).isPresent());
+        assertFalse(HttpUtils.networkObjectsExist(url, ImmutableList.of(id1)).isPresent());
+    }
+
+    private JsonObject body(String resource) {
+        return new JsonParser().parse(remote.getBody("POST", resource)).getAsJsonObject();
+    }
+
+    private static JsonArray ids(ObjectId... ids) {
+        JsonArray array = new JsonArray();
+        for (ObjectId id : ids) {
+            array.add(new JsonPrimitive(id.toString()));
+        }
+        return array;
+    }
+}
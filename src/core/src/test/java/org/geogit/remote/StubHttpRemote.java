@@ -0,0 +1,147 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.remote;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject;
+import org.geogit.storage.ObjectDatabase;
+import org.geogit.storage.ObjectWriter;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server standing for a remote repository in tests of the HTTP client. It answers
+ * the requests given a canned response, and the object requests from an object database, and
+ * records every request it gets. Any other request is answered with
+ * {@code 405 Method Not Allowed}, as remotes that predate batched requests do for POSTs.
+ */
+class StubHttpRemote {
+
+    private static final String CONTEXT = "/repository";
+
+    private final HttpServer server;
+
+    private final Map<String, String> responses = Maps.newConcurrentMap();
+
+    private final List<String> requests = Collections.synchronizedList(Lists
+            .<String> newArrayList());
+
+    private final Map<String, String> bodies = Maps.newConcurrentMap();
+
+    private ObjectDatabase objects;
+
+    public StubHttpRemote() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(CONTEXT, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return the URL of the stub repository
+     */
+    public URL getURL() throws IOException {
+        return new URL("http", "localhost", server.getAddress().getPort(), CONTEXT);
+    }
+
+    /**
+     * Answers requests of the given method to the given resource with the given text.
+     *
+     * @param resource the path of the resource, relative to the repository URL and without the
+     *        query
+     */
+    public void setResponse(String method, String resource, String response) {
+        responses.put(method + " " + resource, response);
+    }
+
+    /**
+     * Answers {@code /repo/objects/<id>} requests with the objects of the given database.
+     */
+    public void setObjects(ObjectDatabase objects) {
+        this.objects = objects;
+    }
+
+    /**
+     * @return the method and resource of the requests received so far, like
+     *         {@code "POST /repo/getparents"}
+     */
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return Lists.newArrayList(requests);
+        }
+    }
+
+    /**
+     * @return the body of the last request of the given method to the given resource
+     */
+    public String getBody(String method, String resource) {
+        return bodies.get(method + " " + resource);
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        final String resource = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+        final String request = exchange.getRequestMethod() + " " + resource;
+        InputStream in = exchange.getRequestBody();
+        try {
+            bodies.put(request, new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+        } finally {
+            in.close();
+        }
+        requests.add(request);
+
+        byte[] response = null;
+        if (responses.containsKey(request)) {
+            response = responses.get(request).getBytes(Charsets.UTF_8);
+        } else if (objects != null && request.startsWith("GET /repo/objects/")) {
+            ObjectId id = ObjectId.valueOf(resource.substring("/repo/objects/".length()));
+            RevObject object = objects.get(id);
+            ObjectWriter<RevObject> writer = new DataStreamSerializationFactory()
+                    .createObjectWriter(object.getType());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.write(object, out);
+            response = out.toByteArray();
+        }
+        if (response == null) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, response.length == 0 ? -1 : response.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(response);
+        } finally {
+            out.close();
+        }
+    }
+}
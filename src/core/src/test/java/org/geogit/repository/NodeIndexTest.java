@@ -0,0 +1,92 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.repository;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.RevObject.TYPE;
+import org.geogit.storage.NodeStorageOrder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Envelope;
+
+public class NodeIndexTest {
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private static Node node(String name, int i) {
+        ObjectId oid = ObjectId.forString(name + "_" + i);
+        Envelope bounds = i % 2 == 0 ? new Envelope(i, i, i, i) : null;
+        return Node.create(name, oid, ObjectId.NULL, TYPE.FEATURE, bounds);
+    }
+
+    private void testSort(final int partitionSize, final int count) {
+        List<Node> nodes = Lists.newArrayList();
+        NodeIndex index = new NodeIndex(executorService, partitionSize);
+        try {
+            for (int i = 0; i < count; i++) {
+                Node node = node("node-" + i, i);
+                nodes.add(node);
+                index.add(node);
+            }
+            Collections.sort(nodes, new NodeStorageOrder());
+            List<Node> sorted = ImmutableList.copyOf(index.nodes());
+            assertEquals(nodes, sorted);
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testInMemory() {
+        testSort(1000, 500);
+    }
+
+    @Test
+    public void testSpilled() {
+        testSort(100, 1050);
+    }
+
+    @Test
+    public void testSameNameKeepsInsertionOrder() {
+        NodeIndex index = new NodeIndex(executorService, 10);
+        try {
+            List<Node> expected = Lists.newArrayList();
+            for (int i = 0; i < 25; i++) {
+                Node node = node("node", i);
+                expected.add(node);
+                index.add(node);
+            }
+            List<Node> sorted = ImmutableList.copyOf(index.nodes());
+            assertEquals(expected.size(), sorted.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getObjectId(), sorted.get(i).getObjectId());
+            }
+        } finally {
+            index.close();
+        }
+    }
+}
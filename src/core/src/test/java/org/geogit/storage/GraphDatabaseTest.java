@@ -5,13 +5,19 @@
 package org.geogit.storage;
 
 import java.io.IOException;
+import java.util.List;
 
+import org.geogit.api.CommitBuilder;
 import org.geogit.api.ObjectId;
+import org.geogit.api.RevCommit;
 import org.geogit.test.integration.RepositoryTestCase;
 import org.junit.Test;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.inject.Injector;
 
 /**
@@ -64,6 +70,38 @@ public abstract class GraphDatabaseTest extends RepositoryTestCase {
         assertEquals(0, parents.size());
     }
 
+    @Test
+    public void testPutAll() throws IOException {
+        // commits are given newest first, as they are when walking the history
+        RevCommit root = commit("root commit");
+        RevCommit commit1 = commit("commit1", root);
+        RevCommit commit2 = commit("commit2", root);
+        RevCommit merge = commit("merge", commit1, commit2);
+
+        ImmutableList<ObjectId> updated = database.putAll(Iterators.forArray(merge, commit2,
+                commit1, root));
+        assertEquals(ImmutableList.of(merge.getId(), commit2.getId(), commit1.getId(),
+                root.getId()), updated);
+        assertEquals(ImmutableSet.of(commit1.getId(), commit2.getId()),
+                ImmutableSet.copyOf(database.getParents(merge.getId())));
+        assertEquals(ImmutableList.of(root.getId()), database.getParents(commit2.getId()));
+        assertEquals(2, database.getChildren(root.getId()).size());
+        assertEquals(0, database.getParents(root.getId()).size());
+        assertEquals(2, database.getDepth(merge.getId()));
+
+        updated = database.putAll(Iterators.forArray(merge, commit1));
+        assertTrue(updated.isEmpty());
+    }
+
+    private RevCommit commit(String message, RevCommit... parents) {
+        List<ObjectId> parentIds = Lists.newArrayList();
+        for (RevCommit parent : parents) {
+            parentIds.add(parent.getId());
+        }
+        return new CommitBuilder().setTreeId(ObjectId.forString("tree")).setMessage(message)
+                .setParentIds(parentIds).build();
+    }
+
     @Test
     public void testFindCommonAncestor1() throws IOException {
         // Create the following revision graph
@@ -0,0 +1,101 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevObject;
+import org.geogit.api.TestPlatform;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.BulkOpListener.CountingListener;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class FileObjectDatabaseTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private FileObjectDatabase db;
+
+    @Before
+    public void setUp() throws Exception {
+        File workingDir = tempFolder.newFolder("mockWorkingDir");
+        new File(workingDir, ".geogit").mkdir();
+        Platform platform = new TestPlatform(workingDir);
+        db = new FileObjectDatabase(platform, new DataStreamSerializationFactory(),
+                new IniConfigDatabase(platform));
+        db.open();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private static List<RevFeature> features(int count) {
+        List<RevFeature> features = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            ImmutableList<Optional<Object>> values = ImmutableList.of(
+                    Optional.of((Object) ("StringProp_" + i)), Optional.of((Object) new Integer(i)));
+            features.add(RevFeature.build(values));
+        }
+        return features;
+    }
+
+    private static List<ObjectId> ids(List<? extends RevObject> objects) {
+        List<ObjectId> ids = Lists.newArrayList();
+        for (RevObject o : objects) {
+            ids.add(o.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testGetAll() {
+        List<RevFeature> features = features(2500);
+        db.putAll(features.subList(0, 2000).iterator());
+
+        CountingListener listener = BulkOpListener.newCountingListener();
+        Set<RevObject> found = Sets.newHashSet(db.getAll(ids(features), listener));
+
+        assertEquals(Sets.newHashSet(features.subList(0, 2000)), found);
+        assertEquals(2000, listener.found());
+        assertEquals(500, listener.notFound());
+    }
+
+    @Test
+    public void testDeleteAll() {
+        List<RevFeature> features = features(100);
+        db.putAll(features.subList(0, 50).iterator());
+
+        CountingListener listener = BulkOpListener.newCountingListener();
+        long deleted = db.deleteAll(ids(features).iterator(), listener);
+
+        assertEquals(50, deleted);
+        assertEquals(50, listener.deleted());
+        assertEquals(50, listener.notFound());
+        for (RevFeature f : features) {
+            assertFalse(db.exists(f.getId()));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.Ref;
+import org.geogit.api.TestPlatform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileRefDatabaseTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private FileRefDatabase db;
+
+    /**
+     * Another instance on the same repository, as when it's opened twice in the same JVM
+     */
+    private FileRefDatabase other;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        File workingDir = tempFolder.newFolder("mockWorkingDir");
+        new File(workingDir, ".geogit").mkdir();
+        Platform platform = new TestPlatform(workingDir);
+        db = new FileRefDatabase(platform, new IniConfigDatabase(platform));
+        db.create();
+        other = new FileRefDatabase(platform, new IniConfigDatabase(platform));
+        other.create();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        db.close();
+        other.close();
+    }
+
+    @Test
+    public void testLockHeldByAnotherInstance() throws Exception {
+        final String oid1 = ObjectId.forString("1").toString();
+        final String oid2 = ObjectId.forString("2").toString();
+        db.putRef(Ref.MASTER, oid1);
+
+        db.lock(Ref.MASTER);
+        Future<Boolean> updated;
+        try {
+            updated = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Boolean.valueOf(other.compareAndPut(Ref.MASTER, oid1, oid2));
+                }
+            });
+            // waits for the lock instead of failing
+            Thread.sleep(500);
+            assertFalse(updated.isDone());
+            assertEquals(oid1, db.getRef(Ref.MASTER));
+        } finally {
+            db.unlock(Ref.MASTER);
+        }
+        assertTrue(updated.get(10, TimeUnit.SECONDS).booleanValue());
+        assertEquals(oid2, db.getRef(Ref.MASTER));
+
+        // and the lock is released for the first instance again
+        assertTrue(db.compareAndPut(Ref.MASTER, oid2, oid1));
+        assertEquals(oid1, other.getRef(Ref.MASTER));
+    }
+}
@@ -0,0 +1,239 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.storage.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.geogit.api.ObjectId;
+import org.geogit.api.Platform;
+import org.geogit.api.RevFeature;
+import org.geogit.api.RevObject;
+import org.geogit.api.TestPlatform;
+import org.geogit.storage.BulkOpListener;
+import org.geogit.storage.BulkOpListener.CountingListener;
+import org.geogit.storage.datastream.DataStreamSerializationFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+public class PackedObjectDatabaseTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Platform platform;
+
+    private PackedObjectDatabase db;
+
+    @Before
+    public void setUp() throws Exception {
+        File workingDir = tempFolder.newFolder("mockWorkingDir");
+        new File(workingDir, ".geogit").mkdir();
+        platform = new TestPlatform(workingDir);
+        db = newDatabase();
+        db.open();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private PackedObjectDatabase newDatabase() {
+        return new PackedObjectDatabase(platform, new DataStreamSerializationFactory(),
+                new IniConfigDatabase(platform));
+    }
+
+    private static RevFeature feature(int i) {
+        ImmutableList<Optional<Object>> values = ImmutableList.of(
+                Optional.of((Object) ("StringProp_" + i)), Optional.of((Object) new Integer(i)));
+        return RevFeature.build(values);
+    }
+
+    private List<RevFeature> features(int count) {
+        List<RevFeature> features = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            features.add(feature(i));
+        }
+        return features;
+    }
+
+    @Test
+    public void testPutGet() {
+        RevFeature feature = feature(1);
+        assertFalse(db.exists(feature.getId()));
+        assertTrue(db.put(feature));
+        assertFalse(db.put(feature));
+        assertTrue(db.exists(feature.getId()));
+        assertEquals(feature, db.get(feature.getId()));
+        assertNull(db.getIfPresent(feature(2).getId()));
+    }
+
+    @Test
+    public void testPutAllAndReopen() {
+        List<RevFeature> features = features(1000);
+        CountingListener listener = BulkOpListener.newCountingListener();
+        db.putAll(features.iterator(), listener);
+        assertEquals(1000, listener.inserted());
+
+        db.close();
+        db = newDatabase();
+        db.open();
+
+        assertEquals(1, db.getPackCount());
+        for (RevFeature f : features) {
+            assertEquals(f, db.getFeature(f.getId()));
+        }
+
+        List<ObjectId> ids = Lists.newArrayList();
+        for (RevFeature f : features) {
+            ids.add(f.getId());
+        }
+        ids.add(feature(5000).getId());
+        listener = BulkOpListener.newCountingListener();
+        List<RevObject> found = Lists.newArrayList(db.getAll(ids, listener));
+        assertEquals(1000, found.size());
+        assertEquals(1000, listener.found());
+        assertEquals(1, listener.notFound());
+    }
+
+    @Test
+    public void testRecoverUnsealedPack() throws Exception {
+        List<RevFeature> features = features(10);
+        db.putAll(features.iterator());
+        List<byte[]> raws = Lists.newArrayList();
+        for (RevFeature f : features) {
+            raws.add(ByteStreams.toByteArray(db.getRawInternal(f.getId(), true)));
+        }
+        db.close();
+        File packsDir = new File(platform.pwd(), ".geogit/packs");
+        for (File file : packsDir.listFiles()) {
+            file.delete();
+        }
+
+        // simulate a process that died while writing a pack, leaving a partial record behind
+        File packFile = new File(packsDir, "pack-0000000000.pack");
+        assertTrue(packFile.createNewFile());
+        PackFile pack = PackFile.create(packFile);
+        for (int i = 0; i < features.size(); i++) {
+            pack.append(features.get(i).getId(), raws.get(i));
+        }
+        pack.append(ObjectId.forString("partial"), new byte[100]);
+        pack.flush();
+        pack.close();
+        RandomAccessFile raf = new RandomAccessFile(packFile, "rw");
+        try {
+            raf.setLength(raf.length() - 50);
+        } finally {
+            raf.close();
+        }
+
+        db.open();
+        assertTrue(PackFile.indexFile(packFile).exists());
+        for (RevFeature f : features) {
+            assertEquals(f, db.getFeature(f.getId()));
+        }
+        assertFalse(db.exists(ObjectId.forString("partial")));
+    }
+
+    @Test
+    public void testActivePackOfAnotherDatabase() throws Exception {
+        List<RevFeature> features = features(10);
+        db.putAll(features.iterator());
+        File packFile = new File(new File(platform.pwd(), ".geogit/packs"),
+                "pack-0000000000.pack");
+
+        PackedObjectDatabase other = newDatabase();
+        other.open();
+        try {
+            // the pack is still being written, so it's left alone
+            assertFalse(PackFile.indexFile(packFile).exists());
+            assertFalse(other.exists(features.get(0).getId()));
+
+            // and its objects are found once it's sealed
+            db.close();
+            assertTrue(other.exists(features.get(0).getId()));
+            for (RevFeature f : features) {
+                assertEquals(f, other.getFeature(f.getId()));
+            }
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        PackedObjectDatabase other = newDatabase();
+        other.open();
+        List<RevFeature> features = features(20);
+        try {
+            // both databases start with no packs and write to packs of their own
+            db.putAll(features.subList(0, 10).iterator());
+            other.putAll(features.subList(10, 20).iterator());
+            assertFalse(db.exists(features.get(19).getId()));
+        } finally {
+            other.close();
+        }
+        for (RevFeature f : features) {
+            assertEquals(f, db.getFeature(f.getId()));
+        }
+        db.close();
+        db.open();
+        assertEquals(2, db.getPackCount());
+        for (RevFeature f : features) {
+            assertEquals(f, db.getFeature(f.getId()));
+        }
+    }
+
+    @Test
+    public void testLookUp() {
+        RevFeature feature = feature(1);
+        db.put(feature);
+        String partialId = feature.getId().toString().substring(0, 7);
+        List<ObjectId> matches = db.lookUp(partialId);
+        assertEquals(1, matches.size());
+        assertEquals(feature.getId(), matches.get(0));
+    }
+
+    @Test
+    public void testDeleteAndRepack() {
+        List<RevFeature> features = features(100);
+        db.putAll(features.iterator());
+        db.close();
+        db.open();
+        db.putAll(features(200).subList(100, 200).iterator());
+        assertEquals(2, db.getPackCount());
+
+        ObjectId deleted = features.get(0).getId();
+        assertTrue(db.delete(deleted));
+        assertFalse(db.delete(deleted));
+        assertFalse(db.exists(deleted));
+        assertNull(db.getIfPresent(deleted));
+
+        assertEquals(199, db.repack());
+        assertEquals(1, db.getPackCount());
+        assertFalse(db.exists(deleted));
+        assertNotNull(db.getIfPresent(features.get(1).getId()));
+
+        // a deleted object can be inserted again
+        assertTrue(db.put(features.get(0)));
+        assertEquals(features.get(0), db.get(deleted));
+    }
+}
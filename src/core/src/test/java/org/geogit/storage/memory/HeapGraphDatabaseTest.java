@@ -1,10 +1,16 @@
 package org.geogit.storage.memory;
 
+import static org.junit.Assert.assertEquals;
+
+import org.geogit.api.ObjectId;
 import org.geogit.di.GeogitModule;
 import org.geogit.storage.GraphDatabase;
 import org.geogit.storage.GraphDatabaseTest;
 import org.junit.Assert;
+import org.junit.Test;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 
@@ -18,4 +24,46 @@ public class HeapGraphDatabaseTest extends GraphDatabaseTest {
         return injector;
     }
 
+    @Test
+    public void testIndexInvalidatedOnOutOfOrderInsert() throws Exception {
+        ObjectId root = ObjectId.forString("root");
+        ObjectId c1 = ObjectId.forString("c1");
+        ObjectId c2 = ObjectId.forString("c2");
+        ObjectId side = ObjectId.forString("side");
+
+        // insert the tip before its ancestors are known
+        database.put(c2, ImmutableList.of(c1));
+        assertEquals(1, database.getDepth(c2));
+
+        database.put(c1, ImmutableList.of(root));
+        database.put(root, ImmutableList.<ObjectId> of());
+        assertEquals(2, database.getDepth(c2));
+
+        database.put(side, ImmutableList.of(root));
+        assertEquals(Optional.of(root), database.findLowestCommonAncestor(c2, side));
+        assertEquals(Optional.of(c1), database.findLowestCommonAncestor(c2, c1));
+    }
+
+    @Test
+    public void testGraphGrowsBeyondInitialCapacity() throws Exception {
+        final int count = 5000;
+        ObjectId parent = ObjectId.forString("c0");
+        database.put(parent, ImmutableList.<ObjectId> of());
+        ObjectId merge = ObjectId.forString("merge");
+        for (int i = 1; i < count; i++) {
+            ObjectId commit = ObjectId.forString("c" + i);
+            database.put(commit, ImmutableList.of(parent));
+            parent = commit;
+        }
+        database.put(merge, ImmutableList.of(parent, ObjectId.forString("c10")));
+
+        assertEquals(count - 1, database.getDepth(parent));
+        assertEquals(11, database.getDepth(merge));
+        assertEquals(ImmutableList.of(parent, ObjectId.forString("c10")),
+                database.getParents(merge));
+        assertEquals(ImmutableList.of(ObjectId.forString("c11"), merge),
+                database.getChildren(ObjectId.forString("c10")));
+        assertEquals(Optional.of(ObjectId.forString("c10")),
+                database.findLowestCommonAncestor(merge, ObjectId.forString("c10")));
+    }
 }
@@ -0,0 +1,166 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geogit.api.Node;
+import org.geogit.api.ObjectId;
+import org.geogit.api.plumbing.BuildSpatialIndexOp;
+import org.geogit.api.plumbing.RevParse;
+import org.geogit.api.porcelain.AddOp;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.storage.fs.SpatialIndex;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Envelope;
+
+public class BuildSpatialIndexOpTest extends RepositoryTestCase {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        populate(false, points1, points2);
+    }
+
+    private SpatialIndex buildIndex() {
+        ObjectId treeId = geogit.command(RevParse.class).setRefSpec("HEAD:" + pointsName).call()
+                .get();
+        return geogit.command(BuildSpatialIndexOp.class).setTreePath(pointsName)
+                .setTreeId(treeId).call();
+    }
+
+    @Test
+    public void testBuild() {
+        SpatialIndex index = buildIndex();
+        try {
+            assertEquals(2, index.size());
+            assertEquals(new Envelope(1, 2, 1, 2), index.getBounds());
+            assertEquals(1, index.count(new Envelope(0, 1.5, 0, 1.5)));
+            assertEquals(2, index.count(new Envelope(0, 10, 0, 10)));
+            assertEquals(0, index.count(new Envelope(5, 10, 5, 10)));
+            assertEquals(new Envelope(2, 2, 2, 2), index.bounds(new Envelope(1.5, 10, 1.5, 10)));
+
+            List<Node> nodes = ImmutableList.copyOf(index.query(new Envelope(0, 1.5, 0, 1.5)));
+            assertEquals(1, nodes.size());
+            assertEquals(idP1, nodes.get(0).getName());
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        SpatialIndex index = buildIndex();
+        final File baseIndexFile = index.getFile();
+        index.close();
+
+        insertAndAdd(points1_modified, points3);
+        deleteAndAdd(points2);
+        geogit.command(CommitOp.class).call();
+
+        index = buildIndex();
+        try {
+            // the previous version's index is kept for readers still on it
+            assertTrue(baseIndexFile.exists());
+            assertEquals(2, index.size());
+            assertEquals(new Envelope(1, 3, 2, 3), index.getBounds());
+            assertEquals(0, index.count(new Envelope(0, 1.5, 0, 1.5)));
+            assertEquals(1, index.count(new Envelope(0, 1.5, 0, 2.5)));
+            assertEquals(0, index.count(new Envelope(1.5, 2.5, 1.5, 2.5)));
+            assertEquals(1, index.count(new Envelope(2.5, 3.5, 2.5, 3.5)));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testSupersededIndexesDeleted() throws Exception {
+        SpatialIndex index = buildIndex();
+        final File firstIndexFile = index.getFile();
+        index.close();
+
+        insertAndAdd(points3);
+        geogit.command(CommitOp.class).call();
+        index = buildIndex();
+        final File secondIndexFile = index.getFile();
+        index.close();
+
+        insertAndAdd(points1_modified);
+        geogit.command(CommitOp.class).call();
+        index = buildIndex();
+        try {
+            assertFalse(firstIndexFile.exists());
+            assertTrue(secondIndexFile.exists());
+            assertEquals(3, index.size());
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentBuilds() throws Exception {
+        final ObjectId firstTreeId = geogit.command(RevParse.class)
+                .setRefSpec("HEAD:" + pointsName).call().get();
+        insertAndAdd(points3);
+        geogit.command(CommitOp.class).call();
+        final ObjectId secondTreeId = geogit.command(RevParse.class)
+                .setRefSpec("HEAD:" + pointsName).call().get();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> sizes = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                final ObjectId treeId = i % 2 == 0 ? firstTreeId : secondTreeId;
+                sizes.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        SpatialIndex index = geogit.command(BuildSpatialIndexOp.class)
+                                .setTreePath(pointsName).setTreeId(treeId).call();
+                        try {
+                            return Integer.valueOf(index.size());
+                        } finally {
+                            index.close();
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < sizes.size(); i++) {
+                assertEquals(i % 2 == 0 ? 2 : 3, sizes.get(i).get().intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testManyFeatures() throws Exception {
+        final int count = 2000;
+        for (int i = 0; i < count; i++) {
+            insert(feature(pointsType, "Points.x" + i, "s", Integer.valueOf(i), "POINT(" + i
+                    + " " + i + ")"));
+        }
+        geogit.command(AddOp.class).call();
+        geogit.command(CommitOp.class).call();
+
+        SpatialIndex index = buildIndex();
+        try {
+            // the populated points1 (1 1) and points2 (2 2) plus the new ones
+            assertEquals(count + 2, index.size());
+            assertEquals(100 + 2, index.count(new Envelope(0, 99, 0, 99)));
+            assertEquals(1, index.count(new Envelope(1500, 1500, 1500, 1500)));
+            assertEquals(new Envelope(500, 999, 500, 999),
+                    index.bounds(new Envelope(499.5, 999.5, 499.5, 999.5)));
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import org.opengis.util.ProgressListener;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Envelope;
 
 public class CommitOpTest extends RepositoryTestCase {
     @Rule
@@ -53,6 +54,24 @@ public class CommitOpTest extends RepositoryTestCase {
         repo.getConfigDatabase().put("user.email", "groldan@opengeo.org");
     }
 
+    @Test
+    public void testTypeTreeBounds() throws Exception {
+        insertAndAdd(points1);
+        geogit.command(CommitOp.class).call();
+        insertAndAdd(points2);
+        RevCommit commit = geogit.command(CommitOp.class).call();
+
+        RevTree root = repo.getTree(commit.getTreeId());
+        Optional<Node> typeTreeNode = repo.getTreeChild(root, pointsName);
+        assertTrue(typeTreeNode.isPresent());
+
+        Envelope bounds = new Envelope();
+        typeTreeNode.get().expand(bounds);
+        assertFalse(bounds.isNull());
+        assertTrue(bounds.contains((Envelope) points1.getBounds()));
+        assertTrue(bounds.contains((Envelope) points2.getBounds()));
+    }
+
     @Test
     public void testInitialCommit() throws Exception {
         try {
@@ -8,8 +8,10 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.geogit.api.GeogitTransaction;
+import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.plumbing.TransactionBegin;
 import org.geogit.api.plumbing.TransactionEnd;
@@ -17,10 +19,13 @@ import org.geogit.api.porcelain.BranchCreateOp;
 import org.geogit.api.porcelain.CheckoutOp;
 import org.geogit.api.porcelain.CommitOp;
 import org.geogit.api.porcelain.LogOp;
+import org.geogit.storage.RefDatabase;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import com.google.common.collect.Lists;
+
 public class GeogitTransactionTest extends RepositoryTestCase {
     @Rule
     public ExpectedException exception = ExpectedException.none();
@@ -277,6 +282,76 @@ public class GeogitTransactionTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testConcurrentTransactionEnd() throws Exception {
+
+        // make a commit
+        insertAndAdd(points1);
+        RevCommit mainCommit = geogit.command(CommitOp.class).setMessage("Commit1").call();
+
+        // start two transactions and perform a commit in each one
+        final GeogitTransaction transaction1 = geogit.command(TransactionBegin.class).call();
+        insertAndAdd(transaction1, points2);
+        RevCommit transaction1Commit = transaction1.command(CommitOp.class).setMessage("Commit2")
+                .call();
+
+        final GeogitTransaction transaction2 = geogit.command(TransactionBegin.class).call();
+        insertAndAdd(transaction2, points3);
+        RevCommit transaction2Commit = transaction2.command(CommitOp.class).setMessage("Commit3")
+                .call();
+
+        final RefDatabase refDb = repo.getRefDatabase();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread end2 = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    geogit.command(TransactionEnd.class).setTransaction(transaction2).call();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        };
+
+        // hold master so that the second transaction blocks in its compare-and-put, expecting
+        // master to still be at the first commit
+        refDb.lock(Ref.MASTER);
+        try {
+            end2.start();
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (end2.getState() != Thread.State.TIMED_WAITING) {
+                assertTrue("second transaction end didn't block on master",
+                        System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+
+            // the lock is reentrant, so the first transaction updates master meanwhile
+            geogit.command(TransactionEnd.class).setTransaction(transaction1).call();
+        } finally {
+            refDb.unlock(Ref.MASTER);
+        }
+        end2.join(10000);
+        assertFalse(end2.isAlive());
+        assertNull(error.get());
+
+        // the second compare-and-put failed, so its changes were merged with the first
+        // transaction's before updating master again
+        Iterator<RevCommit> logs = geogit.command(LogOp.class).call();
+        RevCommit lastCommit = logs.next();
+        assertTrue(lastCommit.getMessage().contains("Merge commit"));
+        assertEquals(transaction2Commit.getId(), lastCommit.getParentIds().get(0));
+        assertEquals(transaction1Commit.getId(), lastCommit.getParentIds().get(1));
+        List<RevCommit> logged = Lists.newArrayList(logs);
+        assertEquals(3, logged.size());
+        assertTrue(logged.contains(transaction1Commit));
+        assertTrue(logged.contains(transaction2Commit));
+        assertEquals(mainCommit, logged.get(2));
+
+        // and the heads follow master, not the commit the first transaction ended with
+        assertEquals(lastCommit.getId().toString(), refDb.getRef(Ref.WORK_HEAD));
+        assertEquals(lastCommit.getId().toString(), refDb.getRef(Ref.STAGE_HEAD));
+    }
+
     @Test
     public void testBranchCreateCollision() throws Exception {
 
@@ -8,11 +8,15 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevCommit;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevFeatureBuilder;
+import org.geogit.api.RevFeatureType;
+import org.geogit.api.RevTree;
 import org.geogit.api.SymRef;
+import org.geogit.api.plumbing.FindTreeChild;
 import org.geogit.api.plumbing.RefParse;
 import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.api.plumbing.merge.Conflict;
@@ -380,6 +384,38 @@ public class RebaseOpTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testRebaseFeatureTypeChange() throws Exception {
+        insertAndAdd(points1, points2, lines1);
+        geogit.command(CommitOp.class).setMessage("initial commit").call();
+
+        // change the feature type of the points tree in branch1
+        geogit.command(BranchCreateOp.class).setAutoCheckout(true).setName("branch1").call();
+        geogit.getRepository().getWorkingTree().updateTypeTree(pointsName, modifiedPointsType);
+        geogit.command(AddOp.class).call();
+        geogit.command(CommitOp.class).setMessage("points type changed").call();
+
+        // and only touch the lines tree in master
+        geogit.command(CheckoutOp.class).setSource("master").call();
+        insertAndAdd(lines2);
+        geogit.command(CommitOp.class).setMessage("commit for " + idL2).call();
+
+        Optional<Ref> master = geogit.command(RefParse.class).setName("master").call();
+        geogit.command(CheckoutOp.class).setSource("branch1").call();
+        geogit.command(RebaseOp.class)
+                .setUpstream(Suppliers.ofInstance(master.get().getObjectId())).call();
+
+        final ObjectId modifiedTypeId = RevFeatureType.build(modifiedPointsType).getId();
+        RevCommit head = geogit.command(LogOp.class).call().next();
+        RevTree root = geogit.getRepository().getTree(head.getTreeId());
+        Optional<NodeRef> pointsTree = geogit.command(FindTreeChild.class).setParent(root)
+                .setChildPath(pointsName).call();
+        assertTrue(pointsTree.isPresent());
+        assertEquals(modifiedTypeId, pointsTree.get().getMetadataId());
+        assertTrue(geogit.command(FindTreeChild.class).setParent(root)
+                .setChildPath(NodeRef.appendChild(linesName, idL2)).call().isPresent());
+    }
+
     @Test
     public void testRebaseNoUpstream() throws Exception {
         exception.expect(IllegalStateException.class);
@@ -499,6 +535,77 @@ public class RebaseOpTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testRebaseManyCommitsWithConflictAndContinue() throws Exception {
+        // Create the following revision graph
+        // o - Points 1 added
+        // |\
+        // | o - branch1 - Points 1 modified
+        // |
+        // o - Lines 1 added
+        // |
+        // o - Points 1 modifiedB
+        // |
+        // o - master - HEAD - Lines 2, Lines 3 added in separate commits
+        insertAndAdd(points1);
+        geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setName("branch1").call();
+        insertAndAdd(lines1);
+        RevCommit masterCommit1 = geogit.command(CommitOp.class).setMessage("lines1").call();
+        Feature points1ModifiedB = feature(pointsType, idP1, "StringProp1_3", new Integer(2000),
+                "POINT(1 1)");
+        insertAndAdd(points1ModifiedB);
+        geogit.command(CommitOp.class).setMessage("points1 modified").call();
+        insertAndAdd(lines2);
+        geogit.command(CommitOp.class).setMessage("lines2").call();
+        insertAndAdd(lines3);
+        RevCommit masterCommit4 = geogit.command(CommitOp.class).setMessage("lines3").call();
+
+        geogit.command(CheckoutOp.class).setSource("branch1").call();
+        Feature points1Modified = feature(pointsType, idP1, "StringProp1_2", new Integer(1000),
+                "POINT(1 1)");
+        insertAndAdd(points1Modified);
+        RevCommit branchCommit = geogit.command(CommitOp.class).setMessage("branch commit").call();
+        geogit.command(CheckoutOp.class).setSource("master").call();
+
+        try {
+            geogit.command(RebaseOp.class)
+                    .setUpstream(Suppliers.ofInstance(branchCommit.getId())).call();
+            fail();
+        } catch (RebaseConflictsException e) {
+            assertTrue(e.getMessage().contains("conflict"));
+        }
+
+        // the commit before the conflicting one has been applied
+        RevCommit head = geogit.command(LogOp.class).call().next();
+        assertEquals(masterCommit1.getMessage(), head.getMessage());
+        assertEquals(branchCommit.getId(), head.getParentIds().get(0));
+
+        List<Conflict> conflicts = geogit.command(ConflictsReadOp.class).call();
+        assertEquals(1, conflicts.size());
+        assertEquals(NodeRef.appendChild(pointsName, idP1), conflicts.get(0).getPath());
+
+        insertAndAdd(points1ModifiedB);
+        geogit.command(RebaseOp.class).setContinue(true).call();
+
+        Iterator<RevCommit> log = geogit.command(LogOp.class).call();
+        assertEquals(masterCommit4.getMessage(), log.next().getMessage());
+        assertEquals("lines2", log.next().getMessage());
+        assertEquals("points1 modified", log.next().getMessage());
+        assertEquals(masterCommit1.getMessage(), log.next().getMessage());
+        assertEquals(branchCommit.getId(), log.next().getId());
+
+        for (Feature f : new Feature[] { lines1, lines2, lines3, points1ModifiedB }) {
+            String path = NodeRef.appendChild(f.getType().getName().getLocalPart(), f
+                    .getIdentifier().getID());
+            Optional<RevFeature> feature = geogit.command(RevObjectParse.class)
+                    .setRefSpec(Ref.HEAD + ":" + path).call(RevFeature.class);
+            assertTrue(feature.isPresent());
+            assertEquals(new RevFeatureBuilder().build(f).getId(), feature.get().getId());
+        }
+        assertFalse(geogit.command(RefParse.class).setName(Ref.ORIG_HEAD).call().isPresent());
+    }
+
     @Test
     public void testRebaseSquashWithConflict() throws Exception {
         // Create the following revision graph
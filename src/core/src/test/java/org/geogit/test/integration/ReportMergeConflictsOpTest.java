@@ -317,4 +317,38 @@ public class ReportMergeConflictsOpTest extends RepositoryTestCase {
         assertFalse(hasConflicts.booleanValue());
     }
 
+    @Test
+    public void testManyChangesInBothBranches() throws Exception {
+        insertAndAdd(points1);
+        geogit.command(CommitOp.class).call();
+        geogit.command(BranchCreateOp.class).setName("TestBranch").call();
+        for (int i = 0; i < 200; i++) {
+            insert(feature(pointsType, "Points.a" + i, "a", Integer.valueOf(i), "POINT(1 1)"));
+        }
+        insert(feature(pointsType, idP1, "StringProp1_2", new Integer(1000), "POINT(1 1)"));
+        geogit.command(AddOp.class).call();
+        RevCommit masterCommit = geogit.command(CommitOp.class).call();
+        geogit.command(CheckoutOp.class).setSource("TestBranch").call();
+        for (int i = 0; i < 200; i++) {
+            insert(feature(pointsType, "Points.b" + i, "b", Integer.valueOf(i), "POINT(2 2)"));
+        }
+        insert(feature(pointsType, "Points.a7", "b", Integer.valueOf(7), "POINT(2 2)"));
+        insert(feature(pointsType, idP1, "StringProp1_1", new Integer(2000), "POINT(1 1)"));
+        geogit.command(AddOp.class).call();
+        RevCommit branchCommit = geogit.command(CommitOp.class).call();
+
+        ReportMergeScenarioOp op = geogit.command(ReportMergeScenarioOp.class)
+                .setMergeIntoCommit(masterCommit).setToMergeCommit(branchCommit);
+        MergeScenarioReport conflicts = op.call();
+        // the report must come from the sorted merge join, not the in memory fallback
+        assertFalse(op.isUnsortedFallback());
+        assertEquals(1, conflicts.getConflicts().size());
+        assertEquals(pointsName + "/Points.a7", conflicts.getConflicts().get(0).getPath());
+        assertEquals(200, conflicts.getUnconflicted().size());
+        assertEquals(1, conflicts.getMerged().size());
+        Feature pointsMerged = feature(pointsType, idP1, "StringProp1_2", new Integer(2000),
+                "POINT(1 1)");
+        assertEquals(pointsMerged, conflicts.getMerged().get(0).getFeature());
+    }
+
 }
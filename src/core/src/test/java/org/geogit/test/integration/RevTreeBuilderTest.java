@@ -15,6 +15,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import org.geogit.api.Bucket;
 import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
@@ -291,6 +292,31 @@ public class RevTreeBuilderTest extends RepositoryTestCase {
         assertEquals(treeId1, treeId2);
     }
 
+    /**
+     * Assert a tree built with {@link RevTreeBuilder#setParallel(boolean) parallel} bucket building
+     * is the same than the one built sequentially, and all its bucket trees are saved
+     */
+    @Test
+    public void testParallelBuild() throws Exception {
+        final int numEntries = 50 * 1000;
+        final ObjectId sequentialId = createAndSaveTree(numEntries, true);
+
+        RevTreeBuilder builder = createTree(numEntries, false).setParallel(true);
+        RevTree tree = builder.build();
+        assertEquals(sequentialId, tree.getId());
+        assertEquals(numEntries, tree.size());
+        assertBucketsSaved(tree);
+    }
+
+    private void assertBucketsSaved(RevTree tree) {
+        if (tree.buckets().isPresent()) {
+            for (Bucket bucket : tree.buckets().get().values()) {
+                assertTrue(odb.exists(bucket.id()));
+                assertBucketsSaved(odb.getTree(bucket.id()));
+            }
+        }
+    }
+
     private ObjectId createAndSaveTree(final int numEntries, final boolean insertInAscendingKeyOrder)
             throws Exception {
 
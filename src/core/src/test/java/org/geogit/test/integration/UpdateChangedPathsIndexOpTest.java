@@ -0,0 +1,105 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.test.integration;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geogit.api.NodeRef;
+import org.geogit.api.RevCommit;
+import org.geogit.api.plumbing.OpenChangedPathsIndex;
+import org.geogit.api.plumbing.UpdateChangedPathsIndexOp;
+import org.geogit.api.porcelain.CommitOp;
+import org.geogit.api.porcelain.LogOp;
+import org.geogit.storage.fs.ChangedPathsIndex;
+import org.junit.Test;
+import org.opengis.feature.Feature;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class UpdateChangedPathsIndexOpTest extends RepositoryTestCase {
+
+    private List<RevCommit> commits;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        commits = Lists.newArrayList();
+        List<Feature> features = Arrays.asList(points1, lines1, points2, lines2);
+        for (Feature f : features) {
+            insertAndAdd(f);
+            commits.add(geogit.command(CommitOp.class).call());
+        }
+    }
+
+    private ChangedPathsIndex openIndex() {
+        return geogit.command(OpenChangedPathsIndex.class).call().get();
+    }
+
+    @Test
+    public void testIndexedOnCommit() throws Exception {
+        ChangedPathsIndex index = openIndex();
+        try {
+            assertEquals(commits.size(), index.size());
+            assertEquals(ImmutableSet.of(pointsName),
+                    index.getChangedPaths(commits.get(0).getId()));
+            assertEquals(ImmutableSet.of(linesName),
+                    index.getChangedPaths(commits.get(1).getId()));
+            assertTrue(index.hasChanged(commits.get(2).getId(), pointsName));
+            assertFalse(index.hasChanged(commits.get(2).getId(), linesName));
+            assertFalse(index.hasChanged(commits.get(2).getId(), ""));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testReopenLoadsNewEntries() throws Exception {
+        ChangedPathsIndex index = openIndex();
+        index.close();
+
+        insertAndAdd(points3);
+        RevCommit commit = geogit.command(CommitOp.class).call();
+
+        index = openIndex();
+        try {
+            assertEquals(commits.size() + 1, index.size());
+            assertEquals(ImmutableSet.of(pointsName), index.getChangedPaths(commit.getId()));
+        } finally {
+            index.close();
+        }
+
+        File historyDir = new File(new File(envHome, ".geogit"), "history");
+        for (File f : historyDir.listFiles()) {
+            assertTrue(f.delete());
+        }
+        index = openIndex();
+        try {
+            assertEquals(0, index.size());
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testBackFill() throws Exception {
+        File historyDir = new File(new File(envHome, ".geogit"), "history");
+        for (File f : historyDir.listFiles()) {
+            assertTrue(f.delete());
+        }
+        int indexed = geogit.command(UpdateChangedPathsIndexOp.class).call().intValue();
+        assertEquals(commits.size(), indexed);
+        indexed = geogit.command(UpdateChangedPathsIndexOp.class).call().intValue();
+        assertEquals(0, indexed);
+
+        String path = NodeRef.appendChild(pointsName, points2.getIdentifier().getID());
+        List<RevCommit> logged = toList(geogit.command(LogOp.class).addPath(path).call());
+        assertEquals(Lists.newArrayList(commits.get(2)), logged);
+
+        logged = toList(geogit.command(LogOp.class).addPath(linesName).call());
+        assertEquals(Lists.newArrayList(commits.get(3), commits.get(1)), logged);
+    }
+}
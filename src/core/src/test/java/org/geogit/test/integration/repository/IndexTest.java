@@ -38,6 +38,7 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.vividsolutions.jts.geom.Envelope;
 
 public class IndexTest extends RepositoryTestCase {
 
@@ -452,4 +453,27 @@ public class IndexTest extends RepositoryTestCase {
         geogit.command(AddOp.class).setUpdateOnly(false).call();
         assertTrue(index.findStaged(pointsName).isPresent());
     }
+
+    @Test
+    public void testStageSeveralTreesAtOnce() throws Exception {
+        insert(points1, points2, lines1);
+        geogit.command(AddOp.class).call();
+
+        RevTree staged = index.getTree();
+        Optional<Node> pointsTree = repo.getTreeChild(staged, pointsName);
+        Optional<Node> linesTree = repo.getTreeChild(staged, linesName);
+        assertTrue(pointsTree.isPresent());
+        assertTrue(linesTree.isPresent());
+        assertEquals(TYPE.TREE, pointsTree.get().getType());
+        assertTrue(pointsTree.get().getMetadataId().isPresent());
+        assertTrue(linesTree.get().getMetadataId().isPresent());
+        Envelope bounds = new Envelope();
+        pointsTree.get().expand(bounds);
+        assertFalse(bounds.isNull());
+
+        assertTrue(index.findStaged(appendChild(pointsName, idP1)).isPresent());
+        assertTrue(index.findStaged(appendChild(pointsName, idP2)).isPresent());
+        assertTrue(index.findStaged(appendChild(linesName, idL1)).isPresent());
+        assertEquals(3, index.countStaged(null).getFeaturesCount());
+    }
 }
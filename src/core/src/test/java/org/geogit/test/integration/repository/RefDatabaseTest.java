@@ -5,6 +5,9 @@
 package org.geogit.test.integration.repository;
 
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
@@ -51,4 +54,56 @@ public class RefDatabaseTest extends RepositoryTestCase {
 
         assertEquals(branch, refDb.getSymRef(Ref.HEAD));
     }
+
+    @Test
+    public void testCompareAndPut() {
+        ObjectId oid1 = ObjectId.forString("1");
+        ObjectId oid2 = ObjectId.forString("2");
+        String branch = "refs/heads/branch";
+
+        assertTrue(refDb.compareAndPut(Ref.MASTER, ObjectId.NULL.toString(), oid1.toString()));
+        assertEquals(oid1.toString(), refDb.getRef(Ref.MASTER));
+
+        assertFalse(refDb.compareAndPut(Ref.MASTER, ObjectId.NULL.toString(), oid2.toString()));
+        assertEquals(oid1.toString(), refDb.getRef(Ref.MASTER));
+
+        assertFalse(refDb.compareAndPut(branch, oid1.toString(), oid2.toString()));
+        assertNull(refDb.getRef(branch));
+        assertTrue(refDb.compareAndPut(branch, null, oid2.toString()));
+        assertEquals(oid2.toString(), refDb.getRef(branch));
+    }
+
+    @Test
+    public void testLockSingleRef() throws Exception {
+        final CountDownLatch branchUpdated = new CountDownLatch(1);
+        final AtomicBoolean masterUpdated = new AtomicBoolean();
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                // other refs can be updated while master is locked
+                if (refDb.compareAndPut("refs/heads/branch", null, ObjectId.forString("1")
+                        .toString())) {
+                    branchUpdated.countDown();
+                }
+                masterUpdated.set(refDb.compareAndPut(Ref.MASTER, ObjectId.NULL.toString(),
+                        ObjectId.forString("2").toString()));
+            }
+        };
+
+        refDb.lock(Ref.MASTER);
+        try {
+            // reentrant
+            refDb.lock(Ref.MASTER);
+            refDb.unlock(Ref.MASTER);
+
+            other.start();
+            assertTrue(branchUpdated.await(10, TimeUnit.SECONDS));
+            assertFalse(masterUpdated.get());
+            assertEquals(ObjectId.NULL.toString(), refDb.getRef(Ref.MASTER));
+        } finally {
+            refDb.unlock(Ref.MASTER);
+        }
+        other.join();
+        assertTrue(masterUpdated.get());
+    }
 }
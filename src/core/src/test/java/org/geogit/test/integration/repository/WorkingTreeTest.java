@@ -475,6 +475,59 @@ public class WorkingTreeTest extends RepositoryTestCase {
         assertFalse(workTree.findUnstaged(appendChild(pointsName, idP3)).isPresent());
     }
 
+    @Test
+    public void testBatch() throws Exception {
+        workTree.insert(pointsName, points1);
+        final ObjectId workHead = workTree.getTree().getId();
+
+        WorkingTree.Batch batch = workTree.batch();
+        batch.delete(pointsName, idP1);
+        batch.insert(pointsName, points2);
+        batch.insert(linesName, lines1);
+
+        // nothing changes until the batch is applied
+        assertEquals(workHead, workTree.getTree().getId());
+        assertTrue(workTree.findUnstaged(appendChild(pointsName, idP1)).isPresent());
+
+        ObjectId newWorkHead = batch.apply();
+        assertEquals(newWorkHead, workTree.getTree().getId());
+
+        assertFalse(workTree.findUnstaged(appendChild(pointsName, idP1)).isPresent());
+        assertTrue(workTree.findUnstaged(appendChild(pointsName, idP2)).isPresent());
+        assertTrue(workTree.findUnstaged(appendChild(linesName, idL1)).isPresent());
+
+        Optional<NodeRef> linesTree = geogit.command(FindTreeChild.class).setIndex(true)
+                .setParent(workTree.getTree()).setChildPath(linesName).call();
+        assertTrue(linesTree.isPresent());
+        assertEquals(RevFeatureType.build(linesType).getId(), linesTree.get().getMetadataId());
+    }
+
+    @Test
+    public void testBatchWorkingTreeChanged() throws Exception {
+        workTree.insert(pointsName, points1);
+
+        WorkingTree.Batch batch = workTree.batch();
+        batch.delete(pointsName, idP1);
+        batch.insert(linesName, lines1);
+
+        // someone else changes the working tree before the batch is applied, creating the tree
+        // the batch creates with another default feature type
+        workTree.insert(pointsName, points3);
+        workTree.insert(linesName, points2);
+
+        ObjectId newWorkHead = batch.apply();
+        assertEquals(newWorkHead, workTree.getTree().getId());
+
+        // the batch is applied on top of those changes instead of discarding them
+        assertFalse(workTree.findUnstaged(appendChild(pointsName, idP1)).isPresent());
+        assertTrue(workTree.findUnstaged(appendChild(pointsName, idP3)).isPresent());
+        assertTrue(workTree.findUnstaged(appendChild(linesName, idP2)).isPresent());
+
+        Optional<NodeRef> line = workTree.findUnstaged(appendChild(linesName, idL1));
+        assertTrue(line.isPresent());
+        assertEquals(RevFeatureType.build(linesType).getId(), line.get().getMetadataId());
+    }
+
     @Test
     public void testDeleteFeatureType() throws Exception {
         List<Feature> featureList = new LinkedList<Feature>();
@@ -87,6 +87,18 @@ public class GeoGitDataStore extends ContentDataStore implements DataStore {
     /** When the configured head is not a branch, we disallow transactions */
     private boolean allowTransactions = true;
 
+    /**
+     * Default number of features fetched from the repository in a single batch by the feature
+     * readers
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /** @see #setFetchSize(int) */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /** @see #setSpatialIndexEnabled(boolean) */
+    private boolean spatialIndexEnabled;
+
     public GeoGitDataStore(GeoGIT geogit) {
         super();
         Preconditions.checkNotNull(geogit);
@@ -142,6 +154,40 @@ public class GeoGitDataStore extends ContentDataStore implements DataStore {
         this.refspec = refspec;
     }
 
+    /**
+     * Sets how many features the feature readers fetch from the repository in a single batch.
+     * Larger values mean less round trips to the object database at the expense of memory.
+     */
+    public void setFetchSize(final int fetchSize) {
+        Preconditions.checkArgument(fetchSize > 0, "fetch size must be positive: %s", fetchSize);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return the number of features the feature readers fetch from the repository in a single
+     *         batch
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets whether bounding box counts and bounds are resolved through the
+     * {@link org.geogit.api.plumbing.BuildSpatialIndexOp spatial index} of the feature type trees.
+     * Indexes are built the first time they're needed and kept in the repository directory.
+     * Defaults to {@code false}.
+     */
+    public void setSpatialIndexEnabled(final boolean spatialIndexEnabled) {
+        this.spatialIndexEnabled = spatialIndexEnabled;
+    }
+
+    /**
+     * @return whether the feature type trees spatial indexes are used
+     */
+    public boolean isSpatialIndexEnabled() {
+        return spatialIndexEnabled;
+    }
+
     /**
      * @deprecated Use getOrFigureOutHead instead.
      */
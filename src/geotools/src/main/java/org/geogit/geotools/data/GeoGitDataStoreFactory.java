@@ -68,6 +68,14 @@ public class GeoGitDataStoreFactory implements DataStoreFactorySpi {
     public static final Param CREATE = new Param("create", Boolean.class,
             "Optional flag to enable creation of a new repository if it does not exist", false);
 
+    public static final Param FETCH_SIZE = new Param("fetch_size", Integer.class,
+            "Optional number of features fetched from the repository in a single batch",
+            false, Integer.valueOf(GeoGitDataStore.DEFAULT_FETCH_SIZE));
+
+    public static final Param SPATIAL_INDEX = new Param("spatial_index", Boolean.class,
+            "Optional flag to use per feature type spatial indexes to answer bounding box queries",
+            false, Boolean.FALSE);
+
     @Override
     public String getDisplayName() {
         return DISPLAY_NAME;
@@ -80,7 +88,8 @@ public class GeoGitDataStoreFactory implements DataStoreFactorySpi {
 
     @Override
     public Param[] getParametersInfo() {
-        return new Param[] { REPOSITORY, BRANCH, HEAD, DEFAULT_NAMESPACE, CREATE };
+        return new Param[] { REPOSITORY, BRANCH, HEAD, DEFAULT_NAMESPACE, CREATE, FETCH_SIZE,
+                SPATIAL_INDEX };
     }
 
     @Override
@@ -131,6 +140,12 @@ public class GeoGitDataStoreFactory implements DataStoreFactorySpi {
         @Nullable
         final Boolean create = (Boolean) CREATE.lookUp(params);
 
+        @Nullable
+        final Integer fetchSize = (Integer) FETCH_SIZE.lookUp(params);
+
+        @Nullable
+        final Boolean spatialIndex = (Boolean) SPATIAL_INDEX.lookUp(params);
+
         if (create != null && create.booleanValue()) {
             if (!repositoryRoot.exists()) {
                 return createNewDataStore(params);
@@ -160,6 +175,12 @@ public class GeoGitDataStoreFactory implements DataStoreFactorySpi {
         if (effectiveHead != null) {
             store.setHead(effectiveHead);
         }
+        if (fetchSize != null) {
+            store.setFetchSize(fetchSize.intValue());
+        }
+        if (spatialIndex != null) {
+            store.setSpatialIndexEnabled(spatialIndex.booleanValue());
+        }
         return store;
     }
 
@@ -191,6 +212,14 @@ public class GeoGitDataStoreFactory implements DataStoreFactorySpi {
         if (defaultNamespace != null) {
             store.setNamespaceURI(defaultNamespace);
         }
+        Integer fetchSize = (Integer) FETCH_SIZE.lookUp(params);
+        if (fetchSize != null) {
+            store.setFetchSize(fetchSize.intValue());
+        }
+        Boolean spatialIndex = (Boolean) SPATIAL_INDEX.lookUp(params);
+        if (spatialIndex != null) {
+            store.setSpatialIndexEnabled(spatialIndex.booleanValue());
+        }
         return store;
     }
 
@@ -18,7 +18,8 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import com.google.common.base.Preconditions;
 
 /**
- *
+ * A {@link FeatureWriter} that collects the written and removed features in a
+ * {@link WorkingTree.Batch batch}, applied to the working tree when the writer is closed.
  */
 class GeoGitFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleFeature> {
 
@@ -26,6 +27,8 @@ class GeoGitFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleFeat
 
     private WorkingTree workingTree;
 
+    private WorkingTree.Batch batch;
+
     private SimpleFeature last;
 
     private String typePath;
@@ -70,19 +73,34 @@ class GeoGitFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleFeat
         Preconditions.checkState(last != null, "next() hasn't been called");
         String path = typePath;
         String featureId = last.getID();
-        workingTree.delete(path, featureId);
+        batch().delete(path, featureId);
     }
 
     @Override
     public void write() throws IOException {
         Preconditions.checkState(last != null, "next() hasn't been called");
         String parentTreePath = typePath;
-        workingTree.insert(parentTreePath, last);
+        batch().insert(parentTreePath, last);
+    }
+
+    private WorkingTree.Batch batch() {
+        if (batch == null) {
+            batch = workingTree.batch();
+        }
+        return batch;
     }
 
     @Override
     public void close() throws IOException {
-        //
+        if (batch != null) {
+            try {
+                batch.apply();
+            } catch (RuntimeException e) {
+                throw new IOException(e);
+            } finally {
+                batch = null;
+            }
+        }
     }
 
     private static final class InfiniteFeatureReader implements
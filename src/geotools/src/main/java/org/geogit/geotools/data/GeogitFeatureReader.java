@@ -14,18 +14,24 @@ import static com.google.common.collect.Iterators.transform;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 
 import org.geogit.api.Bounded;
-import org.geogit.api.Bucket;
 import org.geogit.api.CommandLocator;
 import org.geogit.api.FeatureBuilder;
-import org.geogit.api.Node;
 import org.geogit.api.NodeRef;
+import org.geogit.api.ObjectId;
 import org.geogit.api.Ref;
 import org.geogit.api.RevFeature;
 import org.geogit.api.RevObject;
@@ -34,7 +40,9 @@ import org.geogit.api.plumbing.FindTreeChild;
 import org.geogit.api.plumbing.LsTreeOp;
 import org.geogit.api.plumbing.LsTreeOp.Strategy;
 import org.geogit.api.plumbing.RevObjectParse;
+import org.geogit.repository.SpatialQueryStats;
 import org.geogit.storage.NodePathStorageOrder;
+import org.geogit.storage.ObjectDatabase;
 import org.geotools.data.FeatureReader;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.filter.spatial.ReprojectingFilterVisitor;
@@ -45,7 +53,6 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.FeatureType;
 import org.opengis.filter.Filter;
-import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.Id;
 import org.opengis.filter.identity.FeatureId;
 import org.opengis.filter.identity.Identifier;
@@ -56,9 +63,14 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.vividsolutions.jts.geom.Envelope;
 
 /**
@@ -69,86 +81,40 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
 
     private static final Logger LOGGER = Logging.getLogger(GeogitFeatureReader.class);
 
+    /**
+     * Shared by all readers to fetch the next batch of features while the current one is consumed
+     */
+    private static final ExecutorService READ_AHEAD_EXECUTOR = Executors
+            .newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("geogit-feature-reader-%d").build());
+
     private SimpleFeatureType schema;
 
-    private Stats stats;
+    private SpatialQueryStats stats;
 
     private Iterator<SimpleFeature> features;
 
+    private BatchedFeatureIterator fetcher;
+
     @Nullable
     private Integer offset;
 
     @Nullable
     private Integer maxFeatures;
 
-    private static class Stats implements Predicate<Bounded> {
-        public int featureHits, featureMisses, treeHits, treeMisses, bucketHits, bucketMisses;
-
-        private Envelope bounds;
-
-        public Stats(Envelope bounds) {
-            this.bounds = bounds;
-        }
-
-        @Override
-        public String toString() {
-            StringBuilder sb = new StringBuilder("Hits/misses:\n");
-            sb.append("Trees: ").append(treeHits).append('/').append(treeMisses).append('\n');
-            sb.append("Features: ").append(featureHits).append('/').append(featureMisses)
-                    .append('\n');
-            sb.append("Buckets: ").append(bucketHits).append('/').append(bucketMisses).append('\n');
-            return sb.toString();
-        }
-
-        @Override
-        public boolean apply(Bounded bounded) {
-            boolean intersects = bounds.isNull() ? true : bounded.intersects(bounds);
-            if (bounded instanceof Bucket) {
-                // {
-                // Envelope e = new Envelope();
-                // bounded.expand(e);
-                // stats.geoms.add(JTS.toGeometry(e));
-                // }
-                if (intersects)
-                    bucketHits++;
-                else
-                    bucketMisses++;
-            } else {
-                Node node;
-                if (bounded instanceof NodeRef) {
-                    node = ((NodeRef) bounded).getNode();
-                } else {
-                    node = (Node) bounded;
-                }
-                if (node.getType().equals(RevObject.TYPE.TREE)) {
-                    if (intersects)
-                        treeHits++;
-                    else
-                        treeMisses++;
-                } else {
-                    if (intersects)
-                        featureHits++;
-                    else
-                        featureMisses++;
-                }
-            }
-
-            return true;
-        }
-    }
-
     /**
      * @param commandLocator
      * @param schema
      * @param maxFeatures
      * @param offset
+     * @param fetchSize number of features fetched from the database at once
      * @param typeTree
      * @param filter
      * @param queryBounds
      */
     public GeogitFeatureReader(final CommandLocator commandLocator, final SimpleFeatureType schema,
             final Filter origFilter, final String typeTreePath, @Nullable final String headRef,
-            @Nullable Integer offset, @Nullable Integer maxFeatures) {
+            @Nullable Integer offset, @Nullable Integer maxFeatures, final int fetchSize) {
 
         this.schema = schema;
         this.offset = offset;
@@ -162,7 +128,7 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
         Preconditions.checkArgument(parentTree.isPresent(), "Feature type tree not found: %s",
                 typeTreeRefSpec);
 
-        final Filter filter = reprojectFilter(origFilter);
+        final Filter filter = reprojectFilter(origFilter, schema);
         final Envelope queryBounds = getQueryBounds(filter);
 
         Predicate<Bounded> refBoundsFilter = alwaysTrue();
@@ -177,7 +143,7 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
                 }
             };
 
-            this.stats = new Stats(queryBounds);
+            this.stats = new SpatialQueryStats(queryBounds);
             refBoundsFilter = and(stats, refBoundsFilter);
         }
 
@@ -201,8 +167,9 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
             featureRefs = applyRefsOffsetLimit(featureRefs);
         }
 
-        NodeRefToFeature refToFeature = new NodeRefToFeature(commandLocator, schema);
-        final Iterator<SimpleFeature> featuresUnfiltered = transform(featureRefs, refToFeature);
+        final ObjectDatabase database = commandLocator.getIndex().getDatabase();
+        this.fetcher = new BatchedFeatureIterator(featureRefs, database, schema, fetchSize);
+        final Iterator<SimpleFeature> featuresUnfiltered = fetcher;
 
         FilterPredicate filterPredicate = new FilterPredicate(filter);
         Iterator<SimpleFeature> featuresFiltered = filter(featuresUnfiltered, filterPredicate);
@@ -220,8 +187,11 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
 
     @Override
     public void close() throws IOException {
+        fetcher.close();
         if (stats != null) {
+            SpatialQueryStats.record(stats);
             LOGGER.info("geogit reader stats: " + stats.toString());
+            stats = null;
         }
     }
 
@@ -303,28 +273,111 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
         }
     };
 
-    private static class NodeRefToFeature implements Function<NodeRef, SimpleFeature> {
+    /**
+     * Resolves feature refs to features in batches of {@code fetchSize}, fetching each batch with a
+     * single {@link ObjectDatabase#getAll(Iterable) getAll} call and returning the features in the
+     * same order than their refs. The next batch is fetched in the background while the current one
+     * is being consumed.
+     */
+    private static class BatchedFeatureIterator extends AbstractIterator<SimpleFeature> {
+
+        private final Iterator<List<NodeRef>> refBatches;
+
+        private final ObjectDatabase database;
+
+        private final FeatureBuilder featureBuilder;
 
-        private RevObjectParse parseRevFeatureCommand;
+        private List<NodeRef> currentRefs;
 
-        private FeatureBuilder featureBuilder;
+        private Map<ObjectId, RevFeature> currentFeatures;
 
-        public NodeRefToFeature(CommandLocator commandLocator, SimpleFeatureType schema) {
+        private int currentIndex;
+
+        @Nullable
+        private Future<Map<ObjectId, RevFeature>> nextFeatures;
+
+        private List<NodeRef> nextRefs;
+
+        public BatchedFeatureIterator(Iterator<NodeRef> featureRefs, ObjectDatabase database,
+                SimpleFeatureType schema, int fetchSize) {
+            Preconditions.checkArgument(fetchSize > 0, "fetch size must be positive: %s",
+                    fetchSize);
+            this.refBatches = Iterators.partition(featureRefs, fetchSize);
+            this.database = database;
             this.featureBuilder = new FeatureBuilder(schema);
-            this.parseRevFeatureCommand = commandLocator.command(RevObjectParse.class);
         }
 
         @Override
-        public SimpleFeature apply(final NodeRef featureRef) {
-            Optional<RevFeature> revFeature = parseRevFeatureCommand.setObjectId(
-                    featureRef.objectId()).call(RevFeature.class);
-            Preconditions.checkState(revFeature.isPresent());
+        protected SimpleFeature computeNext() {
+            while (currentRefs == null || currentIndex == currentRefs.size()) {
+                if (currentRefs == null && nextRefs == null) {
+                    // first call
+                    fetchNext();
+                }
+                if (nextRefs == null) {
+                    return endOfData();
+                }
+                currentRefs = nextRefs;
+                currentFeatures = getUnchecked(nextFeatures);
+                currentIndex = 0;
+                fetchNext();
+            }
+            final NodeRef featureRef = currentRefs.get(currentIndex++);
+            final RevFeature revFeature = currentFeatures.get(featureRef.objectId());
+            Preconditions.checkState(revFeature != null, "Feature %s not found",
+                    featureRef.path());
 
             String id = featureRef.name();
-            Feature feature = featureBuilder.build(id, revFeature.get());
+            Feature feature = featureBuilder.build(id, revFeature);
             return (SimpleFeature) feature;
         }
-    };
+
+        /**
+         * Reads the next batch of refs in the calling thread, since the refs iterator is not thread
+         * safe, and submits the fetch of their features to the read-ahead executor
+         */
+        private void fetchNext() {
+            if (!refBatches.hasNext()) {
+                nextRefs = null;
+                nextFeatures = null;
+                return;
+            }
+            nextRefs = refBatches.next();
+            final Set<ObjectId> ids = Sets.newLinkedHashSet();
+            for (NodeRef ref : nextRefs) {
+                ids.add(ref.objectId());
+            }
+            nextFeatures = READ_AHEAD_EXECUTOR.submit(new Callable<Map<ObjectId, RevFeature>>() {
+                @Override
+                public Map<ObjectId, RevFeature> call() {
+                    Map<ObjectId, RevFeature> features = Maps.newHashMap();
+                    Iterator<RevObject> objects = database.getAll(ids);
+                    while (objects.hasNext()) {
+                        RevObject object = objects.next();
+                        if (object instanceof RevFeature) {
+                            features.put(object.getId(), (RevFeature) object);
+                        }
+                    }
+                    return features;
+                }
+            });
+        }
+
+        private static <V> V getUnchecked(Future<V> future) {
+            try {
+                return Uninterruptibles.getUninterruptibly(future);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        public void close() {
+            if (nextFeatures != null) {
+                nextFeatures.cancel(true);
+                nextFeatures = null;
+            }
+        }
+    }
 
     private static final class FilterPredicate implements Predicate<SimpleFeature> {
         private Filter filter;
@@ -350,10 +403,12 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
     }
 
     /**
-     * @param filter
-     * @return
+     * Reprojects the spatial filters in {@code filter} to the native CRS of {@code schema}.
+     * <p>
+     * Also used by {@link GeogitFeatureSource} so that the spatial index is queried with the same
+     * bounds as the reader's.
      */
-    private Filter reprojectFilter(Filter filter) {
+    static Filter reprojectFilter(Filter filter, SimpleFeatureType schema) {
         if (hasSpatialFilter(filter)) {
             CoordinateReferenceSystem crs = schema.getCoordinateReferenceSystem();
             if (crs == null) {
@@ -361,18 +416,15 @@ class GeogitFeatureReader<T extends FeatureType, F extends Feature> implements F
 
             } else {
 
-                FilterFactory2 factory = CommonFactoryFinder.getFilterFactory2();
-
-                filter = (Filter) filter.accept(new ReprojectingFilterVisitor(factory, schema),
-
-                null);
+                filter = (Filter) filter.accept(new ReprojectingFilterVisitor(
+                        CommonFactoryFinder.getFilterFactory2(), schema), null);
 
             }
         }
         return filter;
     }
 
-    private boolean hasSpatialFilter(Filter filter) {
+    private static boolean hasSpatialFilter(Filter filter) {
         SpatialFilterVisitor spatialFilterVisitor = new SpatialFilterVisitor();
         filter.accept(spatialFilterVisitor, null);
         return spatialFilterVisitor.hasSpatialFilter();
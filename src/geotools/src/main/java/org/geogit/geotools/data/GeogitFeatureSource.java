@@ -15,8 +15,10 @@ import org.geogit.api.NodeRef;
 import org.geogit.api.ObjectId;
 import org.geogit.api.RevFeatureType;
 import org.geogit.api.RevTree;
+import org.geogit.api.plumbing.BuildSpatialIndexOp;
 import org.geogit.api.plumbing.RevObjectParse;
 import org.geogit.repository.WorkingTree;
+import org.geogit.storage.fs.SpatialIndex;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureSource;
@@ -36,13 +38,17 @@ import org.opengis.feature.Feature;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
+import org.opengis.filter.spatial.BBOX;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Point;
 
 /**
  *
@@ -183,6 +189,17 @@ class GeogitFeatureSource extends ContentFeatureSource {
         if (Filter.EXCLUDE.equals(filter)) {
             return ReferencedEnvelope.create(crs);
         }
+        final Envelope indexQuery = getSpatialIndexQuery(filter);
+        final boolean unpaged = query.getStartIndex() == null
+                && query.getMaxFeatures() == Integer.MAX_VALUE;
+        if (indexQuery != null && unpaged) {
+            SpatialIndex index = getSpatialIndex();
+            try {
+                return new ReferencedEnvelope(index.bounds(indexQuery), crs);
+            } finally {
+                index.close();
+            }
+        }
 
         FeatureReader<SimpleFeatureType, SimpleFeature> features;
         if (isNaturalOrder(query.getSortBy())) {
@@ -228,6 +245,22 @@ class GeogitFeatureSource extends ContentFeatureSource {
             }
             return size;
         }
+        final Envelope indexQuery = getSpatialIndexQuery(filter);
+        if (indexQuery != null) {
+            SpatialIndex index = getSpatialIndex();
+            try {
+                size = index.count(indexQuery);
+            } finally {
+                index.close();
+            }
+            if (offset != null) {
+                size = Math.max(0, size - offset.intValue());
+            }
+            if (maxFeatures != null) {
+                size = Math.min(size, maxFeatures.intValue());
+            }
+            return size;
+        }
 
         FeatureReader<SimpleFeatureType, SimpleFeature> features;
         if (isNaturalOrder(query.getSortBy())) {
@@ -303,11 +336,48 @@ class GeogitFeatureSource extends ContentFeatureSource {
         final CommandLocator commandLocator = getCommandLocator();
 
         nativeReader = new GeogitFeatureReader<SimpleFeatureType, SimpleFeature>(commandLocator,
-                schema, filter, featureTypeTreePath, rootRef, offset, maxFeatures);
+                schema, filter, featureTypeTreePath, rootRef, offset, maxFeatures, getDataStore()
+                        .getFetchSize());
 
         return nativeReader;
     }
 
+    /**
+     * Returns the query envelope to resolve {@code filter} with the type tree's
+     * {@link SpatialIndex spatial index}, if the index is enabled and it gives exact results for
+     * the filter, that is, the filter is a single bounding box filter and the features are points,
+     * since for any other geometry type an intersecting envelope does not mean an intersecting
+     * geometry. A bounding box in another CRS is reprojected to the native CRS first.
+     * 
+     * @return the bounding box of the filter, or {@code null} if the index can't be used
+     */
+    @Nullable
+    private Envelope getSpatialIndexQuery(final Filter filter) {
+        if (!getDataStore().isSpatialIndexEnabled() || !(filter instanceof BBOX)) {
+            return null;
+        }
+        GeometryDescriptor geometryDescriptor = getSchema().getGeometryDescriptor();
+        if (geometryDescriptor == null
+                || !Point.class.equals(geometryDescriptor.getType().getBinding())) {
+            return null;
+        }
+        // bring the bbox to the native CRS the same way the reader does
+        Filter nativeFilter = GeogitFeatureReader.reprojectFilter(filter, getSchema());
+        if (!(nativeFilter instanceof BBOX)) {
+            return null;
+        }
+        return (Envelope) nativeFilter.accept(new ExtractBounds(), null);
+    }
+
+    /**
+     * @return the spatial index of the current version of the type tree, the caller is
+     *         responsible for closing it
+     */
+    private SpatialIndex getSpatialIndex() {
+        return getCommandLocator().command(BuildSpatialIndexOp.class)
+                .setTreePath(getTypeTreePath()).setTreeId(getTypeTree().getId()).call();
+    }
+
     @Override
     protected SimpleFeatureType buildFeatureType() throws IOException {
 
@@ -17,6 +17,7 @@
 package org.geogit.geotools.data;
 
 import static org.geogit.geotools.data.GeoGitDataStoreFactory.CREATE;
+import static org.geogit.geotools.data.GeoGitDataStoreFactory.FETCH_SIZE;
 import static org.geogit.geotools.data.GeoGitDataStoreFactory.REPOSITORY;
 
 import java.io.File;
@@ -128,6 +129,22 @@ public class GeoGitDataStoreFactoryTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testCreateDataStoreFetchSize() throws IOException {
+        Map<String, Serializable> params;
+
+        params = ImmutableMap.of(REPOSITORY.key, (Serializable) repoDirectory.getAbsolutePath());
+        GeoGitDataStore store = factory.createDataStore(params);
+        assertEquals(GeoGitDataStore.DEFAULT_FETCH_SIZE, store.getFetchSize());
+        store.dispose();
+
+        params = ImmutableMap.of(REPOSITORY.key, (Serializable) repoDirectory.getAbsolutePath(),
+                FETCH_SIZE.key, (Serializable) Integer.valueOf(50));
+        store = factory.createDataStore(params);
+        assertEquals(50, store.getFetchSize());
+        store.dispose();
+    }
+
     @Test
     public void testCreateNewDataStore() throws IOException {
         Map<String, Serializable> params;
@@ -220,6 +220,25 @@ public class GeoGitFeatureSourceTest extends RepositoryTestCase {
         assertEquals(2, linesSource.getCount(new Query(linesName, filter)));
     }
 
+    @Test
+    public void testSpatialIndexQueryInOtherCrs() throws Exception {
+        dataStore.setSpatialIndexEnabled(true);
+        final String geomName = pointsType.getGeometryDescriptor().getLocalName();
+
+        ReferencedEnvelope queryBounds = boundsOf(points1, points2);
+        Filter filter = ff.bbox(ff.property(geomName), queryBounds);
+        assertEquals(2, pointsSource.getCount(new Query(pointsName, filter)));
+        assertEquals(boundsOf(points1, points2),
+                pointsSource.getBounds(new Query(pointsName, filter)));
+
+        CoordinateReferenceSystem queryCrs = CRS.decode("EPSG:3857");
+        ReferencedEnvelope transformedQueryBounds = queryBounds.transform(queryCrs, true);
+        filter = ff.bbox(ff.property(geomName), transformedQueryBounds);
+        assertEquals(2, pointsSource.getCount(new Query(pointsName, filter)));
+        assertEquals(boundsOf(points1, points2),
+                pointsSource.getBounds(new Query(pointsName, filter)));
+    }
+
     @Test
     public void testGetFeatures() throws Exception {
         SimpleFeatureCollection collection;
@@ -255,6 +274,25 @@ public class GeoGitFeatureSourceTest extends RepositoryTestCase {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testGetFeaturesSmallFetchSize() throws Exception {
+        // force features to be fetched in several batches
+        dataStore.setFetchSize(2);
+
+        List<String> expectedIds = Lists.newArrayList();
+        for (NodeRef ref : Lists.newArrayList(geogit.command(LsTreeOp.class)
+                .setReference(pointsName).setStrategy(Strategy.FEATURES_ONLY).call())) {
+            expectedIds.add(ref.name());
+        }
+
+        List<String> actualIds = Lists.newArrayList();
+        for (SimpleFeature f : toList(pointsSource.getFeatures())) {
+            actualIds.add(f.getID());
+        }
+        // features are returned in the same (natural) order than their refs
+        assertEquals(expectedIds, actualIds);
+    }
+
     @Test
     public void testGetFeaturesFilter() throws Exception {
         SimpleFeatureCollection collection;
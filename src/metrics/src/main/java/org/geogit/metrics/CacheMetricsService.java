@@ -0,0 +1,75 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.Platform;
+import org.geogit.api.porcelain.ConfigException;
+import org.geogit.di.caching.CacheStatistics;
+import org.geogit.storage.ConfigDatabase;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Provider;
+
+/**
+ * Periodically logs the usage statistics of the object caches to the
+ * {@link MetricsModule#CACHE_LOGGER}.
+ */
+class CacheMetricsService extends AbstractScheduledService {
+
+    private Provider<Platform> platform;
+
+    private Provider<ConfigDatabase> configDb;
+
+    private Provider<Set<CacheStatistics>> caches;
+
+    // track stats reported in last run to avoid flooding the log file when there were no changes
+    private Map<String, CacheStats> lastStats = Maps.newHashMap();
+
+    public CacheMetricsService(final Provider<Platform> platform,
+            final Provider<ConfigDatabase> configDb, final Provider<Set<CacheStatistics>> caches) {
+        this.platform = platform;
+        this.configDb = configDb;
+        this.caches = caches;
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            Boolean enabled = configDb.get().get(MetricsModule.METRICS_ENABLED, Boolean.class)
+                    .or(Boolean.FALSE);
+            if (!enabled.booleanValue()) {
+                return;
+            }
+        } catch (ConfigException e) {
+            return;// not in a geogit repository
+        }
+
+        final long timestamp = platform.get().currentTimeMillis();
+        for (CacheStatistics cache : caches.get()) {
+            CacheStats stats = cache.stats();
+            if (stats.equals(lastStats.get(cache.getName()))) {
+                continue;
+            }
+            MetricsModule.CACHE_LOGGER.info("{},{},{},{},{},{},{}", timestamp, cache.getName(),
+                    stats.hitCount(), stats.missCount(), stats.evictionCount(), cache.size(),
+                    cache.sizeBytes());
+            lastStats.put(cache.getName(), stats);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        final long initialDelay = 5;
+        final long period = 10;
+        final TimeUnit unit = TimeUnit.SECONDS;
+        return Scheduler.newFixedRateSchedule(initialDelay, period, unit);
+    }
+}
@@ -8,6 +8,7 @@ import static com.google.inject.matcher.Matchers.subclassesOf;
 
 import java.lang.management.ManagementFactory;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -15,7 +16,9 @@ import org.geogit.api.AbstractGeoGitOp;
 import org.geogit.api.Platform;
 import org.geogit.di.GeogitModule;
 import org.geogit.di.MethodMatcher;
+import org.geogit.di.caching.CacheStatistics;
 import org.geogit.repository.Repository;
+import org.geogit.repository.SpatialQueryStats;
 import org.geogit.storage.ConfigDatabase;
 import org.geogit.storage.ObjectDatabase;
 import org.geogit.storage.StagingDatabase;
@@ -23,9 +26,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Key;
 import com.google.inject.Provider;
+import com.google.inject.TypeLiteral;
 import com.google.inject.matcher.Matcher;
 import com.google.inject.matcher.Matchers;
+import com.google.inject.multibindings.Multibinder;
 
 /**
  * Guice module to be used jointly with {@link GeogitModule}, that logs command ellapsed time to a
@@ -56,6 +62,16 @@ import com.google.inject.matcher.Matchers;
  * seconds, in the format
  * {@code <timestamp>,<heap memory usage in MB>,<non heap mem usage in MB>,<estimated number of objects pending finalization> }
  * 
+ * <li>{@code org.geogit.metrics.cache}: used to log the usage statistics of the object caches
+ * contributed as {@link CacheStatistics} (e.g. by the {@code CachingModule}) every ten seconds,
+ * whenever they changed, in the format
+ * {@code <timestamp>,<cache name>,<hits>,<misses>,<evictions>,<entries>,<size in bytes or -1 if not bounded by size>}
+ * 
+ * <li>{@code org.geogit.metrics.spatial}: used to log the aggregated {@link SpatialQueryStats}
+ * of the spatial queries run so far (e.g. bbox queries through the GeoTools data store) every ten
+ * seconds, whenever new queries were run, in the format
+ * {@code <timestamp>,<queries>,<bucket hits>,<bucket misses>,<tree hits>,<tree misses>,<feature hits>,<feature misses>}
+ * 
  * </ul>
  * 
  */
@@ -68,6 +84,11 @@ public class MetricsModule extends AbstractModule {
 
     public static final Logger MEMORY_LOGGER = LoggerFactory.getLogger("org.geogit.metrics.memory");
 
+    public static final Logger CACHE_LOGGER = LoggerFactory.getLogger("org.geogit.metrics.cache");
+
+    public static final Logger SPATIAL_LOGGER = LoggerFactory
+            .getLogger("org.geogit.metrics.spatial");
+
     public static final String METRICS_ENABLED = "metrics.enabled";
 
     public static final long startTimeSecs = ManagementFactory.getRuntimeMXBean().getStartTime() / 1000;
@@ -104,12 +125,23 @@ public class MetricsModule extends AbstractModule {
         final HeapMemoryMetricsService jvmMetricsService = new HeapMemoryMetricsService(
                 getProvider(Platform.class), getProvider(ConfigDatabase.class));
 
+        // declare the set of cache statistics so it's injectable even if no cache is configured
+        Multibinder.newSetBinder(binder(), CacheStatistics.class);
+        final CacheMetricsService cacheMetricsService = new CacheMetricsService(
+                getProvider(Platform.class), getProvider(ConfigDatabase.class),
+                getProvider(Key.get(new TypeLiteral<Set<CacheStatistics>>() {
+                })));
+        final SpatialQueryMetricsService spatialMetricsService = new SpatialQueryMetricsService(
+                getProvider(Platform.class), getProvider(ConfigDatabase.class));
+
         bindInterceptor(Matchers.subclassesOf(Repository.class), new MethodMatcher(
                 Repository.class, "open"), new MethodInterceptor() {
 
             @Override
             public Object invoke(MethodInvocation invocation) throws Throwable {
                 jvmMetricsService.start();
+                cacheMetricsService.start();
+                spatialMetricsService.start();
                 return invocation.proceed();
             }
         });
@@ -120,6 +152,8 @@ public class MetricsModule extends AbstractModule {
             @Override
             public Object invoke(MethodInvocation invocation) throws Throwable {
                 jvmMetricsService.stop();
+                cacheMetricsService.stop();
+                spatialMetricsService.stop();
                 return invocation.proceed();
             }
         });
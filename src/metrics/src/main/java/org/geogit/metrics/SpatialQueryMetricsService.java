@@ -0,0 +1,68 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geogit.api.Platform;
+import org.geogit.api.porcelain.ConfigException;
+import org.geogit.repository.SpatialQueryStats;
+import org.geogit.storage.ConfigDatabase;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Provider;
+
+/**
+ * Periodically logs the {@link SpatialQueryStats#global() aggregated} bounds filter statistics of
+ * spatial queries to the {@link MetricsModule#SPATIAL_LOGGER}.
+ */
+class SpatialQueryMetricsService extends AbstractScheduledService {
+
+    private Provider<Platform> platform;
+
+    private Provider<ConfigDatabase> configDb;
+
+    // number of queries reported in the last run to avoid flooding the log file when there were
+    // no new queries
+    private long lastQueries;
+
+    public SpatialQueryMetricsService(final Provider<Platform> platform,
+            final Provider<ConfigDatabase> configDb) {
+        this.platform = platform;
+        this.configDb = configDb;
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            Boolean enabled = configDb.get().get(MetricsModule.METRICS_ENABLED, Boolean.class)
+                    .or(Boolean.FALSE);
+            if (!enabled.booleanValue()) {
+                return;
+            }
+        } catch (ConfigException e) {
+            return;// not in a geogit repository
+        }
+
+        final SpatialQueryStats stats = SpatialQueryStats.global();
+        final long queries = stats.getQueries();
+        if (queries == lastQueries) {
+            return;
+        }
+        final long timestamp = platform.get().currentTimeMillis();
+        MetricsModule.SPATIAL_LOGGER.info("{},{},{},{},{},{},{},{}", timestamp, queries,
+                stats.getBucketHits(), stats.getBucketMisses(), stats.getTreeHits(),
+                stats.getTreeMisses(), stats.getFeatureHits(), stats.getFeatureMisses());
+        lastQueries = queries;
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        final long initialDelay = 5;
+        final long period = 10;
+        final TimeUnit unit = TimeUnit.SECONDS;
+        return Scheduler.newFixedRateSchedule(initialDelay, period, unit);
+    }
+}
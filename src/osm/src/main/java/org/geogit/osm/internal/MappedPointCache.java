@@ -0,0 +1,462 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.osm.internal;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.geogit.api.Platform;
+import org.geogit.api.plumbing.ResolveGeogitDir;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * A {@link PointCache} that keeps node coordinates in memory mapped files, as primitive values
+ * indexed by node id.
+ * <p>
+ * Node ids are split in blocks of {@link #BLOCK_SIZE} consecutive ids. A block starts as a sparse
+ * chunk in the mapped files, with the offsets of its nodes in the block kept sorted next to their
+ * coordinates, and grows through a few chunk sizes as nodes are added to it. Once it outgrows the
+ * largest chunk, it's moved to a dense slot holding every id in the block. This way a sorted input
+ * like a PBF file fills dense slots, while the ids of an extract, scattered over many blocks,
+ * only take a few ints each. A node is found by looking its block up in a two level table, plus
+ * an absolute read of two ints for dense blocks, or a binary search of the chunk for sparse ones,
+ * without creating any object.
+ * <p>
+ * Coordinates are stored as fixed point ints with the 7 decimal digits of precision OSM uses, so
+ * they are read back exactly as they were parsed. The latitude is stored with an offset so that it
+ * is never zero, zero meaning an empty slot.
+ * <p>
+ * Nodes with negative ids, which are only found in changes that have not been uploaded to OSM,
+ * are kept on the heap.
+ * <p>
+ * This class is not thread safe, although nodes can be read from several threads at once as long
+ * as no node is being put at the same time.
+ */
+class MappedPointCache implements PointCache {
+
+    private static final Random random = new Random();
+
+    private static final double PRECISION = 1E7;
+
+    private static final int LAT_OFFSET = 1000000000;
+
+    private static final int BLOCK_BITS = 12;
+
+    /**
+     * Number of consecutive node ids in each block
+     */
+    static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private static final int SEGMENT_BITS = 10;
+
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+    /**
+     * Size of each mapped file of dense blocks, holding {@code 2^SEGMENT_BITS} blocks of two ints
+     * per node
+     */
+    private static final int SEGMENT_BYTES = (1 << SEGMENT_BITS) * BLOCK_SIZE * 8;
+
+    /**
+     * Capacities, in nodes, of the chunks sparse blocks are kept in. A chunk holds its node count
+     * followed by three ints per node: its offset in the block and its coordinates.
+     */
+    private static final int[] CHUNK_CAPACITIES = { 8, 32, 128, 512 };
+
+    private static final int SPARSE_SEGMENT_BITS = 20;
+
+    /**
+     * Size in ints of each mapped file of sparse chunks
+     */
+    private static final int SPARSE_SEGMENT_INTS = 1 << SPARSE_SEGMENT_BITS;
+
+    private static final int SPARSE_SEGMENT_MASK = SPARSE_SEGMENT_INTS - 1;
+
+    /**
+     * Chunk addresses are ints, with the sparse segment in the upper bits
+     */
+    private static final int MAX_SPARSE_SEGMENTS = 1 << (31 - SPARSE_SEGMENT_BITS);
+
+    private File directory;
+
+    private final List<IntBuffer> segments = Lists.newArrayList();
+
+    private final List<IntBuffer> sparseSegments = Lists.newArrayList();
+
+    private static final int PAGE_BITS = 12;
+
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    /**
+     * Where each block is stored, by block number: its dense slot plus one if positive, minus its
+     * chunk address minus one if negative, zero meaning the block is empty.
+     * <p>
+     * The table is split in pages of {@code 2^PAGE_BITS} consecutive blocks, only allocated when
+     * one of their blocks is stored, so that huge node ids don't take a table as large as their
+     * block number.
+     */
+    private int[][] blockPages = new int[16][];
+
+    private int blockCount;
+
+    /**
+     * Position of the first unused int in the last sparse segment
+     */
+    private int sparseEnd = SPARSE_SEGMENT_INTS;
+
+    /**
+     * Addresses of the chunks left behind by blocks that outgrew them, by chunk size
+     */
+    private int[][] freeChunks = new int[CHUNK_CAPACITIES.length][16];
+
+    private int[] freeChunkCounts = new int[CHUNK_CAPACITIES.length];
+
+    private final Map<Long, Coordinate> negativeIds = Maps.newHashMap();
+
+    /**
+     * Creates a cache in a new temporary directory inside the repository's {@code osm} directory
+     */
+    public MappedPointCache(Platform platform) {
+        this(new File(new File(geogitDir(platform), "osm"), "tmpPointCache_"
+                + Math.abs(random.nextInt())));
+    }
+
+    /**
+     * Creates a cache that stores its files in the given directory, which is created if needed
+     * and deleted on {@link #dispose()}
+     */
+    public MappedPointCache(File directory) {
+        checkState(directory.exists() || directory.mkdirs(),
+                "Unable to create point cache directory %s", directory);
+        this.directory = directory;
+    }
+
+    private static File geogitDir(Platform platform) {
+        final Optional<URL> repoUrl = new ResolveGeogitDir(platform).call();
+        checkState(repoUrl.isPresent(), "Can't find geogit repository home");
+        try {
+            return new File(repoUrl.get().toURI());
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public void put(long nodeId, Coordinate coord) {
+        if (nodeId < 0) {
+            negativeIds.put(Long.valueOf(nodeId), new Coordinate(coord.x, coord.y));
+            return;
+        }
+        final long block = nodeId >>> BLOCK_BITS;
+        if (block >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Node id too large: %d", nodeId));
+        }
+        final int lon = toFixed(coord.x);
+        final int lat = toFixed(coord.y) + LAT_OFFSET;
+        final int blockSlot = blockSlot(blockPages, (int) block);
+        if (blockSlot > 0) {
+            putDense(blockSlot - 1, nodeId, lon, lat);
+        } else if (blockSlot < 0) {
+            putSparse((int) block, -blockSlot - 1, (int) (nodeId & BLOCK_MASK), lon, lat);
+        } else {
+            final int address = allocateChunk(0);
+            final IntBuffer segment = sparseSegments.get(address >>> SPARSE_SEGMENT_BITS);
+            final int base = address & SPARSE_SEGMENT_MASK;
+            segment.put(base, 1);
+            putEntry(segment, base, 0, (int) (nodeId & BLOCK_MASK), lon, lat);
+            setBlockSlot((int) block, -address - 1);
+        }
+    }
+
+    private static int blockSlot(int[][] blockPages, int block) {
+        final int page = block >>> PAGE_BITS;
+        if (page >= blockPages.length || blockPages[page] == null) {
+            return 0;
+        }
+        return blockPages[page][block & PAGE_MASK];
+    }
+
+    private void setBlockSlot(int block, int blockSlot) {
+        final int page = block >>> PAGE_BITS;
+        if (page >= blockPages.length) {
+            blockPages = Arrays.copyOf(blockPages, Math.max(page + 1, 2 * blockPages.length));
+        }
+        if (blockPages[page] == null) {
+            blockPages[page] = new int[1 << PAGE_BITS];
+        }
+        blockPages[page][block & PAGE_MASK] = blockSlot;
+    }
+
+    private void putDense(int slot, long nodeId, int lon, int lat) {
+        final IntBuffer segment = segments.get(slot >>> SEGMENT_BITS);
+        final int index = index(slot, nodeId);
+        segment.put(index, lon);
+        segment.put(index + 1, lat);
+    }
+
+    /**
+     * Puts a node in the chunk of a sparse block, moving the block to a bigger chunk or to a dense
+     * slot if the chunk is full
+     */
+    private void putSparse(int block, int address, int offset, int lon, int lat) {
+        final IntBuffer segment = sparseSegments.get(address >>> SPARSE_SEGMENT_BITS);
+        final int base = address & SPARSE_SEGMENT_MASK;
+        final int count = segment.get(base);
+        final int found = search(segment, base, count, offset);
+        if (found >= 0) {
+            putEntry(segment, base, found, offset, lon, lat);
+            return;
+        }
+        final int insertion = -found - 1;
+        final int chunkSize = chunkSize(count);
+        if (count < CHUNK_CAPACITIES[chunkSize]) {
+            for (int i = count; i > insertion; i--) {
+                copyEntry(segment, base, i - 1, segment, base, i);
+            }
+            putEntry(segment, base, insertion, offset, lon, lat);
+            segment.put(base, count + 1);
+            return;
+        }
+
+        if (chunkSize == CHUNK_CAPACITIES.length - 1) {
+            final int slot = newDenseSlot();
+            final long firstId = (long) block << BLOCK_BITS;
+            for (int i = 0; i < count; i++) {
+                final int entry = base + 1 + i * 3;
+                putDense(slot, firstId + segment.get(entry), segment.get(entry + 1),
+                        segment.get(entry + 2));
+            }
+            putDense(slot, firstId + offset, lon, lat);
+            setBlockSlot(block, slot + 1);
+        } else {
+            final int newAddress = allocateChunk(chunkSize + 1);
+            final IntBuffer newSegment = sparseSegments.get(newAddress >>> SPARSE_SEGMENT_BITS);
+            final int newBase = newAddress & SPARSE_SEGMENT_MASK;
+            for (int i = 0; i < count; i++) {
+                copyEntry(segment, base, i, newSegment, newBase, i < insertion ? i : i + 1);
+            }
+            putEntry(newSegment, newBase, insertion, offset, lon, lat);
+            newSegment.put(newBase, count + 1);
+            setBlockSlot(block, -newAddress - 1);
+        }
+        freeChunk(chunkSize, address);
+    }
+
+    /**
+     * @return the smallest chunk size that holds the given number of nodes
+     */
+    private static int chunkSize(int count) {
+        int chunkSize = 0;
+        while (CHUNK_CAPACITIES[chunkSize] < count) {
+            chunkSize++;
+        }
+        return chunkSize;
+    }
+
+    /**
+     * Finds a node in a chunk by its offset in the block
+     * 
+     * @return the index of the node in the chunk if found, or {@code -(insertion point) - 1}
+     */
+    private static int search(IntBuffer segment, int base, int count, int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midOffset = segment.get(base + 1 + mid * 3);
+            if (midOffset < offset) {
+                low = mid + 1;
+            } else if (midOffset > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void putEntry(IntBuffer segment, int base, int i, int offset, int lon,
+            int lat) {
+        final int entry = base + 1 + i * 3;
+        segment.put(entry, offset);
+        segment.put(entry + 1, lon);
+        segment.put(entry + 2, lat);
+    }
+
+    private static void copyEntry(IntBuffer from, int fromBase, int i, IntBuffer to, int toBase,
+            int j) {
+        final int fromEntry = fromBase + 1 + i * 3;
+        final int toEntry = toBase + 1 + j * 3;
+        to.put(toEntry, from.get(fromEntry));
+        to.put(toEntry + 1, from.get(fromEntry + 1));
+        to.put(toEntry + 2, from.get(fromEntry + 2));
+    }
+
+    private int newDenseSlot() {
+        if (blockCount == segments.size() << SEGMENT_BITS) {
+            segments.add(addSegment("segment" + segments.size(), SEGMENT_BYTES));
+        }
+        return blockCount++;
+    }
+
+    /**
+     * @return the address of a chunk of the given size, reusing a freed one if there is any
+     */
+    private int allocateChunk(int chunkSize) {
+        if (freeChunkCounts[chunkSize] > 0) {
+            return freeChunks[chunkSize][--freeChunkCounts[chunkSize]];
+        }
+        final int ints = 1 + CHUNK_CAPACITIES[chunkSize] * 3;
+        if (sparseEnd + ints > SPARSE_SEGMENT_INTS) {
+            checkState(sparseSegments.size() < MAX_SPARSE_SEGMENTS, "Point cache is full");
+            sparseSegments.add(addSegment("sparse" + sparseSegments.size(),
+                    SPARSE_SEGMENT_INTS * 4));
+            sparseEnd = 0;
+        }
+        final int address = ((sparseSegments.size() - 1) << SPARSE_SEGMENT_BITS) | sparseEnd;
+        sparseEnd += ints;
+        return address;
+    }
+
+    private void freeChunk(int chunkSize, int address) {
+        if (freeChunkCounts[chunkSize] == freeChunks[chunkSize].length) {
+            freeChunks[chunkSize] = Arrays.copyOf(freeChunks[chunkSize],
+                    2 * freeChunks[chunkSize].length);
+        }
+        freeChunks[chunkSize][freeChunkCounts[chunkSize]++] = address;
+    }
+
+    private IntBuffer addSegment(String name, int bytes) {
+        checkState(directory != null, "Point cache disposed");
+        final File file = new File(directory, name);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(bytes);
+                MappedByteBuffer buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, bytes);
+                return buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public Coordinate get(long nodeId) {
+        double[] coords = new double[2];
+        get(new long[] { nodeId }, 1, coords);
+        return new Coordinate(coords[0], coords[1]);
+    }
+
+    @Override
+    public void get(long[] nodeIds, int count, double[] coords) {
+        final int[][] blockPages = this.blockPages;
+        for (int i = 0; i < count; i++) {
+            final long nodeId = nodeIds[i];
+            if (nodeId < 0) {
+                Coordinate coord = negativeIds.get(Long.valueOf(nodeId));
+                if (coord == null) {
+                    throw notFound(nodeId);
+                }
+                coords[i * 2] = coord.x;
+                coords[i * 2 + 1] = coord.y;
+                continue;
+            }
+            final long block = nodeId >>> BLOCK_BITS;
+            final int blockSlot = block < Integer.MAX_VALUE ? blockSlot(blockPages, (int) block)
+                    : 0;
+            final int lon;
+            final int lat;
+            if (blockSlot > 0) {
+                final int slot = blockSlot - 1;
+                final IntBuffer segment = segments.get(slot >>> SEGMENT_BITS);
+                final int index = index(slot, nodeId);
+                lon = segment.get(index);
+                lat = segment.get(index + 1);
+            } else if (blockSlot < 0) {
+                final int address = -blockSlot - 1;
+                final IntBuffer segment = sparseSegments.get(address >>> SPARSE_SEGMENT_BITS);
+                final int base = address & SPARSE_SEGMENT_MASK;
+                final int found = search(segment, base, segment.get(base),
+                        (int) (nodeId & BLOCK_MASK));
+                if (found < 0) {
+                    throw notFound(nodeId);
+                }
+                lon = segment.get(base + 2 + found * 3);
+                lat = segment.get(base + 3 + found * 3);
+            } else {
+                throw notFound(nodeId);
+            }
+            if (lat == 0) {
+                throw notFound(nodeId);
+            }
+            coords[i * 2] = lon / PRECISION;
+            coords[i * 2 + 1] = (lat - LAT_OFFSET) / PRECISION;
+        }
+    }
+
+    private static IllegalArgumentException notFound(long nodeId) {
+        return new IllegalArgumentException(String.format("node id %d not found", nodeId));
+    }
+
+    /**
+     * @return the index in its segment of the first of the two ints of a node
+     */
+    private static int index(int slot, long nodeId) {
+        return (((slot & SEGMENT_MASK) << BLOCK_BITS) | (int) (nodeId & BLOCK_MASK)) * 2;
+    }
+
+    private static int toFixed(double ordinate) {
+        return (int) Math.round(ordinate * PRECISION);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (directory == null) {
+            return;
+        }
+        segments.clear();
+        sparseSegments.clear();
+        sparseEnd = SPARSE_SEGMENT_INTS;
+        Arrays.fill(freeChunkCounts, 0);
+        blockPages = new int[0][];
+        negativeIds.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    // still mapped until the buffers are garbage collected on some platforms
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!directory.delete()) {
+            directory.deleteOnExit();
+        }
+        directory = null;
+    }
+}
@@ -13,10 +13,12 @@ import java.util.Set;
 
 import org.geogit.storage.FieldType;
 import org.geogit.storage.text.TextValueSerializer;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.opengis.feature.Feature;
+import org.opengis.feature.FeatureFactory;
 import org.opengis.feature.GeometryAttribute;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -125,9 +127,11 @@ public class MappingRule {
     @Expose
     private List<DefaultField> defaultFields;
 
-    private SimpleFeatureType featureType;
-
-    private SimpleFeatureBuilder featureBuilder;
+    /**
+     * Built lazily, and published through this volatile field along with {@link #geometryType}, so
+     * that a rule can be applied by several threads at once
+     */
+    private volatile SimpleFeatureType featureType;
 
     private Class<?> geometryType;
 
@@ -135,6 +139,10 @@ public class MappingRule {
 
     private static GeometryFactory gf = new GeometryFactory();
 
+    /** Cached instance to avoid multiple factory lookups */
+    private static final FeatureFactory FEATURE_FACTORY = CommonFactoryFinder
+            .getFeatureFactory(null);
+
     public MappingRule(String name, Map<String, List<String>> filter,
             Map<String, List<String>> filterExclude, Map<String, AttributeDefinition> fields,
             List<DefaultField> defaultFields) {
@@ -161,40 +169,46 @@ public class MappingRule {
      * @return
      */
     public SimpleFeatureType getFeatureType() {
-        if (featureType == null) {
-            SimpleFeatureTypeBuilder fb = new SimpleFeatureTypeBuilder();
-            fb.setName(name);
-            fb.add("id", Long.class);
-            if (defaultFields != null) {
-                for (DefaultField df : defaultFields) {
-                    fb.add(df.name().toLowerCase(), df.getFieldClass());
+        SimpleFeatureType type = featureType;
+        if (type == null) {
+            synchronized (this) {
+                if (featureType == null) {
+                    featureType = buildFeatureType();
                 }
+                type = featureType;
             }
-            Set<String> keys = this.fields.keySet();
-            for (String key : keys) {
-                AttributeDefinition field = fields.get(key);
-                Class<?> clazz = field.getType().getBinding();
-                if (Geometry.class.isAssignableFrom(clazz)) {
-                    Preconditions.checkArgument(geometryType == null,
-                            "The mapping has more than one geometry attribute");
-                    fb.add(field.getName(), clazz, DefaultGeographicCRS.WGS84);
-                    geometryType = clazz;
-                } else {
-                    fb.add(field.getName(), clazz);
-                }
+        }
+        return type;
+    }
+
+    private SimpleFeatureType buildFeatureType() {
+        SimpleFeatureTypeBuilder fb = new SimpleFeatureTypeBuilder();
+        fb.setName(name);
+        fb.add("id", Long.class);
+        if (defaultFields != null) {
+            for (DefaultField df : defaultFields) {
+                fb.add(df.name().toLowerCase(), df.getFieldClass());
             }
-            Preconditions.checkNotNull(geometryType,
-                    "The mapping rule does not define a geometry field");
-            if (!geometryType.equals(Point.class)) {
-                fb.add("nodes", String.class);
+        }
+        Set<String> keys = this.fields.keySet();
+        for (String key : keys) {
+            AttributeDefinition field = fields.get(key);
+            Class<?> clazz = field.getType().getBinding();
+            if (Geometry.class.isAssignableFrom(clazz)) {
+                Preconditions.checkArgument(geometryType == null,
+                        "The mapping has more than one geometry attribute");
+                fb.add(field.getName(), clazz, DefaultGeographicCRS.WGS84);
+                geometryType = clazz;
+            } else {
+                fb.add(field.getName(), clazz);
             }
-            featureType = fb.buildFeatureType();
-
-            featureBuilder = new SimpleFeatureBuilder(featureType);
-
         }
-        return featureType;
-
+        Preconditions.checkNotNull(geometryType,
+                "The mapping rule does not define a geometry field");
+        if (!geometryType.equals(Point.class)) {
+            fb.add("nodes", String.class);
+        }
+        return fb.buildFeatureType();
     }
 
     private GeomRestriction getGeomRestriction() {
@@ -234,7 +248,10 @@ public class MappingRule {
         if (!canBeApplied(feature, tags)) {
             return Optional.absent();
         }
-        for (AttributeDescriptor attribute : getFeatureType().getAttributeDescriptors()) {
+        final SimpleFeatureType featureType = getFeatureType();
+        final SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType,
+                FEATURE_FACTORY);
+        for (AttributeDescriptor attribute : featureType.getAttributeDescriptors()) {
             String attrName = attribute.getName().toString();
             Class<?> clazz = attribute.getType().getBinding();
             if (Geometry.class.isAssignableFrom(clazz)) {
@@ -39,7 +39,6 @@ import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
@@ -47,6 +46,7 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
 import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
 /**
@@ -154,13 +154,6 @@ public class OSMApplyDiffOp extends AbstractGeoGitOp<Optional<OSMReport>> {
      */
     static class ConvertAndImportSink implements ChangeSink {
 
-        private static final Function<WayNode, Long> NODELIST_TO_ID_LIST = new Function<WayNode, Long>() {
-            @Override
-            public Long apply(WayNode input) {
-                return Long.valueOf(input.getNodeId());
-            }
-        };
-
         private int count = 0;
 
         private int nodeCount;
@@ -177,6 +170,11 @@ public class OSMApplyDiffOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         private PointCache pointCache;
 
+        /**
+         * Reused buffer for the node ids of the way being parsed
+         */
+        private long[] wayNodeIds = new long[256];
+
         private QueueIterator<Feature> target;
 
         private ProgressListener progressListener;
@@ -193,7 +191,7 @@ public class OSMApplyDiffOp extends AbstractGeoGitOp<Optional<OSMReport>> {
             this.progressListener = progressListener;
             this.latestChangeset = 0;
             this.latestTimestamp = 0;
-            this.pointCache = new BDBJEPointCache(platform);
+            this.pointCache = new MappedPointCache(platform);
             Optional<NodeRef> waysNodeRef = cmdLocator.command(FindTreeChild.class)
                     .setChildPath(OSMUtils.WAY_TYPE_NAME).setParent(workTree.getTree()).call();
             Optional<NodeRef> nodesNodeRef = cmdLocator.command(FindTreeChild.class)
@@ -322,7 +320,7 @@ public class OSMApplyDiffOp extends AbstractGeoGitOp<Optional<OSMReport>> {
         protected Geometry parsePoint(Node node) {
             Coordinate coord = new Coordinate(node.getLongitude(), node.getLatitude());
             Point pt = GEOMF.createPoint(coord);
-            pointCache.put(Long.valueOf(node.getId()), coord);
+            pointCache.put(node.getId(), coord);
             return pt;
         }
 
@@ -339,10 +337,16 @@ public class OSMApplyDiffOp extends AbstractGeoGitOp<Optional<OSMReport>> {
                 return null;
             }
 
-            final List<Long> ids = Lists.transform(nodes, NODELIST_TO_ID_LIST);
-
-            Coordinate[] coordinates = pointCache.get(ids);
-            return GEOMF.createLineString(coordinates);
+            final int size = nodes.size();
+            if (wayNodeIds.length < size) {
+                wayNodeIds = new long[Math.max(size, 2 * wayNodeIds.length)];
+            }
+            for (int i = 0; i < size; i++) {
+                wayNodeIds[i] = nodes.get(i).getNodeId();
+            }
+            double[] coordinates = new double[2 * size];
+            pointCache.get(wayNodeIds, size, coordinates);
+            return GEOMF.createLineString(new PackedCoordinateSequence.Double(coordinates, 2));
         }
     }
 
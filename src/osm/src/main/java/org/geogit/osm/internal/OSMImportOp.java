@@ -12,8 +12,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
@@ -48,12 +55,13 @@ import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
 import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
 import crosby.binary.osmosis.OsmosisReader;
@@ -310,9 +318,17 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
         QueueIterator<Feature> iterator = new QueueIterator<Feature>(queueCapacity, timeout,
                 timeoutUnit);
 
+        // entities are converted to features in batches on a pool of threads, while the reader
+        // thread keeps parsing and the tree is built on this thread
+        final int nConvertThreads = Math.max(1, platform.availableProcessors());
+        final ExecutorService convertService = Executors.newFixedThreadPool(nConvertThreads,
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("osm-import-convert-thread-%d").build());
+
         ProgressListener progressListener = getProgressListener();
         ConvertAndImportSink sink = new ConvertAndImportSink(converter, iterator, platform,
-                mapping, noRaw, new SubProgressListener(progressListener, 100));
+                mapping, noRaw, new SubProgressListener(progressListener, 100), convertService,
+                2 * nConvertThreads);
         reader.setSink(sink);
 
         Thread readerThread = new Thread(reader, "osm-import-reader-thread");
@@ -337,7 +353,12 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
                 // no-op
             }
         };
-        workTree.insert(parentTreePathResolver, iterator, noPorgressReportingListener, null, null);
+        try {
+            workTree.insert(parentTreePathResolver, iterator, noPorgressReportingListener, null,
+                    null);
+        } finally {
+            convertService.shutdownNow();
+        }
 
         if (sink.getCount() == 0) {
             throw new EmptyOSMDownloadException();
@@ -360,17 +381,17 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
     /**
      * A sink that processes OSM entities by converting them to GeoGit features and inserting them
-     * into the repository working tree
-     * 
+     * into the repository working tree.
+     * <p>
+     * Node coordinates are stored in the point cache as the entities arrive on the reader thread,
+     * while the conversion of the entities to features, building of way geometries and
+     * application of the mapping rules are done in batches of {@link #BATCH_SIZE} entities on the
+     * given executor. The converted batches are handed to the target iterator in the same order
+     * the entities were read, so the result is the same as converting them one by one.
      */
     static class ConvertAndImportSink implements Sink {
 
-        private static final Function<WayNode, Long> NODELIST_TO_ID_LIST = new Function<WayNode, Long>() {
-            @Override
-            public Long apply(WayNode input) {
-                return Long.valueOf(input.getNodeId());
-            }
-        };
+        private static final int BATCH_SIZE = 1000;
 
         private int count = 0;
 
@@ -398,17 +419,44 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         private Stopwatch sw;
 
+        private final ExecutorService executor;
+
+        private final int maxPendingBatches;
+
+        private List<Entity> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+
+        /**
+         * The batches submitted to the executor and not yet handed to the target, in read order
+         */
+        private final Queue<Future<ConvertBatch>> pending = new ArrayDeque<Future<ConvertBatch>>();
+
+        /**
+         * Whether a way has been read since the pending batches were last drained. The point
+         * cache is only read by the conversion threads, so a node read after a way has to wait
+         * for them before it is stored.
+         */
+        private boolean waysPending;
+
+        /**
+         * @param executor the executor to convert the entities on
+         * @param maxPendingBatches the maximum number of batches being converted at any time, after
+         *        which reading blocks until the oldest one is done
+         */
         public ConvertAndImportSink(EntityConverter converter, QueueIterator<Feature> target,
-                Platform platform, Mapping mapping, boolean noRaw, ProgressListener progressListener) {
+                Platform platform, Mapping mapping, boolean noRaw,
+                ProgressListener progressListener, ExecutorService executor,
+                int maxPendingBatches) {
             super();
             this.converter = converter;
             this.target = target;
             this.mapping = mapping;
             this.noRaw = noRaw;
             this.progressListener = progressListener;
+            this.executor = executor;
+            this.maxPendingBatches = maxPendingBatches;
             this.latestChangeset = 0;
             this.latestTimestamp = 0;
-            this.pointCache = new BDBJEPointCache(platform);
+            this.pointCache = new MappedPointCache(platform);
             this.sw = new Stopwatch().start();
         }
 
@@ -430,6 +478,8 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         @Override
         public void complete() {
+            submitBatch();
+            drain(0);
             progressListener.progress(count);
             progressListener.complete();
             target.finish();
@@ -441,6 +491,10 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
 
         @Override
         public void release() {
+            for (Future<ConvertBatch> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
             pointCache.dispose();
         }
 
@@ -452,35 +506,61 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
             }
             latestChangeset = Math.max(latestChangeset, entity.getChangesetId());
             latestTimestamp = Math.max(latestTimestamp, entity.getTimestamp().getTime());
-            Geometry geom = null;
             switch (entity.getType()) {
             case Node:
                 nodeCount++;
-                geom = parsePoint((Node) entity);
+                if (waysPending) {
+                    submitBatch();
+                    drain(0);
+                }
+                Node node = (Node) entity;
+                pointCache.put(node.getId(),
+                        new Coordinate(node.getLongitude(), node.getLatitude()));
                 break;
             case Way:
                 wayCount++;
-                geom = parseLine((Way) entity);
+                waysPending = true;
                 break;
             default:
                 return;
             }
-            if (geom != null) {
-
-                @Nullable
-                Feature feature = converter.toFeature(entity, geom);
-                if (mapping != null && feature != null) {
-                    Optional<MappedFeature> mapped = mapping.map(feature);
-                    if (mapped.isPresent()) {
-                        MappedFeature mappedFeature = mapped.get();
-                        target.put(mappedFeature);
-                    }
+            batch.add(entity);
+            if (batch.size() == BATCH_SIZE) {
+                submitBatch();
+                drain(maxPendingBatches);
+            }
+        }
+
+        private void submitBatch() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            pending.add(executor.submit(new ConvertBatch(batch)));
+            batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        }
+
+        /**
+         * Hands the converted features of the oldest pending batches to the target, waiting for
+         * them to be converted if needed, until no more than {@code maxPending} batches are left
+         */
+        private void drain(final int maxPending) {
+            while (pending.size() > maxPending) {
+                ConvertBatch converted;
+                try {
+                    converted = pending.peek().get();
+                } catch (InterruptedException e) {
+                    throw Throwables.propagate(e);
+                } catch (ExecutionException e) {
+                    throw Throwables.propagate(e.getCause());
                 }
-                if (feature == null || noRaw) {
-                    return;
+                pending.remove();
+                unableToProcessCount += converted.unableToProcessCount;
+                for (Feature feature : converted.features) {
+                    target.put(feature);
                 }
-                target.put(feature);
-
+            }
+            if (pending.isEmpty() && batch.isEmpty()) {
+                waysPending = false;
             }
         }
 
@@ -513,30 +593,83 @@ public class OSMImportOp extends AbstractGeoGitOp<Optional<OSMReport>> {
         private final GeometryFactory GEOMF = new GeometryFactory(
                 new PackedCoordinateSequenceFactory());
 
-        protected Geometry parsePoint(Node node) {
-            Coordinate coord = new Coordinate(node.getLongitude(), node.getLatitude());
-            Point pt = GEOMF.createPoint(coord);
-            pointCache.put(Long.valueOf(node.getId()), coord);
-            return pt;
-        }
-
         /**
-         * @return {@code null} if the way nodes cannot be found, or its list of nodes is too short,
-         *         the parsed {@link LineString} otherwise
+         * Converts a batch of entities to features on a conversion thread
          */
-        @Nullable
-        protected Geometry parseLine(Way way) {
-            final List<WayNode> nodes = way.getWayNodes();
+        private class ConvertBatch implements Callable<ConvertBatch> {
+
+            private final List<Entity> entities;
+
+            private final List<Feature> features;
 
-            if (nodes.size() < 2) {
-                unableToProcessCount++;
-                return null;
+            private int unableToProcessCount;
+
+            /**
+             * Reused buffer for the node ids of the way being parsed
+             */
+            private long[] wayNodeIds = new long[256];
+
+            ConvertBatch(List<Entity> entities) {
+                this.entities = entities;
+                this.features = Lists.newArrayListWithCapacity(entities.size());
             }
 
-            final List<Long> ids = Lists.transform(nodes, NODELIST_TO_ID_LIST);
+            @Override
+            public ConvertBatch call() {
+                for (Entity entity : entities) {
+                    Geometry geom;
+                    if (entity instanceof Node) {
+                        geom = parsePoint((Node) entity);
+                    } else {
+                        geom = parseLine((Way) entity);
+                    }
+                    if (geom == null) {
+                        continue;
+                    }
+                    @Nullable
+                    Feature feature = converter.toFeature(entity, geom);
+                    if (mapping != null && feature != null) {
+                        Optional<MappedFeature> mapped = mapping.map(feature);
+                        if (mapped.isPresent()) {
+                            features.add(mapped.get());
+                        }
+                    }
+                    if (feature == null || noRaw) {
+                        continue;
+                    }
+                    features.add(feature);
+                }
+                return this;
+            }
 
-            Coordinate[] coordinates = pointCache.get(ids);
-            return GEOMF.createLineString(coordinates);
+            private Geometry parsePoint(Node node) {
+                return GEOMF.createPoint(new Coordinate(node.getLongitude(), node.getLatitude()));
+            }
+
+            /**
+             * @return {@code null} if its list of nodes is too short, the parsed
+             *         {@link LineString} otherwise
+             */
+            @Nullable
+            private Geometry parseLine(Way way) {
+                final List<WayNode> nodes = way.getWayNodes();
+
+                if (nodes.size() < 2) {
+                    unableToProcessCount++;
+                    return null;
+                }
+
+                final int size = nodes.size();
+                if (wayNodeIds.length < size) {
+                    wayNodeIds = new long[Math.max(size, 2 * wayNodeIds.length)];
+                }
+                for (int i = 0; i < size; i++) {
+                    wayNodeIds[i] = nodes.get(i).getNodeId();
+                }
+                double[] coordinates = new double[2 * size];
+                pointCache.get(wayNodeIds, size, coordinates);
+                return GEOMF.createLineString(new PackedCoordinateSequence.Double(coordinates, 2));
+            }
         }
     }
 
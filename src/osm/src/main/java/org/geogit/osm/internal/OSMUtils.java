@@ -40,42 +40,62 @@ public class OSMUtils {
 
     public static final String NAMESPACE = "www.openstreetmap.org";
 
-    private static SimpleFeatureType NodeType;
-
-    public synchronized static SimpleFeatureType nodeType() {
-        if (NodeType == null) {
-            String typeSpec = "visible:Boolean,version:Integer,timestamp:java.lang.Long,tags:String,"
-                    + "changeset:java.lang.Long,user:String,location:Point:srid=4326";
-            try {
-                SimpleFeatureType type = DataUtilities.createType(NAMESPACE,
-                        OSMUtils.NODE_TYPE_NAME, typeSpec);
-                boolean longitudeFirst = true;
-                CoordinateReferenceSystem forceLonLat = CRS.decode("EPSG:4326", longitudeFirst);
-                NodeType = DataUtilities.createSubType(type, null, forceLonLat);
-            } catch (Exception e) {
-                throw Throwables.propagate(e);
+    private static volatile SimpleFeatureType NodeType;
+
+    public static SimpleFeatureType nodeType() {
+        SimpleFeatureType type = NodeType;
+        if (type == null) {
+            synchronized (OSMUtils.class) {
+                if (NodeType == null) {
+                    NodeType = createNodeType();
+                }
+                type = NodeType;
             }
         }
-        return NodeType;
+        return type;
     }
 
-    private static SimpleFeatureType WayType;
-
-    public synchronized static SimpleFeatureType wayType() {
-        if (WayType == null) {
-            String typeSpec = "visible:Boolean,version:Integer,timestamp:java.lang.Long,tags:String,"
-                    + "changeset:java.lang.Long,user:String,nodes:String,way:LineString:srid=4326";
-            try {
-                SimpleFeatureType type = DataUtilities.createType(NAMESPACE,
-                        OSMUtils.WAY_TYPE_NAME, typeSpec);
-                boolean longitudeFirst = true;
-                CoordinateReferenceSystem forceLonLat = CRS.decode("EPSG:4326", longitudeFirst);
-                WayType = DataUtilities.createSubType(type, null, forceLonLat);
-            } catch (Exception e) {
-                throw Throwables.propagate(e);
+    private static SimpleFeatureType createNodeType() {
+        String typeSpec = "visible:Boolean,version:Integer,timestamp:java.lang.Long,tags:String,"
+                + "changeset:java.lang.Long,user:String,location:Point:srid=4326";
+        try {
+            SimpleFeatureType type = DataUtilities.createType(NAMESPACE,
+                    OSMUtils.NODE_TYPE_NAME, typeSpec);
+            boolean longitudeFirst = true;
+            CoordinateReferenceSystem forceLonLat = CRS.decode("EPSG:4326", longitudeFirst);
+            return DataUtilities.createSubType(type, null, forceLonLat);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static volatile SimpleFeatureType WayType;
+
+    public static SimpleFeatureType wayType() {
+        SimpleFeatureType type = WayType;
+        if (type == null) {
+            synchronized (OSMUtils.class) {
+                if (WayType == null) {
+                    WayType = createWayType();
+                }
+                type = WayType;
             }
         }
-        return WayType;
+        return type;
+    }
+
+    private static SimpleFeatureType createWayType() {
+        String typeSpec = "visible:Boolean,version:Integer,timestamp:java.lang.Long,tags:String,"
+                + "changeset:java.lang.Long,user:String,nodes:String,way:LineString:srid=4326";
+        try {
+            SimpleFeatureType type = DataUtilities.createType(NAMESPACE,
+                    OSMUtils.WAY_TYPE_NAME, typeSpec);
+            boolean longitudeFirst = true;
+            CoordinateReferenceSystem forceLonLat = CRS.decode("EPSG:4326", longitudeFirst);
+            return DataUtilities.createSubType(type, null, forceLonLat);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
     }
 
     /**
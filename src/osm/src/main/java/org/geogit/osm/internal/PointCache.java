@@ -4,21 +4,26 @@
  */
 package org.geogit.osm.internal;
 
-import java.util.List;
-
-import javax.annotation.Nullable;
-
 import com.vividsolutions.jts.geom.Coordinate;
 
 interface PointCache {
 
-    public abstract void put(Long nodeId, Coordinate coord);
+    public abstract void put(long nodeId, Coordinate coord);
 
-    @Nullable
+    /**
+     * @throws IllegalArgumentException if the node is not in the cache
+     */
     public abstract Coordinate get(long nodeId);
 
     public void dispose();
 
-    public Coordinate[] get(List<Long> ids);
+    /**
+     * Looks up the coordinates of the first {@code count} nodes in {@code nodeIds}, storing the x
+     * and y ordinates of each one in consecutive positions of {@code coords}, which must have room
+     * for {@code 2 * count} values.
+     * 
+     * @throws IllegalArgumentException if any of the nodes is not in the cache
+     */
+    public void get(long[] nodeIds, int count, double[] coords);
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+/* Copyright (c) 2013 OpenPlans. All rights reserved.
+ * This code is licensed under the BSD New License, available at the root
+ * application directory.
+ */
+package org.geogit.osm.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class MappedPointCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File directory;
+
+    private MappedPointCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(tempFolder.getRoot(), "pointcache");
+        cache = new MappedPointCache(directory);
+    }
+
+    @After
+    public void tearDown() {
+        cache.dispose();
+    }
+
+    @Test
+    public void testPutGet() {
+        cache.put(1, new Coordinate(-122.8456209, 42.3033792));
+        cache.put(2, new Coordinate(0, 0));
+        cache.put(3, new Coordinate(-180, -90));
+        cache.put(4, new Coordinate(180, 90));
+
+        assertEquals(new Coordinate(-122.8456209, 42.3033792), cache.get(1));
+        assertEquals(new Coordinate(0, 0), cache.get(2));
+        assertEquals(new Coordinate(-180, -90), cache.get(3));
+        assertEquals(new Coordinate(180, 90), cache.get(4));
+
+        cache.put(1, new Coordinate(1.5, 2.5));
+        assertEquals(new Coordinate(1.5, 2.5), cache.get(1));
+    }
+
+    @Test
+    public void testBatchGet() {
+        final long[] ids = { 2500000000L, 7, 2500000000L + MappedPointCache.BLOCK_SIZE, -5, 8 };
+        for (int i = 0; i < ids.length; i++) {
+            cache.put(ids[i], new Coordinate(i + 0.1234567, -i - 0.7654321));
+        }
+        double[] coords = new double[ids.length * 2];
+        cache.get(ids, ids.length, coords);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i + 0.1234567, coords[i * 2], 0);
+            assertEquals(-i - 0.7654321, coords[i * 2 + 1], 0);
+        }
+
+        double[] firstTwo = new double[4];
+        cache.get(ids, 2, firstTwo);
+        assertArrayEquals(new double[] { 0.1234567, -0.7654321, 1.1234567, -1.7654321 },
+                firstTwo, 0);
+    }
+
+    @Test
+    public void testManySegments() {
+        // one node per block, enough sparse blocks to need more than one mapped file
+        final int numBlocks = 50000;
+        for (int i = 0; i < numBlocks; i++) {
+            long nodeId = (long) i * MappedPointCache.BLOCK_SIZE + i % 7;
+            cache.put(nodeId, new Coordinate(i % 360 - 180, i % 180 - 90));
+        }
+        for (int i = 0; i < numBlocks; i++) {
+            long nodeId = (long) i * MappedPointCache.BLOCK_SIZE + i % 7;
+            assertEquals(new Coordinate(i % 360 - 180, i % 180 - 90), cache.get(nodeId));
+        }
+    }
+
+    @Test
+    public void testDenseBlocks() {
+        // fills two blocks backwards, so that the nodes go through every sparse chunk size,
+        // inserted before the ones already there, until the blocks are moved to dense slots
+        final long first = 3 * MappedPointCache.BLOCK_SIZE;
+        final long last = first + 2 * MappedPointCache.BLOCK_SIZE - 1;
+        for (long id = last; id >= first; id--) {
+            cache.put(id, new Coordinate(id % 360 - 180, -id % 90));
+        }
+        cache.put(first + 1, new Coordinate(1, 1));
+        for (long id = first; id <= last; id++) {
+            Coordinate expected = id == first + 1 ? new Coordinate(1, 1) : new Coordinate(
+                    id % 360 - 180, -id % 90);
+            assertEquals(expected, cache.get(id));
+        }
+    }
+
+    @Test
+    public void testSparseBlock() {
+        final long first = 5 * MappedPointCache.BLOCK_SIZE;
+        for (int i = 0; i < 100; i++) {
+            cache.put(first + (i * 37) % 1000, new Coordinate(i, -i));
+        }
+        cache.put(first + 37, new Coordinate(1.5, -1.5));
+        for (int i = 0; i < 100; i++) {
+            Coordinate expected = i == 1 ? new Coordinate(1.5, -1.5) : new Coordinate(i, -i);
+            assertEquals(expected, cache.get(first + (i * 37) % 1000));
+        }
+        try {
+            cache.get(first + 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("node id " + (first + 1) + " not found", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testNotFound() {
+        cache.put(10, new Coordinate(1, 1));
+        cache.put(-10, new Coordinate(1, 1));
+        for (long id : new long[] { 11, 10 + MappedPointCache.BLOCK_SIZE, 1L << 40, -11 }) {
+            try {
+                cache.get(id);
+                fail("Expected IllegalArgumentException for node " + id);
+            } catch (IllegalArgumentException e) {
+                assertEquals("node id " + id + " not found", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testHugeIds() {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        final long[] ids = { 1L << 40, (1L << 42) + 5, 3 };
+        for (int i = 0; i < ids.length; i++) {
+            cache.put(ids[i], new Coordinate(i, i));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(new Coordinate(i, i), cache.get(ids[i]));
+        }
+
+        // the table of blocks doesn't grow as large as the block numbers of the ids
+        System.gc();
+        final long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+        assertTrue(usedAfter - usedBefore < 64 * 1024 * 1024);
+    }
+
+    @Test
+    public void testDispose() {
+        cache.put(1, new Coordinate(1, 1));
+        cache.dispose();
+        // can be disposed more than once
+        cache.dispose();
+        assertFalse(directory.exists());
+    }
+}
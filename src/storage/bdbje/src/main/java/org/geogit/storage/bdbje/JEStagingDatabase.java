@@ -4,14 +4,18 @@
  */
 package org.geogit.storage.bdbje;
 
+import static com.sleepycat.je.OperationStatus.SUCCESS;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.annotation.Nullable;
 
+import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
 import org.geogit.api.RevTree;
 import org.geogit.api.plumbing.ResolveGeogitDir;
@@ -24,16 +28,22 @@ import org.geogit.storage.ObjectSerializingFactory;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
-import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
-import com.google.common.io.LineProcessor;
 import com.google.inject.Inject;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.Environment;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
 
 /**
  * The Index (or Staging Area) object database.
@@ -56,6 +66,11 @@ import com.sleepycat.je.Environment;
  * <p>
  * A diff operation between the repository root tree and the index staged root tree results in the
  * list of staged objects.
+ * <p>
+ * Conflicts are stored in a separate database of the staging area environment, keyed by namespace
+ * and path, so that single conflicts are looked up directly and those under a path are found with
+ * a range scan. Conflicts stored in the plain text file used by previous versions are imported the
+ * first time the database is opened.
  * 
  */
 public class JEStagingDatabase extends ForwardingStagingDatabase {
@@ -66,6 +81,13 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
 
     private Environment tempDatabasesEnvironment;
 
+    /**
+     * The file where conflicts of the default namespace were stored by previous versions
+     */
+    private static final String LEGACY_CONFLICTS_FILE = "conflicts";
+
+    private Database conflictsDb;
+
     /**
      * @param referenceDatabase the repository reference database, used to get the head re
      * @param repoDb
@@ -100,8 +122,26 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
     }
 
     @Override
-    public void close() {
+    public synchronized void open() {
+        super.open();
+        if (conflictsDb == null) {
+            Environment env = ((JEObjectDatabase) stagingDb).env;
+            DatabaseConfig dbConfig = new DatabaseConfig();
+            dbConfig.setAllowCreate(true);
+            dbConfig.setTransactional(env.getConfig().getTransactional());
+            dbConfig.setKeyPrefixing(true);// keys of the same namespace share a long prefix
+            conflictsDb = env.openDatabase(null, "ConflictsDatabase", dbConfig);
+            importLegacyConflicts();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
         try {
+            if (conflictsDb != null) {
+                conflictsDb.close();
+                conflictsDb = null;
+            }
             if (tempDatabasesEnvironment != null) {
                 tempDatabasesEnvironment.close();
             }
@@ -110,11 +150,156 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
         }
     }
 
-    // TODO:
-    // *****************************************************************************************
-    // The following methods are a temporary implementation of conflict storage that relies on a
-    // conflict file in the index folder
-    // *****************************************************************************************
+    private void importLegacyConflicts() {
+        Optional<URL> repoPath = new ResolveGeogitDir(platform).call();
+        if (!repoPath.isPresent()) {
+            return;
+        }
+        File file;
+        try {
+            file = new File(new File(repoPath.get().toURI()), LEGACY_CONFLICTS_FILE);
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+        if (!file.isFile()) {
+            return;
+        }
+        List<Conflict> conflicts = Lists.newArrayList();
+        try {
+            for (String line : Files.readLines(file, Charsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    conflicts.add(Conflict.valueOf(line));
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        addConflicts(null, conflicts);
+        file.delete();
+    }
+
+    private static byte[] prefix(@Nullable String namespace) {
+        if (namespace == null) {
+            namespace = LEGACY_CONFLICTS_FILE;
+        }
+        byte[] ns = namespace.getBytes(Charsets.UTF_8);
+        // the namespace is followed by a zero byte so that it's not a prefix of another one
+        return Arrays.copyOf(ns, ns.length + 1);
+    }
+
+    private static DatabaseEntry key(byte[] prefix, String path) {
+        byte[] p = path.getBytes(Charsets.UTF_8);
+        byte[] key = Arrays.copyOf(prefix, prefix.length + p.length);
+        System.arraycopy(p, 0, key, prefix.length, p.length);
+        return new DatabaseEntry(key);
+    }
+
+    private static String path(byte[] prefix, byte[] key) {
+        return new String(key, prefix.length, key.length - prefix.length, Charsets.UTF_8);
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static DatabaseEntry value(Conflict conflict) {
+        final int size = ObjectId.NUM_BYTES;
+        byte[] value = new byte[3 * size];
+        System.arraycopy(conflict.getAncestor().getRawValue(), 0, value, 0, size);
+        System.arraycopy(conflict.getOurs().getRawValue(), 0, value, size, size);
+        System.arraycopy(conflict.getTheirs().getRawValue(), 0, value, 2 * size, size);
+        return new DatabaseEntry(value);
+    }
+
+    private static Conflict conflict(String path, byte[] value) {
+        final int size = ObjectId.NUM_BYTES;
+        ObjectId ancestor = new ObjectId(Arrays.copyOfRange(value, 0, size));
+        ObjectId ours = new ObjectId(Arrays.copyOfRange(value, size, 2 * size));
+        ObjectId theirs = new ObjectId(Arrays.copyOfRange(value, 2 * size, 3 * size));
+        return new Conflict(path, ancestor, ours, theirs);
+    }
+
+    private Database conflictsDb() {
+        if (conflictsDb == null) {
+            open();
+        }
+        return conflictsDb;
+    }
+
+    @Nullable
+    private Transaction beginTransaction(Database db) {
+        if (db.getConfig().getTransactional()) {
+            return db.getEnvironment().beginTransaction(null, null);
+        }
+        return null;
+    }
+
+    private static void commit(@Nullable Transaction transaction) {
+        if (transaction != null) {
+            transaction.commit();
+        }
+    }
+
+    private static void abort(@Nullable Transaction transaction) {
+        if (transaction != null) {
+            transaction.abort();
+        }
+    }
+
+    /**
+     * Visits the conflicts of a namespace whose path starts with the given filter, in path order.
+     */
+    private static abstract class ConflictVisitor {
+
+        /**
+         * @param key the key of the conflict, whose path follows the namespace prefix
+         * @param data the value of the conflict, or an empty entry if only keys were requested
+         * @param cursor the cursor positioned at the conflict
+         */
+        abstract void visit(byte[] key, DatabaseEntry data, Cursor cursor);
+    }
+
+    private void scan(@Nullable String namespace, @Nullable String pathFilter,
+            boolean readData, boolean write, ConflictVisitor visitor) {
+        final byte[] prefix = prefix(namespace);
+        final byte[] filter = key(prefix, pathFilter == null ? "" : pathFilter).getData();
+
+        final Database db = conflictsDb();
+        final Transaction transaction = write ? beginTransaction(db) : null;
+        CursorConfig cursorConfig = new CursorConfig();
+        cursorConfig.setReadUncommitted(!write);
+        final LockMode lockMode = write ? LockMode.DEFAULT : LockMode.READ_UNCOMMITTED;
+        Cursor cursor = db.openCursor(transaction, cursorConfig);
+        try {
+            DatabaseEntry key = new DatabaseEntry(filter);
+            DatabaseEntry data = new DatabaseEntry();
+            if (!readData) {
+                data.setPartial(0, 0, true);// do not retrieve data
+            }
+            OperationStatus status = cursor.getSearchKeyRange(key, data, lockMode);
+            while (SUCCESS.equals(status) && startsWith(key.getData(), filter)) {
+                visitor.visit(key.getData(), data, cursor);
+                status = cursor.getNext(key, data, lockMode);
+            }
+            cursor.close();
+            cursor = null;
+            commit(transaction);
+        } catch (RuntimeException e) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            abort(transaction);
+            throw e;
+        }
+    }
 
     /**
      * Gets all conflicts that match the specified path filter.
@@ -124,40 +309,36 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      * @return the list of conflicts
      */
     @Override
-    public List<Conflict> getConflicts(@Nullable String namespace, final String pathFilter) {
-        Optional<File> conflictsFile = findOrCreateConflictsFile(namespace);
-        if (!conflictsFile.isPresent()) {
-            return ImmutableList.of();
-        }
-        File file = conflictsFile.get();
-        List<Conflict> conflicts = Lists.newArrayList();
-        try {
-            synchronized (file.getCanonicalPath().intern()) {
-                conflicts = Files.readLines(file, Charsets.UTF_8,
-                        new LineProcessor<List<Conflict>>() {
-                            List<Conflict> conflicts = Lists.newArrayList();
-
-                            @Override
-                            public List<Conflict> getResult() {
-                                return conflicts;
-                            }
-
-                            @Override
-                            public boolean processLine(String s) throws IOException {
-                                Conflict c = Conflict.valueOf(s);
-                                if (pathFilter == null) {
-                                    conflicts.add(c);
-                                } else if (c.getPath().startsWith(pathFilter)) {
-                                    conflicts.add(c);
-                                }
-                                return true;
-                            }
-                        });
+    public List<Conflict> getConflicts(@Nullable String namespace,
+            @Nullable final String pathFilter) {
+        final byte[] prefix = prefix(namespace);
+        final List<Conflict> conflicts = Lists.newArrayList();
+        scan(namespace, pathFilter, true, false, new ConflictVisitor() {
+            @Override
+            void visit(byte[] key, DatabaseEntry data, Cursor cursor) {
+                conflicts.add(conflict(path(prefix, key), data.getData()));
             }
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
-        }
-        return conflicts;
+        });
+        return ImmutableList.copyOf(conflicts);
+    }
+
+    /**
+     * Counts the conflicts that match the specified path filter, reading only their keys.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param pathFilter the path filter, if this is not defined, all conflicts will be counted
+     * @return the number of conflicts
+     */
+    @Override
+    public long getConflictsCount(@Nullable String namespace, @Nullable String pathFilter) {
+        final long[] count = new long[1];
+        scan(namespace, pathFilter, false, false, new ConflictVisitor() {
+            @Override
+            void visit(byte[] key, DatabaseEntry data, Cursor cursor) {
+                count[0]++;
+            }
+        });
+        return count[0];
     }
 
     /**
@@ -168,12 +349,29 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void addConflict(@Nullable String namespace, Conflict conflict) {
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        Preconditions.checkState(file.isPresent());
+        addConflicts(namespace, ImmutableList.of(conflict));
+    }
+
+    /**
+     * Adds a batch of conflicts to the database, within a single transaction if the database is
+     * transactional.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param conflicts the conflicts to add
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterable<Conflict> conflicts) {
+        final byte[] prefix = prefix(namespace);
+        final Database db = conflictsDb();
+        final Transaction transaction = beginTransaction(db);
         try {
-            Files.append(conflict.toString() + "\n", file.get(), Charsets.UTF_8);
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
+            for (Conflict conflict : conflicts) {
+                db.put(transaction, key(prefix, conflict.getPath()), value(conflict));
+            }
+            commit(transaction);
+        } catch (RuntimeException e) {
+            abort(transaction);
+            throw e;
         }
     }
 
@@ -185,25 +383,29 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void removeConflict(@Nullable String namespace, String path) {
-        List<Conflict> conflicts = getConflicts(namespace, null);
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        Preconditions.checkState(file.isPresent());
+        removeConflicts(namespace, ImmutableList.of(path));
+    }
 
-        StringBuilder sb = new StringBuilder();
+    /**
+     * Removes a batch of conflicts from the database, within a single transaction if the database
+     * is transactional.
+     * 
+     * @param namespace the namespace of the conflicts
+     * @param paths the paths of the features whose conflicts should be removed
+     */
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        final byte[] prefix = prefix(namespace);
+        final Database db = conflictsDb();
+        final Transaction transaction = beginTransaction(db);
         try {
-            for (Conflict conflict : conflicts) {
-                if (!path.equals(conflict.getPath())) {
-                    sb.append(conflict.toString() + "\n");
-                }
+            for (String path : paths) {
+                db.delete(transaction, key(prefix, path));
             }
-            String s = sb.toString();
-            if (!s.isEmpty()) {
-                Files.write(s, file.get(), Charsets.UTF_8);
-            } else {
-                file.get().delete();
-            }
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
+            commit(transaction);
+        } catch (RuntimeException e) {
+            abort(transaction);
+            throw e;
         }
     }
 
@@ -216,66 +418,13 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public Optional<Conflict> getConflict(@Nullable String namespace, final String path) {
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        if (!file.isPresent()) {
-            return Optional.absent();
-        }
-        Conflict conflict = null;
-        try {
-            File conflictsFile = file.get();
-            synchronized (conflictsFile.getCanonicalPath().intern()) {
-                conflict = Files.readLines(conflictsFile, Charsets.UTF_8,
-                        new LineProcessor<Conflict>() {
-                            Conflict conflict = null;
-
-                            @Override
-                            public Conflict getResult() {
-                                return conflict;
-                            }
-
-                            @Override
-                            public boolean processLine(String s) throws IOException {
-                                Conflict c = Conflict.valueOf(s);
-                                if (c.getPath().equals(path)) {
-                                    conflict = c;
-                                    return false;
-                                } else {
-                                    return true;
-                                }
-                            }
-                        });
-            }
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
+        DatabaseEntry data = new DatabaseEntry();
+        OperationStatus status = conflictsDb().get(null, key(prefix(namespace), path), data,
+                LockMode.READ_UNCOMMITTED);
+        if (SUCCESS.equals(status)) {
+            return Optional.of(conflict(path, data.getData()));
         }
-        return Optional.fromNullable(conflict);
-    }
-
-    private Optional<File> findOrCreateConflictsFile(@Nullable String namespace) {
-        if (namespace == null) {
-            namespace = "conflicts";
-        }
-        Optional<File> conflicts = Optional.absent();
-        if (isOpen()) {
-            Optional<URL> repoPath = new ResolveGeogitDir(platform).call();
-            File file = null;
-            try {
-                file = new File(repoPath.get().toURI());
-            } catch (URISyntaxException e1) {
-                Throwables.propagate(e1);
-            }
-            file = new File(file, namespace);
-            if (!file.exists()) {
-                try {
-                    file.getParentFile().mkdirs();
-                    file.createNewFile();
-                } catch (IOException e) {
-                    throw Throwables.propagate(e);
-                }
-            }
-            conflicts = Optional.of(file);
-        }
-        return conflicts;
+        return Optional.absent();
     }
 
     /**
@@ -285,10 +434,12 @@ public class JEStagingDatabase extends ForwardingStagingDatabase {
      */
     @Override
     public void removeConflicts(@Nullable String namespace) {
-        Optional<File> file = findOrCreateConflictsFile(namespace);
-        if (file.isPresent()) {
-            file.get().delete();
-        }
+        scan(namespace, null, false, true, new ConflictVisitor() {
+            @Override
+            void visit(byte[] key, DatabaseEntry data, Cursor cursor) {
+                cursor.delete();
+            }
+        });
     }
 
     @Override
@@ -13,6 +13,7 @@ import org.geogit.test.integration.RepositoryTestCase;
 import org.junit.Test;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 
 public class JEConflictsTest extends RepositoryTestCase {
 
@@ -66,4 +67,35 @@ public class JEConflictsTest extends RepositoryTestCase {
         assertFalse(conflicts.isEmpty());
 
     }
+
+    @Test
+    public void testBatchesAndPathFilter() {
+        StagingDatabase db = geogit.getRepository().getIndex().getDatabase();
+
+        List<Conflict> conflicts = Lists.newArrayList();
+        List<String> paths = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            String path = (i % 2 == 0 ? "Points/" : "Lines/") + i;
+            paths.add(path);
+            conflicts.add(new Conflict(path, ObjectId.forString("ancestor" + i),
+                    ObjectId.forString("ours" + i), ObjectId.forString("theirs" + i)));
+        }
+        db.addConflicts(null, conflicts);
+        assertEquals(100, db.getConflictsCount(null, null));
+        assertEquals(50, db.getConflictsCount(null, "Points/"));
+        assertEquals(50, db.getConflicts(null, "Lines/").size());
+        assertEquals(0, db.getConflictsCount("ns", null));
+        assertEquals(conflicts.get(7), db.getConflict(null, "Lines/7").get());
+
+        db.removeConflicts(null, paths.subList(0, 10));
+        assertEquals(90, db.getConflictsCount(null, null));
+        assertEquals(45, db.getConflictsCount(null, "Points/"));
+        assertFalse(db.getConflict(null, "Points/0").isPresent());
+        for (Conflict conflict : db.getConflicts(null, "Lines/")) {
+            assertTrue(conflict.getPath().startsWith("Lines/"));
+        }
+
+        db.removeConflicts(null);
+        assertEquals(0, db.getConflictsCount(null, null));
+    }
 }
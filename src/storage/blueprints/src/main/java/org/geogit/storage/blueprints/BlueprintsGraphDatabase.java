@@ -13,6 +13,7 @@ import java.io.File;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -25,6 +26,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.geogit.api.ObjectId;
 import org.geogit.api.Platform;
+import org.geogit.api.RevCommit;
 import org.geogit.api.plumbing.ResolveGeogitDir;
 import org.geogit.storage.GraphDatabase;
 
@@ -54,6 +56,11 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
 
     protected String dbPath;
 
+    /**
+     * Number of vertices {@link #putAll(Iterator)} adds or looks up in each transaction
+     */
+    private static final int PUT_BATCH_SIZE = 10000;
+
     protected static Map<String, ServiceContainer<?>> databaseServices = new ConcurrentHashMap<String, ServiceContainer<?>>();
 
     protected final Platform platform;
@@ -162,7 +169,9 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
         }
 
         if (!graphDB.getIndexedKeys(Vertex.class).contains("identifier")) {
-            graphDB.createKeyIndex("identifiers", Vertex.class);
+            // commits are looked up by identifier, without the index each lookup scans the graph
+            graphDB.createKeyIndex("identifier", Vertex.class);
+            this.commit();
         }
         Iterable<Vertex> results = graphDB.getVertices("identifier", "root");
         try {
@@ -322,25 +331,40 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
     public boolean put(ObjectId commitId, ImmutableList<ObjectId> parentIds) {
         boolean updated = false;
         try {
-            // See if it already exists
-            Vertex commitNode = getOrAddNode(commitId);
-
-            if (parentIds.isEmpty()) {
-                if (!commitNode.getEdges(OUT, CommitRelationshipTypes.TOROOT.name()).iterator()
-                        .hasNext()) {
-                    // Attach this node to the root node
-                    commitNode.addEdge(CommitRelationshipTypes.TOROOT.name(), root);
-                    updated = true;
-                }
-            }
+            updated = put(commitId, parentIds, new HashMap<ObjectId, Vertex>());
+            this.commit();
+        } catch (Exception e) {
+            this.rollback();
+            throw Throwables.propagate(e);
+        }
+        return updated;
+    }
 
-            if (!commitNode.getEdges(OUT, CommitRelationshipTypes.PARENT.name()).iterator()
-                    .hasNext()) {
-                // Don't make relationships if they have been created already
-                for (ObjectId parent : parentIds) {
-                    Vertex parentNode = getOrAddNode(parent);
-                    commitNode.addEdge(CommitRelationshipTypes.PARENT.name(), parentNode);
-                    updated = true;
+    /**
+     * Adds many commits to the database, committing a transaction every {@link #PUT_BATCH_SIZE}
+     * commits instead of after each one. If it fails, the commits of the transactions already
+     * committed are kept.
+     * <p>
+     * The vertices of the commits inserted in each transaction and of their parents are kept in
+     * memory until the transaction is committed, so that a commit put after its child, as it is
+     * when walking the history, doesn't have to be looked up in the index.
+     * 
+     * @param commits the commits to insert
+     * @return the ids of the commits that were inserted or updated
+     */
+    @Override
+    public ImmutableList<ObjectId> putAll(Iterator<RevCommit> commits) {
+        ImmutableList.Builder<ObjectId> updated = ImmutableList.builder();
+        Map<ObjectId, Vertex> vertices = new HashMap<ObjectId, Vertex>();
+        try {
+            while (commits.hasNext()) {
+                RevCommit commit = commits.next();
+                if (put(commit.getId(), commit.getParentIds(), vertices)) {
+                    updated.add(commit.getId());
+                }
+                if (vertices.size() >= PUT_BATCH_SIZE) {
+                    this.commit();
+                    vertices.clear();
                 }
             }
             this.commit();
@@ -348,6 +372,38 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
             this.rollback();
             throw Throwables.propagate(e);
         }
+        return updated.build();
+    }
+
+    /**
+     * Adds a commit to the graph without committing the transaction.
+     * 
+     * @param vertices the vertices added or looked up in the current transaction, by commit id
+     */
+    private boolean put(ObjectId commitId, ImmutableList<ObjectId> parentIds,
+            Map<ObjectId, Vertex> vertices) {
+        boolean updated = false;
+        // See if it already exists
+        Vertex commitNode = getOrAddNode(commitId, vertices);
+
+        if (parentIds.isEmpty()) {
+            if (!commitNode.getEdges(OUT, CommitRelationshipTypes.TOROOT.name()).iterator()
+                    .hasNext()) {
+                // Attach this node to the root node
+                commitNode.addEdge(CommitRelationshipTypes.TOROOT.name(), root);
+                updated = true;
+            }
+        }
+
+        if (!commitNode.getEdges(OUT, CommitRelationshipTypes.PARENT.name()).iterator()
+                .hasNext()) {
+            // Don't make relationships if they have been created already
+            for (ObjectId parent : parentIds) {
+                Vertex parentNode = getOrAddNode(parent, vertices);
+                commitNode.addEdge(CommitRelationshipTypes.PARENT.name(), parentNode);
+                updated = true;
+            }
+        }
         return updated;
     }
 
@@ -435,6 +491,19 @@ public abstract class BlueprintsGraphDatabase<DB extends KeyIndexableGraph> impl
         }
     }
 
+    /**
+     * Gets a node from the given vertices, or from the graph, or adds it if it doesn't exist, and
+     * keeps it in the given vertices.
+     */
+    private Vertex getOrAddNode(ObjectId commitId, Map<ObjectId, Vertex> vertices) {
+        Vertex v = vertices.get(commitId);
+        if (v == null) {
+            v = getOrAddNode(commitId);
+            vertices.put(commitId, v);
+        }
+        return v;
+    }
+
     /**
      * Gets the number of ancestors of the commit until it reaches one with no parents, for example
      * the root or an orphaned commit.
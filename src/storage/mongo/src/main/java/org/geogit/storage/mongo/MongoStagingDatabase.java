@@ -6,6 +6,7 @@ package org.geogit.storage.mongo;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
@@ -19,6 +20,8 @@ import org.geogit.storage.StagingDatabase;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
@@ -27,9 +30,14 @@ import com.mongodb.DBObject;
 
 /**
  * A staging database that uses a MongoDB server for persistence.
+ * <p>
+ * Conflicts are stored in the {@code conflicts} collection, indexed by namespace and path, and
+ * batches of them are added and removed with a single request per {@link #BATCH_SIZE} conflicts.
  */
 public class MongoStagingDatabase extends ForwardingStagingDatabase implements StagingDatabase {
 
+    private static final int BATCH_SIZE = 1000;
+
     protected DBCollection conflicts;
 
     private ConfigDatabase config;
@@ -47,6 +55,7 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
         super.open();
         conflicts = ((MongoObjectDatabase) super.stagingDb).getCollection("conflicts");
         conflicts.ensureIndex("path");
+        conflicts.ensureIndex(new BasicDBObject("namespace", 1).append("path", 1));
     }
 
     @Override
@@ -59,9 +68,7 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
     public Optional<Conflict> getConflict(@Nullable String namespace, String path) {
         DBObject query = new BasicDBObject();
         query.put("path", path);
-        if (namespace != null) {
-            query.put("namespace", namespace);
-        }
+        query.put("namespace", namespace(namespace));
         DBObject result = conflicts.findOne(query);
         if (result == null) {
             return Optional.absent();
@@ -75,18 +82,7 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
 
     @Override
     public List<Conflict> getConflicts(@Nullable String namespace, @Nullable String pathFilter) {
-        DBObject query = new BasicDBObject();
-        if (namespace == null) {
-            query.put("namespace", 0);
-        } else {
-            query.put("namespace", namespace);
-        }
-        if (pathFilter != null) {
-            DBObject regex = new BasicDBObject();
-            regex.put("$regex", "^" + pathFilter);
-            query.put("path", regex);
-        }
-        DBCursor cursor = conflicts.find(query);
+        DBCursor cursor = conflicts.find(query(namespace, pathFilter));
         List<Conflict> results = new ArrayList<Conflict>();
         while (cursor.hasNext()) {
             DBObject element = cursor.next();
@@ -100,47 +96,94 @@ public class MongoStagingDatabase extends ForwardingStagingDatabase implements S
     }
 
     @Override
-    public void addConflict(@Nullable String namespace, Conflict conflict) {
+    public long getConflictsCount(@Nullable String namespace, @Nullable String pathFilter) {
+        return conflicts.count(query(namespace, pathFilter));
+    }
+
+    private static Object namespace(@Nullable String namespace) {
+        return namespace == null ? Integer.valueOf(0) : namespace;
+    }
+
+    private static DBObject query(@Nullable String namespace, @Nullable String pathFilter) {
         DBObject query = new BasicDBObject();
-        query.put("path", conflict.getPath());
-        if (namespace == null) {
-            query.put("namespace", 0);
-        } else {
-            query.put("namespace", namespace);
+        query.put("namespace", namespace(namespace));
+        if (pathFilter != null) {
+            // an anchored prefix without metacharacters lets the path index be used
+            DBObject regex = new BasicDBObject();
+            regex.put("$regex", "^" + escapeRegex(pathFilter));
+            query.put("path", regex);
         }
+        return query;
+    }
+
+    private static final Pattern REGEX_METACHARS = Pattern.compile("([\\\\.^$|?*+()\\[\\]{}])");
+
+    private static String escapeRegex(String literal) {
+        return REGEX_METACHARS.matcher(literal).replaceAll("\\\\$1");
+    }
+
+    private static DBObject record(@Nullable String namespace, Conflict conflict) {
         DBObject record = new BasicDBObject();
-        if (namespace == null) {
-            record.put("namespace", 0);
-        } else {
-            record.put("namespace", namespace);
-        }
+        record.put("namespace", namespace(namespace));
         record.put("path", conflict.getPath());
         record.put("ancestor", conflict.getAncestor().toString());
         record.put("ours", conflict.getOurs().toString());
         record.put("theirs", conflict.getTheirs().toString());
-        conflicts.update(query, record, true, false);
+        return record;
     }
 
     @Override
-    public void removeConflict(@Nullable String namespace, String path) {
+    public void addConflict(@Nullable String namespace, Conflict conflict) {
         DBObject query = new BasicDBObject();
-        if (namespace == null) {
-            query.put("namespace", 0);
-        } else {
-            query.put("namespace", namespace);
+        query.put("path", conflict.getPath());
+        query.put("namespace", namespace(namespace));
+        conflicts.update(query, record(namespace, conflict), true, false);
+    }
+
+    /**
+     * Replaces the conflicts of each batch by removing the existing ones for the same paths in a
+     * single request and inserting the new ones in another.
+     */
+    @Override
+    public void addConflicts(@Nullable String namespace, Iterable<Conflict> conflicts) {
+        for (List<Conflict> batch : Iterables.partition(conflicts, BATCH_SIZE)) {
+            List<String> paths = Lists.newArrayListWithCapacity(batch.size());
+            List<DBObject> records = Lists.newArrayListWithCapacity(batch.size());
+            for (Conflict conflict : batch) {
+                paths.add(conflict.getPath());
+                records.add(record(namespace, conflict));
+            }
+            removeBatch(namespace, paths);
+            this.conflicts.insert(records);
         }
+    }
+
+    @Override
+    public void removeConflict(@Nullable String namespace, String path) {
+        DBObject query = new BasicDBObject();
+        query.put("namespace", namespace(namespace));
         query.put("path", path);
         conflicts.remove(query);
     }
 
+    @Override
+    public void removeConflicts(@Nullable String namespace, Iterable<String> paths) {
+        for (List<String> batch : Iterables.partition(paths, BATCH_SIZE)) {
+            removeBatch(namespace, batch);
+        }
+    }
+
+    private void removeBatch(@Nullable String namespace, List<String> paths) {
+        DBObject query = new BasicDBObject();
+        query.put("namespace", namespace(namespace));
+        query.put("path", new BasicDBObject("$in", paths));
+        conflicts.remove(query);
+    }
+
     @Override
     public void removeConflicts(@Nullable String namespace) {
         DBObject query = new BasicDBObject();
-        if (namespace == null) {
-            query.put("namespace", 0);
-        } else {
-            query.put("namespace", namespace);
-        }
+        query.put("namespace", namespace(namespace));
         conflicts.remove(query);
     }
 
@@ -7,6 +7,7 @@ package org.geogit.web.api.repo;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Iterator;
+import java.util.List;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
@@ -15,17 +16,77 @@ import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.porcelain.DiffOp;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
 import org.restlet.representation.WriterRepresentation;
+import org.restlet.resource.ResourceException;
 import org.restlet.resource.ServerResource;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+/**
+ * Returns the ids of the features modified or deleted by the commit given by the {@code commitId}
+ * query parameter, one per line.
+ * <p>
+ * A POST with a JSON message like {@code {"commitIds": [...]}} returns the features affected by
+ * many commits at once, one line per commit with the commit id followed by the feature ids,
+ * separated by spaces. Commits that are not in the repository are left out.
+ */
 public class AffectedFeaturesResource extends ServerResource {
     {
         getVariants().add(new AffectedFeaturesRepresentation());
     }
 
+    @Override
+    protected Representation post(Representation entity) throws ResourceException {
+        try {
+            final JsonElement messageJson = new JsonParser().parse(entity.getReader());
+            final List<ObjectId> commitIds = Lists.newArrayList();
+            if (messageJson.isJsonObject()) {
+                final JsonObject message = messageJson.getAsJsonObject();
+                if (message.has("commitIds") && message.get("commitIds").isJsonArray()) {
+                    for (JsonElement e : message.get("commitIds").getAsJsonArray()) {
+                        if (e.isJsonPrimitive()) {
+                            commitIds.add(ObjectId.valueOf(e.getAsString()));
+                        }
+                    }
+                }
+            }
+            return new BatchedAffectedFeaturesRepresentation(commitIds);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the ids of the features affected by the given commit, each one between the given
+     * prefix and suffix.
+     */
+    private void writeAffectedFeatures(Writer w, ObjectId commitId, String prefix, String suffix)
+            throws IOException {
+        GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
+
+        RevCommit revCommit = ggit.getRepository().getCommit(commitId);
+
+        if (revCommit.getParentIds() != null && revCommit.getParentIds().size() > 0) {
+            ObjectId parentId = revCommit.getParentIds().get(0);
+            final Iterator<DiffEntry> diff = ggit.command(DiffOp.class).setOldVersion(parentId)
+                    .setNewVersion(commitId).call();
+
+            while (diff.hasNext()) {
+                DiffEntry diffEntry = diff.next();
+                if (diffEntry.getOldObject() != null) {
+                    w.write(prefix + diffEntry.getOldObject().getNode().getObjectId().toString()
+                            + suffix);
+                }
+            }
+        }
+    }
+
     private class AffectedFeaturesRepresentation extends WriterRepresentation {
         public AffectedFeaturesRepresentation() {
             super(MediaType.TEXT_PLAIN);
@@ -40,25 +101,32 @@ public class AffectedFeaturesResource extends ServerResource {
 
             Preconditions.checkState(commit.isPresent(), "No commit specified.");
 
-            GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
+            writeAffectedFeatures(w, ObjectId.valueOf(commit.get()), "", "\n");
+            w.flush();
+        }
+    }
 
-            ObjectId commitId = ObjectId.valueOf(commit.get());
+    private class BatchedAffectedFeaturesRepresentation extends WriterRepresentation {
 
-            RevCommit revCommit = ggit.getRepository().getCommit(commitId);
+        private final List<ObjectId> commitIds;
 
-            if (revCommit.getParentIds() != null && revCommit.getParentIds().size() > 0) {
-                ObjectId parentId = revCommit.getParentIds().get(0);
-                final Iterator<DiffEntry> diff = ggit.command(DiffOp.class).setOldVersion(parentId)
-                        .setNewVersion(commitId).call();
+        public BatchedAffectedFeaturesRepresentation(List<ObjectId> commitIds) {
+            super(MediaType.TEXT_PLAIN);
+            this.commitIds = commitIds;
+        }
 
-                while (diff.hasNext()) {
-                    DiffEntry diffEntry = diff.next();
-                    if (diffEntry.getOldObject() != null) {
-                        w.write(diffEntry.getOldObject().getNode().getObjectId().toString() + "\n");
-                    }
+        @Override
+        public void write(Writer w) throws IOException {
+            GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
+            for (ObjectId commitId : commitIds) {
+                if (!ggit.getRepository().commitExists(commitId)) {
+                    continue;
                 }
-                w.flush();
+                w.write(commitId.toString());
+                writeAffectedFeatures(w, commitId, " ", "");
+                w.write("\n");
             }
+            w.flush();
         }
     }
 }
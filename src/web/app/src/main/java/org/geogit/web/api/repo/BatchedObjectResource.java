@@ -38,6 +38,8 @@ public class BatchedObjectResource extends ServerResource {
 
             final List<ObjectId> want = new ArrayList<ObjectId>();
             final List<ObjectId> have = new ArrayList<ObjectId>();
+            boolean raw = false;
+            int cap = BinaryPackedObjects.DEFAULT_CAP;
 
             if (messageJson.isJsonObject()) {
                 final JsonObject message = messageJson.getAsJsonObject();
@@ -53,6 +55,12 @@ public class BatchedObjectResource extends ServerResource {
                 } else {
                     haveArray = new JsonArray();
                 }
+                if (message.has("raw") && message.get("raw").isJsonPrimitive()) {
+                    raw = message.get("raw").getAsBoolean();
+                }
+                if (message.has("cap") && message.get("cap").isJsonPrimitive()) {
+                    cap = message.get("cap").getAsInt();
+                }
                 for (final JsonElement e : wantArray) {
                     if (e.isJsonPrimitive()) {
                         want.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
@@ -71,7 +79,7 @@ public class BatchedObjectResource extends ServerResource {
             final Deduplicator deduplicator = ggit.command(CreateDeduplicator.class).call();
 
             return new BinaryPackedObjectsRepresentation(new BinaryPackedObjects(
-                    repository.getObjectDatabase()), want, have, deduplicator);
+                    repository.getObjectDatabase()).setCap(cap), want, have, deduplicator, raw);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -79,6 +87,9 @@ public class BatchedObjectResource extends ServerResource {
 
     private static final MediaType PACKED_OBJECTS = new MediaType("application/x-geogit-packed");
 
+    private static final MediaType RAW_PACKED_OBJECTS = new MediaType(
+            BinaryPackedObjects.RAW_CONTENT_TYPE);
+
     private class BinaryPackedObjectsRepresentation extends OutputRepresentation {
         private final BinaryPackedObjects packer;
 
@@ -88,19 +99,26 @@ public class BatchedObjectResource extends ServerResource {
 
 		private Deduplicator deduplicator;
 
+        private final boolean raw;
+
         public BinaryPackedObjectsRepresentation(BinaryPackedObjects packer, List<ObjectId> want,
-                List<ObjectId> have, Deduplicator deduplicator) {
-            super(PACKED_OBJECTS);
+                List<ObjectId> have, Deduplicator deduplicator, boolean raw) {
+            super(raw ? RAW_PACKED_OBJECTS : PACKED_OBJECTS);
             this.want = want;
             this.have = have;
             this.packer = packer;
             this.deduplicator = deduplicator;
+            this.raw = raw;
         }
 
         @Override
         public void write(OutputStream out) throws IOException {
         	try {
-        		packer.write(out, want, have, false, deduplicator);
+        		if (raw) {
+        			packer.writeRaw(out, want, have, false, deduplicator);
+        		} else {
+        			packer.write(out, want, have, false, deduplicator);
+        		}
         	} finally {
         		deduplicator.release();
         	}
@@ -6,6 +6,7 @@ package org.geogit.web.api.repo;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.List;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
@@ -13,24 +14,75 @@ import org.geogit.web.api.commands.PushManager;
 import org.restlet.data.ClientInfo;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
 import org.restlet.representation.WriterRepresentation;
+import org.restlet.resource.ResourceException;
 import org.restlet.resource.ServerResource;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Returns {@code 1} if the object given by the {@code oid} query parameter exists or was already
+ * pushed by the client, {@code 0} otherwise.
+ * <p>
+ * A POST with a JSON message like {@code {"oids": [...]}} checks many objects at once, and returns
+ * one such line per object, in the order they were given.
+ */
 public class ObjectExistsResource extends ServerResource {
     {
         getVariants().add(new ObjectExistsRepresentation());
     }
 
+    @Override
+    protected Representation post(Representation entity) throws ResourceException {
+        try {
+            final JsonElement messageJson = new JsonParser().parse(entity.getReader());
+            final List<ObjectId> oids = Lists.newArrayList();
+            if (messageJson.isJsonObject()) {
+                final JsonObject message = messageJson.getAsJsonObject();
+                if (message.has("oids") && message.get("oids").isJsonArray()) {
+                    for (JsonElement e : message.get("oids").getAsJsonArray()) {
+                        if (e.isJsonPrimitive()) {
+                            oids.add(ObjectId.valueOf(e.getAsString()));
+                        }
+                    }
+                }
+            }
+            return new ObjectExistsRepresentation(oids);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private class ObjectExistsRepresentation extends WriterRepresentation {
+
+        private final List<ObjectId> oids;
+
         public ObjectExistsRepresentation() {
+            this(null);
+        }
+
+        /**
+         * @param oids the objects to check, or {@code null} to check the one in the query
+         */
+        public ObjectExistsRepresentation(List<ObjectId> oids) {
             super(MediaType.TEXT_PLAIN);
+            this.oids = oids;
         }
 
         @Override
         public void write(Writer w) throws IOException {
             Form options = getRequest().getResourceRef().getQueryAsForm();
 
-            ObjectId oid = ObjectId.valueOf(options.getFirstValue("oid", ObjectId.NULL.toString()));
+            List<ObjectId> toCheck = oids;
+            if (toCheck == null) {
+                toCheck = ImmutableList.of(ObjectId.valueOf(options.getFirstValue("oid",
+                        ObjectId.NULL.toString())));
+            }
 
             GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
             PushManager pushManager = PushManager.get();
@@ -39,10 +91,17 @@ public class ObjectExistsResource extends ServerResource {
             // external network.
             // e.g.: ext.ern.al.IP.int.ern.al.IP
             String ipAddress = info.getAddress() + "." + options.getFirstValue("internalIp", "");
-            if (ggit.getRepository().blobExists(oid) || pushManager.alreadyPushed(ipAddress, oid)) {
-                w.write("1");
-            } else {
-                w.write("0");
+            for (int i = 0; i < toCheck.size(); i++) {
+                ObjectId oid = toCheck.get(i);
+                if (i > 0) {
+                    w.write("\n");
+                }
+                if (ggit.getRepository().blobExists(oid)
+                        || pushManager.alreadyPushed(ipAddress, oid)) {
+                    w.write("1");
+                } else {
+                    w.write("0");
+                }
             }
             w.flush();
         }
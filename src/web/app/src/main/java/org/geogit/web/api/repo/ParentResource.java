@@ -6,22 +6,68 @@ package org.geogit.web.api.repo;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
+import org.geogit.repository.Repository;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
 import org.restlet.representation.WriterRepresentation;
+import org.restlet.resource.ResourceException;
 import org.restlet.resource.ServerResource;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+/**
+ * Returns the parents of a commit given by the {@code commitId} query parameter, one per line.
+ * <p>
+ * A POST with a JSON message like {@code {"commitIds": [...], "limit": 1000}} returns the parents
+ * of many commits at once, one commit per line followed by its parents, separated by spaces. The
+ * requested commits are followed by as many of their ancestors as needed to reach {@code limit}
+ * commits, in breadth first order, so that a client walking the history needs a single request
+ * per {@code limit} commits instead of one per commit.
+ */
 public class ParentResource extends ServerResource {
     {
         getVariants().add(new ParentRepresentation());
     }
 
+    @Override
+    protected Representation post(Representation entity) throws ResourceException {
+        try {
+            final JsonElement messageJson = new JsonParser().parse(entity.getReader());
+            final List<ObjectId> commitIds = Lists.newArrayList();
+            int limit = 0;
+            if (messageJson.isJsonObject()) {
+                final JsonObject message = messageJson.getAsJsonObject();
+                if (message.has("commitIds") && message.get("commitIds").isJsonArray()) {
+                    for (JsonElement e : message.get("commitIds").getAsJsonArray()) {
+                        if (e.isJsonPrimitive()) {
+                            commitIds.add(ObjectId.valueOf(e.getAsString()));
+                        }
+                    }
+                }
+                if (message.has("limit") && message.get("limit").isJsonPrimitive()) {
+                    limit = message.get("limit").getAsInt();
+                }
+            }
+            return new BatchedParentsRepresentation(commitIds, limit);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private class ParentRepresentation extends WriterRepresentation {
         public ParentRepresentation() {
             super(MediaType.TEXT_PLAIN);
@@ -46,4 +92,47 @@ public class ParentResource extends ServerResource {
             w.flush();
         }
     }
+
+    private class BatchedParentsRepresentation extends WriterRepresentation {
+
+        private final List<ObjectId> commitIds;
+
+        private final int limit;
+
+        public BatchedParentsRepresentation(List<ObjectId> commitIds, int limit) {
+            super(MediaType.TEXT_PLAIN);
+            this.commitIds = commitIds;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(Writer w) throws IOException {
+            GeoGIT ggit = (GeoGIT) getApplication().getContext().getAttributes().get("geogit");
+            Repository repository = ggit.getRepository();
+
+            Set<ObjectId> requested = Sets.newHashSet(commitIds);
+            Set<ObjectId> written = Sets.newHashSet();
+            Queue<ObjectId> queue = new LinkedList<ObjectId>(commitIds);
+            while (!queue.isEmpty() && (written.size() < limit || !requested.isEmpty())) {
+                ObjectId commitId = queue.remove();
+                boolean wasRequested = requested.remove(commitId);
+                // ancestors are only listed if they are here, so that the bottom of a shallow
+                // history is not mistaken for a commit without parents
+                if (written.contains(commitId)
+                        || (!wasRequested && !repository.blobExists(commitId))) {
+                    continue;
+                }
+                ImmutableList<ObjectId> parents = repository.getGraphDatabase().getParents(
+                        commitId);
+                w.write(commitId.toString());
+                for (ObjectId parent : parents) {
+                    w.write(" " + parent.toString());
+                }
+                w.write("\n");
+                written.add(commitId);
+                queue.addAll(parents);
+            }
+            w.flush();
+        }
+    }
 }
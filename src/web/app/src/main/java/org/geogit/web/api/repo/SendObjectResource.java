@@ -23,7 +23,12 @@ public class SendObjectResource extends ServerResource {
         final BinaryPackedObjects unpacker = new BinaryPackedObjects(ggit.getRepository()
                 .getObjectDatabase());
 
-        unpacker.ingest(input);
+        MediaType mediaType = entity.getMediaType();
+        if (mediaType != null && BinaryPackedObjects.RAW_CONTENT_TYPE.equals(mediaType.getName())) {
+            unpacker.ingestRaw(input);
+        } else {
+            unpacker.ingest(input);
+        }
         return new StringRepresentation("Ingested", MediaType.TEXT_PLAIN);
     }
 }
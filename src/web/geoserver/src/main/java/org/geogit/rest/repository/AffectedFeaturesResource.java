@@ -7,8 +7,10 @@ package org.geogit.rest.repository;
 import static org.geogit.rest.repository.GeogitResourceUtils.getGeogit;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 
@@ -17,20 +19,32 @@ import org.geogit.api.ObjectId;
 import org.geogit.api.RevCommit;
 import org.geogit.api.plumbing.diff.DiffEntry;
 import org.geogit.api.porcelain.DiffOp;
+import org.geoserver.rest.RestletException;
 import org.restlet.Context;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
+import org.restlet.data.Status;
 import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
 import org.restlet.resource.Variant;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 /**
- * Returns a list of all feature ids affected by a specified commit.
+ * Returns the ids of the features modified or deleted by the commit given by the {@code commitId}
+ * query parameter, one per line.
+ * <p>
+ * A POST with a JSON message like {@code {"commitIds": [...]}} returns the features affected by
+ * many commits at once, one line per commit with the commit id followed by the feature ids,
+ * separated by spaces. Commits that are not in the repository are left out.
  */
 public class AffectedFeaturesResource extends Resource {
 
@@ -41,6 +55,56 @@ public class AffectedFeaturesResource extends Resource {
         variants.add(new AffectedFeaturesRepresentation(request));
     }
 
+    @Override
+    public boolean allowPost() {
+        return true;
+    }
+
+    @Override
+    public void post(Representation entity) {
+        final JsonElement messageJson;
+        try {
+            messageJson = new JsonParser().parse(new InputStreamReader(entity.getStream()));
+        } catch (IOException e) {
+            throw new RestletException(e.getMessage(), Status.SERVER_ERROR_INTERNAL, e);
+        }
+        final List<ObjectId> commitIds = Lists.newArrayList();
+        if (messageJson.isJsonObject()) {
+            final JsonObject message = messageJson.getAsJsonObject();
+            if (message.has("commitIds") && message.get("commitIds").isJsonArray()) {
+                for (JsonElement e : message.get("commitIds").getAsJsonArray()) {
+                    if (e.isJsonPrimitive()) {
+                        commitIds.add(ObjectId.valueOf(e.getAsString()));
+                    }
+                }
+            }
+        }
+        getResponse().setEntity(new BatchedAffectedFeaturesRepresentation(getRequest(), commitIds));
+    }
+
+    /**
+     * Writes the ids of the features affected by the given commit, each one between the given
+     * prefix and suffix.
+     */
+    private static void writeAffectedFeatures(Writer w, GeoGIT ggit, ObjectId commitId,
+            String prefix, String suffix) throws IOException {
+        RevCommit revCommit = ggit.getRepository().getCommit(commitId);
+
+        if (revCommit.getParentIds() != null && revCommit.getParentIds().size() > 0) {
+            ObjectId parentId = revCommit.getParentIds().get(0);
+            final Iterator<DiffEntry> diff = ggit.command(DiffOp.class).setOldVersion(parentId)
+                    .setNewVersion(commitId).call();
+
+            while (diff.hasNext()) {
+                DiffEntry diffEntry = diff.next();
+                if (diffEntry.getOldObject() != null) {
+                    w.write(prefix + diffEntry.getOldObject().getNode().getObjectId().toString()
+                            + suffix);
+                }
+            }
+        }
+    }
+
     private static class AffectedFeaturesRepresentation extends OutputRepresentation {
 
         private Request request;
@@ -62,23 +126,36 @@ public class AffectedFeaturesResource extends Resource {
 
             GeoGIT ggit = getGeogit(request).get();
 
-            ObjectId commitId = ObjectId.valueOf(commit.get());
+            writeAffectedFeatures(w, ggit, ObjectId.valueOf(commit.get()), "", "\n");
+            w.flush();
+        }
+    }
 
-            RevCommit revCommit = ggit.getRepository().getCommit(commitId);
+    private static class BatchedAffectedFeaturesRepresentation extends OutputRepresentation {
 
-            if (revCommit.getParentIds() != null && revCommit.getParentIds().size() > 0) {
-                ObjectId parentId = revCommit.getParentIds().get(0);
-                final Iterator<DiffEntry> diff = ggit.command(DiffOp.class).setOldVersion(parentId)
-                        .setNewVersion(commitId).call();
+        private final Request request;
 
-                while (diff.hasNext()) {
-                    DiffEntry diffEntry = diff.next();
-                    if (diffEntry.getOldObject() != null) {
-                        w.write(diffEntry.getOldObject().getNode().getObjectId().toString() + "\n");
-                    }
+        private final List<ObjectId> commitIds;
+
+        public BatchedAffectedFeaturesRepresentation(Request request, List<ObjectId> commitIds) {
+            super(MediaType.TEXT_PLAIN);
+            this.request = request;
+            this.commitIds = commitIds;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            PrintWriter w = new PrintWriter(out);
+            GeoGIT ggit = getGeogit(request).get();
+            for (ObjectId commitId : commitIds) {
+                if (!ggit.getRepository().commitExists(commitId)) {
+                    continue;
                 }
-                w.flush();
+                w.write(commitId.toString());
+                writeAffectedFeatures(w, ggit, commitId, " ", "");
+                w.write("\n");
             }
+            w.flush();
         }
     }
 }
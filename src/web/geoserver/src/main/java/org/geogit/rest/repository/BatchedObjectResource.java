@@ -76,6 +76,8 @@ public class BatchedObjectResource extends Finder {
 
             final List<ObjectId> want = new ArrayList<ObjectId>();
             final List<ObjectId> have = new ArrayList<ObjectId>();
+            boolean raw = false;
+            int cap = BinaryPackedObjects.DEFAULT_CAP;
 
             if (messageJson.isJsonObject()) {
                 final JsonObject message = messageJson.getAsJsonObject();
@@ -91,6 +93,12 @@ public class BatchedObjectResource extends Finder {
                 } else {
                     haveArray = new JsonArray();
                 }
+                if (message.has("raw") && message.get("raw").isJsonPrimitive()) {
+                    raw = message.get("raw").getAsBoolean();
+                }
+                if (message.has("cap") && message.get("cap").isJsonPrimitive()) {
+                    cap = message.get("cap").getAsInt();
+                }
                 for (final JsonElement e : wantArray) {
                     if (e.isJsonPrimitive()) {
                         want.add(ObjectId.valueOf(e.getAsJsonPrimitive().getAsString()));
@@ -107,9 +115,12 @@ public class BatchedObjectResource extends Finder {
             final Repository repository = ggit.getRepository();
             final Deduplicator deduplicator = ggit.command(CreateDeduplicator.class).call();
 
-            BinaryPackedObjects packer = new BinaryPackedObjects(repository.getIndex()
-                    .getDatabase());
-            getResponse().setEntity(new RevObjectBinaryRepresentation(packer, want, have, deduplicator));
+            // the object database itself, so that raw packs copy the stored objects instead of
+            // compressing them again
+            BinaryPackedObjects packer = new BinaryPackedObjects(repository.getObjectDatabase())
+                    .setCap(cap);
+            getResponse().setEntity(
+                    new RevObjectBinaryRepresentation(packer, want, have, deduplicator, raw));
         }
     }
 
@@ -122,23 +133,32 @@ public class BatchedObjectResource extends Finder {
 
 		private Deduplicator deduplicator;
 
+        private final boolean raw;
+
         public RevObjectBinaryRepresentation( //
                 BinaryPackedObjects packer, //
                 List<ObjectId> want, //
                 List<ObjectId> have, //
-                Deduplicator deduplicator) //
+                Deduplicator deduplicator, //
+                boolean raw) //
         {
-            super(MediaType.APPLICATION_OCTET_STREAM);
+            super(raw ? new MediaType(BinaryPackedObjects.RAW_CONTENT_TYPE)
+                    : MediaType.APPLICATION_OCTET_STREAM);
             this.packer = packer;
             this.want = want;
             this.have = have;
             this.deduplicator = deduplicator;
+            this.raw = raw;
         }
 
         @Override
         public void write(OutputStream out) throws IOException {
         	try {
-        		packer.write(out, want, have, false, deduplicator);
+        		if (raw) {
+        			packer.writeRaw(out, want, have, false, deduplicator);
+        		} else {
+        			packer.write(out, want, have, false, deduplicator);
+        		}
         	} finally {
         		deduplicator.release();
         	}
@@ -8,6 +8,7 @@ package org.geogit.rest.repository;
 import static org.geogit.rest.repository.GeogitResourceUtils.getGeogit;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Writer;
 import java.util.List;
 
@@ -15,20 +16,32 @@ import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
 import org.geogit.repository.Repository;
 import org.geogit.web.api.commands.PushManager;
+import org.geoserver.rest.RestletException;
 import org.restlet.Context;
 import org.restlet.data.ClientInfo;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
 import org.restlet.resource.Variant;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 /**
- *
+ * Returns {@code 1} if the object given by the {@code oid} query parameter exists or was already
+ * pushed by the client, {@code 0} otherwise.
+ * <p>
+ * A POST with a JSON message like {@code {"oids": [...]}} checks many objects at once, and returns
+ * one such line per object, in the order they were given.
  */
 public class ObjectExistsResource extends Resource {
 
@@ -40,23 +53,64 @@ public class ObjectExistsResource extends Resource {
         variants.add(new ObjectExistsRepresentation());
     }
 
+    @Override
+    public boolean allowPost() {
+        return true;
+    }
+
+    @Override
+    public void post(Representation entity) {
+        final JsonElement messageJson;
+        try {
+            messageJson = new JsonParser().parse(new InputStreamReader(entity.getStream()));
+        } catch (IOException e) {
+            throw new RestletException(e.getMessage(), Status.SERVER_ERROR_INTERNAL, e);
+        }
+        final List<ObjectId> oids = Lists.newArrayList();
+        if (messageJson.isJsonObject()) {
+            final JsonObject message = messageJson.getAsJsonObject();
+            if (message.has("oids") && message.get("oids").isJsonArray()) {
+                for (JsonElement e : message.get("oids").getAsJsonArray()) {
+                    if (e.isJsonPrimitive()) {
+                        oids.add(ObjectId.valueOf(e.getAsString()));
+                    }
+                }
+            }
+        }
+        getResponse().setEntity(new ObjectExistsRepresentation(oids));
+    }
+
     private class ObjectExistsRepresentation extends WriterRepresentation {
+
+        private final List<ObjectId> oids;
+
         public ObjectExistsRepresentation() {
+            this(null);
+        }
+
+        /**
+         * @param oids the objects to check, or {@code null} to check the one in the query
+         */
+        public ObjectExistsRepresentation(List<ObjectId> oids) {
             super(MediaType.TEXT_PLAIN);
+            this.oids = oids;
         }
 
         @Override
         public void write(Writer w) throws IOException {
             Form options = getRequest().getResourceRef().getQueryAsForm();
 
-            ObjectId oid = ObjectId.valueOf(options.getFirstValue("oid", ObjectId.NULL.toString()));
+            List<ObjectId> toCheck = oids;
+            if (toCheck == null) {
+                toCheck = ImmutableList.of(ObjectId.valueOf(options.getFirstValue("oid",
+                        ObjectId.NULL.toString())));
+            }
             Request request = getRequest();
             Optional<GeoGIT> ggit = getGeogit(request);
             Preconditions.checkState(ggit.isPresent());
 
             GeoGIT geogit = ggit.get();
             Repository repository = geogit.getRepository();
-            boolean blobExists = repository.blobExists(oid);
 
             ClientInfo info = getRequest().getClientInfo();
             // make a combined ip address to handle requests from multiple machines in the same
@@ -64,12 +118,17 @@ public class ObjectExistsResource extends Resource {
             // e.g.: ext.ern.al.IP.int.ern.al.IP
             String ipAddress = info.getAddress() + "." + options.getFirstValue("internalIp", "");
             PushManager pushManager = PushManager.get();
-            boolean alreadyPushed = pushManager.alreadyPushed(ipAddress, oid);
 
-            if (blobExists || alreadyPushed) {
-                w.write("1");
-            } else {
-                w.write("0");
+            for (int i = 0; i < toCheck.size(); i++) {
+                ObjectId oid = toCheck.get(i);
+                if (i > 0) {
+                    w.write("\n");
+                }
+                if (repository.blobExists(oid) || pushManager.alreadyPushed(ipAddress, oid)) {
+                    w.write("1");
+                } else {
+                    w.write("0");
+                }
             }
             w.flush();
         }
@@ -8,27 +8,46 @@ package org.geogit.rest.repository;
 import static org.geogit.rest.repository.GeogitResourceUtils.getGeogit;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 
 import org.geogit.api.GeoGIT;
 import org.geogit.api.ObjectId;
+import org.geogit.repository.Repository;
+import org.geoserver.rest.RestletException;
 import org.restlet.Context;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
+import org.restlet.data.Status;
 import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
 import org.restlet.resource.Variant;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 /**
- *
+ * Returns the parents of a commit given by the {@code commitId} query parameter, one per line.
+ * <p>
+ * A POST with a JSON message like {@code {"commitIds": [...], "limit": 1000}} returns the parents
+ * of many commits at once, one commit per line followed by its parents, separated by spaces. The
+ * requested commits are followed by as many of their ancestors as needed to reach {@code limit}
+ * commits, in breadth first order, so that a client walking the history needs a single request
+ * per {@code limit} commits instead of one per commit.
  */
 public class ParentResource extends Resource {
 
@@ -39,6 +58,37 @@ public class ParentResource extends Resource {
         variants.add(new ParentRepresentation(request));
     }
 
+    @Override
+    public boolean allowPost() {
+        return true;
+    }
+
+    @Override
+    public void post(Representation entity) {
+        final JsonElement messageJson;
+        try {
+            messageJson = new JsonParser().parse(new InputStreamReader(entity.getStream()));
+        } catch (IOException e) {
+            throw new RestletException(e.getMessage(), Status.SERVER_ERROR_INTERNAL, e);
+        }
+        final List<ObjectId> commitIds = Lists.newArrayList();
+        int limit = 0;
+        if (messageJson.isJsonObject()) {
+            final JsonObject message = messageJson.getAsJsonObject();
+            if (message.has("commitIds") && message.get("commitIds").isJsonArray()) {
+                for (JsonElement e : message.get("commitIds").getAsJsonArray()) {
+                    if (e.isJsonPrimitive()) {
+                        commitIds.add(ObjectId.valueOf(e.getAsString()));
+                    }
+                }
+            }
+            if (message.has("limit") && message.get("limit").isJsonPrimitive()) {
+                limit = message.get("limit").getAsInt();
+            }
+        }
+        getResponse().setEntity(new BatchedParentsRepresentation(getRequest(), commitIds, limit));
+    }
+
     private static class ParentRepresentation extends OutputRepresentation {
 
         private Request request;
@@ -72,4 +122,52 @@ public class ParentResource extends Resource {
         }
 
     }
+
+    private static class BatchedParentsRepresentation extends OutputRepresentation {
+
+        private final Request request;
+
+        private final List<ObjectId> commitIds;
+
+        private final int limit;
+
+        public BatchedParentsRepresentation(Request request, List<ObjectId> commitIds, int limit) {
+            super(MediaType.TEXT_PLAIN);
+            this.request = request;
+            this.commitIds = commitIds;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            PrintWriter w = new PrintWriter(out);
+            Optional<GeoGIT> geogit = getGeogit(request);
+            Preconditions.checkState(geogit.isPresent());
+            Repository repository = geogit.get().getRepository();
+
+            Set<ObjectId> requested = Sets.newHashSet(commitIds);
+            Set<ObjectId> written = Sets.newHashSet();
+            Queue<ObjectId> queue = new LinkedList<ObjectId>(commitIds);
+            while (!queue.isEmpty() && (written.size() < limit || !requested.isEmpty())) {
+                ObjectId commitId = queue.remove();
+                boolean wasRequested = requested.remove(commitId);
+                // ancestors are only listed if they are here, so that the bottom of a shallow
+                // history is not mistaken for a commit without parents
+                if (written.contains(commitId)
+                        || (!wasRequested && !repository.blobExists(commitId))) {
+                    continue;
+                }
+                ImmutableList<ObjectId> parents = repository.getGraphDatabase().getParents(
+                        commitId);
+                w.write(commitId.toString());
+                for (ObjectId parent : parents) {
+                    w.write(" " + parent.toString());
+                }
+                w.write("\n");
+                written.add(commitId);
+                queue.addAll(parents);
+            }
+            w.flush();
+        }
+    }
 }
@@ -13,6 +13,7 @@ import java.io.InputStream;
 import org.geogit.api.GeoGIT;
 import org.geogit.remote.BinaryPackedObjects;
 import org.geoserver.rest.RestletException;
+import org.restlet.data.MediaType;
 import org.restlet.data.Status;
 import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
@@ -37,7 +38,13 @@ public class SendObjectResource extends Resource {
             final GeoGIT ggit = getGeogit(getRequest()).get();
             final BinaryPackedObjects unpacker = new BinaryPackedObjects(ggit.getRepository()
                     .getObjectDatabase());
-            unpacker.ingest(input);
+            MediaType mediaType = entity.getMediaType();
+            if (mediaType != null
+                    && BinaryPackedObjects.RAW_CONTENT_TYPE.equals(mediaType.getName())) {
+                unpacker.ingestRaw(input);
+            } else {
+                unpacker.ingest(input);
+            }
 
         } catch (IOException e) {
             throw new RestletException(e.getMessage(), Status.SERVER_ERROR_INTERNAL, e);
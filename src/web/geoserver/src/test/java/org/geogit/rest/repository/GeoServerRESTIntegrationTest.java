@@ -179,6 +179,70 @@ public class GeoServerRESTIntegrationTest extends GeoServerSystemTestSupport {
         assertResponse(url, "0");
     }
 
+    /**
+     * Test for POST requests to resource {@code /rest/<repository>/repo/exists}
+     */
+    @Test
+    public void testBatchedRevObjectsExist() throws Exception {
+        final String url = BASE_URL + "/repo/exists";
+
+        GeoGIT geogit = helper.getGeogit();
+        Ref head = geogit.command(RefParse.class).setName(Ref.HEAD).call().get();
+        ObjectId commitId = head.getObjectId();
+        ObjectId treeId = geogit.command(ResolveTreeish.class).setTreeish(commitId).call().get();
+        ObjectId fakeId = ObjectId.forString("fake");
+
+        JsonObject message = new JsonObject();
+        message.add("oids", toJsonArray(commitId, fakeId, treeId));
+        assertPostResponse(url, message, "1\n0\n1");
+
+        message.add("oids", toJsonArray());
+        assertPostResponse(url, message, "");
+    }
+
+    /**
+     * Test for POST requests to resource {@code /rest/<repository>/repo/getparents}
+     */
+    @Test
+    public void testBatchedGetParents() throws Exception {
+        final String url = BASE_URL + "/repo/getparents";
+
+        GeoGIT geogit = helper.getGeogit();
+        Ref head = geogit.command(RefParse.class).setName(Ref.HEAD).call().get();
+        ObjectId commitId = head.getObjectId();
+        ObjectId fakeId = ObjectId.forString("fake");
+
+        // the only commit has no parents, and neither has an unknown one
+        JsonObject message = new JsonObject();
+        message.add("commitIds", toJsonArray(commitId, fakeId));
+        message.add("limit", new JsonPrimitive(100));
+        assertPostResponse(url, message, commitId + "\n" + fakeId + "\n");
+
+        message.add("commitIds", toJsonArray());
+        assertPostResponse(url, message, "");
+    }
+
+    /**
+     * Test for POST requests to resource {@code /rest/<repository>/repo/affectedfeatures}
+     */
+    @Test
+    public void testBatchedAffectedFeatures() throws Exception {
+        final String url = BASE_URL + "/repo/affectedfeatures";
+
+        GeoGIT geogit = helper.getGeogit();
+        Ref head = geogit.command(RefParse.class).setName(Ref.HEAD).call().get();
+        ObjectId commitId = head.getObjectId();
+        ObjectId fakeId = ObjectId.forString("fake");
+
+        // the root commit doesn't modify any feature, and unknown commits are left out
+        JsonObject message = new JsonObject();
+        message.add("commitIds", toJsonArray(commitId, fakeId));
+        assertPostResponse(url, message, commitId + "\n");
+
+        message.add("commitIds", toJsonArray());
+        assertPostResponse(url, message, "");
+    }
+
     /**
      * Test for resource {@code /rest/<repository>/repo/objects/<oid>}
      */
@@ -273,6 +337,28 @@ public class GeoServerRESTIntegrationTest extends GeoServerSystemTestSupport {
         return sr;
     }
 
+    private MockHttpServletResponse assertPostResponse(String url, JsonObject message,
+            String expectedContent) throws Exception {
+
+        MockHttpServletResponse sr = postAsServletResponse(url, message.toString(),
+                "application/json");
+        assertEquals(sr.getOutputStreamContent(), 200, sr.getStatusCode());
+
+        String responseBody = sr.getOutputStreamContent();
+
+        assertNotNull(responseBody);
+        assertEquals(expectedContent, responseBody);
+        return sr;
+    }
+
+    private static JsonArray toJsonArray(ObjectId... ids) {
+        JsonArray array = new JsonArray();
+        for (ObjectId id : ids) {
+            array.add(new JsonPrimitive(id.toString()));
+        }
+        return array;
+    }
+
     private class ObjectStreamIterator extends AbstractIterator<RevObject> {
         private final InputStream bytes;
 